@@ -102,6 +102,8 @@ public class SecurityConfig {
                         .requestMatchers(SWAGGER_WHITELIST).permitAll()
                 // 系统路径放行
                         .requestMatchers(SYSTEM_WHITELIST).permitAll()
+                // 指标端点仅管理员可访问
+                        .requestMatchers("/actuator/metrics/**").hasRole("ADMIN")
                         .anyRequest().authenticated())
                 .addFilterBefore(new JwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class)
                 .authenticationProvider(developerAuthenticationProvider);
@@ -0,0 +1,41 @@
+-- Add chat_history table
+-- Description: Keep the latest successful chat of each conversation, so history messages are built with a bounded query
+
+START TRANSACTION;
+
+-- ========================================
+-- ChatHistory table
+-- ========================================
+CREATE TABLE IF NOT EXISTS `chat_history` (
+    `id` bigint NOT NULL AUTO_INCREMENT,
+    `session_id` varchar(64) NOT NULL,
+    `product_id` varchar(64) NOT NULL,
+    `conversation_id` varchar(64) NOT NULL,
+    `chat_id` varchar(64) NOT NULL,
+    `chat_created_at` datetime(3) NOT NULL,
+    `created_at` datetime(3) DEFAULT CURRENT_TIMESTAMP(3),
+    `updated_at` datetime(3) DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_session_product_conversation` (`session_id`, `product_id`, `conversation_id`),
+    KEY `idx_session_product_chat_created` (`session_id`, `product_id`, `chat_created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- ========================================
+-- Backfill from existing successful chats
+-- ========================================
+INSERT IGNORE INTO `chat_history` (`session_id`, `product_id`, `conversation_id`, `chat_id`, `chat_created_at`)
+SELECT `session_id`, `product_id`, `conversation_id`, `chat_id`, `created_at`
+FROM (
+    SELECT `session_id`, `product_id`, `conversation_id`, `chat_id`, `created_at`,
+           ROW_NUMBER() OVER (PARTITION BY `session_id`, `product_id`, `conversation_id`
+                              ORDER BY `created_at` DESC, `id` DESC) AS `rn`
+    FROM `chat`
+    WHERE `status` = 'SUCCESS'
+      AND `product_id` IS NOT NULL
+      AND `created_at` IS NOT NULL
+      AND `question` IS NOT NULL AND TRIM(`question`) <> ''
+      AND `answer` IS NOT NULL AND TRIM(`answer`) <> ''
+) latest
+WHERE latest.`rn` = 1;
+
+COMMIT;
@@ -0,0 +1,13 @@
+-- Add storage_key column to chat_attachment table
+-- Description: Attachment data is kept in object storage, the mediumblob column is only read for existing attachments
+
+START TRANSACTION;
+
+-- ========================================
+-- Add storage_key column to chat_attachment table
+-- ========================================
+ALTER TABLE `chat_attachment`
+ADD COLUMN `storage_key` varchar(255) DEFAULT NULL
+AFTER `size`;
+
+COMMIT;
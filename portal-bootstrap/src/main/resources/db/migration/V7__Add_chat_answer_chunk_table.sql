@@ -0,0 +1,20 @@
+-- Add chat_answer_chunk table
+-- Description: Checkpoints of answers being streamed, removed once the complete answer is saved to chat
+
+START TRANSACTION;
+
+-- ========================================
+-- ChatAnswerChunk table
+-- ========================================
+CREATE TABLE IF NOT EXISTS `chat_answer_chunk` (
+    `id` bigint NOT NULL AUTO_INCREMENT,
+    `chat_id` varchar(64) NOT NULL,
+    `seq` int NOT NULL,
+    `start_offset` int NOT NULL,
+    `content` mediumtext DEFAULT NULL,
+    `created_at` datetime(3) DEFAULT CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_chat_id_seq` (`chat_id`, `seq`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+COMMIT;
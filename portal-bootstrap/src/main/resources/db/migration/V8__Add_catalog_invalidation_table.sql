@@ -0,0 +1,19 @@
+-- Add catalog_invalidation table
+-- Description: Invalidation messages of the portal catalog cache, polled by the other replicas
+
+START TRANSACTION;
+
+-- ========================================
+-- CatalogInvalidation table
+-- ========================================
+CREATE TABLE IF NOT EXISTS `catalog_invalidation` (
+    `id` bigint NOT NULL AUTO_INCREMENT,
+    `region` varchar(16) NOT NULL,
+    `entity_id` varchar(64) NOT NULL,
+    `node_id` varchar(64) NOT NULL,
+    `created_at` datetime(3) DEFAULT CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (`id`),
+    KEY `idx_created_at` (`created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+COMMIT;
@@ -0,0 +1,41 @@
+-- Add product_import_job, product_import_item tables
+-- Description: Bulk import of gateway MCP servers, model APIs and HTTP APIs as products, resumable by item
+
+START TRANSACTION;
+
+-- ========================================
+-- ProductImportJob table
+-- ========================================
+CREATE TABLE IF NOT EXISTS `product_import_job` (
+    `id` bigint NOT NULL AUTO_INCREMENT,
+    `job_id` varchar(64) NOT NULL,
+    `gateway_id` varchar(64) NOT NULL,
+    `admin_id` varchar(64) DEFAULT NULL,
+    `product_types` varchar(128) NOT NULL,
+    `status` varchar(32) NOT NULL,
+    `total` int NOT NULL DEFAULT 0,
+    `error` varchar(1024) DEFAULT NULL,
+    `created_at` datetime(3) DEFAULT CURRENT_TIMESTAMP(3),
+    `updated_at` datetime(3) DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_job_id` (`job_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- ========================================
+-- ProductImportItem table
+-- ========================================
+CREATE TABLE IF NOT EXISTS `product_import_item` (
+    `id` bigint NOT NULL AUTO_INCREMENT,
+    `job_id` varchar(64) NOT NULL,
+    `item_key` varchar(255) NOT NULL,
+    `product_type` varchar(64) NOT NULL,
+    `product_id` varchar(64) DEFAULT NULL,
+    `status` varchar(32) NOT NULL,
+    `error` varchar(1024) DEFAULT NULL,
+    `created_at` datetime(3) DEFAULT CURRENT_TIMESTAMP(3),
+    `updated_at` datetime(3) DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_job_item` (`job_id`, `item_key`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+COMMIT;
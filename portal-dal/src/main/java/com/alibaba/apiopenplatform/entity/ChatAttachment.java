@@ -58,7 +58,13 @@ public class ChatAttachment {
     private Long size;
 
     /**
-     * Raw data
+     * Object key in attachment storage, null for attachments stored inline
+     */
+    @Column(name = "storage_key", length = 255)
+    private String storageKey;
+
+    /**
+     * Raw data, only kept for attachments uploaded before object storage
      */
     @Column(name = "data", columnDefinition = "mediumblob")
     private byte[] data;
@@ -0,0 +1,55 @@
+package com.alibaba.apiopenplatform.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Latest successful chat of each conversation, used to build history messages
+ */
+@Entity
+@Table(name = "chat_history", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"session_id", "product_id", "conversation_id"}, name = "uk_session_product_conversation")
+}, indexes = {
+        @Index(columnList = "session_id, product_id, chat_created_at", name = "idx_session_product_chat_created")
+})
+@Data
+@Accessors(chain = true)
+public class ChatHistory extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Session ID
+     */
+    @Column(name = "session_id", nullable = false, length = 64)
+    private String sessionId;
+
+    /**
+     * Product ID
+     */
+    @Column(name = "product_id", nullable = false, length = 64)
+    private String productId;
+
+    /**
+     * Conversation ID (Chat group ID)
+     */
+    @Column(name = "conversation_id", nullable = false, length = 64)
+    private String conversationId;
+
+    /**
+     * Latest successful chat ID of the conversation
+     */
+    @Column(name = "chat_id", nullable = false, length = 64)
+    private String chatId;
+
+    /**
+     * Create time of the latest chat, history is ordered by it
+     */
+    @Column(name = "chat_created_at", nullable = false, columnDefinition = "datetime(3)")
+    private LocalDateTime chatCreateAt;
+}
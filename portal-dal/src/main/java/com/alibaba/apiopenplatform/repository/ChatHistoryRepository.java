@@ -0,0 +1,41 @@
+package com.alibaba.apiopenplatform.repository;
+
+import com.alibaba.apiopenplatform.entity.ChatHistory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ChatHistoryRepository extends BaseRepository<ChatHistory, Long> {
+
+    /**
+     * Find history of the given conversation
+     *
+     * @param sessionId
+     * @param productId
+     * @param conversationId
+     * @return
+     */
+    Optional<ChatHistory> findBySessionIdAndProductIdAndConversationId(String sessionId, String productId, String conversationId);
+
+    /**
+     * Find history of the session and product, excluding the given conversation
+     *
+     * @param sessionId
+     * @param productId
+     * @param conversationId
+     * @param pageable
+     * @return
+     */
+    List<ChatHistory> findBySessionIdAndProductIdAndConversationIdNot(String sessionId, String productId,
+                                                                      String conversationId, Pageable pageable);
+
+    /**
+     * Delete all history for given sessionId
+     *
+     * @param sessionId
+     */
+    void deleteAllBySessionId(String sessionId);
+}
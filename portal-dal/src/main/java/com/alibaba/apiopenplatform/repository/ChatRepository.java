@@ -31,6 +31,14 @@ public interface ChatRepository extends BaseRepository<Chat, Long> {
      */
     Optional<Chat> findByChatId(String chatId);
 
+    /**
+     * Find by chatIds
+     *
+     * @param chatIds
+     * @return
+     */
+    List<Chat> findByChatIdIn(List<String> chatIds);
+
     /**
      * Find all chats for given sessionId and userId
      *
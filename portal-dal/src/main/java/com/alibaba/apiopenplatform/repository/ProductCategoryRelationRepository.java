@@ -30,6 +30,8 @@ public interface ProductCategoryRelationRepository extends BaseRepository<Produc
 
     List<ProductCategoryRelation> findByProductId(String productId);
 
+    List<ProductCategoryRelation> findByProductIdIn(Collection<String> productIds);
+
     List<ProductCategoryRelation> findByCategoryId(String categoryId);
 
     boolean existsByCategoryId(String categoryId);
@@ -23,6 +23,8 @@ import com.alibaba.apiopenplatform.entity.ProductPublication;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface ProductPublicationRepository extends BaseRepository<ProductPublication, Long> {
@@ -33,6 +35,8 @@ public interface ProductPublicationRepository extends BaseRepository<ProductPubl
 
     Page<ProductPublication> findByProductId(String productId, Pageable pageable);
 
+    List<ProductPublication> findByProductIdIn(Collection<String> productIds);
+
     void deleteByProductId(String productId);
 
     void deleteAllByPortalId(String portalId);
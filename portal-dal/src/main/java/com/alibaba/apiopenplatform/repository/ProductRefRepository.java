@@ -25,6 +25,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,6 +39,8 @@ public interface ProductRefRepository extends JpaRepository<ProductRef, Long>, J
 
     Optional<ProductRef> findFirstByProductId(String productId);
 
+    List<ProductRef> findByProductIdIn(Collection<String> productIds);
+
     boolean existsByGatewayId(String gatewayId);
 
     void deleteByProductId(String productId);
@@ -44,5 +44,7 @@ public interface ProductRepository extends BaseRepository<Product, Long> {
 
     Page<Product> findByAdminId(String adminId, Pageable pageable);
 
+    List<Product> findByNameIn(Collection<String> names);
+
 
 }
@@ -21,6 +21,7 @@ package com.alibaba.apiopenplatform.repository;
 
 import com.alibaba.apiopenplatform.entity.ProductSubscription;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +31,8 @@ public interface SubscriptionRepository extends BaseRepository<ProductSubscripti
 
     List<ProductSubscription> findAllByConsumerId(String consumerId);
 
+    List<ProductSubscription> findAllByConsumerIdAndProductIdIn(String consumerId, Collection<String> productIds);
+
     List<ProductSubscription> findAllByProductId(String productId);
 
     void deleteAllByConsumerId(String consumerId);
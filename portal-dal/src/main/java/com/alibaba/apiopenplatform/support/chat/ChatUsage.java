@@ -32,6 +32,20 @@ public class ChatUsage {
     @Alias("total_tokens")
     private Integer totalTokens;
 
+    /**
+     * Estimated tokens of the packed context sent to the model
+     */
+    @JsonProperty("context_tokens")
+    @Alias("context_tokens")
+    private Integer contextTokens;
+
+    /**
+     * Answer is replayed from the response cache, the model is not called
+     */
+    @JsonProperty("response_cached")
+    @Alias("response_cached")
+    private Boolean responseCached;
+
     @JsonProperty("prompt_tokens_details")
     @Alias("prompt_tokens_details")
     private PromptTokensDetails promptTokensDetails;
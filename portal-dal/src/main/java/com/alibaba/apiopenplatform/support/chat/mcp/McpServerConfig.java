@@ -29,6 +29,11 @@ import java.util.Map;
 @Data
 public class McpServerConfig {
 
+    /**
+     * 关联的API产品，用于缓存工具列表
+     */
+    private String productId;
+
     private Map<String, McpServer> mcpServers;
 
     @Data
@@ -28,11 +28,16 @@ import java.util.List;
 @Accessors(chain = true)
 public class SearchInput {
     private String query;
-    
+
     /**
      * 时间范围，格式: ["2025-03-31", "2025-04-30"]
      * 空列表或null表示不限制时间
      * 两个元素分别表示开始日期和结束日期
      */
     private List<String> time;
+
+    /**
+     * 发起搜索的门户，使用该门户配置的搜索引擎密钥
+     */
+    private String portalId;
 }
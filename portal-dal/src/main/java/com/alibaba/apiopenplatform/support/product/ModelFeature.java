@@ -35,6 +35,32 @@ public class ModelFeature {
      */
     private Integer maxTokens;
 
+    /**
+     * Context window of the model in tokens, history is packed into it
+     */
+    private Integer contextWindow;
+
+    /**
+     * Hedge the request when no first chunk arrives within this percentile (e.g. 95) of recent
+     * time-to-first-token, disabled if not set
+     */
+    private Double hedgePercentile;
+
+    /**
+     * Serve answers of identical requests from cache for this many seconds, disabled if not set
+     */
+    private Integer responseCacheTtlSeconds;
+
+    /**
+     * Max cached answers of the product
+     */
+    private Integer responseCacheMaxEntries;
+
+    /**
+     * Also serve answers of similar questions whose similarity (0-1) reaches this threshold, exact match only if not set
+     */
+    private Double semanticCacheThreshold;
+
     /**
      * Temperature for sampling (0.0 - 2.0)
      */
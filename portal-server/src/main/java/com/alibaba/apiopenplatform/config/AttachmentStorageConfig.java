@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话附件存储配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.attachment")
+public class AttachmentStorageConfig {
+
+    /**
+     * 本地存储目录
+     */
+    private String localPath = "data/attachments";
+
+    /**
+     * 单个附件大小上限（MB）
+     */
+    private long maxSizeMb = 20;
+
+    /**
+     * 已编码附件内容的缓存上限（MB）
+     */
+    private long cacheMaxMb = 256;
+
+    /**
+     * 已编码附件内容的缓存过期时间（分钟）
+     */
+    private long cacheExpireMinutes = 30;
+}
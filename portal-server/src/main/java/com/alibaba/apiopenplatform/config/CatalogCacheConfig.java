@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 门户产品目录缓存配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "catalog.cache")
+public class CatalogCacheConfig {
+
+    /**
+     * 是否缓存开发者门户读取的产品、产品列表和类别
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存的产品详情数上限
+     */
+    private long maxProducts = 10000;
+
+    /**
+     * 缓存的门户数上限，每个门户包含已发布产品和产品列表
+     */
+    private long maxPortals = 1000;
+
+    /**
+     * 每个门户缓存的产品列表（查询条件+分页）数上限
+     */
+    private int maxListsPerPortal = 200;
+
+    /**
+     * 缓存的类别列表数上限
+     */
+    private long maxCategoryLists = 500;
+
+    /**
+     * 缓存的产品关联配置（已解析）数上限，不受 enabled 控制
+     */
+    private long maxProductConfigs = 10000;
+
+    /**
+     * 缓存过期时间（分钟），变更由事件失效，过期仅作兜底
+     */
+    private long expireMinutes = 30;
+
+    /**
+     * 是否通过数据库在多个副本之间广播失效消息，单副本部署无需开启
+     */
+    private boolean broadcastEnabled = false;
+
+    /**
+     * 拉取其他副本失效消息的间隔（毫秒）
+     */
+    private long broadcastPollMillis = 1000;
+
+    /**
+     * 失效消息保留时间（分钟）
+     */
+    private long broadcastRetentionMinutes = 10;
+}
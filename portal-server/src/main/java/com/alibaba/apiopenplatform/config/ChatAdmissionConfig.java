@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 对话准入控制配置，限流和并发数为0表示不限制
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.admission")
+public class ChatAdmissionConfig {
+
+    /**
+     * 是否开启准入控制
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个开发者的限制
+     */
+    private Limit developer = new Limit(1, 5, 3);
+
+    /**
+     * 每个消费者的限制
+     */
+    private Limit consumer = new Limit(2, 10, 5);
+
+    /**
+     * 每个模型产品的默认限制
+     */
+    private Limit product = new Limit(20, 50, 100);
+
+    /**
+     * 指定模型产品的限制，key为productId
+     */
+    private Map<String, Limit> products = new HashMap<>();
+
+    /**
+     * 排队的最大请求数
+     */
+    private int maxQueueSize = 1000;
+
+    /**
+     * 排队的最长时间（毫秒）
+     */
+    private long maxQueueTimeMillis = 10000;
+
+    /**
+     * 排队时开发者的权重，key为developerId，默认为1
+     */
+    private Map<String, Double> weights = new HashMap<>();
+
+    /**
+     * 限流和并发限制
+     */
+    @Data
+    public static class Limit {
+
+        /**
+         * 每秒补充的令牌数
+         */
+        private double ratePerSecond;
+
+        /**
+         * 令牌桶容量
+         */
+        private int burst;
+
+        /**
+         * 最大并发对话流数，超出后排队
+         */
+        private int maxInFlight;
+
+        public Limit() {
+        }
+
+        public Limit(double ratePerSecond, int burst, int maxInFlight) {
+            this.ratePerSecond = ratePerSecond;
+            this.burst = burst;
+            this.maxInFlight = maxInFlight;
+        }
+    }
+}
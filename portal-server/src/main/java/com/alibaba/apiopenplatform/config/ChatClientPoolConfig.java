@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 模型调用客户端池配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.client-pool")
+public class ChatClientPoolConfig {
+
+    /**
+     * 缓存的ChatClient最大数量，按(baseUrl, completionsPath, credential)区分
+     */
+    private long maxClients = 1000;
+
+    /**
+     * ChatClient空闲多久后被淘汰（分钟）
+     */
+    private long clientIdleMinutes = 30;
+
+    /**
+     * 每个上游网关的最大连接数
+     */
+    private int maxConnectionsPerGateway = 200;
+
+    /**
+     * 等待获取连接的最大排队数
+     */
+    private int pendingAcquireMaxCount = 1000;
+
+    /**
+     * 等待获取连接的超时时间（秒）
+     */
+    private long pendingAcquireTimeoutSeconds = 10;
+
+    /**
+     * 连接最大空闲时间（秒），需小于网关侧的keep-alive超时
+     */
+    private long maxIdleSeconds = 50;
+
+    /**
+     * 连接最大存活时间（分钟），便于网关扩缩容后重新均衡
+     */
+    private long maxLifeMinutes = 10;
+
+    /**
+     * 后台清理空闲连接的间隔（秒）
+     */
+    private long evictIntervalSeconds = 30;
+
+    /**
+     * 建连超时时间（毫秒）
+     */
+    private int connectTimeoutMillis = 3000;
+
+    /**
+     * 网关连接池空闲多久后被释放（分钟）
+     */
+    private long gatewayIdleMinutes = 60;
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话上下文窗口配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.context")
+public class ChatContextConfig {
+
+    /**
+     * 模型未配置上下文长度时使用的默认值（Token）
+     */
+    private int defaultContextWindow = 32768;
+
+    /**
+     * 为系统提示词、工具定义等预留的Token数
+     */
+    private int reservedTokens = 1024;
+
+    /**
+     * 单个图片、音频、视频附件按固定Token数估算
+     */
+    private int mediaTokens = 1024;
+
+    /**
+     * 每次查询加载的历史会话数，按页加载直到填满模型上下文预算
+     */
+    private int historyPageSize = 20;
+
+    /**
+     * 加载历史会话数的安全上限，防止上下文很大的模型加载过多历史，每个会话包含一问一答
+     */
+    private int maxHistoryConversations = 200;
+
+    /**
+     * 是否将被淘汰的历史问题摘要为一条系统消息
+     */
+    private boolean summarizeEvicted = true;
+
+    /**
+     * 历史摘要的Token上限
+     */
+    private int summaryMaxTokens = 512;
+}
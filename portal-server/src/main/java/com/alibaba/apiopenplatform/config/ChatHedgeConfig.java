@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 模型请求对冲配置，是否开启由模型产品的 hedgePercentile 决定
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.hedge")
+public class ChatHedgeConfig {
+
+    /**
+     * 对冲请求占模型请求的比例上限
+     */
+    private double budgetRatio = 0.05;
+
+    /**
+     * 对冲预算最多累积的请求数，用于吸收突发
+     */
+    private int maxBurst = 20;
+
+    /**
+     * 每个模型保留的首包耗时样本数
+     */
+    private int windowSize = 512;
+
+    /**
+     * 样本数不足时不计算分位数，使用默认阈值
+     */
+    private int minSamples = 50;
+
+    /**
+     * 样本数不足时的对冲阈值（毫秒）
+     */
+    private long defaultThresholdMillis = 3000;
+
+    /**
+     * 对冲阈值下限（毫秒）
+     */
+    private long minThresholdMillis = 200;
+}
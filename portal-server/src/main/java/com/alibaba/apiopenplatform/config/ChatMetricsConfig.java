@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 对话耗时指标配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.metrics")
+public class ChatMetricsConfig {
+
+    /**
+     * 分位数统计的滑动窗口（分钟）
+     */
+    private int windowMinutes = 5;
+
+    /**
+     * 滑动窗口内轮转的桶数
+     */
+    private int windowBuckets = 5;
+
+    /**
+     * 工具调用耗时按工具名区分的白名单，其余工具统一记为 other
+     */
+    private Set<String> toolTags = new HashSet<>();
+
+    /**
+     * 发布直方图桶的计时器，直方图按标签组合成倍增加时序数量，仅用于需要跨实例聚合的指标
+     */
+    private Set<String> histogramTimers = new HashSet<>(Set.of("chat.phase"));
+}
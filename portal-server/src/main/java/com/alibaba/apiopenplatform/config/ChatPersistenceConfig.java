@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话持久化配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.persistence")
+public class ChatPersistenceConfig {
+
+    /**
+     * 阻塞任务（数据库、网关查询）线程数上限，不应超过数据库连接池大小太多
+     */
+    private int threads = 32;
+
+    /**
+     * 阻塞任务排队数上限，超过后新的对话会被拒绝
+     */
+    private int queueCapacity = 5000;
+
+    /**
+     * 对话结果写缓冲的容量，写满后退化为同步写入
+     */
+    private int journalCapacity = 10000;
+
+    /**
+     * 对话结果单次批量写入的条数上限
+     */
+    private int journalBatchSize = 200;
+
+    /**
+     * 对话结果批量写入的间隔（毫秒）
+     */
+    private long journalFlushIntervalMillis = 500;
+
+    /**
+     * 流式回答每追加多少个片段（约等于Token数）做一次检查点
+     */
+    private int checkpointTokens = 200;
+
+    /**
+     * 流式回答做检查点的最大间隔（毫秒）
+     */
+    private long checkpointIntervalMillis = 2000;
+
+    /**
+     * 回答结束后，在结果写入前保留用于断线续传的最长时间（秒）
+     */
+    private long resumeRetentionSeconds = 300;
+
+    /**
+     * 回答结束后仍留在内存中的字符数上限，已写入检查点的内容不计入
+     */
+    private long resumeMaxBufferedChars = 16 * 1024 * 1024;
+
+    /**
+     * 断线续传时拉取新内容的间隔（毫秒）
+     */
+    private long resumePollMillis = 200;
+}
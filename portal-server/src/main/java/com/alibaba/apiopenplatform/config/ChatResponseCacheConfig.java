@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 模型应答缓存配置，是否开启及过期时间由模型产品决定
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.response-cache")
+public class ChatResponseCacheConfig {
+
+    /**
+     * 全局开关，关闭后所有产品都不走缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 产品未配置时的最大缓存条数
+     */
+    private int defaultMaxEntries = 1000;
+
+    /**
+     * 最多缓存的产品数
+     */
+    private int maxProducts = 1000;
+
+    /**
+     * 超过该长度的应答不缓存
+     */
+    private int maxAnswerLength = 20000;
+
+    /**
+     * 回放时每个应答消息的字符数
+     */
+    private int replayChunkLength = 16;
+
+    /**
+     * 相似度匹配的向量维度
+     */
+    private int vectorDimensions = 1024;
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 联网搜索增强配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.search")
+public class ChatSearchConfig {
+
+    /**
+     * 检索阶段（查询改写+搜索）的总耗时上限（毫秒），超时后不带搜索结果继续对话
+     */
+    private long budgetMillis = 3000;
+
+    /**
+     * 查询改写和搜索失败后的最大重试次数
+     */
+    private int maxRetries = 2;
+
+    /**
+     * 首次重试的退避时间（毫秒），之后指数增长
+     */
+    private long retryBackoffMillis = 200;
+
+    /**
+     * 退避时间的随机抖动比例（0-1）
+     */
+    private double retryJitter = 0.5;
+
+    /**
+     * 最多引用的搜索结果数
+     */
+    private int maxCitations = 10;
+
+    /**
+     * 搜索结果缓存条数上限
+     */
+    private int cacheMaxEntries = 10000;
+
+    /**
+     * 搜索结果默认缓存时间（秒），0表示不缓存
+     */
+    private long cacheTtlSeconds = 600;
+
+    /**
+     * 各搜索引擎的缓存时间（秒），key为搜索类型，如 GOOGLE
+     */
+    private Map<String, Long> providerCacheTtlSeconds = new HashMap<>();
+}
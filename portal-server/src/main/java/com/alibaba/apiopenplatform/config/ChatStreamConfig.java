@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话流（SSE）输出配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.stream")
+public class ChatStreamConfig {
+
+    /**
+     * 合并输出窗口（毫秒），窗口内的应答片段合并为一次写出，0表示逐条写出
+     */
+    private long flushWindowMillis = 20;
+
+    /**
+     * 一次写出最多合并的消息数
+     */
+    private int maxBatchMessages = 64;
+
+    /**
+     * 空闲时写出心跳注释的间隔（毫秒），用于及时发现客户端断开并取消上游调用，0表示不发送
+     */
+    private long heartbeatMillis = 3000;
+
+    /**
+     * 对话流的超时时间（毫秒），超时后断开并取消上游调用，-1表示不超时，不使用 MVC 的默认异步超时
+     */
+    private long timeoutMillis = -1;
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 工具调用配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.tool")
+public class ChatToolConfig {
+
+    /**
+     * 工具调用线程数上限
+     */
+    private int executorThreads = 64;
+
+    /**
+     * 工具调用排队任务数上限
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 单个工具调用的超时时间（秒）
+     */
+    private long timeoutSeconds = 30;
+
+    /**
+     * 一轮对话中，同一MCP Server的最大并发调用数
+     */
+    private int maxConcurrencyPerServer = 4;
+}
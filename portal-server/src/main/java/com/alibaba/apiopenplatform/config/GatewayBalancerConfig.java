@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 网关节点负载均衡配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.gateway-balancer")
+public class GatewayBalancerConfig {
+
+    /**
+     * 选择策略：P2C（随机两个中选负载低的）或 LEAST_OUTSTANDING（进行中请求最少）
+     */
+    private Strategy strategy = Strategy.P2C;
+
+    /**
+     * 没有延迟数据的节点按此延迟（毫秒）估算
+     */
+    private long defaultLatencyMillis = 500;
+
+    /**
+     * 连续失败多少次后摘除节点
+     */
+    private int consecutiveFailures = 5;
+
+    /**
+     * 错误率超过该值后摘除节点
+     */
+    private double maxErrorRate = 0.5;
+
+    /**
+     * 计算错误率所需的最少请求数
+     */
+    private int minRequests = 20;
+
+    /**
+     * 首次摘除时长（秒），之后每次摘除按次数递增
+     */
+    private long baseEjectionSeconds = 30;
+
+    /**
+     * 最长摘除时长（秒）
+     */
+    private long maxEjectionSeconds = 300;
+
+    /**
+     * 节点统计信息闲置多久后清理（分钟）
+     */
+    private long idleMinutes = 30;
+
+    public enum Strategy {
+        P2C,
+        LEAST_OUTSTANDING,
+    }
+}
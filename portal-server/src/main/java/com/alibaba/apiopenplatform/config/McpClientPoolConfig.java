@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * MCP会话池及工具缓存配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.mcp-pool")
+public class McpClientPoolConfig {
+
+    /**
+     * 每个MCP Server（同一凭证）的最大会话数
+     */
+    private int maxSessionsPerServer = 8;
+
+    /**
+     * 会话全部被占用时，等待归还的最长时间（毫秒）
+     */
+    private long leaseTimeoutMillis = 3000;
+
+    /**
+     * 空闲会话的存活时间（秒）
+     */
+    private long idleTtlSeconds = 300;
+
+    /**
+     * 空闲会话健康检查间隔（秒）
+     */
+    private long healthCheckIntervalSeconds = 30;
+
+    /**
+     * 空闲会话健康检查的并发线程数
+     */
+    private int pingThreads = 4;
+
+    /**
+     * 一轮健康检查的超时时间（毫秒），超时的会话被关闭
+     */
+    private long pingTimeoutMillis = 3000;
+
+    /**
+     * 工具列表缓存多久后异步刷新（秒）
+     */
+    private long toolRefreshSeconds = 300;
+
+    /**
+     * 工具列表缓存的最长保留时间（分钟）
+     */
+    private long toolExpireMinutes = 60;
+
+    /**
+     * 工具列表缓存的最大条目数，每个MCP Server的每个凭证一条
+     */
+    private long toolCatalogMaxSize = 10000;
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 网关产品批量导入配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "product.import")
+public class ProductImportConfig {
+
+    /**
+     * 同时执行的导入任务数
+     */
+    private int jobThreads = 2;
+
+    /**
+     * 每个任务并行拉取网关配置的数量
+     */
+    private int parallelism = 8;
+
+    /**
+     * 分页拉取网关资源的页大小，每页在一个事务中批量写入
+     */
+    private int pageSize = 100;
+
+    /**
+     * 任务超过该时间（秒）未更新进度视为中断，可继续导入
+     */
+    private long staleSeconds = 300;
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 门户产品搜索索引配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "catalog.search")
+public class ProductSearchConfig {
+
+    /**
+     * 全量重建索引的间隔（分钟），增量更新由产品变更事件驱动，重建仅作兜底
+     */
+    private long rebuildMinutes = 60;
+
+    /**
+     * 全量重建时每批加载的产品数
+     */
+    private int batchSize = 500;
+
+    /**
+     * 每个查询词最多展开的前缀/纠错词数
+     */
+    private int maxExpansions = 50;
+
+    /**
+     * 启用拼写纠错的最小词长，短词纠错误召回过多
+     */
+    private int fuzzyMinLength = 4;
+
+    /**
+     * 文档字段参与索引的最大字符数
+     */
+    private int maxDocumentChars = 20000;
+}
@@ -1,18 +1,26 @@
 package com.alibaba.apiopenplatform.controller;
 
+import com.alibaba.apiopenplatform.core.annotation.AdminAuth;
 import com.alibaba.apiopenplatform.core.annotation.AdminOrDeveloperAuth;
-import com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage;
+import com.alibaba.apiopenplatform.core.response.ChatEventStreamWriter;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAttachmentResult;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatMetricResult;
+import com.alibaba.apiopenplatform.service.ChatAttachmentService;
 import com.alibaba.apiopenplatform.service.ChatService;
 import com.alibaba.apiopenplatform.dto.params.chat.CreateChatParam;
+import com.alibaba.apiopenplatform.dto.params.chat.CreateFanOutChatParam;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
-import reactor.core.publisher.Flux;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/chats")
@@ -24,9 +32,36 @@ public class ChatController {
 
     private final ChatService chatService;
 
+    private final ChatAttachmentService chatAttachmentService;
+
+    private final ChatEventStreamWriter chatEventStreamWriter;
+
     @PostMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ChatAnswerMessage> chat(@Valid @RequestBody CreateChatParam param,
-                                        HttpServletResponse response) {
-        return chatService.chat(param, response);
+    public ResponseBodyEmitter chat(@Valid @RequestBody CreateChatParam param,
+                                    HttpServletResponse response) {
+        return chatEventStreamWriter.write(chatService.chat(param, response));
+    }
+
+    @PostMapping(value = "/fan-out", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseBodyEmitter fanOutChat(@Valid @RequestBody CreateFanOutChatParam param,
+                                          HttpServletResponse response) {
+        return chatEventStreamWriter.write(chatService.fanOutChat(param, response));
+    }
+
+    @GetMapping(value = "/{chatId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseBodyEmitter resumeChat(@PathVariable String chatId,
+                                          @RequestParam(defaultValue = "0") int offset) {
+        return chatEventStreamWriter.write(chatService.resumeChat(chatId, offset));
+    }
+
+    @GetMapping("/metrics")
+    @AdminAuth
+    public List<ChatMetricResult> getChatMetrics() {
+        return chatService.getChatMetrics();
+    }
+
+    @PostMapping(value = "/attachments", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ChatAttachmentResult uploadAttachment(@RequestParam("file") MultipartFile file) {
+        return chatAttachmentService.uploadAttachment(file);
     }
 }
@@ -28,17 +28,22 @@ import com.alibaba.apiopenplatform.core.annotation.AdminAuth;
 import com.alibaba.apiopenplatform.core.annotation.AdminOrDeveloperAuth;
 import com.alibaba.apiopenplatform.dto.params.product.CreateProductParam;
 import com.alibaba.apiopenplatform.dto.params.product.CreateProductRefParam;
+import com.alibaba.apiopenplatform.dto.params.product.ImportProductsParam;
 import com.alibaba.apiopenplatform.dto.result.ProductCategoryResult;
 import com.alibaba.apiopenplatform.dto.result.common.PageResult;
+import com.alibaba.apiopenplatform.dto.result.product.ProductImportJobResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductPublicationResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductRefResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductResult;
+import com.alibaba.apiopenplatform.dto.result.product.ProductSearchResult;
 import com.alibaba.apiopenplatform.dto.result.product.SubscriptionResult;
 import com.alibaba.apiopenplatform.dto.params.product.QueryProductParam;
 import com.alibaba.apiopenplatform.dto.params.product.QueryProductSubscriptionParam;
+import com.alibaba.apiopenplatform.dto.params.product.SearchProductParam;
 import com.alibaba.apiopenplatform.dto.params.product.UpdateProductParam;
 
 import com.alibaba.apiopenplatform.service.ProductCategoryService;
+import com.alibaba.apiopenplatform.service.ProductImportService;
 import com.alibaba.apiopenplatform.service.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -66,6 +71,8 @@ public class ProductController {
 
     private final ProductCategoryService productCategoryService;
 
+    private final ProductImportService productImportService;
+
     @Operation(summary = "创建API产品")
     @PostMapping
     @AdminAuth
@@ -80,6 +87,34 @@ public class ProductController {
         return productService.listProducts(param, pageable);
     }
 
+    @Operation(summary = "搜索API产品", description = "按关键词全文搜索，支持前缀和拼写纠错，返回类型、状态、类别的分面统计")
+    @GetMapping("/search")
+    public ProductSearchResult searchProducts(SearchProductParam param,
+                                              Pageable pageable) {
+        return productService.searchProducts(param, pageable);
+    }
+
+    @Operation(summary = "从网关批量导入API产品", description = "后台导入网关的MCP Server、模型API和REST API，返回导入任务")
+    @PostMapping("/imports")
+    @AdminAuth
+    public ProductImportJobResult importProducts(@RequestBody @Valid ImportProductsParam param) {
+        return productImportService.startImport(param);
+    }
+
+    @Operation(summary = "获取产品导入任务进度")
+    @GetMapping("/imports/{jobId}")
+    @AdminAuth
+    public ProductImportJobResult getImportJob(@PathVariable String jobId) {
+        return productImportService.getImportJob(jobId);
+    }
+
+    @Operation(summary = "继续失败或中断的产品导入任务", description = "跳过已导入的资源，重试失败的资源")
+    @PostMapping("/imports/{jobId}/resume")
+    @AdminAuth
+    public ProductImportJobResult resumeImport(@PathVariable String jobId) {
+        return productImportService.resumeImport(jobId);
+    }
+
     @Operation(summary = "获取API产品详情")
     @GetMapping("/{productId}")
     public ProductResult getProduct(@PathVariable String productId) {
@@ -31,7 +31,7 @@ import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import java.lang.reflect.Method;
 
@@ -68,7 +68,7 @@ public class ResponseAdvice implements ResponseBodyAdvice<Object> {
         }
 
         Class<?> type = returnType.getMethod().getReturnType();
-        return !type.equals(ResponseEntity.class) && !type.equals(Response.class) && !type.equals(SseEmitter.class);
+        return !type.equals(ResponseEntity.class) && !type.equals(Response.class) && !ResponseBodyEmitter.class.isAssignableFrom(type);
     }
 
     @Override
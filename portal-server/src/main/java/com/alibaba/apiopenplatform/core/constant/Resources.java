@@ -53,6 +53,8 @@ public class Resources {
 
     public static final String PRODUCT_REF = "ProductRef";
 
+    public static final String PRODUCT_IMPORT_JOB = "ProductImportJob";
+
     public static final String NACOS_INSTANCE = "NacosInstance";
 
     public static final String SUBSCRIPTION = "Subscription";
@@ -60,4 +62,6 @@ public class Resources {
 
     public static final String CHAT_SESSION = "ChatSession";
 
+    public static final String CHAT = "Chat";
+
 }
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.core.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Products, publications or categories of the portal catalog have changed
+ */
+@Getter
+public class CatalogChangedEvent extends ApplicationEvent {
+
+    /**
+     * Products whose details or category relations changed
+     */
+    private final Set<String> productIds;
+
+    /**
+     * Portals whose publications changed
+     */
+    private final Set<String> portalIds;
+
+    /**
+     * Categories or their relations changed
+     */
+    private final boolean categoriesChanged;
+
+    public CatalogChangedEvent(Object source, Collection<String> productIds, Collection<String> portalIds, boolean categoriesChanged) {
+        super(source);
+        this.productIds = productIds == null ? Collections.emptySet() : Set.copyOf(productIds);
+        this.portalIds = portalIds == null ? Collections.emptySet() : Set.copyOf(portalIds);
+        this.categoriesChanged = categoriesChanged;
+    }
+
+    public static CatalogChangedEvent ofProduct(Object source, String productId) {
+        return new CatalogChangedEvent(source, Set.of(productId), null, false);
+    }
+
+    public static CatalogChangedEvent ofPublication(Object source, String productId, String portalId) {
+        return new CatalogChangedEvent(source, Set.of(productId), Set.of(portalId), false);
+    }
+
+    public static CatalogChangedEvent ofCategories(Object source, Collection<String> productIds) {
+        return new CatalogChangedEvent(source, productIds, null, true);
+    }
+}
@@ -17,6 +17,12 @@ public enum ChatError {
 
     UNKNOWN_ERROR("Unknown Error"),
 
+    RATE_LIMITED("Rate Limited"),
+
+    QUEUE_TIMEOUT("Queue Timeout"),
+
+    OVERLOADED("Overloaded"),
+
     ;
 
     private final String description;
@@ -29,6 +35,9 @@ public enum ChatError {
         if (error instanceof WebClientResponseException) {
             return WEB_RESPONSE_ERROR;
         }
+        if (error instanceof ChatRejectedException rejected) {
+            return rejected.getError();
+        }
         if (error instanceof TimeoutException) {
             return TIMEOUT;
         }
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.core.response;
+
+import com.alibaba.apiopenplatform.config.ChatStreamConfig;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a chat stream as server-sent events.
+ * <p>
+ * Answer deltas are escaped straight into a JSON envelope encoded once per chat, and deltas arriving
+ * within the flush window are written as one frame. Other messages are serialized as usual.
+ */
+@Component
+@Slf4j
+public class ChatEventStreamWriter {
+
+    private static final String CONTENT_MARKER = "__chat_answer_content__";
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] EVENT_SUFFIX = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * SSE comment, ignored by clients
+     */
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ChatStreamConfig config;
+
+    private final ObjectMapper objectMapper;
+
+    private final DistributionSummary streamBytes;
+
+    private final DistributionSummary chunkRate;
+
+    public ChatEventStreamWriter(ChatStreamConfig config, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.streamBytes = DistributionSummary.builder("chat.stream.bytes")
+                .description("Bytes written per chat stream")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.chunkRate = DistributionSummary.builder("chat.stream.chunk.rate")
+                .description("Frames written per second of a chat stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Subscribe to the messages and write them to the returned emitter, the subscription is
+     * disposed when the client goes away
+     */
+    public ResponseBodyEmitter write(Flux<ChatAnswerMessage> messages) {
+        // Long answers outlive the default async timeout of MVC, which would cut them off
+        EventStreamEmitter emitter = new EventStreamEmitter(config.getTimeoutMillis());
+        FrameEncoder encoder = new FrameEncoder();
+        long startNanos = System.nanoTime();
+
+        Flux<List<ChatAnswerMessage>> batches = config.getFlushWindowMillis() > 0 ?
+                messages.bufferTimeout(config.getMaxBatchMessages(), Duration.ofMillis(config.getFlushWindowMillis())) :
+                messages.map(List::of);
+
+        Flux<byte[]> frames = batches.map(encoder::encode);
+        if (config.getHeartbeatMillis() > 0) {
+            // A dropped client is only noticed on write, keep writing while the model or a tool call is busy
+            long heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(config.getHeartbeatMillis());
+            frames = frames.publish(shared -> Flux.merge(shared,
+                    Flux.interval(Duration.ofMillis(config.getHeartbeatMillis()))
+                            .filter(i -> System.nanoTime() - encoder.lastFrameNanos >= heartbeatNanos)
+                            .map(i -> HEARTBEAT)
+                            .takeUntilOther(shared.then(Mono.just(true)))));
+        }
+
+        Disposable.Swap subscription = Disposables.swap();
+        subscription.update(frames
+                .doFinally(signal -> {
+                    long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                    streamBytes.record(encoder.bytes);
+                    chunkRate.record(encoder.frames * 1000.0 / elapsedMillis);
+                })
+                .subscribe(frame -> {
+                    try {
+                        emitter.send(frame, MediaType.TEXT_EVENT_STREAM);
+                    } catch (IOException e) {
+                        // Cancel the model stream and tool calls now rather than when the container reports the error
+                        log.debug("Failed to write chat stream: {}", e.getMessage());
+                        subscription.dispose();
+                    }
+                }, emitter::completeWithError, emitter::complete));
+
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        emitter.onCompletion(subscription::dispose);
+        return emitter;
+    }
+
+    /**
+     * Encodes the messages of one stream, not thread safe as batches are delivered one at a time
+     */
+    private class FrameEncoder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+        /**
+         * Answers of several chats are interleaved in a fan-out chat
+         */
+        private final Map<String, Envelope> envelopes = new HashMap<>();
+
+        private Envelope envelope;
+
+        private long bytes;
+
+        private long frames;
+
+        private volatile long lastFrameNanos = System.nanoTime();
+
+        byte[] encode(List<ChatAnswerMessage> batch) {
+            out.reset();
+            boolean inAnswer = false;
+            String answerChatId = null;
+            for (ChatAnswerMessage message : batch) {
+                if (isPlainAnswer(message)) {
+                    // Consecutive deltas of the same chat share one frame
+                    if (inAnswer && !message.getChatId().equals(answerChatId)) {
+                        closeAnswer();
+                        inAnswer = false;
+                    }
+                    if (!inAnswer) {
+                        openAnswer(message);
+                        answerChatId = message.getChatId();
+                        inAnswer = true;
+                    }
+                    out.writeBytes(JsonStringEncoder.getInstance().quoteAsUTF8((String) message.getContent()));
+                    continue;
+                }
+                if (inAnswer) {
+                    closeAnswer();
+                    inAnswer = false;
+                }
+                writeMessage(message);
+            }
+            if (inAnswer) {
+                closeAnswer();
+            }
+            bytes += out.size();
+            lastFrameNanos = System.nanoTime();
+            return out.toByteArray();
+        }
+
+        private boolean isPlainAnswer(ChatAnswerMessage message) {
+            return message.getMsgType() == ChatAnswerMessage.MessageType.ANSWER
+                    && message.getContent() instanceof String
+                    && message.getChatId() != null
+                    && message.getChatUsage() == null
+                    && message.getError() == null
+                    && message.getMessage() == null;
+        }
+
+        private void openAnswer(ChatAnswerMessage message) {
+            envelope = envelopes.computeIfAbsent(message.getChatId(), chatId -> encodeEnvelope(chatId, message.getProductId()));
+            out.writeBytes(envelope.prefix());
+        }
+
+        private void closeAnswer() {
+            out.writeBytes(envelope.suffix());
+            frames++;
+        }
+
+        /**
+         * Split the serialized form of an answer around its content, so the envelope matches the other messages
+         */
+        private Envelope encodeEnvelope(String chatId, String productId) {
+            ChatAnswerMessage template = ChatAnswerMessage.builder()
+                    .chatId(chatId)
+                    .productId(productId)
+                    .msgType(ChatAnswerMessage.MessageType.ANSWER)
+                    .content(CONTENT_MARKER)
+                    .build();
+            String json = toJson(template);
+            int index = json.indexOf(CONTENT_MARKER);
+            return new Envelope(("data:" + json.substring(0, index)).getBytes(StandardCharsets.UTF_8),
+                    (json.substring(index + CONTENT_MARKER.length()) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeMessage(ChatAnswerMessage message) {
+            out.writeBytes(DATA_PREFIX);
+            out.writeBytes(toJson(message).getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(EVENT_SUFFIX);
+            frames++;
+        }
+
+        private String toJson(ChatAnswerMessage message) {
+            try {
+                return objectMapper.writeValueAsString(message);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private record Envelope(byte[] prefix, byte[] suffix) {
+    }
+
+    /**
+     * Emitter of raw event stream bytes, frames are encoded by the writer
+     */
+    private static class EventStreamEmitter extends ResponseBodyEmitter {
+
+        EventStreamEmitter(long timeout) {
+            super(timeout);
+        }
+
+        @Override
+        protected void extendResponse(ServerHttpResponse outputMessage) {
+            super.extendResponse(outputMessage);
+            outputMessage.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        }
+    }
+}
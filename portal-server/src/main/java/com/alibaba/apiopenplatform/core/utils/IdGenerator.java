@@ -51,6 +51,7 @@ public class IdGenerator {
 
     private static final String SESSION_PREFIX = "session-";
     private static final String CHAT_PREFIX = "chat-";
+    private static final String ATTACHMENT_PREFIX = "attachment-";
 
     public static String genHigressGatewayId() {
         return HIGRESS_PREFIX + ObjectId.next();
@@ -96,6 +97,10 @@ public class IdGenerator {
         return CHAT_PREFIX + ObjectId.next();
     }
 
+    public static String genAttachmentId() {
+        return ATTACHMENT_PREFIX + ObjectId.next();
+    }
+
     public static String genIdWithPrefix(String prefix) {
         return prefix + ObjectId.next();
     }
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.dto.params.chat;
+
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Answer of a streaming chat. Checkpointed chunks are kept only until they are persisted,
+ * the answer before that is read back from the checkpoint store.
+ */
+public class ChatAnswerBuffer {
+
+    @Getter
+    private final String chatId;
+
+    /**
+     * Checkpoint after this many appends, each streamed delta is roughly one token
+     */
+    private final int checkpointTokens;
+
+    private final long checkpointIntervalMillis;
+
+    private final Listener listener;
+
+    /**
+     * Checkpointed chunks not persisted yet, oldest first
+     */
+    private final Deque<Chunk> unpersisted = new ArrayDeque<>();
+
+    private final StringBuilder tail = new StringBuilder();
+
+    private int seq;
+
+    private int checkpointedLength;
+
+    /**
+     * Length of the answer persisted, the part before it is no longer in memory
+     */
+    private int persistedLength;
+
+    private int pendingTokens;
+
+    private int tokens;
+
+    private long lastCheckpointAt = System.currentTimeMillis();
+
+    @Getter
+    private volatile boolean completed;
+
+    /**
+     * Answer kept in memory only, never checkpointed
+     */
+    public ChatAnswerBuffer(String chatId) {
+        this(chatId, Integer.MAX_VALUE, Long.MAX_VALUE, null);
+    }
+
+    public ChatAnswerBuffer(String chatId, int checkpointTokens, long checkpointIntervalMillis, Listener listener) {
+        this.chatId = chatId;
+        this.checkpointTokens = checkpointTokens;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.listener = listener;
+    }
+
+    public void append(String content) {
+        Chunk chunk;
+        synchronized (this) {
+            if (completed || content == null || content.isEmpty()) {
+                return;
+            }
+            tail.append(content);
+            pendingTokens++;
+            tokens++;
+            if (listener == null || pendingTokens < checkpointTokens
+                    && System.currentTimeMillis() - lastCheckpointAt < checkpointIntervalMillis) {
+                return;
+            }
+            chunk = takeCheckpoint();
+        }
+        listener.onCheckpoint(chunk);
+    }
+
+    /**
+     * Checkpoint the tail now, so the whole answer so far can be read from the checkpoint store
+     */
+    public void checkpoint() {
+        Chunk chunk;
+        synchronized (this) {
+            if (listener == null || tail.isEmpty()) {
+                return;
+            }
+            chunk = takeCheckpoint();
+        }
+        listener.onCheckpoint(chunk);
+    }
+
+    /**
+     * Mark the answer as finished, later appends are ignored. The tail is checkpointed
+     */
+    public void complete() {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+        }
+        if (listener != null) {
+            checkpoint();
+            listener.onComplete(this);
+        }
+    }
+
+    /**
+     * The chunk and those before it are persisted, their content is dropped
+     */
+    public synchronized void persisted(Chunk chunk) {
+        while (!unpersisted.isEmpty() && unpersisted.peekFirst().seq() <= chunk.seq()) {
+            Chunk head = unpersisted.pollFirst();
+            persistedLength = head.offset() + head.content().length();
+        }
+    }
+
+    /**
+     * Whether the answer is checkpointed, its content is then not kept in memory as a whole
+     */
+    public boolean isCheckpointed() {
+        return listener != null;
+    }
+
+    /**
+     * Streamed deltas so far, roughly the completion tokens
+     */
+    public synchronized int tokens() {
+        return tokens;
+    }
+
+    public synchronized int length() {
+        return checkpointedLength + tail.length();
+    }
+
+    /**
+     * @return the whole answer, null if part of it is persisted and no longer in memory
+     */
+    public synchronized String content() {
+        return contentFrom(0);
+    }
+
+    /**
+     * @return the answer from the offset, null if the offset is in the part persisted and no longer in memory
+     */
+    public synchronized String contentFrom(int offset) {
+        if (offset < persistedLength) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(Math.max(0, length() - offset));
+        for (Chunk chunk : unpersisted) {
+            int end = chunk.offset() + chunk.content().length();
+            if (end > offset) {
+                sb.append(chunk.content(), Math.max(0, offset - chunk.offset()), chunk.content().length());
+            }
+        }
+        if (checkpointedLength + tail.length() > offset) {
+            sb.append(tail, Math.max(0, offset - checkpointedLength), tail.length());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Characters held in memory
+     */
+    public synchronized int bufferedLength() {
+        return checkpointedLength - persistedLength + tail.length();
+    }
+
+    private Chunk takeCheckpoint() {
+        String content = tail.toString();
+        Chunk chunk = new Chunk(chatId, seq++, checkpointedLength, content);
+        unpersisted.addLast(chunk);
+        checkpointedLength += content.length();
+        tail.setLength(0);
+        pendingTokens = 0;
+        lastCheckpointAt = System.currentTimeMillis();
+        return chunk;
+    }
+
+    /**
+     * @param seq    sequence of the chunk in the answer
+     * @param offset start offset of the chunk in the answer
+     */
+    public record Chunk(String chatId, int seq, int offset, String content) {
+    }
+
+    public interface Listener {
+
+        void onCheckpoint(Chunk chunk);
+
+        void onComplete(ChatAnswerBuffer buffer);
+    }
+}
@@ -18,8 +18,6 @@
  */
 package com.alibaba.apiopenplatform.dto.params.chat;
 
-import cn.hutool.core.collection.CollUtil;
-import com.alibaba.apiopenplatform.service.impl.McpClientHolder;
 import com.alibaba.apiopenplatform.support.chat.ChatUsage;
 import com.google.common.base.Stopwatch;
 import lombok.Builder;
@@ -28,8 +26,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.prompt.ChatOptions;
 
-import java.io.IOException;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,8 +39,24 @@ public class ChatContext {
 
     private String chatId;
 
-    @Builder.Default
-    private StringBuilder answerContent = new StringBuilder();
+    /**
+     * Dimensions of the chat metrics
+     */
+    private String productId;
+
+    private String model;
+
+    private String gateway;
+
+    /**
+     * Internal call, not recorded in the chat metrics
+     */
+    private boolean internal;
+
+    /**
+     * Answer content, checkpointed while streaming
+     */
+    private ChatAnswerBuffer answer;
 
     @Builder.Default
     Stopwatch stopWatch = Stopwatch.createUnstarted();;
@@ -53,6 +65,8 @@ public class ChatContext {
 
     private ChatUsage chatUsage;
 
+    private Integer contextTokens;
+
     @Builder.Default
     private Boolean success = true;
 
@@ -62,7 +76,12 @@ public class ChatContext {
 
     private ToolContext toolContext;
 
-    private List<McpClientHolder> mcpClientHolders;
+    private long lastAnswerNanos;
+
+    /**
+     * Client went away, no further model round or tool call should be started
+     */
+    private volatile boolean cancelled;
 
     public void start() {
         stopWatch.start();
@@ -74,6 +93,18 @@ public class ChatContext {
         }
     }
 
+    /**
+     * Mark an answer chunk
+     *
+     * @return nanos since the previous answer chunk, -1 for the first one
+     */
+    public long markAnswerChunk() {
+        long now = System.nanoTime();
+        long gap = lastAnswerNanos == 0 ? -1 : now - lastAnswerNanos;
+        lastAnswerNanos = now;
+        return gap;
+    }
+
     public void stop() {
         if (stopWatch.isRunning()) {
             stopWatch.stop();
@@ -84,24 +115,15 @@ public class ChatContext {
             if (firstByteTimeout != null) {
                 chatUsage.setFirstByteTimeout(firstByteTimeout);
             }
+            chatUsage.setContextTokens(contextTokens);
         }
     }
 
     public void appendAnswer(String content) {
-        answerContent.append(content);
+        answer.append(content);
     }
 
-    public void close() {
-        if (CollUtil.isNotEmpty(mcpClientHolders)) {
-            mcpClientHolders.forEach(mcpClientHolder -> {
-                try {
-                    mcpClientHolder.close();
-                } catch (IOException e) {
-                    log.warn("Close mcp client error", e);
-                }
-            });
-        }
+    public void completeAnswer() {
+        answer.complete();
     }
 }
-
-
@@ -0,0 +1,79 @@
+package com.alibaba.apiopenplatform.dto.params.chat;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.alibaba.apiopenplatform.support.chat.attachment.ChatAttachmentConfig;
+import lombok.Data;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Ask the same question to several model products of a session at once
+ */
+@Data
+public class CreateFanOutChatParam {
+
+    @NotBlank(message = "sessionId cannot be empty")
+    private String sessionId;
+
+    /**
+     * Conversation ID
+     */
+    @NotBlank(message = "conversationId cannot be empty")
+    private String conversationId;
+
+    /**
+     * Question ID, generated by the client
+     */
+    @NotBlank(message = "questionId cannot be empty")
+    private String questionId;
+
+    /**
+     * Products to compare, all of them must be used by the session.
+     * The fan-out is admitted as one chat of the developer and consumer, and as one chat of each product
+     */
+    @NotEmpty(message = "productIds cannot be empty")
+    @Size(max = 10, message = "productIds count is more than 10")
+    private List<String> productIds;
+
+    /**
+     * Question
+     */
+    @NotBlank(message = "question cannot be empty")
+    private String question;
+
+    /**
+     * Multi-modal content
+     */
+    private List<ChatAttachmentConfig> attachments;
+
+    /**
+     * MCP servers to use in chat
+     */
+    private List<String> mcpProducts;
+
+    /**
+     * If need stream
+     */
+    private Boolean stream = true;
+
+    /**
+     * If need memory
+     */
+    private Boolean needMemory = true;
+
+    private Boolean enableWebSearch = false;
+
+    private String searchType = "";
+
+    /**
+     * Chat param of one of the products
+     */
+    public CreateChatParam toChatParam(String productId) {
+        CreateChatParam param = BeanUtil.copyProperties(this, CreateChatParam.class, "productIds");
+        param.setProductId(productId);
+        return param;
+    }
+}
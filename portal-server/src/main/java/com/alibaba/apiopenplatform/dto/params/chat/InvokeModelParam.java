@@ -29,6 +29,8 @@ public class InvokeModelParam {
 
     private List<ChatMessage> chatMessages;
 
+    private Integer contextTokens;
+
     private Boolean stream;
     
     private Boolean enableWebSearch;
@@ -38,4 +40,9 @@ public class InvokeModelParam {
     private List<McpServerConfig> mcpServerConfigs;
 
     private CredentialContext credentialContext;
+
+    /**
+     * Internal call such as the search query rewrite, not stored as a chat: no checkpoints, no hedging, no chat metrics
+     */
+    private boolean internal;
 }
@@ -39,6 +39,7 @@ public class ToolContext {
     private final List<ToolCallback>          toolCallbacks     = new ArrayList<>();
     private final Map<String, ToolDefinition> toolDefinitionMap = new HashMap<>();
     private final Map<String, McpToolMeta>    toolMetaMap       = new HashMap<>();
+    private final Map<String, ToolCallback>   toolCallbackMap   = new HashMap<>();
 
     public static ToolContext of(Map<McpToolMeta, ToolCallback> toolsMap) {
         ToolContext toolContext = new ToolContext();
@@ -51,6 +52,7 @@ public class ToolContext {
             ToolDefinition toolDefinition = toolCallback.getToolDefinition();
             toolContext.toolDefinitionMap.put(toolDefinition.name(), toolDefinition);
             toolContext.toolMetaMap.put(toolDefinition.name(), meta);
+            toolContext.toolCallbackMap.put(toolDefinition.name(), toolCallback);
         });
         return toolContext;
     }
@@ -62,4 +64,8 @@ public class ToolContext {
     public ToolDefinition getToolDefinition(String name) {
         return toolDefinitionMap.get(name);
     }
+
+    public ToolCallback getToolCallback(String name) {
+        return toolCallbackMap.get(name);
+    }
 }
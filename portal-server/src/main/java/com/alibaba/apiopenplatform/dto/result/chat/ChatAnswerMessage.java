@@ -40,6 +40,10 @@ public class ChatAnswerMessage {
     private ChatUsage   chatUsage;
     private String      error;
     private String      message;
+    /**
+     * Set in fan-out chats, tells which product the message belongs to
+     */
+    private String      productId;
 
     public enum MessageType {
         USER,
@@ -48,6 +52,10 @@ public class ChatAnswerMessage {
         TOOL_RESPONSE,
         STOP,
         ERROR,
+        /**
+         * Side by side report of a fan-out chat, content is a list of {@link ChatComparisonResult}
+         */
+        COMPARISON,
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,36 @@
+package com.alibaba.apiopenplatform.dto.result.chat;
+
+import com.alibaba.apiopenplatform.support.enums.ChatAttachmentType;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Attachment content ready to be put into a chat message
+ */
+@Data
+@Builder
+public class ChatAttachmentContent {
+
+    private String attachmentId;
+
+    private String name;
+
+    private ChatAttachmentType type;
+
+    /**
+     * Decoded text, only for TEXT attachments
+     */
+    private String text;
+
+    /**
+     * Base64 data URL, only for media attachments
+     */
+    private String dataUrl;
+
+    /**
+     * Approximate memory held by the content
+     */
+    public int weight() {
+        return (text == null ? 0 : text.length()) + (dataUrl == null ? 0 : dataUrl.length());
+    }
+}
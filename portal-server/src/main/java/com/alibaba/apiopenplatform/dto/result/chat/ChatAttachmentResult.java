@@ -0,0 +1,23 @@
+package com.alibaba.apiopenplatform.dto.result.chat;
+
+import com.alibaba.apiopenplatform.dto.converter.OutputConverter;
+import com.alibaba.apiopenplatform.entity.ChatAttachment;
+import com.alibaba.apiopenplatform.support.enums.ChatAttachmentType;
+import lombok.Data;
+
+/**
+ * @author zh
+ */
+@Data
+public class ChatAttachmentResult implements OutputConverter<ChatAttachmentResult, ChatAttachment> {
+
+    private String attachmentId;
+
+    private String name;
+
+    private ChatAttachmentType type;
+
+    private String mimeType;
+
+    private Long size;
+}
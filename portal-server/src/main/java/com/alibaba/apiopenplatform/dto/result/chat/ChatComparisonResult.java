@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.dto.result.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one product in a fan-out chat, reported side by side once all products are done
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatComparisonResult {
+
+    private String productId;
+
+    private String chatId;
+
+    /**
+     * Milliseconds from the start of the fan-out to the first model output
+     */
+    private Long firstTokenMillis;
+
+    /**
+     * Milliseconds from the start of the fan-out to the end of the answer
+     */
+    private Long elapsedMillis;
+
+    private Integer promptTokens;
+
+    private Integer completionTokens;
+
+    private Integer totalTokens;
+
+    /**
+     * Answer is replayed from the response cache
+     */
+    private Boolean responseCached;
+
+    /**
+     * Error code if the product failed
+     */
+    private String error;
+
+    private String message;
+}
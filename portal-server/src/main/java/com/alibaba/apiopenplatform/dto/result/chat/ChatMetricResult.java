@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.dto.result.chat;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Aggregated latency of a chat meter over the sliding window
+ */
+@Data
+@Builder
+public class ChatMetricResult {
+
+    private String name;
+
+    private Map<String, String> tags;
+
+    private long count;
+
+    /**
+     * Milliseconds for timers, the base unit otherwise
+     */
+    private double mean;
+
+    private double max;
+
+    /**
+     * Percentile values keyed like p50, p90, p99
+     */
+    private Map<String, Double> percentiles;
+}
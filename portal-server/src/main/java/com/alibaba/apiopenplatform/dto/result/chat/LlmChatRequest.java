@@ -11,7 +11,6 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 
 @Data
 @Builder
@@ -23,6 +22,11 @@ public class LlmChatRequest {
      */
     private String chatId;
 
+    /**
+     * the model product
+     */
+    private String productId;
+
     /**
      * URL, contains protocol, host and path
      */
@@ -48,23 +52,48 @@ public class LlmChatRequest {
      */
     private List<String> gatewayIps;
 
+    /**
+     * Estimated tokens of the packed messages
+     */
+    private Integer contextTokens;
+
+    /**
+     * Percentile of time-to-first-token to hedge at, null if hedging is disabled
+     */
+    private Double hedgePercentile;
+
 
     private CredentialContext credentialContext;
 
-    public void tryResolveDns() {
-        if (CollUtil.isEmpty(gatewayIps) || !"http".equalsIgnoreCase(url.getProtocol())) {
-            return;
+    /**
+     * Internal call not stored as a chat
+     */
+    private boolean internal;
+
+    /**
+     * Whether the domain can be replaced with one of the gateway IPs
+     */
+    public boolean canResolveDns() {
+        return CollUtil.isNotEmpty(gatewayIps) && "http".equalsIgnoreCase(url.getProtocol());
+    }
+
+    /**
+     * Replace the domain with the chosen gateway IP
+     *
+     * @param ip one of the gateway IPs
+     * @return false if the domain is kept
+     */
+    public boolean tryResolveDns(String ip) {
+        if (!canResolveDns()) {
+            return false;
         }
 
         try {
             String originalHost = url.getHost();
 
-            // Randomly select an IP
-            String randomIp = gatewayIps.get(new Random().nextInt(gatewayIps.size()));
-
             // Build new URL by replacing domain with IP
             String originalUrl = url.toString();
-            String newUrl = originalUrl.replace(originalHost, randomIp);
+            String newUrl = originalUrl.replace(originalHost, ip);
 
             if (this.headers == null) {
                 this.headers = new HashMap<>();
@@ -74,8 +103,10 @@ public class LlmChatRequest {
             this.headers.put("Host", originalHost);
 
             this.url = new URL(newUrl);
+            return true;
         } catch (Exception e) {
             log.warn("Failed to resolve DNS for URL: {}", url, e);
+            return false;
         }
     }
-}
\ No newline at end of file
+}
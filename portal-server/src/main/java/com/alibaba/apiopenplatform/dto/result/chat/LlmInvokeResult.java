@@ -15,7 +15,7 @@ public class LlmInvokeResult {
     private boolean success;
 
     /**
-     * Completed answer
+     * Completed answer, null if the answer was checkpointed, it is then reassembled from its chunks
      */
     private String answer;
 
@@ -27,7 +27,7 @@ public class LlmInvokeResult {
     public static LlmInvokeResult of(ChatContext chatContext) {
         return LlmInvokeResult.builder()
                 .success(chatContext.getSuccess())
-                .answer(chatContext.getAnswerContent().toString())
+                .answer(chatContext.getAnswer().isCheckpointed() ? null : chatContext.getAnswer().content())
                 .usage(chatContext.getChatUsage())
                 .build();
     }
@@ -31,11 +31,13 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.stream.Collectors;
 
 @Data
 public class MCPConfigResult {
 
+    private static final String GATEWAY_IP_PLACEHOLDER = "<higress-gateway-ip>";
+
     protected String mcpServerName;
 
     protected MCPServerConfig mcpServerConfig;
@@ -72,18 +74,46 @@ public class MCPConfigResult {
         return mcpServerConfig;
     }
 
-    public void convertDomainToGatewayIp(List<String> gatewayIps) {
+    public boolean needsGatewayIp() {
+        return this.mcpServerConfig.getDomains().stream()
+                .anyMatch(domain -> StringUtils.equals(domain.getDomain(), GATEWAY_IP_PLACEHOLDER));
+    }
 
-        List<DomainResult> domains = this.mcpServerConfig.getDomains();
-        for (DomainResult domain : domains) {
-            if (StringUtils.equals(domain.getDomain(), "<higress-gateway-ip>")) {
-                if (gatewayIps.isEmpty()) {
-                    throw new BusinessException(ErrorCode.GATEWAY_ERROR, Resources.GATEWAY, "no available ip to replace <higress-gateway-ip>");
-                }
-                String randomGatewayIp = gatewayIps.get(new Random().nextInt(gatewayIps.size()));
-                domain.setDomain(randomGatewayIp);
-            }
-        }
+    /**
+     * Copy of this config with the gateway IP placeholder replaced, this config is left untouched
+     * as it may be shared through the product config cache
+     *
+     * @param gatewayIp chosen gateway IP, null if the gateway has none
+     */
+    public MCPConfigResult withGatewayIp(String gatewayIp) {
+        List<DomainResult> domains = this.mcpServerConfig.getDomains().stream()
+                .map(domain -> {
+                    if (!StringUtils.equals(domain.getDomain(), GATEWAY_IP_PLACEHOLDER)) {
+                        return domain;
+                    }
+                    if (StrUtil.isBlank(gatewayIp)) {
+                        throw new BusinessException(ErrorCode.GATEWAY_ERROR, Resources.GATEWAY, "no available ip to replace <higress-gateway-ip>");
+                    }
+                    return DomainResult.builder()
+                            .domain(gatewayIp)
+                            .protocol(domain.getProtocol())
+                            .networkType(domain.getNetworkType())
+                            .build();
+                })
+                .collect(Collectors.toList());
+
+        MCPServerConfig serverConfig = new MCPServerConfig();
+        serverConfig.setPath(this.mcpServerConfig.getPath());
+        serverConfig.setDomains(domains);
+        serverConfig.setRawConfig(this.mcpServerConfig.getRawConfig());
+        serverConfig.setTransportMode(this.mcpServerConfig.getTransportMode());
+
+        MCPConfigResult result = new MCPConfigResult();
+        result.setMcpServerName(this.mcpServerName);
+        result.setMcpServerConfig(serverConfig);
+        result.setTools(this.tools);
+        result.setMeta(this.meta);
+        return result;
     }
 
     @Data
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.dto.result.product;
+
+import com.alibaba.apiopenplatform.support.enums.ProductImportStatus;
+import com.alibaba.apiopenplatform.support.enums.ProductType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportJobResult {
+
+    private String jobId;
+
+    private String gatewayId;
+
+    private List<ProductType> types;
+
+    private ProductImportStatus status;
+
+    /**
+     * Gateway resources found so far
+     */
+    private long total;
+
+    private long imported;
+
+    /**
+     * Resources whose product name is already taken
+     */
+    private long skipped;
+
+    private long failed;
+
+    /**
+     * Why the job stopped, when FAILED
+     */
+    private String error;
+
+    /**
+     * First failed resources
+     */
+    private List<ItemFailure> failures;
+
+    private LocalDateTime createAt;
+
+    private LocalDateTime updatedAt;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ItemFailure {
+
+        private String itemKey;
+
+        private String error;
+    }
+}
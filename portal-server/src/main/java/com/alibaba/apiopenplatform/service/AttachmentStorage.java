@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Object storage for chat attachments
+ */
+public interface AttachmentStorage {
+
+    /**
+     * Write the stream under the key, the stream is consumed in chunks
+     *
+     * @param key
+     * @param inputStream
+     * @param maxSize     max bytes allowed
+     * @return bytes written
+     * @throws IOException
+     */
+    long put(String key, InputStream inputStream, long maxSize) throws IOException;
+
+    /**
+     * Open the object for reading, the caller closes the stream
+     *
+     * @param key
+     * @return
+     * @throws IOException
+     */
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Delete the object if exists
+     *
+     * @param key
+     * @throws IOException
+     */
+    void delete(String key) throws IOException;
+}
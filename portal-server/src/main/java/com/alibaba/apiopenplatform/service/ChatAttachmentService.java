@@ -1,7 +1,30 @@
 package com.alibaba.apiopenplatform.service;
 
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAttachmentContent;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAttachmentResult;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author zh
  */
 public interface ChatAttachmentService {
+
+    /**
+     * Upload an attachment, the file is streamed to attachment storage
+     *
+     * @param file
+     * @return
+     */
+    ChatAttachmentResult uploadAttachment(MultipartFile file);
+
+    /**
+     * Get decoded text or encoded data URL of attachments, missing attachments are skipped
+     *
+     * @param attachmentIds
+     * @return attachmentId -> content
+     */
+    Map<String, ChatAttachmentContent> getAttachmentContents(List<String> attachmentIds);
 }
@@ -2,18 +2,22 @@ package com.alibaba.apiopenplatform.service;
 
 import com.alibaba.apiopenplatform.core.event.ChatSessionDeletingEvent;
 import com.alibaba.apiopenplatform.dto.params.chat.CreateChatParam;
+import com.alibaba.apiopenplatform.dto.params.chat.CreateFanOutChatParam;
 import com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatMetricResult;
 
 import jakarta.servlet.http.HttpServletResponse;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 /**
  * @author zh
  */
 public interface ChatService {
 
     /**
-     * Perform a chat
+     * Perform a chat, an invalid session or product is rejected before the stream starts
      *
      * @param param
      * @param response
@@ -21,6 +25,33 @@ public interface ChatService {
      */
     Flux<ChatAnswerMessage> chat(CreateChatParam param, HttpServletResponse response);
 
+    /**
+     * Ask the same question to several model products, their answers are multiplexed into one stream
+     * tagged by product, followed by a side by side comparison. An invalid session or product is rejected before
+     * the stream starts
+     *
+     * @param param
+     * @param response
+     * @return
+     */
+    Flux<ChatAnswerMessage> fanOutChat(CreateFanOutChatParam param, HttpServletResponse response);
+
+    /**
+     * Resume the answer stream of a chat, e.g. after the connection dropped
+     *
+     * @param chatId
+     * @param offset number of answer characters already received
+     * @return
+     */
+    Flux<ChatAnswerMessage> resumeChat(String chatId, int offset);
+
+    /**
+     * Latency percentiles of the chat pipeline over the sliding window
+     *
+     * @return
+     */
+    List<ChatMetricResult> getChatMetrics();
+
     /**
      * Handle session deletion event, such as cleaning up all related chat records
      * @param event
@@ -24,7 +24,9 @@ import com.alibaba.apiopenplatform.dto.params.category.CreateProductCategoryPara
 import com.alibaba.apiopenplatform.dto.result.common.PageResult;
 import com.alibaba.apiopenplatform.dto.result.ProductCategoryResult;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.data.domain.Pageable;
 
@@ -79,6 +81,14 @@ public interface ProductCategoryService {
      */
     List<ProductCategoryResult> listCategoriesForProduct(String productId);
 
+    /**
+     * List product categories for several products at once.
+     *
+     * @param productIds
+     * @return categories keyed by product ID, products without category are absent
+     */
+    Map<String, List<ProductCategoryResult>> listCategoriesForProducts(Collection<String> productIds);
+
     /**
      * Bind product categories to a product.
      *
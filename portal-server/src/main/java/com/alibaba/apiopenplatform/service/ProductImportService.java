@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service;
+
+import com.alibaba.apiopenplatform.dto.params.product.ImportProductsParam;
+import com.alibaba.apiopenplatform.dto.result.product.ProductImportJobResult;
+
+public interface ProductImportService {
+
+    /**
+     * Start importing the gateway's resources as products, runs in the background
+     *
+     * @param param
+     * @return
+     */
+    ProductImportJobResult startImport(ImportProductsParam param);
+
+    /**
+     * Get the progress of an import job
+     *
+     * @param jobId
+     * @return
+     */
+    ProductImportJobResult getImportJob(String jobId);
+
+    /**
+     * Resume a failed or interrupted import job, imported resources are not imported again
+     *
+     * @param jobId
+     * @return
+     */
+    ProductImportJobResult resumeImport(String jobId);
+}
@@ -26,6 +26,7 @@ import com.alibaba.apiopenplatform.dto.result.mcp.McpToolListResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductPublicationResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductRefResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductResult;
+import com.alibaba.apiopenplatform.dto.result.product.ProductSearchResult;
 import com.alibaba.apiopenplatform.dto.result.product.SubscriptionResult;
 import org.springframework.data.domain.Pageable;
 
@@ -59,6 +60,15 @@ public interface ProductService {
      */
     PageResult<ProductResult> listProducts(QueryProductParam param, Pageable pageable);
 
+    /**
+     * Search API products by keyword, ranked by relevance
+     *
+     * @param param
+     * @param pageable
+     * @return
+     */
+    ProductSearchResult searchProducts(SearchProductParam param, Pageable pageable);
+
     /**
      * Update API product
      *
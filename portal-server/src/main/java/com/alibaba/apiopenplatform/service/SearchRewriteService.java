@@ -20,14 +20,23 @@
 
 package com.alibaba.apiopenplatform.service;
 
-import com.alibaba.apiopenplatform.dto.params.chat.CreateChatParam;
+import com.alibaba.apiopenplatform.dto.params.chat.InvokeModelParam;
 import com.alibaba.apiopenplatform.support.chat.ChatMessage;
 import com.alibaba.apiopenplatform.support.chat.search.SearchInput;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
 public interface SearchRewriteService {
     
-    SearchInput rewriteWithRetry(List<ChatMessage> chatMessages, CreateChatParam createChatParam);
+    /**
+     * Rewrite the chat into a search query, retried with backoff.
+     * The model, gateway and credential of the chat are reused, nothing is read from the context of the current thread
+     *
+     * @param chatMessages
+     * @param chatParam    invoke param of the chat
+     * @return the search input, empty query if searching is not needed
+     */
+    Mono<SearchInput> rewrite(List<ChatMessage> chatMessages, InvokeModelParam chatParam);
     
 }
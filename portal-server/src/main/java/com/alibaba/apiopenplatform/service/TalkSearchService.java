@@ -20,11 +20,22 @@
 package com.alibaba.apiopenplatform.service;
 
 import com.alibaba.apiopenplatform.dto.params.chat.CreateChatParam;
+import com.alibaba.apiopenplatform.dto.params.chat.InvokeModelParam;
 import com.alibaba.apiopenplatform.support.chat.ChatMessage;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
 public interface TalkSearchService {
     
-    List<ChatMessage> buildSearchMessages(List<ChatMessage> chatMessages, CreateChatParam param);
+    /**
+     * Add search results to the last user message, messages are kept as is if nothing qualified within the budget.
+     * Runs off the request thread, so the caller passes everything the search needs
+     *
+     * @param invokeModelParam invoke param of the chat, with the messages, product and credential
+     * @param param
+     * @param portalId         portal of the caller, whose search engine key is used
+     * @return the messages to send
+     */
+    Mono<List<ChatMessage>> buildSearchMessages(InvokeModelParam invokeModelParam, CreateChatParam param, String portalId);
 }
@@ -7,8 +7,6 @@ import cn.hutool.core.util.StrUtil;
 import com.alibaba.apiopenplatform.core.exception.ErrorCode;
 import com.alibaba.apiopenplatform.dto.params.chat.ChatRequestBody;
 import com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage;
-import com.alibaba.apiopenplatform.dto.result.common.DomainResult;
-import com.alibaba.apiopenplatform.dto.result.httpapi.HttpRouteResult;
 import com.alibaba.apiopenplatform.dto.result.model.ModelConfigResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductResult;
 import com.alibaba.apiopenplatform.service.LlmService;
@@ -20,6 +18,7 @@ import com.alibaba.apiopenplatform.support.product.ProductFeature;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -28,9 +27,9 @@ import reactor.core.publisher.Flux;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 @Slf4j
@@ -40,13 +39,36 @@ public abstract class AbstractLlmService implements LlmService {
     // 一次chat中模型调用的最大次数
     protected static final int MAX_MODEL_REQUEST_PER_CHAT = 20;
 
+    @Resource
+    private ModelResponseCache responseCache;
+
+    @Resource
+    private ProductConfigCache productConfigCache;
+
     @Override
     public Flux<ChatAnswerMessage> invokeLLM(InvokeModelParam param, HttpServletResponse response, Consumer<LlmInvokeResult> resultHandler) {
         // ResultHandler is mainly used to record answer and usage
         try {
             LlmChatRequest request = composeRequest(param);
 
-            return call(request, response, resultHandler);
+            ModelResponseCache.Scope cacheScope = responseCache.scope(param.getProduct().getProductId(),
+                    getOrDefaultModelFeature(param.getProduct()), request.getChatRequest());
+            if (cacheScope == null) {
+                return call(request, response, resultHandler);
+            }
+
+            ModelResponseCache.CachedAnswer cached = cacheScope.get();
+            if (cached != null) {
+                return responseCache.replay(param.getChatId(), param.getUserQuestion(), cached, resultHandler);
+            }
+
+            // Only an answer that streamed to the end is cached, a cancelled chat also reports its partial answer
+            AtomicReference<LlmInvokeResult> result = new AtomicReference<>();
+            return call(request, response, r -> {
+                result.set(r);
+                resultHandler.accept(r);
+            }).doOnNext(cacheScope::collect)
+                    .doOnComplete(() -> Optional.ofNullable(result.get()).ifPresent(cacheScope::put));
         } catch (Exception e) {
             log.error("Failed to invoke LLM, chatId={}", param.getChatId(), e);
             response.setStatus(ErrorCode.INTERNAL_ERROR.getStatus().value());
@@ -86,15 +108,19 @@ public abstract class AbstractLlmService implements LlmService {
 
         return LlmChatRequest.builder()
                 .chatId(param.getChatId())
+                .productId(product.getProductId())
                 .url(url)
                 .headers(headers)
                 .chatRequest(chatRequest)
                 .gatewayIps(param.getGatewayIps())
+                .contextTokens(param.getContextTokens())
+                .hedgePercentile(modelFeature.getHedgePercentile())
                 .credentialContext(param.getCredentialContext())
+                .internal(param.isInternal())
                 .build();
     }
 
-    private ModelFeature getOrDefaultModelFeature(ProductResult product) {
+    static ModelFeature getOrDefaultModelFeature(ProductResult product) {
         ModelFeature modelFeature = Optional.ofNullable(product)
                 .map(ProductResult::getFeature)
                 .map(ProductFeature::getModelFeature)
@@ -105,6 +131,11 @@ public abstract class AbstractLlmService implements LlmService {
         return ModelFeature.builder()
                 .model(StrUtil.blankToDefault(modelFeature.getModel(), "qwen-max"))
                 .maxTokens(ObjectUtil.defaultIfNull(modelFeature.getMaxTokens(), 5000))
+                .contextWindow(modelFeature.getContextWindow())
+                .hedgePercentile(modelFeature.getHedgePercentile())
+                .responseCacheTtlSeconds(modelFeature.getResponseCacheTtlSeconds())
+                .responseCacheMaxEntries(modelFeature.getResponseCacheMaxEntries())
+                .semanticCacheThreshold(modelFeature.getSemanticCacheThreshold())
                 .temperature(ObjectUtil.defaultIfNull(modelFeature.getTemperature(), 0.9))
                 .streaming(ObjectUtil.defaultIfNull(modelFeature.getStreaming(), true))
                 .webSearch(ObjectUtil.defaultIfNull(modelFeature.getWebSearch(), false))
@@ -113,58 +144,19 @@ public abstract class AbstractLlmService implements LlmService {
 
 
     private URL getUrl(ModelConfigResult modelConfig, Map<String, String> queryParams) {
-        ModelConfigResult.ModelAPIConfig modelAPIConfig = modelConfig.getModelAPIConfig();
-        if (modelAPIConfig == null) {
-            return null;
-        }
-
-        List<HttpRouteResult> routes = modelAPIConfig.getRoutes();
-        if (CollUtil.isEmpty(routes)) {
-            return null;
+        // Routes are scanned once per model config version
+        URL url = productConfigCache.getChatCompletionsUrl(modelConfig);
+        if (url == null || CollUtil.isEmpty(queryParams)) {
+            return url;
         }
 
-        // Find route ending with /chat/completions
-        for (HttpRouteResult route : routes) {
-            String pathValue = Optional.ofNullable(route.getMatch())
-                    .map(HttpRouteResult.RouteMatchResult::getPath)
-                    .map(HttpRouteResult.RouteMatchPath::getValue)
-                    .orElse("");
-
-            if (!pathValue.endsWith("/chat/completions")) {
-                continue;
-            }
-
-            // Find first external domain
-            Optional<DomainResult> externalDomain = route.getDomains().stream()
-                    // TODO 调试场景专用，防止域名被ICP拦截，可恶啊
-//                    .filter(domain -> StrUtil.endWith(domain.getDomain(), ".alicloudapi.com"))
-                    .filter(domain -> !StrUtil.equalsIgnoreCase(domain.getNetworkType(), "intranet"))
-                    .findFirst();
-
-            if (externalDomain.isPresent()) {
-                DomainResult domain = externalDomain.get();
-                String protocol = StrUtil.isNotBlank(domain.getProtocol()) ?
-                        domain.getProtocol().toLowerCase() : "http";
-
-                try {
-                    // Build URL with query params
-                    UriComponentsBuilder builder = UriComponentsBuilder.newInstance()
-                            .scheme(protocol)
-                            .host(domain.getDomain())
-                            .path(pathValue);
-
-                    if (CollUtil.isNotEmpty(queryParams)) {
-                        queryParams.forEach(builder::queryParam);
-                    }
-
-                    return new URL(builder.build().toUriString());
-                } catch (MalformedURLException e) {
-                    throw new RuntimeException(e);
-                }
-            }
+        try {
+            // Build URL with query params
+            UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(url.toString());
+            queryParams.forEach(builder::queryParam);
+            return new URL(builder.build().toUriString());
+        } catch (MalformedURLException e) {
+            throw new RuntimeException(e);
         }
-
-        // No suitable route found
-        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatPersistenceConfig;
+import com.alibaba.apiopenplatform.core.security.ContextHolder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Runs blocking work (JPA, gateway lookups) of the chat pipeline on a dedicated bounded scheduler,
+ * so that neither request threads nor the event loop are blocked.
+ * <p>
+ * The security and portal context of the caller are carried over to the worker thread.
+ * When the queue is full, the returned Mono fails with {@link java.util.concurrent.RejectedExecutionException}.
+ */
+@Component
+public class BlockingTaskScheduler {
+
+    private final ContextHolder contextHolder;
+
+    private final Scheduler scheduler;
+
+    public BlockingTaskScheduler(ContextHolder contextHolder, ChatPersistenceConfig persistenceConfig) {
+        this.contextHolder = contextHolder;
+        this.scheduler = Schedulers.newBoundedElastic(persistenceConfig.getThreads(),
+                persistenceConfig.getQueueCapacity(), "ChatPersistence");
+    }
+
+    /**
+     * Capture the security and portal context of the current thread
+     */
+    public CallerContext capture() {
+        return new CallerContext(SecurityContextHolder.getContext(), contextHolder.getPortal());
+    }
+
+    /**
+     * Run the callable on the scheduler with the context of the current thread
+     */
+    public <T> Mono<T> fromCallable(Callable<T> callable) {
+        // Capture on the calling thread
+        return fromCallable(capture(), callable);
+    }
+
+    /**
+     * Run the callable on the scheduler with a captured context, for callables assembled off the request thread,
+     * where the context of the current thread is empty or belongs to another request
+     */
+    public <T> Mono<T> fromCallable(CallerContext caller, Callable<T> callable) {
+        return Mono.fromCallable(() -> {
+            SecurityContextHolder.setContext(caller.securityContext());
+            contextHolder.savePortal(caller.portalId());
+            try {
+                return callable.call();
+            } finally {
+                SecurityContextHolder.clearContext();
+                contextHolder.clearPortal();
+            }
+        }).subscribeOn(scheduler);
+    }
+
+    public Mono<Void> fromRunnable(Runnable runnable) {
+        return fromCallable(() -> {
+            runnable.run();
+            return null;
+        }).then();
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    /**
+     * Security and portal context of a request
+     */
+    public record CallerContext(SecurityContext securityContext, String portalId) {
+    }
+}
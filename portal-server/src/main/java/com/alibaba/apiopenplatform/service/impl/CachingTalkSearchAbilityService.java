@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.service.TalkSearchAbilityService;
+import com.alibaba.apiopenplatform.support.chat.search.SearchContext;
+import com.alibaba.apiopenplatform.support.chat.search.SearchInput;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+
+/**
+ * Serves parsed search results from a cache shared by all providers, concurrent identical queries wait for a single call
+ */
+public class CachingTalkSearchAbilityService<T, V> implements TalkSearchAbilityService<T, V> {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final TalkSearchAbilityService<T, V> delegate;
+
+    private final AsyncCache<SearchKey, List<SearchContext>> cache;
+
+    public CachingTalkSearchAbilityService(TalkSearchAbilityService<T, V> delegate, AsyncCache<SearchKey, List<SearchContext>> cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public List<SearchContext> search(SearchInput ideaTalkSearchInput) {
+        SearchKey key = SearchKey.of(getSearchType(), ideaTalkSearchInput);
+        CompletableFuture<List<SearchContext>> loading = new CompletableFuture<>();
+        // Looked up through the cache rather than its map view, so that hits and misses are recorded
+        CompletableFuture<List<SearchContext>> existing = cache.get(key, (k, executor) -> loading);
+        if (existing != loading) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        // The provider is called on the caller thread, outside of the cache's compute
+        try {
+            List<SearchContext> searchContexts = List.copyOf(delegate.search(ideaTalkSearchInput));
+            loading.complete(searchContexts);
+            return searchContexts;
+        } catch (RuntimeException e) {
+            // Failures are not cached, waiting callers get the same error
+            cache.asMap().remove(key, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public T buildSearchRequest(SearchInput ideaTalkSearchInput) {
+        return delegate.buildSearchRequest(ideaTalkSearchInput);
+    }
+
+    @Override
+    public String getSearchType() {
+        return delegate.getSearchType();
+    }
+
+    @Override
+    public List<SearchContext> buildSearchResponse(V searchResponse) {
+        return delegate.buildSearchResponse(searchResponse);
+    }
+
+    /**
+     * Search type and portal with the normalized query and time range.
+     * Each portal searches with its own engine key and quota, so results are not shared across portals
+     */
+    public record SearchKey(String searchType, String portalId, String query, List<String> time) {
+
+        static SearchKey of(String searchType, SearchInput searchInput) {
+            String query = Objects.toString(searchInput.getQuery(), "");
+            // Case, full-width forms and runs of whitespace do not change the results
+            query = WHITESPACE.matcher(Normalizer.normalize(query, Normalizer.Form.NFKC)).replaceAll(" ")
+                    .trim()
+                    .toLowerCase();
+            List<String> time = searchInput.getTime() == null ? List.of() : new ArrayList<>(searchInput.getTime());
+            return new SearchKey(searchType, searchInput.getPortalId(), query, time);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.CatalogCacheConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts invalidations of the portal catalog cache and search index to the other replicas through the database.
+ * <p>
+ * Messages are polled with an overlap window, as rows may commit out of id order, and applied once.
+ * They are written in a transaction of their own, as publishing happens after the business transaction commits.
+ */
+@Component
+@Slf4j
+public class CatalogInvalidationBroadcaster {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO catalog_invalidation (region, entity_id, node_id) VALUES (?, ?, ?)";
+
+    private static final String SELECT_SQL =
+            "SELECT id, region, entity_id, created_at FROM catalog_invalidation WHERE created_at >= ? AND node_id <> ? ORDER BY id";
+
+    private static final String PURGE_SQL = "DELETE FROM catalog_invalidation WHERE created_at < ?";
+
+    private static final String NOW_SQL = "SELECT CURRENT_TIMESTAMP(3)";
+
+    /**
+     * Rows committed late are still seen within this window
+     */
+    private static final long OVERLAP_MILLIS = 5000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate requiresNew;
+
+    private final CatalogCacheConfig config;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Messages already applied within the overlap window
+     */
+    private final Cache<Long, Boolean> applied = Caffeine.newBuilder()
+            .expireAfterWrite(OVERLAP_MILLIS * 2, TimeUnit.MILLISECONDS)
+            .build();
+
+    private ScheduledExecutorService poller;
+
+    private final List<Consumer<Invalidation>> listeners = new CopyOnWriteArrayList<>();
+
+    private Timestamp since;
+
+    private long lastPurgeAt;
+
+    public CatalogInvalidationBroadcaster(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                          CatalogCacheConfig config) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.config = config;
+    }
+
+    /**
+     * Receive the invalidations of the other replicas, polling starts with the first listener
+     */
+    public synchronized void subscribe(Consumer<Invalidation> listener) {
+        if (!config.isBroadcastEnabled()) {
+            return;
+        }
+        listeners.add(listener);
+        if (poller != null) {
+            return;
+        }
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "CatalogInvalidationPoller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::pollSafely, config.getBroadcastPollMillis(),
+                config.getBroadcastPollMillis(), TimeUnit.MILLISECONDS);
+        log.info("Catalog invalidation broadcast enabled, node {}", nodeId);
+    }
+
+    public void publish(String region, String entityId) {
+        if (!config.isBroadcastEnabled()) {
+            return;
+        }
+        try {
+            // Called from after-commit listeners, where the completed transaction is still bound to the thread
+            // and a plain update would join it and never be committed
+            requiresNew.executeWithoutResult(status -> jdbcTemplate.update(INSERT_SQL, region, entityId, nodeId));
+        } catch (Exception e) {
+            // Other replicas fall back to the cache expiry
+            log.warn("Failed to broadcast catalog invalidation {}/{}: {}", region, entityId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (Exception e) {
+            log.warn("Failed to poll catalog invalidations: {}", e.getMessage());
+        }
+    }
+
+    private void poll() {
+        Timestamp now = jdbcTemplate.queryForObject(NOW_SQL, Timestamp.class);
+        if (since == null) {
+            // Cache of a new replica is empty, older messages do not matter
+            since = now;
+            return;
+        }
+
+        List<Invalidation> invalidations = jdbcTemplate.query(SELECT_SQL,
+                (rs, i) -> new Invalidation(rs.getLong("id"), rs.getString("region"), rs.getString("entity_id")),
+                new Timestamp(since.getTime() - OVERLAP_MILLIS), nodeId);
+        for (Invalidation invalidation : invalidations) {
+            if (applied.asMap().putIfAbsent(invalidation.id(), Boolean.TRUE) == null) {
+                listeners.forEach(listener -> apply(listener, invalidation));
+            }
+        }
+        since = now;
+
+        long retentionMillis = TimeUnit.MINUTES.toMillis(config.getBroadcastRetentionMinutes());
+        if (now != null && now.getTime() - lastPurgeAt > retentionMillis) {
+            jdbcTemplate.update(PURGE_SQL, new Timestamp(now.getTime() - retentionMillis));
+            lastPurgeAt = now.getTime();
+        }
+    }
+
+    private void apply(Consumer<Invalidation> listener, Invalidation invalidation) {
+        try {
+            listener.accept(invalidation);
+        } catch (Exception e) {
+            log.warn("Failed to apply catalog invalidation {}/{}: {}", invalidation.region(), invalidation.entityId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Invalidation message
+     *
+     * @param id       message id
+     * @param region   cache region, see {@link PortalCatalogCache}
+     * @param entityId product, portal or category id
+     */
+    public record Invalidation(long id, String region, String entityId) {
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatAdmissionConfig;
+import com.alibaba.apiopenplatform.core.exception.ChatError;
+import com.alibaba.apiopenplatform.core.exception.ChatRejectedException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control of chat streams.
+ * <p>
+ * Requests of a developer, consumer and product are rate limited by token buckets and rejected when
+ * any bucket is empty. Streams beyond the in-flight limits wait in a queue served in weighted-fair
+ * order across developers, so a burst of one developer does not starve the others.
+ * <p>
+ * A fan-out chat is admitted as one unit, it counts once against its developer and consumer and once against
+ * each of its products.
+ */
+@Component
+@Slf4j
+public class ChatAdmissionGate {
+
+    private final ChatAdmissionConfig config;
+
+    private final Cache<String, TokenBucket> buckets;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer queueTimer;
+
+    /**
+     * In-flight streams by scoped key, guarded by this
+     */
+    private final Map<String, Integer> inFlight = new HashMap<>();
+
+    /**
+     * Waiting requests ordered by virtual finish time, guarded by this
+     */
+    private final TreeSet<Waiter> queue = new TreeSet<>(Comparator.comparingDouble(Waiter::finishTag)
+            .thenComparingLong(Waiter::seq));
+
+    /**
+     * Virtual finish time of the last queued request of each developer, guarded by this
+     */
+    private final Map<String, Double> lastFinishTags = new HashMap<>();
+
+    private double virtualTime;
+
+    private long sequence;
+
+    public ChatAdmissionGate(ChatAdmissionConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+
+        this.queueTimer = Timer.builder("chat.admission.queue.time")
+                .description("Time chat streams waited for admission")
+                .register(meterRegistry);
+        Gauge.builder("chat.admission.queued", this, gate -> gate.queued())
+                .description("Chat streams waiting for admission")
+                .register(meterRegistry);
+        Gauge.builder("chat.admission.inflight", this, gate -> gate.inFlightStreams())
+                .description("Admitted chat streams not finished yet")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wait for admission of a chat stream
+     *
+     * @return the permit to release when the stream finishes, or an error of {@link ChatRejectedException}
+     */
+    public Mono<Permit> acquire(Key key) {
+        if (!config.isEnabled()) {
+            return Mono.just(new Permit(this, null));
+        }
+
+        return Mono.create(sink -> {
+            long startNanos = System.nanoTime();
+            Waiter waiter;
+            synchronized (this) {
+                String limited = takeTokens(key);
+                if (limited != null) {
+                    reject(sink, ChatError.RATE_LIMITED, "Too many chats of " + limited + ", please retry later");
+                    return;
+                }
+                // Waiters left in the queue are blocked by another key, they do not compete for this one
+                if (hasCapacity(key)) {
+                    admit(key);
+                    sink.success(new Permit(this, key));
+                    return;
+                }
+                if (queue.size() >= config.getMaxQueueSize()) {
+                    reject(sink, ChatError.OVERLOADED, "Too many chats waiting, please retry later");
+                    return;
+                }
+                waiter = enqueue(key, sink, startNanos);
+            }
+
+            Disposable timeout = Schedulers.parallel().schedule(() -> {
+                if (dequeue(waiter)) {
+                    reject(sink, ChatError.QUEUE_TIMEOUT, "Chat waited too long for admission, please retry later");
+                }
+            }, config.getMaxQueueTimeMillis(), TimeUnit.MILLISECONDS);
+
+            sink.onCancel(() -> {
+                if (!dequeue(waiter) && waiter.admitted().get()) {
+                    // Admitted while being cancelled, nobody else will release the permit
+                    waiter.permit().release();
+                }
+            });
+            sink.onDispose(timeout::dispose);
+        });
+    }
+
+    private void reject(MonoSink<Permit> sink, ChatError error, String message) {
+        Counter.builder("chat.admission.rejected")
+                .description("Chat streams rejected by admission control")
+                .tag("reason", error.name())
+                .register(meterRegistry)
+                .increment();
+        sink.error(new ChatRejectedException(error, message));
+    }
+
+    private String takeTokens(Key key) {
+        TokenBucket developer = bucket("developer", key.developerId(), config.getDeveloper());
+        TokenBucket consumer = bucket("consumer", key.consumerId(), config.getConsumer());
+        List<TokenBucket> products = key.productIds().stream()
+                .map(productId -> bucket("product", productId, productLimit(productId)))
+                .toList();
+        long now = System.nanoTime();
+        if (!TokenBucket.available(developer, now)) {
+            return "developer";
+        }
+        if (!TokenBucket.available(consumer, now)) {
+            return "consumer";
+        }
+        for (TokenBucket product : products) {
+            if (!TokenBucket.available(product, now)) {
+                return "product";
+            }
+        }
+        TokenBucket.take(developer);
+        TokenBucket.take(consumer);
+        products.forEach(TokenBucket::take);
+        return null;
+    }
+
+    private TokenBucket bucket(String scope, String id, ChatAdmissionConfig.Limit limit) {
+        if (id == null || limit.getRatePerSecond() <= 0) {
+            return null;
+        }
+        return buckets.get(scope + ":" + id, k -> new TokenBucket(limit.getRatePerSecond(), Math.max(1, limit.getBurst())));
+    }
+
+    private ChatAdmissionConfig.Limit productLimit(String productId) {
+        return config.getProducts().getOrDefault(productId, config.getProduct());
+    }
+
+    private boolean hasCapacity(Key key) {
+        return hasCapacity("developer:" + key.developerId(), config.getDeveloper())
+                && hasCapacity("consumer:" + key.consumerId(), config.getConsumer())
+                && key.productIds().stream().allMatch(productId -> hasCapacity("product:" + productId, productLimit(productId)));
+    }
+
+    private boolean hasCapacity(String scopedKey, ChatAdmissionConfig.Limit limit) {
+        return limit.getMaxInFlight() <= 0 || inFlight.getOrDefault(scopedKey, 0) < limit.getMaxInFlight();
+    }
+
+    private void admit(Key key) {
+        for (String scopedKey : scopedKeys(key)) {
+            inFlight.merge(scopedKey, 1, Integer::sum);
+        }
+    }
+
+    private static List<String> scopedKeys(Key key) {
+        List<String> scopedKeys = new ArrayList<>(key.productIds().size() + 2);
+        scopedKeys.add("developer:" + key.developerId());
+        scopedKeys.add("consumer:" + key.consumerId());
+        key.productIds().forEach(productId -> scopedKeys.add("product:" + productId));
+        return scopedKeys;
+    }
+
+    private Waiter enqueue(Key key, MonoSink<Permit> sink, long startNanos) {
+        double weight = Math.max(0.01, config.getWeights().getOrDefault(key.developerId(), 1.0));
+        double start = Math.max(virtualTime, lastFinishTags.getOrDefault(key.developerId(), 0.0));
+        Waiter waiter = new Waiter(key, sink, start + 1 / weight, sequence++, startNanos, new Permit(this, key), new AtomicBoolean());
+        lastFinishTags.put(key.developerId(), waiter.finishTag());
+        queue.add(waiter);
+        return waiter;
+    }
+
+    private synchronized boolean dequeue(Waiter waiter) {
+        return queue.remove(waiter);
+    }
+
+    void release(Key key) {
+        List<Waiter> admitted = new ArrayList<>();
+        synchronized (this) {
+            for (String scopedKey : scopedKeys(key)) {
+                inFlight.computeIfPresent(scopedKey, (k, count) -> count > 1 ? count - 1 : null);
+            }
+            // Serve waiters in finish time order, skipping those still blocked by another key
+            Iterator<Waiter> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (hasCapacity(waiter.key())) {
+                    iterator.remove();
+                    admit(waiter.key());
+                    waiter.admitted().set(true);
+                    virtualTime = Math.max(virtualTime, waiter.finishTag());
+                    lastFinishTags.computeIfPresent(waiter.key().developerId(), (k, tag) -> tag > virtualTime ? tag : null);
+                    admitted.add(waiter);
+                }
+            }
+        }
+        for (Waiter waiter : admitted) {
+            queueTimer.record(System.nanoTime() - waiter.startNanos(), TimeUnit.NANOSECONDS);
+            waiter.sink().success(waiter.permit());
+        }
+    }
+
+    private synchronized int queued() {
+        return queue.size();
+    }
+
+    private synchronized int inFlightStreams() {
+        return inFlight.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith("product:"))
+                .mapToInt(Map.Entry::getValue)
+                .sum();
+    }
+
+    /**
+     * Who is chatting with which products
+     */
+    public record Key(String developerId, String consumerId, List<String> productIds) {
+
+        public Key(String developerId, String consumerId, String productId) {
+            this(developerId, consumerId, Collections.singletonList(productId));
+        }
+    }
+
+    private record Waiter(Key key, MonoSink<Permit> sink, double finishTag, long seq, long startNanos, Permit permit,
+                          AtomicBoolean admitted) {
+    }
+
+    /**
+     * Admission of a stream, released once when the stream finishes
+     */
+    public static final class Permit {
+
+        private final ChatAdmissionGate gate;
+
+        private final Key key;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(ChatAdmissionGate gate, Key key) {
+            this.gate = gate;
+            this.key = key;
+        }
+
+        public void release() {
+            if (key != null && released.compareAndSet(false, true)) {
+                gate.release(key);
+            }
+        }
+    }
+
+    /**
+     * Token bucket of one key, guarded by the gate
+     */
+    private static class TokenBucket {
+
+        private final double ratePerNano;
+
+        private final int capacity;
+
+        private double tokens;
+
+        private long refilledAt;
+
+        TokenBucket(double ratePerSecond, int capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        static boolean available(TokenBucket bucket, long now) {
+            if (bucket == null) {
+                return true;
+            }
+            bucket.tokens = Math.min(bucket.capacity, bucket.tokens + (now - bucket.refilledAt) * bucket.ratePerNano);
+            bucket.refilledAt = now;
+            return bucket.tokens >= 1;
+        }
+
+        static void take(TokenBucket bucket) {
+            if (bucket != null) {
+                bucket.tokens -= 1;
+            }
+        }
+    }
+}
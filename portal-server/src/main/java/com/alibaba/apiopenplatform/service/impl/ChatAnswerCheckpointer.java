@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatPersistenceConfig;
+import com.alibaba.apiopenplatform.dto.params.chat.ChatAnswerBuffer;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage;
+import com.alibaba.apiopenplatform.entity.Chat;
+import com.alibaba.apiopenplatform.support.enums.ChatStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checkpoints partial answers of streaming chats and serves resumed streams by chatId and offset.
+ * Chunks are held in memory only until they are persisted, answers are read back from the checkpoint store.
+ */
+@Component
+@Slf4j
+public class ChatAnswerCheckpointer implements ChatAnswerBuffer.Listener {
+
+    private static final String INSERT_CHUNK_SQL =
+            "INSERT INTO chat_answer_chunk (chat_id, seq, start_offset, content) VALUES (?, ?, ?, ?)";
+
+    private static final String DELETE_CHUNKS_SQL = "DELETE FROM chat_answer_chunk WHERE chat_id = ?";
+
+    private static final String SELECT_CHUNKS_SQL = "SELECT content FROM chat_answer_chunk WHERE chat_id = ? ORDER BY seq";
+
+    private static final String SELECT_CHUNKS_FROM_SQL =
+            "SELECT start_offset, content FROM chat_answer_chunk WHERE chat_id = ? AND start_offset + CHAR_LENGTH(content) > ? ORDER BY seq";
+
+    private static final String SELECT_ANSWER_SQL = "SELECT answer FROM chat WHERE chat_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final BlockingTaskScheduler blockingTaskScheduler;
+
+    private final ChatPersistenceConfig persistenceConfig;
+
+    /**
+     * Answers being streamed by this instance
+     */
+    private final Map<String, ChatAnswerBuffer> streaming = new ConcurrentHashMap<>();
+
+    /**
+     * Finished answers until the result journal writes them, so dropped clients can follow them to the end.
+     * Weighed by the characters still in memory
+     */
+    private final Cache<String, ChatAnswerBuffer> finished;
+
+    private final Queue<ChatAnswerBuffer.Chunk> pendingChunks = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledExecutorService flusher;
+
+    public ChatAnswerCheckpointer(JdbcTemplate jdbcTemplate, BlockingTaskScheduler blockingTaskScheduler,
+                                  ChatPersistenceConfig persistenceConfig, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockingTaskScheduler = blockingTaskScheduler;
+        this.persistenceConfig = persistenceConfig;
+        this.finished = Caffeine.newBuilder()
+                .expireAfterWrite(persistenceConfig.getResumeRetentionSeconds(), TimeUnit.SECONDS)
+                .maximumWeight(persistenceConfig.getResumeMaxBufferedChars())
+                .weigher((String chatId, ChatAnswerBuffer buffer) -> 1 + buffer.bufferedLength())
+                .build();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ChatAnswerCheckpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, persistenceConfig.getCheckpointIntervalMillis(),
+                persistenceConfig.getCheckpointIntervalMillis(), TimeUnit.MILLISECONDS);
+
+        Gauge.builder("chat.answer.streaming", streaming, Map::size)
+                .description("Number of answers being streamed")
+                .register(meterRegistry);
+        Gauge.builder("chat.answer.checkpoint.pending", pendingChunks, Queue::size)
+                .description("Number of answer chunks waiting to be written")
+                .register(meterRegistry);
+    }
+
+    public ChatAnswerBuffer open(String chatId) {
+        ChatAnswerBuffer buffer = new ChatAnswerBuffer(chatId, persistenceConfig.getCheckpointTokens(),
+                persistenceConfig.getCheckpointIntervalMillis(), this);
+        streaming.put(chatId, buffer);
+        return buffer;
+    }
+
+    @Override
+    public void onCheckpoint(ChatAnswerBuffer.Chunk chunk) {
+        pendingChunks.offer(chunk);
+    }
+
+    @Override
+    public void onComplete(ChatAnswerBuffer buffer) {
+        finished.put(buffer.getChatId(), buffer);
+        streaming.remove(buffer.getChatId());
+    }
+
+    /**
+     * Reassemble the answers of the chats from their chunks, the tails still in memory are checkpointed first
+     *
+     * @return answers of the chats that have chunks
+     */
+    public Map<String, String> reassemble(Collection<String> chatIds) {
+        if (chatIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        chatIds.forEach(chatId -> Optional.ofNullable(findBuffer(chatId)).ifPresent(ChatAnswerBuffer::checkpoint));
+        flush();
+
+        Map<String, StringBuilder> answers = new HashMap<>();
+        String sql = "SELECT chat_id, content FROM chat_answer_chunk WHERE chat_id IN ("
+                + String.join(", ", Collections.nCopies(chatIds.size(), "?")) + ") ORDER BY chat_id, seq";
+        jdbcTemplate.query(sql, rs -> {
+            answers.computeIfAbsent(rs.getString(1), k -> new StringBuilder()).append(rs.getString(2));
+        }, chatIds.toArray());
+
+        Map<String, String> result = new HashMap<>();
+        answers.forEach((chatId, answer) -> result.put(chatId, answer.toString()));
+        return result;
+    }
+
+    /**
+     * Drop the checkpoints of chats whose answers have been written, called by the result journal after the write
+     */
+    public synchronized void discard(Collection<String> chatIds) {
+        if (chatIds.isEmpty()) {
+            return;
+        }
+        // Synchronized with flush, so chunks not yet written are dropped here instead of left behind
+        Set<String> ids = new HashSet<>(chatIds);
+        pendingChunks.removeIf(chunk -> ids.contains(chunk.chatId()));
+        finished.invalidateAll(ids);
+
+        List<String> discarded = new ArrayList<>(ids);
+        jdbcTemplate.batchUpdate(DELETE_CHUNKS_SQL, discarded, discarded.size(),
+                (ps, chatId) -> ps.setString(1, chatId));
+    }
+
+    /**
+     * Resume the answer of a chat from the offset, follows the stream if the answer is still being generated here
+     */
+    public Flux<ChatAnswerMessage> resume(Chat chat, int offset) {
+        String chatId = chat.getChatId();
+        ChatAnswerBuffer buffer = findBuffer(chatId);
+        if (buffer != null) {
+            return follow(buffer, offset);
+        }
+
+        // Streamed by another instance, or lost by a crash, read what was persisted
+        String answer = chat.getAnswer() != null ?
+                chat.getAnswer() : String.join("", jdbcTemplate.queryForList(SELECT_CHUNKS_SQL, String.class, chatId));
+        Flux<ChatAnswerMessage> messages = offset < answer.length() ?
+                Flux.just(newAnswerMessage(chatId, answer.substring(offset))) : Flux.empty();
+        boolean done = chat.getStatus() == ChatStatus.SUCCESS || chat.getStatus() == ChatStatus.FAILED;
+        return done ? messages.concatWith(Mono.fromSupplier(() -> newStopMessage(chatId))) : messages;
+    }
+
+    private ChatAnswerBuffer findBuffer(String chatId) {
+        return Optional.ofNullable(streaming.get(chatId))
+                .orElseGet(() -> finished.getIfPresent(chatId));
+    }
+
+    private Flux<ChatAnswerMessage> follow(ChatAnswerBuffer buffer, int offset) {
+        String chatId = buffer.getChatId();
+        AtomicInteger cursor = new AtomicInteger(offset);
+        return Flux.interval(Duration.ZERO, Duration.ofMillis(persistenceConfig.getResumePollMillis()))
+                .onBackpressureDrop()
+                // The persisted part of the answer is read from the database
+                .publishOn(blockingTaskScheduler.getScheduler(), 1)
+                .map(tick -> {
+                    // Read the flag first, so content appended before completion is never missed
+                    boolean completed = buffer.isCompleted();
+                    String delta = contentFrom(buffer, cursor.get());
+                    cursor.addAndGet(delta.length());
+                    return Tuples.of(delta, completed);
+                })
+                .takeUntil(Tuple2::getT2)
+                .filter(t -> !t.getT1().isEmpty())
+                .map(t -> newAnswerMessage(chatId, t.getT1()))
+                .concatWith(Mono.fromSupplier(() -> newStopMessage(chatId)));
+    }
+
+    /**
+     * Content from the offset, from memory if it is still there, otherwise up to the persisted length from the database
+     */
+    private String contentFrom(ChatAnswerBuffer buffer, int offset) {
+        String delta = buffer.contentFrom(offset);
+        if (delta != null) {
+            return delta;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        jdbcTemplate.query(SELECT_CHUNKS_FROM_SQL, rs -> {
+            int start = rs.getInt(1);
+            String content = rs.getString(2);
+            sb.append(content, Math.max(0, offset - start), content.length());
+        }, buffer.getChatId(), offset);
+        if (!sb.isEmpty()) {
+            return sb.toString();
+        }
+
+        // Chunks are discarded once the answer is written
+        String answer = jdbcTemplate.queryForList(SELECT_ANSWER_SQL, String.class, buffer.getChatId()).stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse("");
+        return offset < answer.length() ? answer.substring(offset) : "";
+    }
+
+    private ChatAnswerMessage newAnswerMessage(String chatId, String content) {
+        return ChatAnswerMessage.builder()
+                .chatId(chatId)
+                .msgType(ChatAnswerMessage.MessageType.ANSWER)
+                .content(content)
+                .build();
+    }
+
+    private ChatAnswerMessage newStopMessage(String chatId) {
+        return ChatAnswerMessage.builder()
+                .chatId(chatId)
+                .msgType(ChatAnswerMessage.MessageType.STOP)
+                .build();
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to flush answer checkpoints", e);
+        }
+    }
+
+    private synchronized void flush() {
+        List<ChatAnswerBuffer.Chunk> chunks = new ArrayList<>();
+        for (ChatAnswerBuffer.Chunk chunk; (chunk = pendingChunks.poll()) != null; ) {
+            chunks.add(chunk);
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(INSERT_CHUNK_SQL, chunks, chunks.size(), (ps, chunk) -> {
+                ps.setString(1, chunk.chatId());
+                ps.setInt(2, chunk.seq());
+                ps.setInt(3, chunk.offset());
+                ps.setString(4, chunk.content());
+            });
+        } catch (RuntimeException e) {
+            // Kept in memory and written with the next flush
+            chunks.forEach(pendingChunks::offer);
+            throw e;
+        }
+
+        // Persisted chunks are no longer held by their answers
+        Map<String, ChatAnswerBuffer.Chunk> lastChunks = new HashMap<>();
+        chunks.forEach(chunk -> lastChunks.merge(chunk.chatId(), chunk, (a, b) -> a.seq() >= b.seq() ? a : b));
+        lastChunks.forEach((chatId, chunk) -> Optional.ofNullable(findBuffer(chatId))
+                .ifPresent(buffer -> buffer.persisted(chunk)));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Answer checkpoint flusher did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Persist what is left, answers still streaming can be recovered from their chunks
+        flushSafely();
+    }
+}
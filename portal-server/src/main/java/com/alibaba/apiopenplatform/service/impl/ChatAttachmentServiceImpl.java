@@ -1,17 +1,207 @@
 package com.alibaba.apiopenplatform.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.apiopenplatform.config.AttachmentStorageConfig;
+import com.alibaba.apiopenplatform.core.exception.BusinessException;
+import com.alibaba.apiopenplatform.core.exception.ErrorCode;
+import com.alibaba.apiopenplatform.core.security.ContextHolder;
+import com.alibaba.apiopenplatform.core.utils.IdGenerator;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAttachmentContent;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAttachmentResult;
+import com.alibaba.apiopenplatform.entity.ChatAttachment;
 import com.alibaba.apiopenplatform.repository.ChatAttachmentRepository;
+import com.alibaba.apiopenplatform.service.AttachmentStorage;
 import com.alibaba.apiopenplatform.service.ChatAttachmentService;
-import lombok.AllArgsConstructor;
+import com.alibaba.apiopenplatform.support.enums.ChatAttachmentType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author zh
  */
 @Service
-@AllArgsConstructor
+@Slf4j
 public class ChatAttachmentServiceImpl implements ChatAttachmentService {
 
+    private static final Set<String> TEXT_MIME_TYPES = Set.of(
+            "application/json", "application/xml", "application/x-yaml", "application/yaml",
+            "application/javascript", "application/x-sh", "application/sql");
+
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(
+            "txt", "md", "markdown", "csv", "json", "xml", "yaml", "yml", "log", "html", "htm",
+            "java", "py", "js", "ts", "go", "sql", "sh", "properties");
+
     private final ChatAttachmentRepository chatAttachmentRepository;
 
+    private final AttachmentStorage attachmentStorage;
+
+    private final ContextHolder contextHolder;
+
+    private final AttachmentStorageConfig storageConfig;
+
+    /**
+     * Attachments are immutable, decoded text and data URLs are cached by attachmentId
+     */
+    private final Cache<String, ChatAttachmentContent> contents;
+
+    public ChatAttachmentServiceImpl(ChatAttachmentRepository chatAttachmentRepository, AttachmentStorage attachmentStorage,
+                                     ContextHolder contextHolder, AttachmentStorageConfig storageConfig, MeterRegistry meterRegistry) {
+        this.chatAttachmentRepository = chatAttachmentRepository;
+        this.attachmentStorage = attachmentStorage;
+        this.contextHolder = contextHolder;
+        this.storageConfig = storageConfig;
+
+        this.contents = Caffeine.newBuilder()
+                .maximumWeight(storageConfig.getCacheMaxMb() * 1024 * 1024)
+                .weigher((String attachmentId, ChatAttachmentContent content) -> content.weight())
+                .expireAfterAccess(storageConfig.getCacheExpireMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, contents, "chat.attachment.contents");
+    }
+
+    @Override
+    public ChatAttachmentResult uploadAttachment(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER, "Attachment is empty");
+        }
+
+        String name = file.getOriginalFilename();
+        ChatAttachmentType type = detectType(file.getContentType(), name);
+
+        String userId = contextHolder.getUser();
+        String attachmentId = IdGenerator.genAttachmentId();
+        String storageKey = userId + "/" + attachmentId;
+
+        long size;
+        try (InputStream inputStream = file.getInputStream()) {
+            size = attachmentStorage.put(storageKey, inputStream, storageConfig.getMaxSizeMb() * 1024 * 1024);
+        } catch (IOException e) {
+            log.error("Failed to store attachment {}", attachmentId, e);
+            throw new BusinessException(ErrorCode.INTERNAL_ERROR, "Failed to store attachment");
+        }
+
+        ChatAttachment attachment = new ChatAttachment()
+                .setAttachmentId(attachmentId)
+                .setUserId(userId)
+                .setName(name)
+                .setType(type)
+                .setMimeType(file.getContentType())
+                .setSize(size)
+                .setStorageKey(storageKey);
+        try {
+            chatAttachmentRepository.save(attachment);
+        } catch (RuntimeException e) {
+            deleteQuietly(storageKey);
+            throw e;
+        }
+
+        return new ChatAttachmentResult().convertFrom(attachment);
+    }
+
+    @Override
+    public Map<String, ChatAttachmentContent> getAttachmentContents(List<String> attachmentIds) {
+        if (CollUtil.isEmpty(attachmentIds)) {
+            return Collections.emptyMap();
+        }
+        return contents.getAll(attachmentIds, this::loadContents);
+    }
+
+    private Map<String, ChatAttachmentContent> loadContents(Set<? extends String> attachmentIds) {
+        Map<String, ChatAttachmentContent> result = new HashMap<>();
+        for (ChatAttachment attachment : chatAttachmentRepository.findByAttachmentIdIn(new ArrayList<>(attachmentIds))) {
+            try {
+                ChatAttachmentContent content = loadContent(attachment);
+                if (content != null) {
+                    result.put(attachment.getAttachmentId(), content);
+                }
+            } catch (IOException e) {
+                // Not cached, retried on the next message
+                log.error("Failed to read attachment {}", attachment.getAttachmentId(), e);
+            }
+        }
+        return result;
+    }
+
+    private ChatAttachmentContent loadContent(ChatAttachment attachment) throws IOException {
+        ChatAttachmentContent.ChatAttachmentContentBuilder builder = ChatAttachmentContent.builder()
+                .attachmentId(attachment.getAttachmentId())
+                .name(attachment.getName())
+                .type(attachment.getType());
+
+        try (InputStream inputStream = openData(attachment)) {
+            if (inputStream == null) {
+                return null;
+            }
+
+            if (attachment.getType() == ChatAttachmentType.TEXT) {
+                return builder.text(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).build();
+            }
+
+            // Encode while reading, the raw bytes are never held as a whole
+            String prefix = StrUtil.isBlank(attachment.getMimeType()) ?
+                    "" : String.format("data:%s;base64,", attachment.getMimeType());
+            long size = Optional.ofNullable(attachment.getSize()).orElse(0L);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, prefix.length() + (size + 2) / 3 * 4));
+            out.write(prefix.getBytes(StandardCharsets.US_ASCII));
+            try (OutputStream encoder = Base64.getEncoder().wrap(out)) {
+                inputStream.transferTo(encoder);
+            }
+            return builder.dataUrl(out.toString(StandardCharsets.US_ASCII)).build();
+        }
+    }
+
+    private InputStream openData(ChatAttachment attachment) throws IOException {
+        if (StrUtil.isNotBlank(attachment.getStorageKey())) {
+            return attachmentStorage.open(attachment.getStorageKey());
+        }
+        // Attachments uploaded before object storage
+        if (attachment.getData() != null && attachment.getData().length > 0) {
+            return new ByteArrayInputStream(attachment.getData());
+        }
+        return null;
+    }
+
+    private ChatAttachmentType detectType(String mimeType, String name) {
+        String mime = StrUtil.nullToEmpty(mimeType).toLowerCase();
+        if (mime.startsWith("image/")) {
+            return ChatAttachmentType.IMAGE;
+        }
+        if (mime.startsWith("audio/")) {
+            return ChatAttachmentType.AUDIO;
+        }
+        if (mime.startsWith("video/")) {
+            return ChatAttachmentType.VIDEO;
+        }
+        if (mime.startsWith("text/") || TEXT_MIME_TYPES.contains(mime)
+                || TEXT_EXTENSIONS.contains(StrUtil.nullToEmpty(FileUtil.extName(name)).toLowerCase())) {
+            return ChatAttachmentType.TEXT;
+        }
+        throw new BusinessException(ErrorCode.INVALID_PARAMETER, "Unsupported attachment type: " + mimeType);
+    }
+
+    private void deleteQuietly(String storageKey) {
+        try {
+            attachmentStorage.delete(storageKey);
+        } catch (IOException e) {
+            log.warn("Failed to delete attachment object {}", storageKey, e);
+        }
+    }
 }
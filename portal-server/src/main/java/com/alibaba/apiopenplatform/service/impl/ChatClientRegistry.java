@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.apiopenplatform.config.ChatClientPoolConfig;
+import com.alibaba.apiopenplatform.core.event.CredentialChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of reusable chat clients.
+ * <p>
+ * Clients are keyed by (baseUrl, completionsPath, credential) and share one Reactor Netty
+ * connection pool per upstream gateway, so that HTTP keep-alive survives across chats.
+ */
+@Component
+@Slf4j
+public class ChatClientRegistry {
+
+    private final ToolCallingManager toolCallingManager;
+
+    private final ChatClientPoolConfig poolConfig;
+
+    private final Cache<ChatClientKey, ChatClient> clients;
+
+    /**
+     * Connection pool for each upstream gateway, keyed by baseUrl
+     */
+    private final Cache<String, GatewayConnector> connectors;
+
+    public ChatClientRegistry(ToolCallingManager toolCallingManager, ChatClientPoolConfig poolConfig, MeterRegistry meterRegistry) {
+        this.toolCallingManager = toolCallingManager;
+        this.poolConfig = poolConfig;
+
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(poolConfig.getMaxClients())
+                .expireAfterAccess(poolConfig.getClientIdleMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        this.connectors = Caffeine.newBuilder()
+                .expireAfterAccess(poolConfig.getGatewayIdleMinutes(), TimeUnit.MINUTES)
+                .removalListener((String baseUrl, GatewayConnector connector, RemovalCause cause) -> {
+                    // Clients bound to a released pool can not be used anymore
+                    clients.asMap().keySet().removeIf(key -> key.baseUrl().equals(baseUrl));
+                    if (connector != null) {
+                        connector.dispose();
+                    }
+                })
+                .build();
+
+        // Hits, misses and evictions of chat clients
+        CaffeineCacheMetrics.monitor(meterRegistry, clients, "chat.client.registry");
+        Gauge.builder("chat.client.gateways", connectors, Cache::estimatedSize)
+                .description("Number of upstream gateways with a live connection pool")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get a cached chat client or build a new one
+     *
+     * @param baseUrl         protocol, host and port
+     * @param completionsPath path of chat completions
+     * @param apiKey          credential used by the client
+     * @param headers         custom headers, e.g. Host
+     * @return
+     */
+    public ChatClient getChatClient(String baseUrl, String completionsPath, String apiKey, Map<String, String> headers) {
+        // Touch the connector first, so it never expires before the clients using it
+        GatewayConnector connector = connectors.get(baseUrl, this::newConnector);
+
+        ChatClientKey key = new ChatClientKey(baseUrl, completionsPath, apiKey,
+                headers == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(headers)));
+        return clients.get(key, k -> newChatClient(k, connector));
+    }
+
+    @EventListener
+    public void handleCredentialChange(CredentialChangedEvent event) {
+        if (CollUtil.isEmpty(event.getRevokedApiKeys())) {
+            return;
+        }
+
+        Set<String> revokedApiKeys = event.getRevokedApiKeys().stream()
+                .filter(StrUtil::isNotBlank)
+                .collect(Collectors.toSet());
+        List<ChatClientKey> keys = clients.asMap().keySet().stream()
+                .filter(key -> key.usesCredential(revokedApiKeys))
+                .toList();
+        clients.invalidateAll(keys);
+
+        log.info("Invalidated {} chat clients for consumer {}", keys.size(), event.getConsumerId());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        connectors.invalidateAll();
+        connectors.cleanUp();
+    }
+
+    private ChatClient newChatClient(ChatClientKey key, GatewayConnector connector) {
+        MultiValueMap<String, String> headers = new HttpHeaders();
+        key.headers().forEach(headers::add);
+
+        OpenAiApi openAiApi = OpenAiApi.builder()
+                .baseUrl(key.baseUrl())
+                .completionsPath(key.completionsPath())
+                .headers(headers)
+                .apiKey(key.apiKey())
+                .webClientBuilder(connector.webClientBuilder())
+                .build();
+
+        OpenAiChatModel chatModel = OpenAiChatModel.builder()
+                .openAiApi(openAiApi)
+                .toolCallingManager(toolCallingManager)
+                .defaultOptions(OpenAiChatOptions.builder()
+                        .streamUsage(true)
+                        .build())
+                .build();
+
+        return ChatClient.builder(chatModel).build();
+    }
+
+    private GatewayConnector newConnector(String baseUrl) {
+        ConnectionProvider provider = ConnectionProvider.builder("llm-gateway")
+                .maxConnections(poolConfig.getMaxConnectionsPerGateway())
+                .pendingAcquireMaxCount(poolConfig.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofSeconds(poolConfig.getPendingAcquireTimeoutSeconds()))
+                .maxIdleTime(Duration.ofSeconds(poolConfig.getMaxIdleSeconds()))
+                .maxLifeTime(Duration.ofMinutes(poolConfig.getMaxLifeMinutes()))
+                .evictInBackground(Duration.ofSeconds(poolConfig.getEvictIntervalSeconds()))
+                // Active, idle and pending connections are exported as reactor.netty.connection.provider.*
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, poolConfig.getConnectTimeoutMillis())
+                .keepAlive(true);
+
+        WebClient.Builder webClientBuilder = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(16 * 1024 * 1024));
+
+        log.info("Created connection pool for gateway {}", baseUrl);
+        return new GatewayConnector(provider, webClientBuilder);
+    }
+
+    private record ChatClientKey(String baseUrl, String completionsPath, String apiKey, Map<String, String> headers) {
+
+        boolean usesCredential(Set<String> apiKeys) {
+            if (apiKey != null && apiKeys.contains(apiKey)) {
+                return true;
+            }
+            // Credential may also be carried by headers, e.g. Authorization: Bearer {apiKey}
+            return headers.values().stream()
+                    .filter(Objects::nonNull)
+                    .anyMatch(value -> apiKeys.stream().anyMatch(value::contains));
+        }
+    }
+
+    private record GatewayConnector(ConnectionProvider provider, WebClient.Builder webClientBuilder) {
+
+        void dispose() {
+            provider.disposeLater()
+                    .doOnError(e -> log.warn("Failed to dispose connection pool", e))
+                    .subscribe();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.ObjectUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.apiopenplatform.config.ChatContextConfig;
+import com.alibaba.apiopenplatform.service.ChatTokenizer;
+import com.alibaba.apiopenplatform.support.chat.ChatMessage;
+import com.alibaba.apiopenplatform.support.chat.content.MessageContent;
+import com.alibaba.apiopenplatform.support.chat.content.TextContent;
+import com.alibaba.apiopenplatform.support.enums.ChatRole;
+import com.alibaba.apiopenplatform.support.product.ModelFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Packs history messages into the token budget of the model
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ChatContextWindow {
+
+    /**
+     * Role and separator tokens added by the chat template for each message
+     */
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final int SUMMARY_QUESTION_MAX_LENGTH = 100;
+
+    private final ChatContextConfig contextConfig;
+
+    private final ObjectProvider<ChatTokenizer> tokenizers;
+
+    /**
+     * Keep the newest history that fits into the budget, the current message is always kept
+     *
+     * @param historyMessages history messages in chronological order
+     * @param currentMessage  current user message
+     * @param modelFeature    model feature with default values
+     * @return packed messages, current message at the end
+     */
+    public PackedContext pack(List<ChatMessage> historyMessages, ChatMessage currentMessage, ModelFeature modelFeature) {
+        String model = modelFeature.getModel();
+        int budget = budget(modelFeature);
+
+        int usedTokens = countTokens(model, currentMessage);
+        if (usedTokens > budget) {
+            log.warn("Current message exceeds context budget, model: {}, tokens: {}, budget: {}", model, usedTokens, budget);
+        }
+
+        List<ChatMessage> history = CollUtil.isEmpty(historyMessages) ? Collections.emptyList() : historyMessages;
+
+        // Walk backwards from the newest message and stop at the first one that does not fit
+        int start = history.size();
+        while (start > 0) {
+            int tokens = countTokens(model, history.get(start - 1));
+            if (usedTokens + tokens > budget) {
+                break;
+            }
+            usedTokens += tokens;
+            start--;
+        }
+
+        // Never start with an answer whose question was evicted
+        if (start < history.size() && isRole(history.get(start), ChatRole.ASSISTANT)) {
+            usedTokens -= countTokens(model, history.get(start));
+            start++;
+        }
+
+        List<ChatMessage> messages = new ArrayList<>();
+        if (start > 0 && contextConfig.isSummarizeEvicted()) {
+            int summaryBudget = Math.min(contextConfig.getSummaryMaxTokens(), budget - usedTokens);
+            ChatMessage summary = summarize(model, history.subList(0, start), summaryBudget);
+            if (summary != null) {
+                usedTokens += countTokens(model, summary);
+                messages.add(summary);
+            }
+        }
+        messages.addAll(history.subList(start, history.size()));
+        messages.add(currentMessage);
+
+        return new PackedContext(messages, usedTokens, start);
+    }
+
+    /**
+     * Tokens of the model context left for the history and the current message
+     */
+    public int budget(ModelFeature modelFeature) {
+        int contextWindow = ObjectUtil.defaultIfNull(modelFeature.getContextWindow(), contextConfig.getDefaultContextWindow());
+        return contextWindow - ObjectUtil.defaultIfNull(modelFeature.getMaxTokens(), 0) - contextConfig.getReservedTokens();
+    }
+
+    /**
+     * Extractive summary of evicted questions, newer questions are kept first
+     */
+    private ChatMessage summarize(String model, List<ChatMessage> evictedMessages, int budget) {
+        String header = "Earlier questions in this session (answers omitted):";
+        int usedTokens = MESSAGE_OVERHEAD_TOKENS + countTokens(model, header);
+
+        LinkedList<String> lines = new LinkedList<>();
+        for (int i = evictedMessages.size() - 1; i >= 0; i--) {
+            ChatMessage message = evictedMessages.get(i);
+            if (!isRole(message, ChatRole.USER)) {
+                continue;
+            }
+            String question = StrUtil.brief(StrUtil.removePrefix(extractText(message), "# Question\n"), SUMMARY_QUESTION_MAX_LENGTH);
+            if (StrUtil.isBlank(question)) {
+                continue;
+            }
+            String line = "- " + StrUtil.replace(question, "\n", " ");
+            int tokens = countTokens(model, line);
+            if (usedTokens + tokens > budget) {
+                break;
+            }
+            usedTokens += tokens;
+            lines.addFirst(line);
+        }
+
+        if (lines.isEmpty()) {
+            return null;
+        }
+        lines.addFirst(header);
+        return ChatMessage.builder()
+                .role(ChatRole.SYSTEM.getRole())
+                .content(String.join("\n", lines))
+                .build();
+    }
+
+    public int countTokens(String model, ChatMessage message) {
+        int tokens = MESSAGE_OVERHEAD_TOKENS;
+        Object content = message.getContent();
+        if (content instanceof List<?> contents) {
+            for (Object item : contents) {
+                if (item instanceof TextContent textContent) {
+                    tokens += countTokens(model, textContent.getText());
+                } else if (item instanceof MessageContent) {
+                    tokens += contextConfig.getMediaTokens();
+                }
+            }
+        } else if (content != null) {
+            tokens += countTokens(model, content.toString());
+        }
+        return tokens;
+    }
+
+    public int countTokens(String model, String text) {
+        if (StrUtil.isEmpty(text)) {
+            return 0;
+        }
+        ChatTokenizer tokenizer = tokenizers.orderedStream()
+                .filter(t -> t.supports(model))
+                .findFirst()
+                .orElse(null);
+        if (tokenizer != null) {
+            try {
+                return tokenizer.countTokens(model, text);
+            } catch (Exception e) {
+                log.warn("Tokenizer {} failed for model {}, fallback to estimation", tokenizer.getClass().getSimpleName(), model, e);
+            }
+        }
+        return estimateTokens(text);
+    }
+
+    /**
+     * Approximate BPE tokenizers: one token per CJK character, one token per four other characters
+     */
+    static int estimateTokens(String text) {
+        int cjk = 0, others = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            switch (Character.UnicodeScript.of(codePoint)) {
+                case HAN:
+                case HIRAGANA:
+                case KATAKANA:
+                case HANGUL:
+                    cjk++;
+                    break;
+                default:
+                    others++;
+            }
+        }
+        return cjk + (others + 3) / 4;
+    }
+
+    private String extractText(ChatMessage message) {
+        Object content = message.getContent();
+        if (content instanceof List<?> contents) {
+            return contents.stream()
+                    .filter(TextContent.class::isInstance)
+                    .map(item -> ((TextContent) item).getText())
+                    .findFirst()
+                    .orElse(null);
+        }
+        return content == null ? null : content.toString();
+    }
+
+    private boolean isRole(ChatMessage message, ChatRole role) {
+        return StrUtil.equals(message.getRole(), role.getRole());
+    }
+
+    /**
+     * @param messages        messages to send, current message at the end
+     * @param tokens          estimated prompt tokens of the messages
+     * @param evictedMessages number of history messages left out
+     */
+    public record PackedContext(List<ChatMessage> messages, int tokens, int evictedMessages) {
+    }
+}
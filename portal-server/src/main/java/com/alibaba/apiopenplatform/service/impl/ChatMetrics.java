@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.apiopenplatform.config.ChatMetricsConfig;
+import com.alibaba.apiopenplatform.dto.params.chat.ChatContext;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatMetricResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and throughput meters of the chat pipeline, percentiles are kept over a sliding window.
+ * Internal model calls such as the search query rewrite are not recorded.
+ */
+@Component
+public class ChatMetrics {
+
+    public static final String PHASE_PRE_CHECKS = "pre_checks";
+
+    public static final String PHASE_HISTORY = "history";
+
+    public static final String PHASE_MCP_INIT = "mcp_init";
+
+    public static final String PHASE_FIRST_TOKEN = "first_token";
+
+    public static final String PHASE_TOTAL = "total";
+
+    private static final String PHASE_TIMER = "chat.phase";
+
+    private static final String TOOL_TIMER = "chat.tool.call";
+
+    private static final String INTER_TOKEN_TIMER = "chat.inter.token";
+
+    private static final String THROUGHPUT_SUMMARY = "chat.token.throughput";
+
+    private static final String CANCEL_SAVED_TIMER = "chat.cancel.saved";
+
+    private static final String CANCEL_WASTED_SUMMARY = "chat.cancel.wasted.tokens";
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    /**
+     * Tag value of a dimension unknown in the phase
+     */
+    private static final String NONE = "none";
+
+    /**
+     * Tag value of a tool not in the configured tool tags
+     */
+    private static final String OTHER_TOOL = "other";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ChatMetricsConfig config;
+
+    /**
+     * Inter-token timers are looked up for every answer chunk
+     */
+    private final Map<List<String>, Timer> interTokenTimers = new ConcurrentHashMap<>();
+
+    public ChatMetrics(MeterRegistry meterRegistry, ChatMetricsConfig config) {
+        this.meterRegistry = meterRegistry;
+        this.config = config;
+    }
+
+    public void recordPhase(String phase, String productId, String model, String gateway, long nanos) {
+        timer(PHASE_TIMER, "Duration of a phase of the chat pipeline")
+                .tags("phase", phase, "product", tag(productId), "model", tag(model), "gateway", tag(gateway))
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPhase(String phase, ChatContext chatContext, long nanos) {
+        if (chatContext.isInternal()) {
+            return;
+        }
+        recordPhase(phase, chatContext.getProductId(), chatContext.getModel(), chatContext.getGateway(), nanos);
+    }
+
+    public void recordToolCall(String mcpServer, String tool, String outcome, long nanos) {
+        timer(TOOL_TIMER, "Duration of a tool call")
+                .tags("mcp_server", tag(mcpServer), "tool", toolTag(tool), "outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordInterToken(ChatContext chatContext, long nanos) {
+        if (chatContext.isInternal()) {
+            return;
+        }
+        List<String> key = List.of(tag(chatContext.getProductId()), tag(chatContext.getModel()), tag(chatContext.getGateway()));
+        interTokenTimers.computeIfAbsent(key, k -> timer(INTER_TOKEN_TIMER, "Gap between answer chunks of a model stream")
+                        .tags("product", k.get(0), "model", k.get(1), "gateway", k.get(2))
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordThroughput(ChatContext chatContext, double tokensPerSecond) {
+        if (chatContext.isInternal()) {
+            return;
+        }
+        DistributionSummary.builder(THROUGHPUT_SUMMARY)
+                .description("Completion tokens per second of generation")
+                .baseUnit("tokens/s")
+                .tags("product", tag(chatContext.getProductId()), "model", tag(chatContext.getModel()),
+                        "gateway", tag(chatContext.getGateway()))
+                .publishPercentiles(PERCENTILES)
+                .distributionStatisticExpiry(Duration.ofMinutes(config.getWindowMinutes()))
+                .distributionStatisticBufferLength(config.getWindowBuckets())
+                .register(meterRegistry)
+                .record(tokensPerSecond);
+    }
+
+    /**
+     * Record a chat cancelled by the client
+     *
+     * @param wastedTokens tokens generated for the abandoned answer
+     * @param savedNanos   estimated generation time not spent, 0 if unknown
+     */
+    public void recordCancel(ChatContext chatContext, int wastedTokens, long savedNanos) {
+        if (chatContext.isInternal()) {
+            return;
+        }
+        DistributionSummary.builder(CANCEL_WASTED_SUMMARY)
+                .description("Completion tokens generated for answers abandoned by the client")
+                .baseUnit("tokens")
+                .tags("product", tag(chatContext.getProductId()), "model", tag(chatContext.getModel()))
+                .publishPercentiles(PERCENTILES)
+                .distributionStatisticExpiry(Duration.ofMinutes(config.getWindowMinutes()))
+                .distributionStatisticBufferLength(config.getWindowBuckets())
+                .register(meterRegistry)
+                .record(wastedTokens);
+        if (savedNanos > 0) {
+            recordSaved("model", savedNanos);
+        }
+    }
+
+    /**
+     * Record a tool call aborted because the chat was cancelled
+     *
+     * @param nanos      time spent before the abort
+     * @param savedNanos time left before the tool call would have timed out
+     */
+    public void recordToolCancel(String mcpServer, String tool, long nanos, long savedNanos) {
+        recordToolCall(mcpServer, tool, "cancelled", nanos);
+        if (savedNanos > 0) {
+            recordSaved("tool", savedNanos);
+        }
+    }
+
+    private void recordSaved(String stage, long nanos) {
+        timer(CANCEL_SAVED_TIMER, "Upstream time released early by cancelled chats")
+                .tags("stage", stage)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Percentiles of all chat meters over the sliding window
+     */
+    public List<ChatMetricResult> snapshot() {
+        List<ChatMetricResult> results = new ArrayList<>();
+        for (String name : List.of(PHASE_TIMER, TOOL_TIMER, INTER_TOKEN_TIMER, CANCEL_SAVED_TIMER)) {
+            meterRegistry.find(name).timers().forEach(timer -> results.add(
+                    toResult(timer, timer.takeSnapshot(), timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS), true)));
+        }
+        for (String name : List.of(THROUGHPUT_SUMMARY, CANCEL_WASTED_SUMMARY)) {
+            meterRegistry.find(name).summaries().forEach(summary -> results.add(
+                    toResult(summary, summary.takeSnapshot(), summary.mean(), summary.max(), false)));
+        }
+        return results;
+    }
+
+    private ChatMetricResult toResult(Meter meter, HistogramSnapshot snapshot, double mean, double max, boolean millis) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (Tag tag : meter.getId().getTags()) {
+            tags.put(tag.getKey(), tag.getValue());
+        }
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            String key = "p" + StrUtil.removeSuffix(String.valueOf(value.percentile() * 100), ".0");
+            percentiles.put(key, millis ? value.value(TimeUnit.MILLISECONDS) : value.value());
+        }
+        return ChatMetricResult.builder()
+                .name(meter.getId().getName())
+                .tags(tags)
+                .count(snapshot.count())
+                .mean(mean)
+                .max(max)
+                .percentiles(percentiles)
+                .build();
+    }
+
+    private Timer.Builder timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram(config.getHistogramTimers().contains(name))
+                .distributionStatisticExpiry(Duration.ofMinutes(config.getWindowMinutes()))
+                .distributionStatisticBufferLength(config.getWindowBuckets());
+    }
+
+    /**
+     * Tool names come from the MCP servers, only the configured ones get their own series
+     */
+    private String toolTag(String tool) {
+        return StrUtil.isBlank(tool) ? NONE : config.getToolTags().contains(tool) ? tool : OTHER_TOOL;
+    }
+
+    private static String tag(String value) {
+        return StrUtil.isBlank(value) ? NONE : value;
+    }
+}
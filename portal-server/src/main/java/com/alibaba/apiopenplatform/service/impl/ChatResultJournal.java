@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.alibaba.apiopenplatform.config.ChatPersistenceConfig;
+import com.alibaba.apiopenplatform.dto.result.chat.LlmInvokeResult;
+import com.alibaba.apiopenplatform.entity.Chat;
+import com.alibaba.apiopenplatform.support.enums.ChatStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind journal of chat results, updates of the same chat are coalesced and flushed in JDBC batches,
+ * together with the chat history of their conversations
+ */
+@Component
+@Slf4j
+public class ChatResultJournal {
+
+    private static final String UPDATE_CHAT_RESULT_SQL =
+            "UPDATE chat SET status = ?, answer = ?, chat_usage = ? WHERE chat_id = ?";
+
+    /**
+     * Chats may complete out of order, only the latest chat of a conversation is kept
+     */
+    private static final String UPSERT_CHAT_HISTORY_SQL =
+            "INSERT INTO chat_history (session_id, product_id, conversation_id, chat_id, chat_created_at) VALUES (?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE chat_id = IF(VALUES(chat_created_at) >= chat_created_at, VALUES(chat_id), chat_id), " +
+                    "chat_created_at = GREATEST(chat_created_at, VALUES(chat_created_at))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ChatAnswerCheckpointer answerCheckpointer;
+
+    private final BlockingTaskScheduler blockingTaskScheduler;
+
+    private final int batchSize;
+
+    /**
+     * Latest pending result of each chat
+     */
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Flush order of pending chats, bounded
+     */
+    private final BlockingQueue<String> order;
+
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Timer flushTimer;
+
+    private volatile boolean closed;
+
+    public ChatResultJournal(JdbcTemplate jdbcTemplate, ChatAnswerCheckpointer answerCheckpointer,
+                             BlockingTaskScheduler blockingTaskScheduler, ChatPersistenceConfig persistenceConfig,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.answerCheckpointer = answerCheckpointer;
+        this.blockingTaskScheduler = blockingTaskScheduler;
+        this.batchSize = persistenceConfig.getJournalBatchSize();
+        this.order = new ArrayBlockingQueue<>(persistenceConfig.getJournalCapacity());
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ChatResultJournal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, persistenceConfig.getJournalFlushIntervalMillis(),
+                persistenceConfig.getJournalFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+
+        Gauge.builder("chat.journal.queue.depth", order, BlockingQueue::size)
+                .description("Number of chat results waiting to be written")
+                .register(meterRegistry);
+        TimeGauge.builder("chat.journal.lag", this, TimeUnit.MILLISECONDS, ChatResultJournal::lagMillis)
+                .description("Age of the oldest chat result waiting to be written")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("chat.journal.flush")
+                .description("Time of writing one batch of chat results")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record the final result of a chat, never blocks the caller
+     */
+    public void append(Chat chat, LlmInvokeResult result) {
+        Entry entry = new Entry(chat, result, System.currentTimeMillis());
+        if (closed) {
+            writeLater(entry);
+            return;
+        }
+
+        AtomicBoolean added = new AtomicBoolean();
+        Entry current = pending.compute(chat.getChatId(), (chatId, previous) -> {
+            if (previous == null) {
+                added.set(true);
+                return entry;
+            }
+            // Keep the original enqueue time so the lag is not hidden by coalescing
+            return new Entry(chat, result, previous.enqueuedAt());
+        });
+
+        if (added.get() && !order.offer(chat.getChatId())) {
+            // Journal is full, write this one through the persistence scheduler
+            if (pending.remove(chat.getChatId(), current)) {
+                writeLater(current);
+            }
+            return;
+        }
+
+        if (order.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushRequested.set(false);
+                    flushSafely();
+                });
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void writeLater(Entry entry) {
+        blockingTaskScheduler.fromRunnable(() -> write(List.of(entry)))
+                .subscribe(null, e -> log.error("Failed to update chat result, chatId={}", entry.chat().getChatId(), e));
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to flush chat result journal", e);
+        }
+    }
+
+    private synchronized void flush() {
+        List<String> chatIds = new ArrayList<>(batchSize);
+        while (order.drainTo(chatIds, batchSize) > 0) {
+            List<Entry> entries = chatIds.stream()
+                    .map(pending::remove)
+                    .filter(Objects::nonNull)
+                    .toList();
+            chatIds.clear();
+            write(entries);
+        }
+    }
+
+    private void write(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Timer.Sample sample = Timer.start();
+        try {
+            List<Entry> written = writeResults(reassembleAnswers(entries));
+            writeHistories(written);
+            discardCheckpoints(written);
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    /**
+     * Answers of streamed chats are not kept in memory as a whole, read them back from their checkpoints
+     */
+    private List<Entry> reassembleAnswers(List<Entry> entries) {
+        List<String> chatIds = entries.stream()
+                .filter(entry -> entry.result().getAnswer() == null)
+                .map(entry -> entry.chat().getChatId())
+                .toList();
+        if (chatIds.isEmpty()) {
+            return entries;
+        }
+
+        Map<String, String> answers;
+        try {
+            answers = answerCheckpointer.reassemble(chatIds);
+        } catch (DataAccessException e) {
+            // Written without answers, their checkpoints are kept for resume
+            log.error("Failed to reassemble answers of {} chats", chatIds.size(), e);
+            return entries;
+        }
+        return entries.stream()
+                .map(entry -> entry.result().getAnswer() != null ?
+                        entry : entry.withAnswer(answers.getOrDefault(entry.chat().getChatId(), "")))
+                .toList();
+    }
+
+    /**
+     * @return entries written
+     */
+    private List<Entry> writeResults(List<Entry> entries) {
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_CHAT_RESULT_SQL, entries, entries.size(), (ps, entry) -> {
+                ps.setString(1, entry.status().name());
+                ps.setString(2, entry.result().getAnswer());
+                ps.setString(3, entry.usageJson());
+                ps.setString(4, entry.chat().getChatId());
+            });
+            return entries;
+        } catch (DataAccessException e) {
+            // Fall back to row by row, so one bad row does not lose the whole batch
+            log.warn("Batch update of {} chat results failed, retry one by one", entries.size(), e);
+            List<Entry> written = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                try {
+                    jdbcTemplate.update(UPDATE_CHAT_RESULT_SQL, entry.status().name(), entry.result().getAnswer(),
+                            entry.usageJson(), entry.chat().getChatId());
+                    written.add(entry);
+                } catch (DataAccessException ex) {
+                    log.error("Failed to update chat result, chatId={}", entry.chat().getChatId(), ex);
+                }
+            }
+            return written;
+        }
+    }
+
+    private void writeHistories(List<Entry> entries) {
+        // Latest successful chat of each conversation in the batch
+        Map<List<String>, Chat> latestChats = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            Chat chat = entry.chat();
+            if (entry.status() != ChatStatus.SUCCESS || StrUtil.isBlank(chat.getProductId()) || chat.getCreateAt() == null
+                    || StrUtil.isBlank(chat.getQuestion()) || StrUtil.isBlank(entry.result().getAnswer())) {
+                continue;
+            }
+            latestChats.merge(Arrays.asList(chat.getSessionId(), chat.getProductId(), chat.getConversationId()), chat,
+                    (previous, current) -> current.getCreateAt().isBefore(previous.getCreateAt()) ? previous : current);
+        }
+        if (latestChats.isEmpty()) {
+            return;
+        }
+
+        List<Chat> chats = new ArrayList<>(latestChats.values());
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_CHAT_HISTORY_SQL, chats, chats.size(), (ps, chat) -> {
+                ps.setString(1, chat.getSessionId());
+                ps.setString(2, chat.getProductId());
+                ps.setString(3, chat.getConversationId());
+                ps.setString(4, chat.getChatId());
+                ps.setTimestamp(5, Timestamp.valueOf(chat.getCreateAt()));
+            });
+        } catch (DataAccessException e) {
+            log.error("Failed to update chat history of {} chats", chats.size(), e);
+        }
+    }
+
+    private void discardCheckpoints(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        // Only after the answer is written, so a crash in between still leaves the chunks to resume from
+        List<String> chatIds = entries.stream()
+                .filter(entry -> entry.result().getAnswer() != null)
+                .map(entry -> entry.chat().getChatId())
+                .toList();
+        if (chatIds.isEmpty()) {
+            return;
+        }
+        try {
+            answerCheckpointer.discard(chatIds);
+        } catch (DataAccessException e) {
+            log.warn("Failed to discard answer checkpoints of {} chats", chatIds.size(), e);
+        }
+    }
+
+    private double lagMillis() {
+        String head = order.peek();
+        Entry entry = head == null ? null : pending.get(head);
+        return entry == null ? 0 : System.currentTimeMillis() - entry.enqueuedAt();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        closed = true;
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Chat result journal flusher did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Drain what is left before the datasource goes away
+        flush();
+        log.info("Chat result journal drained");
+    }
+
+    private record Entry(Chat chat, LlmInvokeResult result, long enqueuedAt) {
+
+        ChatStatus status() {
+            return result.isSuccess() ? ChatStatus.SUCCESS : ChatStatus.FAILED;
+        }
+
+        Entry withAnswer(String answer) {
+            LlmInvokeResult withAnswer = LlmInvokeResult.builder()
+                    .success(result.isSuccess())
+                    .answer(answer)
+                    .usage(result.getUsage())
+                    .build();
+            return new Entry(chat, withAnswer, enqueuedAt);
+        }
+
+        String usageJson() {
+            return result.getUsage() == null ? null : JSONUtil.toJsonStr(result.getUsage());
+        }
+    }
+}
@@ -1,53 +1,61 @@
 package com.alibaba.apiopenplatform.service.impl;
 
-import cn.hutool.core.codec.Base64;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.collection.CollectionUtil;
-import cn.hutool.core.util.ArrayUtil;
 import cn.hutool.core.util.StrUtil;
+import com.alibaba.apiopenplatform.config.ChatContextConfig;
 import com.alibaba.apiopenplatform.core.constant.Resources;
 import com.alibaba.apiopenplatform.core.event.ChatSessionDeletingEvent;
 import com.alibaba.apiopenplatform.core.exception.BusinessException;
+import com.alibaba.apiopenplatform.core.exception.ChatRejectedException;
 import com.alibaba.apiopenplatform.core.exception.ErrorCode;
 import com.alibaba.apiopenplatform.core.security.ContextHolder;
 import com.alibaba.apiopenplatform.core.utils.CacheUtil;
 import com.alibaba.apiopenplatform.core.utils.IdGenerator;
 import com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAttachmentContent;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatComparisonResult;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatMetricResult;
 import com.alibaba.apiopenplatform.dto.result.consumer.CredentialContext;
+import com.alibaba.apiopenplatform.dto.result.mcp.MCPConfigResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductRefResult;
 import com.alibaba.apiopenplatform.entity.Chat;
-import com.alibaba.apiopenplatform.entity.ChatAttachment;
+import com.alibaba.apiopenplatform.entity.ChatHistory;
 import com.alibaba.apiopenplatform.entity.ChatSession;
 import com.alibaba.apiopenplatform.dto.result.product.ProductResult;
 import com.alibaba.apiopenplatform.entity.ProductSubscription;
-import com.alibaba.apiopenplatform.repository.ChatAttachmentRepository;
+import com.alibaba.apiopenplatform.repository.ChatHistoryRepository;
 import com.alibaba.apiopenplatform.repository.SubscriptionRepository;
 import com.alibaba.apiopenplatform.service.*;
 import com.alibaba.apiopenplatform.repository.ChatRepository;
 import com.alibaba.apiopenplatform.dto.params.chat.CreateChatParam;
+import com.alibaba.apiopenplatform.dto.params.chat.CreateFanOutChatParam;
 import com.alibaba.apiopenplatform.dto.params.chat.InvokeModelParam;
-import com.alibaba.apiopenplatform.dto.result.chat.LlmInvokeResult;
 import com.alibaba.apiopenplatform.support.chat.attachment.ChatAttachmentConfig;
 import com.alibaba.apiopenplatform.support.chat.ChatMessage;
+import com.alibaba.apiopenplatform.support.chat.ChatUsage;
 import com.alibaba.apiopenplatform.support.chat.content.*;
 import com.alibaba.apiopenplatform.support.chat.mcp.McpServerConfig;
 import com.alibaba.apiopenplatform.support.enums.ChatAttachmentType;
 import com.alibaba.apiopenplatform.support.enums.ChatRole;
-import com.alibaba.apiopenplatform.support.enums.ChatStatus;
 import com.alibaba.apiopenplatform.support.enums.ProductType;
+import com.alibaba.apiopenplatform.support.product.ModelFeature;
 import com.github.benmanes.caffeine.cache.Cache;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import jakarta.servlet.http.HttpServletResponse;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -61,7 +69,9 @@ public class ChatServiceImpl implements ChatService {
 
     private final ChatRepository chatRepository;
 
-    private final ChatAttachmentRepository chatAttachmentRepository;
+    private final ChatHistoryRepository chatHistoryRepository;
+
+    private final ChatAttachmentService chatAttachmentService;
 
     private final SubscriptionRepository subscriptionRepository;
 
@@ -71,37 +81,205 @@ public class ChatServiceImpl implements ChatService {
 
     private final GatewayService gatewayService;
 
+    private final TalkSearchService talkSearchService;
+
+    private final ChatAdmissionGate admissionGate;
+
+    private final ChatMetrics chatMetrics;
+
     private final ConsumerService consumerService;
 
+    private final BlockingTaskScheduler blockingTaskScheduler;
+
+    private final ChatResultJournal chatResultJournal;
+
+    private final ChatAnswerCheckpointer answerCheckpointer;
+
+    private final GatewayEndpointBalancer endpointBalancer;
+
+    private final ChatContextWindow contextWindow;
+
+    private final ChatContextConfig contextConfig;
+
     private final Cache<String, List<String>> cache = CacheUtil.newCache(5);
 
     public Flux<ChatAnswerMessage> chat(CreateChatParam param, HttpServletResponse response) {
-        performAllChecks(param);
+        // Checked before the stream starts, so an invalid request is answered with its error status
+        String consumerId = checkChat(param.getSessionId(), List.of(param.getProductId()), param.getMcpProducts(),
+                param.getProductId());
+        // Captured on the request thread, the stages after admission run on threads without the context
+        BlockingTaskScheduler.CallerContext caller = blockingTaskScheduler.capture();
+        String userId = contextHolder.getUser();
+
+        // Over the rate limits is rejected, over the concurrency limits waits in a fair queue
+        return admissionGate.acquire(new ChatAdmissionGate.Key(userId, consumerId, param.getProductId()))
+                // Blocking repository and gateway calls run on the persistence scheduler, not on request or event loop threads
+                .flatMapMany(permit -> streamChat(blockingTaskScheduler.fromCallable(caller,
+                                () -> prepareChat(param, userId, consumerId, caller)), param, response)
+                        .doFinally(s -> permit.release()))
+                // Response is already committed as event stream, errors can only be returned as messages
+                .onErrorResume(e -> toErrorMessages(e, param.getSessionId()));
+    }
+
+    @Override
+    public Flux<ChatAnswerMessage> fanOutChat(CreateFanOutChatParam param, HttpServletResponse response) {
+        List<String> productIds = param.getProductIds().stream().distinct().toList();
+        Map<String, ChatComparisonResult> results = new ConcurrentHashMap<>();
+        long startNanos = System.nanoTime();
+        String consumerId = checkChat(param.getSessionId(), productIds, param.getMcpProducts(), null);
+        BlockingTaskScheduler.CallerContext caller = blockingTaskScheduler.capture();
+        String userId = contextHolder.getUser();
+
+        // The fan-out is admitted as one unit, so its products do not queue behind each other's developer limit
+        return admissionGate.acquire(new ChatAdmissionGate.Key(userId, consumerId, productIds))
+                .flatMapMany(permit -> blockingTaskScheduler.fromCallable(caller,
+                                () -> prepareFanOut(param, userId, consumerId, caller))
+                        .flatMapMany(shared -> fanOut(param, productIds, shared, results, startNanos, response))
+                        .doFinally(s -> permit.release()))
+                .concatWith(Flux.defer(() -> Flux.just(ChatAnswerMessage.builder()
+                        .msgType(ChatAnswerMessage.MessageType.COMPARISON)
+                        .content(productIds.stream().map(results::get).filter(Objects::nonNull).toList())
+                        .build())))
+                .onErrorResume(e -> toErrorMessages(e, param.getSessionId()));
+    }
+
+    private Flux<ChatAnswerMessage> fanOut(CreateFanOutChatParam param, List<String> productIds, SharedChat shared,
+                                           Map<String, ChatComparisonResult> results, long startNanos,
+                                           HttpServletResponse response) {
+        // Every product is prepared and streamed on its own, a failed product does not stop the others
+        return Flux.merge(productIds.stream()
+                .map(productId -> {
+                    ChatComparisonResult result = ChatComparisonResult.builder().productId(productId).build();
+                    results.put(productId, result);
+                    return fanOutProduct(param.toChatParam(productId), shared, response)
+                            .doOnNext(message -> {
+                                message.setProductId(productId);
+                                recordComparison(result, message, startNanos);
+                            })
+                            .doOnTerminate(() -> result.setElapsedMillis(
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+                })
+                .toList());
+    }
+
+    private Flux<ChatAnswerMessage> fanOutProduct(CreateChatParam param, SharedChat shared, HttpServletResponse response) {
+        // Runs on the thread that emitted the shared chat, the portal and user are those captured on the request thread
+        return streamChat(blockingTaskScheduler.fromCallable(shared.caller(), () -> prepareProductChat(param, shared)), param, response)
+                .onErrorResume(e -> toErrorMessages(e, param.getSessionId()));
+    }
+
+    private void recordComparison(ChatComparisonResult result, ChatAnswerMessage message, long startNanos) {
+        if (result.getChatId() == null) {
+            result.setChatId(message.getChatId());
+        }
+        if (message.getMsgType() != ChatAnswerMessage.MessageType.USER && result.getFirstTokenMillis() == null) {
+            result.setFirstTokenMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+        ChatUsage chatUsage = message.getChatUsage();
+        if (chatUsage != null) {
+            result.setPromptTokens(chatUsage.getPromptTokens());
+            result.setCompletionTokens(chatUsage.getCompletionTokens());
+            result.setTotalTokens(chatUsage.getTotalTokens());
+            result.setResponseCached(chatUsage.getResponseCached());
+        }
+        if (message.getMsgType() == ChatAnswerMessage.MessageType.ERROR) {
+            result.setError(message.getError());
+            result.setMessage(message.getMessage());
+        }
+    }
+
+    private Flux<ChatAnswerMessage> toErrorMessages(Throwable e, String sessionId) {
+        if (e instanceof ChatRejectedException re) {
+            log.warn("Chat not admitted, error: {}, message: {}", re.getError(), re.getMessage());
+            return Flux.just(ChatAnswerMessage.ofError(re.getError().name(), re.getMessage()));
+        }
+        if (e instanceof BusinessException be) {
+            log.warn("Chat rejected, code: {}, message: {}", be.getCode(), be.getMessage());
+            return Flux.just(ChatAnswerMessage.ofError(be.getCode(), be.getMessage()));
+        }
+        log.error("Failed to prepare chat, sessionId={}", sessionId, e);
+        return Flux.just(ChatAnswerMessage.ofError(ErrorCode.INTERNAL_ERROR.name(), e.getMessage()));
+    }
+
+    private Flux<ChatAnswerMessage> streamChat(Mono<PreparedChat> preparedChat, CreateChatParam param, HttpServletResponse response) {
+        return preparedChat
+                // Search results are added to the question within the retrieval budget
+                .flatMap(prepared -> talkSearchService.buildSearchMessages(prepared.invokeModelParam(), param, prepared.portalId())
+                        .map(messages -> {
+                            prepared.invokeModelParam().setChatMessages(messages);
+                            return prepared;
+                        }))
+                // Invoke LLM
+                // Result is written behind by the journal, not on the event loop
+                .flatMapMany(prepared -> llmService.invokeLLM(prepared.invokeModelParam(), response,
+                        r -> chatResultJournal.append(prepared.chat(), r)));
+    }
+
+    @Override
+    public Flux<ChatAnswerMessage> resumeChat(String chatId, int offset) {
+        if (offset < 0) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER, "offset must not be negative");
+        }
+        return blockingTaskScheduler.fromCallable(() -> findUserChat(chatId))
+                .flatMapMany(chat -> answerCheckpointer.resume(chat, offset))
+                .onErrorResume(BusinessException.class,
+                        e -> Flux.just(ChatAnswerMessage.ofError(e.getCode(), e.getMessage())));
+    }
+
+    @Override
+    public List<ChatMetricResult> getChatMetrics() {
+        return chatMetrics.snapshot();
+    }
+
+    private Chat findUserChat(String chatId) {
+        return chatRepository.findByChatId(chatId)
+                .filter(chat -> StrUtil.equals(chat.getUserId(), contextHolder.getUser()))
+                .orElseThrow(() -> new BusinessException(ErrorCode.NOT_FOUND, Resources.CHAT, chatId));
+    }
+
+    private PreparedChat prepareChat(CreateChatParam param, String userId, String consumerId,
+                                     BlockingTaskScheduler.CallerContext caller) {
 //        sessionService.updateStatus(param.getSessionId(), ChatSessionStatus.PROCESSING);
+        return prepareProductChat(param, new SharedChat(userId, consumerId, buildMcpServerConfigs(param.getMcpProducts()),
+                consumerService.getDefaultCredential(userId), caller));
+    }
+
+    /**
+     * MCP servers and credential are resolved once for all products of a fan-out chat
+     */
+    private SharedChat prepareFanOut(CreateFanOutChatParam param, String userId, String consumerId,
+                                     BlockingTaskScheduler.CallerContext caller) {
+        return new SharedChat(userId, consumerId, buildMcpServerConfigs(param.getMcpProducts()),
+                consumerService.getDefaultCredential(userId), caller);
+    }
 
-        Chat chat = createChat(param);
+    private PreparedChat prepareProductChat(CreateChatParam param, SharedChat shared) {
+        Chat chat = createChat(param, shared.userId());
+
+        // Product config
+        ProductResult product = productService.getProduct(param.getProductId());
 
         // Current message, contains user message and attachments
         ChatMessage currentMessage = buildUserMessage(chat);
 
         // History messages, contains user message and assistant message
-        List<ChatMessage> historyMessages = buildHistoryMessages(param);
-
-        List<ChatMessage> chatMessages = mergeAndTruncateMessages(currentMessage, historyMessages);
+        long historyStartNanos = System.nanoTime();
+        ModelFeature modelFeature = AbstractLlmService.getOrDefaultModelFeature(product);
+        List<ChatMessage> historyMessages = buildHistoryMessages(param, modelFeature);
 
-        List<McpServerConfig> mcpResults = buildMcpServerConfigs(param);
+        // Keep the newest history that fits into the model context
+        ChatContextWindow.PackedContext context = contextWindow.pack(historyMessages, currentMessage, modelFeature);
+        chatMetrics.recordPhase(ChatMetrics.PHASE_HISTORY, param.getProductId(), modelFeature.getModel(), null,
+                System.nanoTime() - historyStartNanos);
 
-        InvokeModelParam invokeModelParam = buildInvokeModelParam(param, chatMessages, mcpResults, chat);
-
-        // Invoke LLM
-        return llmService.invokeLLM(invokeModelParam, response, r -> updateChatResult(chat.getChatId(), r));
+        return new PreparedChat(chat, buildInvokeModelParam(param, product, context, shared, chat), shared.caller().portalId());
     }
 
-    private Chat createChat(CreateChatParam param) {
+    private Chat createChat(CreateChatParam param, String userId) {
         String chatId = IdGenerator.genChatId();
         Chat chat = param.convertTo();
         chat.setChatId(chatId);
-        chat.setUserId(contextHolder.getUser());
+        chat.setUserId(userId);
 
         // Sequence represent the number of tries for this question
         Integer sequence = chatRepository.findCurrentSequence(param.getSessionId(), param.getConversationId(),
@@ -111,15 +289,28 @@ public class ChatServiceImpl implements ChatService {
         return chatRepository.save(chat);
     }
 
-    private void performAllChecks(CreateChatParam param) {
-        ChatSession session = sessionService.findUserSession(param.getSessionId());
+    /**
+     * @return primary consumer of the user
+     */
+    private String checkChat(String sessionId, Collection<String> productIds, List<String> mcpProducts,
+                             String metricProductId) {
+        long startNanos = System.nanoTime();
+        String consumerId = performAllChecks(sessionId, productIds, mcpProducts);
+        chatMetrics.recordPhase(ChatMetrics.PHASE_PRE_CHECKS, metricProductId, null, null, System.nanoTime() - startNanos);
+        return consumerId;
+    }
+
+    /**
+     * @return primary consumer of the user
+     */
+    private String performAllChecks(String sessionId, Collection<String> productIds, List<String> mcpProducts) {
+        ChatSession session = sessionService.findUserSession(sessionId);
 
-        if (!session.getProducts().contains(param.getProductId())) {
+        if (!session.getProducts().containsAll(productIds)) {
             throw new BusinessException(ErrorCode.INVALID_REQUEST, "Product not in current session");
         }
 
         // check mcpServers count is less than 10, and all of them are subscribed
-        List<String> mcpProducts = param.getMcpProducts();
         if (CollUtil.isNotEmpty(mcpProducts) && mcpProducts.size() > 10) {
             throw new BusinessException(ErrorCode.INVALID_REQUEST, "MCP servers count is more than 10, currently max size is 10");
         }
@@ -143,11 +334,11 @@ public class ChatServiceImpl implements ChatService {
         // check edit
 
         // check once more
+        return consumerId;
     }
 
 
-    private List<McpServerConfig> buildMcpServerConfigs(CreateChatParam param) {
-        List<String> mcpProducts = param.getMcpProducts();
+    private List<McpServerConfig> buildMcpServerConfigs(List<String> mcpProducts) {
         if (CollectionUtil.isEmpty(mcpProducts)) {
             return Collections.emptyList();
         }
@@ -155,65 +346,75 @@ public class ChatServiceImpl implements ChatService {
         mcpProducts.forEach(productId -> {
             ProductResult product = productService.getProduct(productId);
             if (product.getType() == ProductType.MCP_SERVER && product.getMcpConfig() != null) {
-                mcpServerConfigs.add(product.getMcpConfig().toStandardMcpServer());
+                MCPConfigResult mcpConfig = product.getMcpConfig();
+                if (mcpConfig.needsGatewayIp()) {
+                    // Gateway without domain, pick a healthy gateway IP
+                    String gatewayId = productService.getProductRef(productId).getGatewayId();
+                    mcpConfig = mcpConfig.withGatewayIp(endpointBalancer.choose(cache.get(gatewayId, gatewayService::fetchGatewayIps)));
+                }
+                McpServerConfig mcpServerConfig = mcpConfig.toStandardMcpServer();
+                mcpServerConfig.setProductId(productId);
+                mcpServerConfigs.add(mcpServerConfig);
             }
         });
         return mcpServerConfigs;
     }
 
-    private List<ChatMessage> buildHistoryMessages(CreateChatParam param) {
-        // 1. Get successful chat records
-        List<Chat> chats = chatRepository.findBySessionIdAndStatus(
-                param.getSessionId(),
-                ChatStatus.SUCCESS,
-                Sort.by(Sort.Direction.ASC, "createAt")
-        );
+    private List<ChatMessage> buildHistoryMessages(CreateChatParam param, ModelFeature modelFeature) {
+        // Newest conversations are loaded page by page until they fill the context budget of the model,
+        // the context window evicts what does not fit
+        int budget = contextWindow.budget(modelFeature);
+        int pageSize = contextConfig.getHistoryPageSize();
+        Deque<ChatMessage> chatMessages = new ArrayDeque<>();
+        int usedTokens = 0;
+        int loaded = 0;
+        for (int page = 0; usedTokens <= budget && loaded < contextConfig.getMaxHistoryConversations(); page++) {
+            // 1. Get latest conversations of the same product, skip current conversation
+            List<ChatHistory> histories = chatHistoryRepository.findBySessionIdAndProductIdAndConversationIdNot(
+                    param.getSessionId(),
+                    param.getProductId(),
+                    param.getConversationId(),
+                    PageRequest.of(page, pageSize, Sort.by(Sort.Direction.DESC, "chatCreateAt"))
+            );
+            loaded += histories.size();
+
+            // 2. Convert the latest answer of each conversation to chat messages, newest first
+            for (Chat chat : findLatestChats(histories)) {
+                // One chat consists of two messages: user message and assistant message
+                ChatMessage userMessage = buildUserMessage(chat);
+                ChatMessage assistantMessage = buildAssistantMessage(chat);
+                chatMessages.addFirst(assistantMessage);
+                chatMessages.addFirst(userMessage);
+                usedTokens += contextWindow.countTokens(modelFeature.getModel(), userMessage)
+                        + contextWindow.countTokens(modelFeature.getModel(), assistantMessage);
+            }
 
-        if (CollUtil.isEmpty(chats)) {
-            return CollUtil.empty(List.class);
+            if (histories.size() < pageSize) {
+                break;
+            }
         }
 
-        // 2. Group by conversation and filter invalid chats and current conversation
-        Map<String, List<Chat>> chatGroups = chats.stream()
-                .filter(chat -> StrUtil.isNotBlank(chat.getQuestion()) && StrUtil.isNotBlank(chat.getAnswer()))
-                .filter(chat -> !param.getConversationId().equals(chat.getConversationId())) // Skip current conversation
-                // Ensure the same product
-                .filter(chat -> StrUtil.equals(chat.getProductId(), param.getProductId()))
-                .collect(Collectors.groupingBy(Chat::getConversationId));
-
-
-        // 3. Get latest answer for each conversation
-        List<Chat> latestChats = chatGroups.values().stream()
-                .map(conversationChats -> {
-                    // 3.1 Find the latest question ID
-                    String latestQuestionId = conversationChats.stream()
-                            .max(Comparator.comparing(Chat::getCreateAt))
-                            .map(Chat::getQuestionId)
-                            .orElse(null);
-
-                    if (StrUtil.isBlank(latestQuestionId)) {
-                        return null;
-                    }
-
-                    // 3.2 Get the latest answer for this question
-                    return conversationChats.stream()
-                            .filter(chat -> latestQuestionId.equals(chat.getQuestionId()))
-                            .max(Comparator.comparing(Chat::getCreateAt))
-                            .orElse(null);
-                })
-                .filter(Objects::nonNull)
-                .sorted(Comparator.comparing(Chat::getCreateAt))
-                .toList();
+        return new ArrayList<>(chatMessages);
+    }
 
-        // 4. Convert to chat messages
-        List<ChatMessage> chatMessages = new ArrayList<>();
-        for (Chat chat : latestChats) {
-            // One chat consists of two messages: user message and assistant message
-            chatMessages.add(buildUserMessage(chat));
-            chatMessages.add(buildAssistantMessage(chat));
+    /**
+     * @return chats of the histories, newest first
+     */
+    private List<Chat> findLatestChats(List<ChatHistory> histories) {
+        if (CollUtil.isEmpty(histories)) {
+            return Collections.emptyList();
         }
 
-        return chatMessages;
+        Map<String, Chat> chats = chatRepository.findByChatIdIn(
+                        histories.stream().map(ChatHistory::getChatId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Chat::getChatId, chat -> chat));
+
+        return histories.stream()
+                .sorted(Comparator.comparing(ChatHistory::getChatCreateAt).reversed())
+                .map(history -> chats.get(history.getChatId()))
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     private ChatMessage buildUserMessage(Chat chat) {
@@ -226,19 +427,20 @@ public class ChatServiceImpl implements ChatService {
                     .build();
         }
 
-        // All attachments
-        List<ChatAttachment> attachments = chatAttachmentRepository.findByAttachmentIdIn(
+        // All attachments, decoded text and data URLs are cached by attachment service
+        Map<String, ChatAttachmentContent> contents = chatAttachmentService.getAttachmentContents(
                 attachmentConfigs.stream()
                         .map(ChatAttachmentConfig::getAttachmentId)
                         .collect(Collectors.toList())
         );
+        List<ChatAttachmentContent> attachments = attachmentConfigs.stream()
+                .map(config -> contents.get(config.getAttachmentId()))
+                .filter(Objects::nonNull)
+                .toList();
 
         // Traverse to determine file types
         boolean withTextContent = false, withMediaContent = false;
-        for (ChatAttachment attachment : attachments) {
-            if (attachment == null || ArrayUtil.isEmpty(attachment.getData())) {
-                continue;
-            }
+        for (ChatAttachmentContent attachment : attachments) {
             if (attachment.getType() == ChatAttachmentType.TEXT) {
                 withTextContent = true;
             } else {
@@ -256,24 +458,17 @@ public class ChatServiceImpl implements ChatService {
         }
 
         List<MessageContent> mediaContents = new ArrayList<>();
-        for (ChatAttachment attachment : attachments) {
-            if (attachment == null || ArrayUtil.isEmpty(attachment.getData())) {
-                continue;
-            }
-
+        for (ChatAttachmentContent attachment : attachments) {
             // Handle text files
             if (attachment.getType() == ChatAttachmentType.TEXT) {
-                String text = new String(attachment.getData(), StandardCharsets.UTF_8);
                 textContent.append("## ")
                         .append(attachment.getName())
                         .append("\n")
-                        .append(text)
+                        .append(attachment.getText())
                         .append("\n\n");
             } else {
                 // Handle media files
-                String base64String = Base64.encode(attachment.getData());
-                String dataString = StrUtil.isBlank(attachment.getMimeType()) ?
-                        base64String : String.format("data:%s;base64,%s", attachment.getMimeType(), base64String);
+                String dataString = attachment.getDataUrl();
 
                 MessageContent content = null;
                 switch (attachment.getType()) {
@@ -318,33 +513,15 @@ public class ChatServiceImpl implements ChatService {
                 .build();
     }
 
-    private List<ChatMessage> mergeAndTruncateMessages(ChatMessage currentMessage, List<ChatMessage> historyMessages) {
-        List<ChatMessage> messages = new ArrayList<>();
-
-        // Add truncated history messages first
-        if (!CollUtil.isEmpty(historyMessages)) {
-            int maxHistorySize = 20; // Maximum history messages to keep
-            int startIndex = Math.max(0, historyMessages.size() - maxHistorySize);
-            messages.addAll(historyMessages.subList(startIndex, historyMessages.size()));
-        }
-
-        // Add current message at the end
-        messages.add(currentMessage);
-
-        return messages;
-    }
-
-    private InvokeModelParam buildInvokeModelParam(CreateChatParam param, List<ChatMessage> chatMessages, List<McpServerConfig> mcpServerConfigs, Chat chat) {
-        // Get product config
-        ProductResult productResult = productService.getProduct(param.getProductId());
-
+    private InvokeModelParam buildInvokeModelParam(CreateChatParam param, ProductResult productResult,
+                                                   ChatContextWindow.PackedContext context, SharedChat shared, Chat chat) {
         // Get gateway IPs
         ProductRefResult productRef = productService.getProductRef(param.getProductId());
         String gatewayId = productRef.getGatewayId();
         List<String> gatewayIps = cache.get(gatewayId, gatewayService::fetchGatewayIps);
 
-        // Get authentication info
-        CredentialContext credentialContext = consumerService.getDefaultCredential(contextHolder.getUser());
+        // Authentication info
+        CredentialContext credentialContext = shared.credentialContext();
 
         return InvokeModelParam.builder()
                 .chatId(chat.getChatId())
@@ -352,24 +529,16 @@ public class ChatServiceImpl implements ChatService {
                 .product(productResult)
                 .requestHeaders(credentialContext.getHeaders())
                 .queryParams(credentialContext.getQueryParams())
-                .chatMessages(chatMessages)
+                .chatMessages(context.messages())
+                .contextTokens(context.tokens())
                 .stream(param.getStream())
                 .enableWebSearch(param.getEnableWebSearch())
                 .gatewayIps(gatewayIps)
-                .mcpServerConfigs(mcpServerConfigs)
+                .mcpServerConfigs(shared.mcpServerConfigs())
                 .credentialContext(credentialContext)
                 .build();
     }
 
-    private void updateChatResult(String chatId, LlmInvokeResult result) {
-        chatRepository.findByChatId(chatId).ifPresent(chat -> {
-            chat.setAnswer(result.getAnswer());
-            chat.setStatus(result.isSuccess() ? ChatStatus.SUCCESS : ChatStatus.FAILED);
-            chat.setChatUsage(result.getUsage());
-            chatRepository.save(chat);
-        });
-    }
-
     @EventListener
     @Async("taskExecutor")
     @Override
@@ -377,10 +546,26 @@ public class ChatServiceImpl implements ChatService {
         String sessionId = event.getSessionId();
         try {
             chatRepository.deleteAllBySessionId(sessionId);
+            chatHistoryRepository.deleteAllBySessionId(sessionId);
 
             log.info("Completed cleanup chat records for session {}", sessionId);
         } catch (Exception e) {
             log.error("Failed to cleanup chat records for session {}: {}", sessionId, e.getMessage());
         }
     }
+
+    /**
+     * @param portalId portal of the caller, later stages run on threads without the portal context
+     */
+    private record PreparedChat(Chat chat, InvokeModelParam invokeModelParam, String portalId) {
+    }
+
+    /**
+     * Resolved once per request, shared by the products of a fan-out chat
+     *
+     * @param caller context of the request thread, restored for stages running on other threads
+     */
+    private record SharedChat(String userId, String consumerId, List<McpServerConfig> mcpServerConfigs,
+                              CredentialContext credentialContext, BlockingTaskScheduler.CallerContext caller) {
+    }
 }
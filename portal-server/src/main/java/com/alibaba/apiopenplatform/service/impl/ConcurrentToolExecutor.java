@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatToolConfig;
+import com.alibaba.apiopenplatform.dto.params.chat.McpToolMeta;
+import com.alibaba.apiopenplatform.dto.params.chat.ToolContext;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executes tool calls of one model turn concurrently.
+ * <p>
+ * Calls run on a bounded scheduler, calls to the same MCP server are capped by
+ * {@link ChatToolConfig#getMaxConcurrencyPerServer()}, and results are emitted as soon as they complete.
+ */
+@Component
+@Slf4j
+public class ConcurrentToolExecutor {
+
+    private final ChatToolConfig toolConfig;
+
+    private final Scheduler scheduler;
+
+    private final ChatMetrics chatMetrics;
+
+    public ConcurrentToolExecutor(ChatToolConfig toolConfig, ChatMetrics chatMetrics) {
+        this.toolConfig = toolConfig;
+        this.chatMetrics = chatMetrics;
+        this.scheduler = Schedulers.newBoundedElastic(toolConfig.getExecutorThreads(),
+                toolConfig.getQueueCapacity(), "ToolExecutor");
+    }
+
+    /**
+     * Execute tool calls
+     *
+     * @param toolCalls   tool calls of the assistant message
+     * @param toolContext available tools
+     * @return executions in completion order
+     */
+    public Flux<ToolExecution> execute(List<AssistantMessage.ToolCall> toolCalls, ToolContext toolContext) {
+        // Group by mcp server, keep the original index for ordering
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < toolCalls.size(); i++) {
+            String server = Optional.ofNullable(toolContext.getToolMeta(toolCalls.get(i).name()))
+                    .map(McpToolMeta::getMcpName)
+                    .orElse("");
+            groups.computeIfAbsent(server, k -> new ArrayList<>()).add(i);
+        }
+
+        return Flux.fromIterable(groups.values())
+                .flatMap(indexes -> Flux.fromIterable(indexes)
+                                .flatMap(i -> executeToolCall(i, toolCalls.get(i), toolContext), toolConfig.getMaxConcurrencyPerServer()),
+                        Math.max(1, groups.size()));
+    }
+
+    /**
+     * Build the tool response message, responses are in the same order as the tool calls
+     */
+    public static ToolResponseMessage toResponseMessage(Collection<ToolExecution> executions) {
+        List<ToolResponseMessage.ToolResponse> responses = executions.stream()
+                .sorted(Comparator.comparingInt(ToolExecution::index))
+                .map(ToolExecution::response)
+                .toList();
+        return new ToolResponseMessage(responses);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    private Mono<ToolExecution> executeToolCall(int index, AssistantMessage.ToolCall toolCall, ToolContext toolContext) {
+        ToolCallback toolCallback = toolContext.getToolCallback(toolCall.name());
+        if (toolCallback == null) {
+            return Mono.error(new IllegalStateException("No ToolCallback found for tool name: " + toolCall.name()));
+        }
+
+        long timeoutSeconds = toolConfig.getTimeoutSeconds();
+        String mcpServer = Optional.ofNullable(toolContext.getToolMeta(toolCall.name()))
+                .map(McpToolMeta::getMcpName)
+                .orElse(null);
+        return Mono.defer(() -> {
+            long startTime = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
+            String[] outcome = {"success"};
+            // Cancelling disposes the worker task, which interrupts the thread blocked on the MCP response
+            return Mono.fromCallable(() -> toolCallback.call(toolCall.arguments()))
+                    .subscribeOn(scheduler)
+                    .timeout(Duration.ofSeconds(timeoutSeconds))
+                    // Let the model know the tool failed, as the default ToolCallingManager does
+                    .onErrorResume(ToolExecutionException.class, e -> {
+                        outcome[0] = "error";
+                        return Mono.just(e.getMessage());
+                    })
+                    .onErrorResume(TimeoutException.class, e -> {
+                        outcome[0] = "timeout";
+                        return Mono.just("Tool call timed out after " + timeoutSeconds + "s");
+                    })
+                    .map(responseData -> {
+                        long costMillis = System.currentTimeMillis() - startTime;
+                        chatMetrics.recordToolCall(mcpServer, toolCall.name(), outcome[0], System.nanoTime() - startNanos);
+                        log.debug("Tool {} executed, cost: {}ms", toolCall.name(), costMillis);
+                        ToolResponseMessage.ToolResponse response =
+                                new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), responseData);
+                        return new ToolExecution(index, response, costMillis);
+                    })
+                    .doOnCancel(() -> {
+                        long elapsedNanos = System.nanoTime() - startNanos;
+                        long savedNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds) - elapsedNanos;
+                        chatMetrics.recordToolCancel(mcpServer, toolCall.name(), elapsedNanos, savedNanos);
+                        log.debug("Tool {} aborted after {}ms", toolCall.name(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+                    });
+        });
+    }
+
+    /**
+     * Result of a tool call
+     *
+     * @param index      index in the tool calls
+     * @param response   tool response
+     * @param costMillis time cost
+     */
+    public record ToolExecution(int index, ToolResponseMessage.ToolResponse response, long costMillis) {
+    }
+}
@@ -23,6 +23,7 @@ import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 
 import com.alibaba.apiopenplatform.core.constant.Resources;
+import com.alibaba.apiopenplatform.core.event.CredentialChangedEvent;
 import com.alibaba.apiopenplatform.core.event.DeveloperDeletingEvent;
 import com.alibaba.apiopenplatform.core.event.ProductDeletingEvent;
 import com.alibaba.apiopenplatform.core.exception.BusinessException;
@@ -57,6 +58,7 @@ import com.alibaba.apiopenplatform.support.gateway.GatewayConfig;
 import cn.hutool.core.util.BooleanUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -100,6 +102,8 @@ public class ConsumerServiceImpl implements ConsumerService {
 
     private final ConsumerRefRepository consumerRefRepository;
 
+    private final ApplicationEventPublisher eventPublisher;
+
     @Override
     public ConsumerResult createConsumer(CreateConsumerParam param) {
         // Get current user from SecurityContext
@@ -238,6 +242,9 @@ public class ConsumerServiceImpl implements ConsumerService {
         ConsumerCredential credential = credentialRepository.findByConsumerId(consumerId)
                 .orElseThrow(() -> new BusinessException(ErrorCode.NOT_FOUND, Resources.CONSUMER_CREDENTIAL, consumerId));
 
+        // Keys in use before the update, clients built with them should be discarded
+        List<String> originalApiKeys = extractApiKeys(credential);
+
         param.update(credential);
 
         List<ConsumerRef> consumerRefs = consumerRefRepository.findAllByConsumerId(consumerId);
@@ -250,12 +257,35 @@ public class ConsumerServiceImpl implements ConsumerService {
         }
 
         credentialRepository.saveAndFlush(credential);
+
+        List<String> currentApiKeys = extractApiKeys(credential);
+        List<String> revokedApiKeys = originalApiKeys.stream()
+                .filter(apiKey -> !currentApiKeys.contains(apiKey))
+                .collect(Collectors.toList());
+        eventPublisher.publishEvent(new CredentialChangedEvent(consumerId, revokedApiKeys));
     }
 
     @Override
     public void deleteCredential(String consumerId) {
         existsConsumer(consumerId);
+        List<String> revokedApiKeys = credentialRepository.findByConsumerId(consumerId)
+                .map(this::extractApiKeys)
+                .orElse(Collections.emptyList());
+
         credentialRepository.deleteAllByConsumerId(consumerId);
+
+        eventPublisher.publishEvent(new CredentialChangedEvent(consumerId, revokedApiKeys));
+    }
+
+    private List<String> extractApiKeys(ConsumerCredential credential) {
+        ApiKeyConfig config = credential.getApiKeyConfig();
+        if (config == null || config.getCredentials() == null) {
+            return Collections.emptyList();
+        }
+        return config.getCredentials().stream()
+                .map(ApiKeyConfig.ApiKeyCredential::getApiKey)
+                .filter(StrUtil::isNotBlank)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.alibaba.apiopenplatform.config.GatewayBalancerConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Picks a gateway IP for model and MCP calls, unhealthy IPs are ejected based on passive signals of finished calls
+ */
+@Component
+@Slf4j
+public class GatewayEndpointBalancer {
+
+    private static final double EWMA_ALPHA = 0.1;
+
+    private final GatewayBalancerConfig config;
+
+    private final Cache<String, EndpointStats> endpoints;
+
+    /**
+     * Current time in millis, ejections and latencies are measured with it
+     */
+    private final LongSupplier clock;
+
+    @Autowired
+    public GatewayEndpointBalancer(GatewayBalancerConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, System::currentTimeMillis);
+    }
+
+    GatewayEndpointBalancer(GatewayBalancerConfig config, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+        this.endpoints = Caffeine.newBuilder()
+                .expireAfterAccess(config.getIdleMinutes(), TimeUnit.MINUTES)
+                .build();
+
+        Gauge.builder("chat.gateway.endpoints.ejected", endpoints, cache -> cache.asMap().values().stream()
+                        .filter(stats -> stats.isEjected(clock.getAsLong()))
+                        .count())
+                .description("Number of gateway IPs currently ejected")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Pick an IP without tracking the call, null if there is no IP
+     */
+    public String choose(List<String> ips) {
+        return CollUtil.isEmpty(ips) ? null : pick(ips);
+    }
+
+    /**
+     * Pick an IP and track the call, the selection must be released when the call finishes
+     */
+    public Selection select(List<String> ips) {
+        if (CollUtil.isEmpty(ips)) {
+            return null;
+        }
+        String ip = pick(ips);
+        EndpointStats stats = stats(ip);
+        stats.outstanding.incrementAndGet();
+        return new Selection(ip, stats);
+    }
+
+    /**
+     * Report a finished call that was not started by {@link #select}
+     */
+    public void record(String ip, boolean success, long latencyMillis) {
+        EndpointStats stats = stats(ip);
+        stats.recordLatency(latencyMillis);
+        stats.recordOutcome(ip, success);
+    }
+
+    /**
+     * Feed the outcome of a streaming call back to the balancer
+     */
+    public <T> Flux<T> track(Flux<T> flux, Selection selection) {
+        if (selection == null) {
+            return flux;
+        }
+        AtomicBoolean first = new AtomicBoolean(true);
+        return flux
+                .doOnNext(t -> {
+                    if (first.compareAndSet(true, false)) {
+                        selection.firstByte();
+                    }
+                })
+                .doOnComplete(() -> selection.release(true))
+                .doOnError(e -> selection.release(!isGatewayFailure(e)))
+                // Cancelled by the client, says nothing about the gateway
+                .doOnCancel(selection::cancel);
+    }
+
+    private boolean isGatewayFailure(Throwable e) {
+        // Client errors (auth, quota, bad request) are answered by a healthy gateway
+        return !(e instanceof WebClientResponseException responseException)
+                || responseException.getStatusCode().is5xxServerError();
+    }
+
+    private String pick(List<String> ips) {
+        if (ips.size() == 1) {
+            return ips.get(0);
+        }
+
+        long now = clock.getAsLong();
+        List<String> candidates = ips.stream()
+                .filter(ip -> !stats(ip).isEjected(now))
+                .toList();
+        if (candidates.isEmpty()) {
+            // All ejected, spread the traffic rather than failing every call
+            candidates = ips;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (config.getStrategy() == GatewayBalancerConfig.Strategy.LEAST_OUTSTANDING) {
+            int offset = random.nextInt(candidates.size());
+            String best = null;
+            int bestOutstanding = Integer.MAX_VALUE;
+            for (int i = 0; i < candidates.size(); i++) {
+                String ip = candidates.get((offset + i) % candidates.size());
+                int outstanding = stats(ip).outstanding.get();
+                if (outstanding < bestOutstanding) {
+                    best = ip;
+                    bestOutstanding = outstanding;
+                }
+            }
+            return best;
+        }
+
+        // Power of two choices, weighted by outstanding calls and latency
+        int i = random.nextInt(candidates.size());
+        int j = random.nextInt(candidates.size() - 1);
+        if (j >= i) {
+            j++;
+        }
+        String a = candidates.get(i), b = candidates.get(j);
+        return stats(a).score() <= stats(b).score() ? a : b;
+    }
+
+    private EndpointStats stats(String ip) {
+        return endpoints.get(ip, k -> new EndpointStats());
+    }
+
+    public final class Selection {
+
+        private final String ip;
+
+        private final EndpointStats stats;
+
+        private final long startAt = clock.getAsLong();
+
+        private final AtomicBoolean latencyRecorded = new AtomicBoolean();
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Selection(String ip, EndpointStats stats) {
+            this.ip = ip;
+            this.stats = stats;
+        }
+
+        public String getIp() {
+            return ip;
+        }
+
+        /**
+         * Latency is measured to the first response, stream length depends on the answer
+         */
+        public void firstByte() {
+            if (latencyRecorded.compareAndSet(false, true)) {
+                stats.recordLatency(clock.getAsLong() - startAt);
+            }
+        }
+
+        public void release(boolean success) {
+            if (released.compareAndSet(false, true)) {
+                stats.outstanding.decrementAndGet();
+                stats.recordOutcome(ip, success);
+            }
+        }
+
+        public void cancel() {
+            if (released.compareAndSet(false, true)) {
+                stats.outstanding.decrementAndGet();
+            }
+        }
+    }
+
+    private final class EndpointStats {
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private volatile double latencyMillis = -1;
+
+        private int consecutiveFailures;
+
+        private int requests;
+
+        private double errorRate;
+
+        private int ejections;
+
+        private volatile long ejectedUntil;
+
+        boolean isEjected(long now) {
+            return ejectedUntil > now;
+        }
+
+        double score() {
+            double latency = latencyMillis < 0 ? config.getDefaultLatencyMillis() : latencyMillis;
+            return (outstanding.get() + 1) * Math.max(latency, 1);
+        }
+
+        synchronized void recordLatency(long millis) {
+            latencyMillis = latencyMillis < 0 ? millis : latencyMillis + EWMA_ALPHA * (millis - latencyMillis);
+        }
+
+        synchronized void recordOutcome(String ip, boolean success) {
+            requests++;
+            errorRate += EWMA_ALPHA * ((success ? 0 : 1) - errorRate);
+            if (success) {
+                consecutiveFailures = 0;
+                if (!isEjected(clock.getAsLong())) {
+                    ejections = 0;
+                }
+                return;
+            }
+
+            consecutiveFailures++;
+            boolean tooManyFailures = consecutiveFailures >= config.getConsecutiveFailures();
+            boolean errorRateExceeded = requests >= config.getMinRequests() && errorRate > config.getMaxErrorRate();
+            if ((tooManyFailures || errorRateExceeded) && !isEjected(clock.getAsLong())) {
+                ejections++;
+                long seconds = Math.min(config.getBaseEjectionSeconds() * ejections, config.getMaxEjectionSeconds());
+                ejectedUntil = clock.getAsLong() + TimeUnit.SECONDS.toMillis(seconds);
+                log.warn("Eject gateway {} for {}s, consecutive failures: {}, error rate: {}",
+                        ip, seconds, consecutiveFailures, String.format("%.2f", errorRate));
+
+                // Start over when the endpoint comes back
+                consecutiveFailures = 0;
+                requests = 0;
+                errorRate = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.dto.result.consumer.CredentialContext;
+import com.alibaba.apiopenplatform.support.chat.mcp.McpServerConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.mcp.SyncMcpToolCallback;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Tool callback of a cached MCP tool, a pooled session is leased only for the duration of the call
+ */
+@Slf4j
+public class LeasedMcpToolCallback implements ToolCallback {
+
+    private final McpClientPool mcpClientPool;
+
+    private final McpServerConfig.McpServer server;
+
+    private final CredentialContext credential;
+
+    private final McpToolCatalog.McpTool mcpTool;
+
+    private final GatewayEndpointBalancer endpointBalancer;
+
+    public LeasedMcpToolCallback(McpClientPool mcpClientPool, McpServerConfig.McpServer server,
+                                 CredentialContext credential, McpToolCatalog.McpTool mcpTool,
+                                 GatewayEndpointBalancer endpointBalancer) {
+        this.mcpClientPool = mcpClientPool;
+        this.server = server;
+        this.credential = credential;
+        this.mcpTool = mcpTool;
+        this.endpointBalancer = endpointBalancer;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return mcpTool.toolDefinition();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        long startAt = System.currentTimeMillis();
+        boolean healthy = false;
+        boolean interrupted = false;
+        try (McpClientHolder holder = mcpClientPool.lease(server.getType(), server.getUrl(),
+                credential.getHeaders(), credential.getQueryParams())) {
+            if (holder == null) {
+                throw new ToolExecutionException(getToolDefinition(),
+                        new IllegalStateException("No mcp session available for " + server.getUrl()));
+            }
+            try {
+                String result = new SyncMcpToolCallback(holder.getMcpSyncClient(), mcpTool.tool()).call(toolInput, toolContext);
+                healthy = true;
+                return result;
+            } catch (RuntimeException e) {
+                if (isInterrupted(e)) {
+                    // The chat was cancelled, drop the session so the request is not left running upstream
+                    interrupted = true;
+                    holder.abort();
+                } else if (e instanceof ToolExecutionException) {
+                    // The server answered with a tool error
+                    healthy = true;
+                }
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new ToolExecutionException(getToolDefinition(), e);
+        } finally {
+            if (interrupted) {
+                // Cancellation says nothing about the server, restore the flag once the session is closed
+                Thread.currentThread().interrupt();
+            } else {
+                recordHealth(healthy, System.currentTimeMillis() - startAt);
+            }
+        }
+    }
+
+    private boolean isInterrupted(Throwable e) {
+        if (Thread.interrupted()) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recordHealth(boolean healthy, long latencyMillis) {
+        try {
+            String host = URI.create(server.getUrl()).getHost();
+            if (host != null) {
+                endpointBalancer.record(host, healthy, latencyMillis);
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Skip health of invalid mcp url {}", server.getUrl());
+        }
+    }
+}
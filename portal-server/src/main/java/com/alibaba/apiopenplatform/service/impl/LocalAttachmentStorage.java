@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.AttachmentStorageConfig;
+import com.alibaba.apiopenplatform.core.exception.BusinessException;
+import com.alibaba.apiopenplatform.core.exception.ErrorCode;
+import com.alibaba.apiopenplatform.service.AttachmentStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Filesystem backend of attachment storage, keys are relative paths under the root directory
+ */
+@Component
+@Slf4j
+public class LocalAttachmentStorage implements AttachmentStorage {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Path root;
+
+    public LocalAttachmentStorage(AttachmentStorageConfig storageConfig) throws IOException {
+        this.root = Paths.get(storageConfig.getLocalPath()).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        log.info("Attachment storage at {}", root);
+    }
+
+    @Override
+    public long put(String key, InputStream inputStream, long maxSize) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+
+        // Write to a temp file first, readers never see a partial object
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            long written = 0;
+            byte[] buffer = new byte[CHUNK_SIZE];
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                int n;
+                while ((n = inputStream.read(buffer)) != -1) {
+                    written += n;
+                    if (written > maxSize) {
+                        throw new BusinessException(ErrorCode.INVALID_PARAMETER, "Attachment exceeds max size " + maxSize + " bytes");
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root)) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER, "Invalid attachment key");
+        }
+        return path;
+    }
+}
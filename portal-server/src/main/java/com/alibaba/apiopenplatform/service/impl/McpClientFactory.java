@@ -1,15 +1,18 @@
 
 package com.alibaba.apiopenplatform.service.impl;
 
+import com.alibaba.apiopenplatform.core.event.McpToolsChangedEvent;
 import io.modelcontextprotocol.client.McpClient;
 import io.modelcontextprotocol.client.McpSyncClient;
 import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport;
 import io.modelcontextprotocol.client.transport.HttpClientStreamableHttpTransport;
 import io.modelcontextprotocol.spec.McpClientTransport;
 import io.modelcontextprotocol.spec.McpSchema;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 import java.net.URI;
@@ -23,8 +26,11 @@ import java.util.Map;
  */
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class McpClientFactory {
 
+    private final ApplicationEventPublisher eventPublisher;
+
     public McpClientHolder initClient(String type, String url, Map<String, String> headers, Map<String, String> params) {
         Map<String, String> mcpHeaders = new HashMap<>(headers);
         mcpHeaders.remove("Host");
@@ -75,6 +81,8 @@ public class McpClientFactory {
             client = McpClient.sync(mcpClientTransport).requestTimeout(Duration.ofSeconds(10))
                     .capabilities(McpSchema.ClientCapabilities.builder().roots(true) // Enable roots capability
                             .build())
+                    // Server side tools/list_changed notification, cached tools should be refreshed
+                    .toolsChangeConsumer(tools -> eventPublisher.publishEvent(new McpToolsChangedEvent(url, tools)))
                     .build();
             // Initialize connection
             client.initialize();
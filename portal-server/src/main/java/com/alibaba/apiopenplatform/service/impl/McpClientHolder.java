@@ -27,6 +27,8 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * @author shihan
@@ -37,6 +39,24 @@ public class McpClientHolder implements Closeable {
     @Getter
     private McpSyncClient mcpSyncClient;
 
+    /**
+     * 非空时表示来自连接池，close时归还而不是断开
+     */
+    private Consumer<McpClientHolder> releaseHandler;
+
+    private final AtomicBoolean leased = new AtomicBoolean(false);
+
+    @Getter
+    private volatile boolean broken;
+
+    /**
+     * A request was abandoned in flight, the session is dropped without waiting for it
+     */
+    private volatile boolean aborted;
+
+    @Getter
+    private volatile long lastUsedAt = System.currentTimeMillis();
+
     public McpClientHolder() {
     }
 
@@ -54,6 +74,7 @@ public class McpClientHolder implements Closeable {
             toolsRet = mcpSyncClient.listTools();
         } catch (Exception e) {
             log.error("mcp tools list error", e);
+            markBroken();
             return Collections.emptyList();
         }
         if (toolsRet != null) {
@@ -62,10 +83,75 @@ public class McpClientHolder implements Closeable {
         return Collections.emptyList();
     }
 
+    /**
+     * Check whether the session is still alive
+     */
+    public boolean ping() {
+        if (this.mcpSyncClient == null) {
+            return false;
+        }
+        try {
+            mcpSyncClient.ping();
+            return true;
+        } catch (Exception e) {
+            log.warn("mcp client ping error: {}", e.getMessage());
+            markBroken();
+            return false;
+        }
+    }
+
+    /**
+     * Session should not be reused, e.g. transport error
+     */
+    public void markBroken() {
+        this.broken = true;
+    }
+
+    /**
+     * Session has an abandoned request in flight, close it immediately instead of reusing it
+     */
+    public void abort() {
+        this.aborted = true;
+        markBroken();
+    }
+
+    void lease(Consumer<McpClientHolder> releaseHandler) {
+        this.releaseHandler = releaseHandler;
+        this.leased.set(true);
+        this.lastUsedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Return to the pool if leased, otherwise close the session
+     */
     @Override
     public void close() throws IOException {
+        if (releaseHandler != null) {
+            // Avoid returning twice
+            if (leased.compareAndSet(true, false)) {
+                this.lastUsedAt = System.currentTimeMillis();
+                releaseHandler.accept(this);
+            }
+            return;
+        }
+        destroy();
+    }
+
+    /**
+     * Close the underlying session
+     */
+    void destroy() {
         if (this.mcpSyncClient != null) {
-            this.mcpSyncClient.closeGracefully();
+            try {
+                if (aborted) {
+                    // Releases the transport right away, the server drops the pending request with the session
+                    this.mcpSyncClient.close();
+                    return;
+                }
+                this.mcpSyncClient.closeGracefully();
+            } catch (Exception e) {
+                log.warn("close mcp client error: {}", e.getMessage());
+            }
         }
     }
 }
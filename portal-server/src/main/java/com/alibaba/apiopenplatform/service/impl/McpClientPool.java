@@ -0,0 +1,358 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.apiopenplatform.config.McpClientPoolConfig;
+import com.alibaba.apiopenplatform.core.event.CredentialChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Pool of long-lived MCP sessions, keyed by (server URL, credential).
+ * <p>
+ * A session is leased exclusively by one caller and returned by {@link McpClientHolder#close()},
+ * so warm sessions are reused across chats instead of doing a full handshake per message.
+ * Idle sessions are pinged periodically on a bounded executor and closed after the idle TTL.
+ */
+@Component
+@Slf4j
+public class McpClientPool {
+
+    private final McpClientFactory mcpClientFactory;
+
+    private final McpClientPoolConfig poolConfig;
+
+    private final ConcurrentMap<McpClientKey, ServerPool> pools = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "McpClientPool-Maintainer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Pings may block until the request timeout of the session, so they run off the maintainer thread
+     */
+    private final ExecutorService pinger;
+
+    public McpClientPool(McpClientFactory mcpClientFactory, McpClientPoolConfig poolConfig, MeterRegistry meterRegistry) {
+        this.mcpClientFactory = mcpClientFactory;
+        this.poolConfig = poolConfig;
+        this.pinger = Executors.newFixedThreadPool(poolConfig.getPingThreads(), r -> {
+            Thread thread = new Thread(r, "McpClientPool-Pinger");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = poolConfig.getHealthCheckIntervalSeconds();
+        maintainer.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.SECONDS);
+
+        Gauge.builder("mcp.client.sessions", pools, p -> p.values().stream().mapToInt(ServerPool::idleCount).sum())
+                .tag("state", "idle")
+                .register(meterRegistry);
+        Gauge.builder("mcp.client.sessions", pools, p -> p.values().stream().mapToInt(ServerPool::leasedCount).sum())
+                .tag("state", "leased")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lease a session, the caller must close the holder to return it
+     *
+     * @param type    sse or streamable http
+     * @param url     MCP server url
+     * @param headers credential headers
+     * @param params  credential query params
+     * @return null if no session is available
+     */
+    public McpClientHolder lease(String type, String url, Map<String, String> headers, Map<String, String> params) {
+        McpClientKey key = new McpClientKey(StrUtil.nullToEmpty(type).toLowerCase(), url,
+                headers == null ? Collections.emptyMap() : new HashMap<>(headers),
+                params == null ? Collections.emptyMap() : new HashMap<>(params));
+        while (true) {
+            ServerPool pool = pools.computeIfAbsent(key, ServerPool::new);
+            McpClientHolder holder = pool.lease();
+            if (holder != null || !pool.isClosed()) {
+                return holder;
+            }
+            // Closed by the maintainer after it was looked up, lease from a new pool
+            pools.remove(key, pool);
+        }
+    }
+
+    @EventListener
+    public void handleCredentialChange(CredentialChangedEvent event) {
+        Set<String> revokedApiKeys = Optional.ofNullable(event.getRevokedApiKeys())
+                .orElse(Collections.emptyList())
+                .stream()
+                .filter(StrUtil::isNotBlank)
+                .collect(Collectors.toSet());
+        if (revokedApiKeys.isEmpty()) {
+            return;
+        }
+
+        pools.keySet().stream()
+                .filter(key -> key.usesCredential(revokedApiKeys))
+                .toList()
+                .forEach(key -> Optional.ofNullable(pools.remove(key)).ifPresent(ServerPool::shutdown));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        maintainer.shutdownNow();
+        pinger.shutdownNow();
+        pools.values().forEach(ServerPool::shutdown);
+        pools.clear();
+    }
+
+    private void maintain() {
+        try {
+            List<PendingPing> pings = new ArrayList<>();
+            pools.values().forEach(pool -> pings.addAll(pool.evict()));
+            awaitPings(pings);
+
+            // Drop pools that are no longer used
+            pools.forEach((key, pool) -> {
+                if (pool.tryClose()) {
+                    pools.remove(key, pool);
+                }
+            });
+        } catch (Exception e) {
+            log.error("Failed to maintain mcp client pool", e);
+        }
+    }
+
+    private PendingPing ping(ServerPool pool, McpClientHolder holder) {
+        AtomicBoolean started = new AtomicBoolean();
+        try {
+            Future<Boolean> result = pinger.submit(() -> {
+                started.set(true);
+                return holder.ping();
+            });
+            return new PendingPing(pool, holder, started, result);
+        } catch (RejectedExecutionException e) {
+            return new PendingPing(pool, holder, started, CompletableFuture.completedFuture(true));
+        }
+    }
+
+    /**
+     * Wait for the pings of one round, all within the ping timeout
+     */
+    private void awaitPings(List<PendingPing> pings) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(poolConfig.getPingTimeoutMillis());
+        for (PendingPing ping : pings) {
+            boolean healthy;
+            try {
+                healthy = ping.result().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                ping.result().cancel(true);
+                // A ping still queued says nothing about the session, it is checked again next round
+                healthy = !ping.started().get();
+                if (!healthy) {
+                    log.warn("Ping of mcp session {} timed out", ping.pool().key.url());
+                }
+            } catch (ExecutionException e) {
+                healthy = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                healthy = true;
+            }
+            ping.pool().restore(ping.holder(), healthy);
+        }
+    }
+
+    private static boolean containsAny(Collection<String> values, Set<String> apiKeys) {
+        return values.stream()
+                .filter(Objects::nonNull)
+                .anyMatch(value -> apiKeys.stream().anyMatch(value::contains));
+    }
+
+    private record PendingPing(ServerPool pool, McpClientHolder holder, AtomicBoolean started, Future<Boolean> result) {
+    }
+
+    private record McpClientKey(String type, String url, Map<String, String> headers, Map<String, String> params) {
+
+        boolean usesCredential(Set<String> apiKeys) {
+            return containsAny(headers.values(), apiKeys) || containsAny(params.values(), apiKeys);
+        }
+    }
+
+    private class ServerPool {
+
+        private final McpClientKey key;
+
+        /**
+         * Permits for leased sessions
+         */
+        private final Semaphore permits;
+
+        /**
+         * Most recently returned first, so that warm sessions are preferred
+         */
+        private final Deque<McpClientHolder> idle = new ConcurrentLinkedDeque<>();
+
+        private volatile boolean closed;
+
+        ServerPool(McpClientKey key) {
+            this.key = key;
+            this.permits = new Semaphore(poolConfig.getMaxSessionsPerServer());
+        }
+
+        /**
+         * @return null if no session is available, or the pool is closed
+         */
+        McpClientHolder lease() {
+            if (closed) {
+                return null;
+            }
+            try {
+                if (!permits.tryAcquire(poolConfig.getLeaseTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                    log.warn("No mcp session available for {} within {}ms", key.url(), poolConfig.getLeaseTimeoutMillis());
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            // Closed while waiting for the permit
+            if (closed) {
+                permits.release();
+                return null;
+            }
+
+            McpClientHolder holder;
+            while ((holder = idle.pollFirst()) != null) {
+                if (!holder.isBroken()) {
+                    break;
+                }
+                holder.destroy();
+            }
+
+            if (holder == null) {
+                holder = mcpClientFactory.initClient(key.type(), key.url(), key.headers(), key.params());
+                if (holder == null) {
+                    permits.release();
+                    return null;
+                }
+            }
+
+            holder.lease(this::release);
+            return holder;
+        }
+
+        void release(McpClientHolder holder) {
+            try {
+                if (closed || holder.isBroken()) {
+                    holder.destroy();
+                } else {
+                    idle.offerFirst(holder);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Close expired and broken idle sessions, and ping the others
+         *
+         * @return pings of the sessions taken out of the idle queue, to be restored when they finish
+         */
+        List<PendingPing> evict() {
+            long now = System.currentTimeMillis();
+            long ttlMillis = TimeUnit.SECONDS.toMillis(poolConfig.getIdleTtlSeconds());
+            List<PendingPing> pings = new ArrayList<>();
+            for (McpClientHolder holder : new ArrayList<>(idle)) {
+                // Skip if leased concurrently
+                if (!idle.remove(holder)) {
+                    continue;
+                }
+                if (holder.isBroken() || now - holder.getLastUsedAt() > ttlMillis) {
+                    holder.destroy();
+                    continue;
+                }
+                pings.add(ping(this, holder));
+            }
+            return pings;
+        }
+
+        void restore(McpClientHolder holder, boolean healthy) {
+            if (!healthy || closed) {
+                holder.destroy();
+                return;
+            }
+            idle.offerLast(holder);
+            // Shut down while pinging
+            if (closed && idle.remove(holder)) {
+                holder.destroy();
+            }
+        }
+
+        /**
+         * Close the pool if it has no sessions, leases racing with this see the pool closed and retry
+         *
+         * @return whether the pool was closed
+         */
+        boolean tryClose() {
+            int maxSessions = poolConfig.getMaxSessionsPerServer();
+            // No lease is in flight while all permits are held
+            if (!idle.isEmpty() || !permits.tryAcquire(maxSessions)) {
+                return false;
+            }
+            try {
+                if (!idle.isEmpty()) {
+                    return false;
+                }
+                closed = true;
+                return true;
+            } finally {
+                permits.release(maxSessions);
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        int idleCount() {
+            return idle.size();
+        }
+
+        int leasedCount() {
+            return poolConfig.getMaxSessionsPerServer() - permits.availablePermits();
+        }
+
+        void shutdown() {
+            closed = true;
+            McpClientHolder holder;
+            while ((holder = idle.pollFirst()) != null) {
+                holder.destroy();
+            }
+        }
+    }
+}
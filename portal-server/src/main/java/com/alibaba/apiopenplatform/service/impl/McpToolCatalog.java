@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.apiopenplatform.config.McpClientPoolConfig;
+import com.alibaba.apiopenplatform.core.event.CredentialChangedEvent;
+import com.alibaba.apiopenplatform.core.event.McpToolsChangedEvent;
+import com.alibaba.apiopenplatform.core.event.ProductDeletingEvent;
+import com.alibaba.apiopenplatform.dto.result.consumer.CredentialContext;
+import com.alibaba.apiopenplatform.support.chat.mcp.McpServerConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.modelcontextprotocol.spec.McpSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.mcp.SyncMcpToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory tool catalog of MCP products.
+ * <p>
+ * Tool definitions are served from memory, so tool discovery is not on the chat path.
+ * Tools are cached per credential, a server may expose different tools to different consumers.
+ * Stale entries and entries of servers sending MCP tools/list_changed notifications are refreshed
+ * asynchronously, the old definitions are served until the refresh finishes.
+ * Entries are dropped when the product config is reloaded.
+ */
+@Component
+@Slf4j
+public class McpToolCatalog {
+
+    private final McpClientPool mcpClientPool;
+
+    private final McpClientPoolConfig poolConfig;
+
+    private final Executor executor;
+
+    private final Cache<CatalogKey, CatalogEntry> catalog;
+
+    private final Set<CatalogKey> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Entries whose tools changed, a refresh already running may have listed the old tools
+     */
+    private final Set<CatalogKey> changed = ConcurrentHashMap.newKeySet();
+
+    public McpToolCatalog(McpClientPool mcpClientPool, McpClientPoolConfig poolConfig,
+                          @Qualifier("taskExecutor") Executor executor) {
+        this.mcpClientPool = mcpClientPool;
+        this.poolConfig = poolConfig;
+        this.executor = executor;
+        this.catalog = Caffeine.newBuilder()
+                .maximumSize(poolConfig.getToolCatalogMaxSize())
+                .expireAfterWrite(poolConfig.getToolExpireMinutes(), TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * Get tools of the MCP server
+     *
+     * @param productId  MCP product
+     * @param server     MCP server
+     * @param credential credential used to discover tools
+     * @return null if tools can not be discovered
+     */
+    public List<McpTool> getTools(String productId, McpServerConfig.McpServer server, CredentialContext credential) {
+        CatalogKey key = new CatalogKey(StrUtil.blankToDefault(productId, server.getUrl()),
+                credential.getHeaders() == null ? Collections.emptyMap() : new HashMap<>(credential.getHeaders()),
+                credential.getQueryParams() == null ? Collections.emptyMap() : new HashMap<>(credential.getQueryParams()));
+
+        // Concurrent misses of the same key are loaded only once
+        CatalogEntry entry = catalog.get(key, k -> load(server, credential));
+        if (entry == null) {
+            return null;
+        }
+
+        long refreshMillis = TimeUnit.SECONDS.toMillis(poolConfig.getToolRefreshSeconds());
+        if (System.currentTimeMillis() - entry.loadedAt() > refreshMillis) {
+            refreshAsync(key, entry);
+        }
+        return entry.tools();
+    }
+
+    public void invalidate(String productId) {
+        catalog.invalidateAll(catalog.asMap().keySet().stream()
+                .filter(key -> StrUtil.equals(key.target(), productId))
+                .toList());
+    }
+
+    @EventListener
+    public void handleToolsChange(McpToolsChangedEvent event) {
+        Map<CatalogKey, CatalogEntry> entries = catalog.asMap().entrySet().stream()
+                .filter(e -> StrUtil.equals(e.getValue().server().getUrl(), event.getUrl()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        // Keys carry credentials, only their targets are logged
+        log.info("Tools of mcp server {} changed, refresh catalog {}", event.getUrl(),
+                entries.keySet().stream().map(CatalogKey::target).distinct().toList());
+        // Each credential may see different tools, so every entry is reloaded with its own credential
+        changed.addAll(entries.keySet());
+        entries.forEach(this::refreshAsync);
+    }
+
+    @EventListener
+    public void handleProductDeletion(ProductDeletingEvent event) {
+        invalidate(event.getProductId());
+    }
+
+    @EventListener
+    public void handleCredentialChange(CredentialChangedEvent event) {
+        Set<String> revokedApiKeys = Optional.ofNullable(event.getRevokedApiKeys())
+                .orElse(Collections.emptyList())
+                .stream()
+                .filter(StrUtil::isNotBlank)
+                .collect(Collectors.toSet());
+        if (revokedApiKeys.isEmpty()) {
+            return;
+        }
+
+        catalog.invalidateAll(catalog.asMap().keySet().stream()
+                .filter(key -> key.usesCredential(revokedApiKeys))
+                .toList());
+    }
+
+    private void refreshAsync(CatalogKey key, CatalogEntry current) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    changed.remove(key);
+                    CatalogEntry entry = load(current.server(), current.credential());
+                    // Not put back if dropped meanwhile, e.g. the credential was revoked
+                    if (entry != null) {
+                        catalog.asMap().replace(key, entry);
+                    }
+                } finally {
+                    refreshing.remove(key);
+                }
+                // Changed again while listing
+                CatalogEntry latest = catalog.getIfPresent(key);
+                if (latest == null) {
+                    changed.remove(key);
+                } else if (changed.contains(key)) {
+                    refreshAsync(key, latest);
+                }
+            });
+        } catch (Exception e) {
+            refreshing.remove(key);
+            log.warn("Failed to refresh tools of {}: {}", key.target(), e.getMessage());
+        }
+    }
+
+    private CatalogEntry load(McpServerConfig.McpServer server, CredentialContext credential) {
+        try (McpClientHolder holder = mcpClientPool.lease(server.getType(), server.getUrl(),
+                credential.getHeaders(), credential.getQueryParams())) {
+            if (holder == null) {
+                return null;
+            }
+
+            List<McpSchema.Tool> tools = holder.listTools();
+            if (holder.isBroken()) {
+                return null;
+            }
+
+            List<McpTool> mcpTools = tools.stream()
+                    .map(tool -> new McpTool(tool, new SyncMcpToolCallback(holder.getMcpSyncClient(), tool).getToolDefinition()))
+                    .toList();
+            return new CatalogEntry(server, credential, mcpTools, System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("Failed to load tools of mcp server {}", server.getUrl(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Tool of MCP server, with the definition exposed to the model
+     */
+    public record McpTool(McpSchema.Tool tool, ToolDefinition toolDefinition) {
+    }
+
+    /**
+     * @param target productId, or server url if productId is absent
+     */
+    private record CatalogKey(String target, Map<String, String> headers, Map<String, String> params) {
+
+        boolean usesCredential(Set<String> apiKeys) {
+            return containsAny(headers.values(), apiKeys) || containsAny(params.values(), apiKeys);
+        }
+
+        private static boolean containsAny(Collection<String> values, Set<String> apiKeys) {
+            return values.stream()
+                    .filter(Objects::nonNull)
+                    .anyMatch(value -> apiKeys.stream().anyMatch(value::contains));
+        }
+    }
+
+    private record CatalogEntry(McpServerConfig.McpServer server, CredentialContext credential,
+                                List<McpTool> tools, long loadedAt) {
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatHedgeConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Races a second model request when the first one is slow to produce its first chunk.
+ * <p>
+ * The threshold is a percentile of recent time-to-first-chunk of the same model, and the
+ * number of extra requests is bounded by a global budget relative to the number of requests.
+ */
+@Component
+@Slf4j
+public class ModelRequestHedger {
+
+    private final ChatHedgeConfig config;
+
+    private final Cache<String, LatencyWindow> windows;
+
+    private final Counter requests;
+
+    private final Counter hedged;
+
+    private final Counter wins;
+
+    private final Counter budgetExhausted;
+
+    private double budget;
+
+    public ModelRequestHedger(ChatHedgeConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.budget = config.getMaxBurst();
+        this.windows = Caffeine.newBuilder()
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+
+        this.requests = Counter.builder("chat.hedge.requests")
+                .description("Model requests eligible for hedging")
+                .register(meterRegistry);
+        this.hedged = Counter.builder("chat.hedge.hedged")
+                .description("Model requests that sent a hedge request")
+                .register(meterRegistry);
+        this.wins = Counter.builder("chat.hedge.wins")
+                .description("Hedge requests that produced the first chunk before the original request")
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("chat.hedge.budget.exhausted")
+                .description("Hedge requests skipped because the hedge budget was exhausted")
+                .register(meterRegistry);
+        Gauge.builder("chat.hedge.budget", this, hedger -> hedger.availableBudget())
+                .description("Hedge requests currently allowed by the budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hedge the first chunk of the model stream, the stream that emits first wins and the other one is cancelled
+     *
+     * @param key        model the latency samples belong to
+     * @param percentile percentile of time-to-first-chunk to hedge at, null to disable hedging
+     * @param primary    the original model stream
+     * @param hedge      creates the hedge stream, called only if the hedge is sent
+     * @return the winning stream
+     */
+    public <T> Flux<T> hedge(String key, Double percentile, Flux<T> primary, Supplier<Flux<T>> hedge) {
+        if (percentile == null || percentile <= 0) {
+            return primary;
+        }
+
+        return Flux.defer(() -> {
+            requests.increment();
+            deposit();
+
+            LatencyWindow window = windows.get(key, k -> new LatencyWindow(config.getWindowSize()));
+            long delayMillis = Math.max(config.getMinThresholdMillis(),
+                    window.percentile(percentile, config.getMinSamples(), config.getDefaultThresholdMillis()));
+            long startNanos = System.nanoTime();
+            AtomicBoolean firstChunk = new AtomicBoolean();
+
+            // A failed original request is reported as is, it is not hedged
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Flux<T> original = primary
+                    .doOnNext(t -> {
+                        if (firstChunk.compareAndSet(false, true)) {
+                            window.record(elapsedMillis(startNanos));
+                        }
+                    })
+                    .doOnError(e -> primaryFailed.tryEmitEmpty());
+
+            Flux<T> backup = Mono.delay(Duration.ofMillis(delayMillis))
+                    .takeUntilOther(primaryFailed.asMono())
+                    .filter(t -> tryAcquire())
+                    .flatMapMany(t -> {
+                        hedged.increment();
+                        log.debug("Hedging model request of {} after {}ms", key, delayMillis);
+                        return hedge.get();
+                    })
+                    .doOnNext(t -> {
+                        if (firstChunk.compareAndSet(false, true)) {
+                            wins.increment();
+                            // The original request is at least this slow, keep the tail of the window honest
+                            window.record(elapsedMillis(startNanos));
+                        }
+                    });
+
+            return Flux.firstWithValue(original, backup)
+                    .onErrorMap(NoSuchElementException.class, ModelRequestHedger::unwrap);
+        });
+    }
+
+    private static Throwable unwrap(NoSuchElementException e) {
+        // Errors of the losing streams are suppressed, report the one of the original request
+        return Arrays.stream(e.getSuppressed())
+                .findFirst()
+                .orElse(e);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private synchronized void deposit() {
+        budget = Math.min(config.getMaxBurst(), budget + config.getBudgetRatio());
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (budget >= 1) {
+            budget -= 1;
+            return true;
+        }
+        budgetExhausted.increment();
+        return false;
+    }
+
+    private synchronized double availableBudget() {
+        return budget;
+    }
+
+    /**
+     * Ring buffer of recent time-to-first-chunk samples
+     */
+    static class LatencyWindow {
+
+        /**
+         * Percentiles are recomputed after this many new samples
+         */
+        private static final int RECOMPUTE_INTERVAL = 16;
+
+        private final long[] samples;
+
+        private int count;
+
+        private int next;
+
+        private int sinceComputed = RECOMPUTE_INTERVAL;
+
+        private double computedPercentile;
+
+        private long computedValue;
+
+        LatencyWindow(int size) {
+            this.samples = new long[Math.max(1, size)];
+        }
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceComputed++;
+        }
+
+        synchronized long percentile(double percentile, int minSamples, long defaultValue) {
+            if (count < minSamples) {
+                return defaultValue;
+            }
+            if (sinceComputed >= RECOMPUTE_INTERVAL || percentile != computedPercentile) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(Math.min(percentile, 100) / 100 * count) - 1;
+                computedValue = sorted[Math.max(0, index)];
+                computedPercentile = percentile;
+                sinceComputed = 0;
+            }
+            return computedValue;
+        }
+    }
+}
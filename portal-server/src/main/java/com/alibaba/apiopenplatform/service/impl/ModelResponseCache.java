@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONUtil;
+import com.alibaba.apiopenplatform.config.ChatResponseCacheConfig;
+import com.alibaba.apiopenplatform.dto.params.chat.ChatRequestBody;
+import com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage;
+import com.alibaba.apiopenplatform.dto.result.chat.LlmInvokeResult;
+import com.alibaba.apiopenplatform.support.chat.ChatMessage;
+import com.alibaba.apiopenplatform.support.chat.ChatUsage;
+import com.alibaba.apiopenplatform.support.enums.ChatRole;
+import com.alibaba.apiopenplatform.support.product.ModelFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import static com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage.MessageType.*;
+
+/**
+ * Answers of model products that opt in, replayed instead of calling the model again.
+ * <p>
+ * The exact tier is keyed by model, temperature and normalized messages of a product. The optional
+ * similarity tier matches the last user question against questions cached under the same history,
+ * using hashed n-gram vectors kept in memory next to the exact tier.
+ */
+@Component
+@Slf4j
+public class ModelResponseCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ChatResponseCacheConfig config;
+
+    private final Cache<String, ProductCache> products;
+
+    private final Counter exactHits;
+
+    private final Counter semanticHits;
+
+    private final Counter misses;
+
+    public ModelResponseCache(ChatResponseCacheConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.products = Caffeine.newBuilder()
+                .maximumSize(config.getMaxProducts())
+                .expireAfterAccess(1, TimeUnit.DAYS)
+                .build();
+
+        this.exactHits = counter(meterRegistry, "exact");
+        this.semanticHits = counter(meterRegistry, "semantic");
+        this.misses = counter(meterRegistry, "miss");
+        Gauge.builder("chat.response.cache.entries", products, cache -> cache.asMap().values().stream()
+                        .mapToLong(product -> product.answers.estimatedSize())
+                        .sum())
+                .description("Number of cached model answers")
+                .register(meterRegistry);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("chat.response.cache.requests")
+                .description("Cacheable model requests by lookup result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cache scope of a request
+     *
+     * @param productId    the model product
+     * @param modelFeature model feature of the product, carries the cache settings
+     * @param chatRequest  the request to send
+     * @return null if the product does not opt in, or the request uses tools or web search
+     */
+    public Scope scope(String productId, ModelFeature modelFeature, ChatRequestBody chatRequest) {
+        Integer ttlSeconds = modelFeature.getResponseCacheTtlSeconds();
+        if (!config.isEnabled() || ttlSeconds == null || ttlSeconds <= 0 || StrUtil.isBlank(productId)) {
+            return null;
+        }
+        // Answers depending on tools or web search are not reproducible
+        if (CollUtil.isNotEmpty(chatRequest.getMcpServerConfigs()) || chatRequest.getWebSearchOptions() != null
+                || CollUtil.isEmpty(chatRequest.getMessages())) {
+            return null;
+        }
+
+        int maxEntries = modelFeature.getResponseCacheMaxEntries() == null ?
+                config.getDefaultMaxEntries() : modelFeature.getResponseCacheMaxEntries();
+        // Settings of the product changed, start over with a new cache
+        ProductCache productCache = products.asMap().compute(productId, (k, current) ->
+                current != null && current.ttlSeconds == ttlSeconds && current.maxEntries == maxEntries ?
+                        current : new ProductCache(ttlSeconds, maxEntries));
+
+        List<ChatMessage> messages = chatRequest.getMessages();
+        String prefix = chatRequest.getModel() + "\n" + chatRequest.getTemperature() + "\n";
+        String historyKey = DigestUtil.sha256Hex(prefix + normalize(messages.subList(0, messages.size() - 1)));
+        String key = DigestUtil.sha256Hex(historyKey + "\n" + normalize(messages.subList(messages.size() - 1, messages.size())));
+
+        // Similarity applies to a plain text question only
+        ChatMessage last = messages.get(messages.size() - 1);
+        float[] vector = modelFeature.getSemanticCacheThreshold() != null
+                && ChatRole.of(last.getRole()) == ChatRole.USER && last.getContent() instanceof String question ?
+                vectorize(question, config.getVectorDimensions()) : null;
+
+        return new Scope(productCache, key, historyKey, vector, modelFeature.getSemanticCacheThreshold());
+    }
+
+    /**
+     * Replay a cached answer as a stream of messages like the model does
+     */
+    public Flux<ChatAnswerMessage> replay(String chatId, String userQuestion, CachedAnswer cached, Consumer<LlmInvokeResult> resultHandler) {
+        ChatUsage usage = ChatUsage.builder()
+                .elapsedTime(0L)
+                .firstByteTimeout(0L)
+                .promptTokens(cached.usage() == null ? null : cached.usage().getPromptTokens())
+                .completionTokens(cached.usage() == null ? null : cached.usage().getCompletionTokens())
+                .totalTokens(cached.usage() == null ? null : cached.usage().getTotalTokens())
+                .responseCached(true)
+                .build();
+
+        List<ChatAnswerMessage> messages = new ArrayList<>();
+        messages.add(newMessage(chatId, userQuestion, USER, null));
+        String answer = cached.answer();
+        int chunk = Math.max(1, config.getReplayChunkLength());
+        for (int start = 0; start < answer.length(); ) {
+            // Keep surrogate pairs in the same chunk
+            int end = answer.offsetByCodePoints(start, Math.min(chunk, answer.codePointCount(start, answer.length())));
+            messages.add(newMessage(chatId, answer.substring(start, end), ANSWER, null));
+            start = end;
+        }
+        messages.add(newMessage(chatId, null, STOP, usage));
+
+        return Flux.fromIterable(messages)
+                .doOnComplete(() -> resultHandler.accept(LlmInvokeResult.builder()
+                        .success(true)
+                        .answer(answer)
+                        .usage(usage)
+                        .build()));
+    }
+
+    private static ChatAnswerMessage newMessage(String chatId, Object content, ChatAnswerMessage.MessageType messageType, ChatUsage usage) {
+        return ChatAnswerMessage.builder()
+                .chatId(chatId)
+                .content(content)
+                .chatUsage(usage)
+                .msgType(messageType)
+                .build();
+    }
+
+    private static String normalize(List<ChatMessage> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (ChatMessage message : messages) {
+            Object content = message.getContent();
+            String text = content instanceof String str ? str : JSONUtil.toJsonStr(content);
+            sb.append(message.getRole()).append(':').append(normalize(text)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        // Full-width forms and runs of whitespace do not change the question
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * Hashed bag of words and CJK bigrams, L2-normalized so a dot product is the cosine similarity
+     */
+    static float[] vectorize(String text, int dimensions) {
+        float[] vector = new float[dimensions];
+        String normalized = normalize(text).toLowerCase();
+        StringBuilder word = new StringBuilder();
+        int previousCjk = -1;
+        for (int i = 0; i < normalized.length(); ) {
+            int cp = normalized.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.UnicodeScript.of(cp) == Character.UnicodeScript.HAN) {
+                addFeature(vector, word);
+                if (previousCjk >= 0) {
+                    addFeature(vector, new StringBuilder().appendCodePoint(previousCjk).appendCodePoint(cp));
+                }
+                previousCjk = cp;
+            } else if (Character.isLetterOrDigit(cp)) {
+                word.appendCodePoint(cp);
+                previousCjk = -1;
+            } else {
+                addFeature(vector, word);
+                previousCjk = -1;
+            }
+        }
+        addFeature(vector, word);
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static void addFeature(float[] vector, StringBuilder feature) {
+        if (feature.isEmpty()) {
+            return;
+        }
+        int hash = feature.toString().hashCode() * 0x9E3779B1;
+        vector[Math.floorMod(hash, vector.length)] += (hash >>> 31) == 0 ? 1 : -1;
+        feature.setLength(0);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public record CachedAnswer(String answer, ChatUsage usage) {
+    }
+
+    private record IndexEntry(String historyKey, float[] vector) {
+    }
+
+    private static class ProductCache {
+
+        private final int ttlSeconds;
+
+        private final int maxEntries;
+
+        private final Cache<String, CachedAnswer> answers;
+
+        /**
+         * Vectors of cached questions, scanned linearly since it is bounded by maxEntries
+         */
+        private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+
+        ProductCache(int ttlSeconds, int maxEntries) {
+            this.ttlSeconds = ttlSeconds;
+            this.maxEntries = maxEntries;
+            this.answers = Caffeine.newBuilder()
+                    .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                    .maximumSize(maxEntries)
+                    .removalListener((String key, CachedAnswer value, RemovalCause cause) -> {
+                        // A replaced answer keeps its question
+                        if (key != null && cause != RemovalCause.REPLACED) {
+                            index.remove(key);
+                        }
+                    })
+                    .build();
+        }
+    }
+
+    public final class Scope {
+
+        private final ProductCache productCache;
+
+        private final String key;
+
+        private final String historyKey;
+
+        private final float[] vector;
+
+        private final Double threshold;
+
+        /**
+         * Answer streamed so far, null once it is too long to be cached
+         */
+        private StringBuilder streamed = new StringBuilder();
+
+        private Scope(ProductCache productCache, String key, String historyKey, float[] vector, Double threshold) {
+            this.productCache = productCache;
+            this.key = key;
+            this.historyKey = historyKey;
+            this.vector = vector;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Exact match first, then the most similar question under the same history
+         *
+         * @return null if nothing matches
+         */
+        public CachedAnswer get() {
+            CachedAnswer cached = productCache.answers.getIfPresent(key);
+            if (cached != null) {
+                exactHits.increment();
+                return cached;
+            }
+
+            if (vector != null) {
+                String bestKey = null;
+                float bestScore = threshold.floatValue();
+                for (Map.Entry<String, IndexEntry> entry : productCache.index.entrySet()) {
+                    IndexEntry indexEntry = entry.getValue();
+                    if (!historyKey.equals(indexEntry.historyKey())) {
+                        continue;
+                    }
+                    float score = dot(vector, indexEntry.vector());
+                    if (score >= bestScore) {
+                        bestScore = score;
+                        bestKey = entry.getKey();
+                    }
+                }
+                cached = bestKey == null ? null : productCache.answers.getIfPresent(bestKey);
+                if (cached != null) {
+                    semanticHits.increment();
+                    return cached;
+                }
+            }
+            misses.increment();
+            return null;
+        }
+
+        /**
+         * Collect the answer from the stream, the result does not carry a checkpointed answer
+         */
+        public void collect(ChatAnswerMessage message) {
+            if (streamed == null || message.getMsgType() != ANSWER || !(message.getContent() instanceof String content)) {
+                return;
+            }
+            if (streamed.length() + content.length() > config.getMaxAnswerLength()) {
+                streamed = null;
+                return;
+            }
+            streamed.append(content);
+        }
+
+        /**
+         * Cache the answer of a request that finished successfully
+         */
+        public void put(LlmInvokeResult result) {
+            String answer = result.getAnswer() != null ? result.getAnswer() : streamed == null ? null : streamed.toString();
+            if (!result.isSuccess() || StrUtil.isBlank(answer) || answer.length() > config.getMaxAnswerLength()) {
+                return;
+            }
+            productCache.answers.put(key, new CachedAnswer(answer, result.getUsage()));
+            if (vector != null) {
+                productCache.index.put(key, new IndexEntry(historyKey, vector));
+            }
+        }
+    }
+}
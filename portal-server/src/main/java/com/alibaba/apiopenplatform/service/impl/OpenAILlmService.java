@@ -3,7 +3,7 @@ package com.alibaba.apiopenplatform.service.impl;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.json.JSONUtil;
 import com.alibaba.apiopenplatform.core.exception.ChatError;
-import com.alibaba.apiopenplatform.core.security.ContextHolder;
+import com.alibaba.apiopenplatform.dto.params.chat.ChatAnswerBuffer;
 import com.alibaba.apiopenplatform.dto.params.chat.ChatContext;
 import com.alibaba.apiopenplatform.dto.params.chat.ChatRequestBody;
 import com.alibaba.apiopenplatform.dto.params.chat.McpToolMeta;
@@ -12,7 +12,6 @@ import com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage;
 import com.alibaba.apiopenplatform.dto.result.chat.LlmChatRequest;
 import com.alibaba.apiopenplatform.dto.result.chat.LlmInvokeResult;
 import com.alibaba.apiopenplatform.dto.result.consumer.CredentialContext;
-import com.alibaba.apiopenplatform.service.ConsumerService;
 import com.alibaba.apiopenplatform.support.chat.ChatMessage;
 import com.alibaba.apiopenplatform.support.chat.ChatUsage;
 import com.alibaba.apiopenplatform.support.chat.mcp.McpServerConfig;
@@ -33,27 +32,19 @@ import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.mcp.SyncMcpToolCallback;
-import org.springframework.ai.model.tool.ToolCallingManager;
-import org.springframework.ai.model.tool.ToolExecutionResult;
-import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
-import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import static com.alibaba.apiopenplatform.dto.result.chat.ChatAnswerMessage.MessageType.*;
@@ -66,20 +57,26 @@ public class OpenAILlmService extends AbstractLlmService {
     private String defaultApiKey;
 
     @Resource
-    private ToolCallingManager toolCallingManager;
+    private ConcurrentToolExecutor toolExecutor;
     @Resource
-    private McpClientFactory   mcpClientFactory;
+    private McpClientPool      mcpClientPool;
+    @Resource
+    private McpToolCatalog     mcpToolCatalog;
 
     @Resource
-    private ConsumerService consumerService;
+    private ChatClientRegistry chatClientRegistry;
 
     @Resource
-    private ContextHolder contextHolder;
+    private ChatAnswerCheckpointer answerCheckpointer;
 
+    @Resource
+    private GatewayEndpointBalancer endpointBalancer;
 
+    @Resource
+    private ModelRequestHedger requestHedger;
 
-    private final WebClient.Builder webClientBuilder = WebClient.builder()
-            .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(16 * 1024 * 1024));
+    @Resource
+    private ChatMetrics chatMetrics;
 
 
     private List<Message> convertMessages(ChatRequestBody chatRequestBody) {
@@ -106,43 +103,15 @@ public class OpenAILlmService extends AbstractLlmService {
     }
 
 
-    private void cleanContext(ChatContext chatContext) {
-        chatContext.getMcpClientHolders().forEach(h -> {
-            try {
-                h.close();
-            } catch (Exception e) {
-                log.error("close mcp client error", e);
-            }
-        });
-    }
-
     private ChatClient newChatClient(LlmChatRequest request) {
-        MultiValueMap<String, String> headers = new HttpHeaders();
-        Optional.ofNullable(request.getHeaders()).ifPresent(headerMap -> {
-            headerMap.forEach(headers::add);
-        });
         URL url = request.getUrl();
         String baseUrl = String.format("%s://%s", url.getProtocol(), url.getHost());
         if (url.getPort() > 0) {
             baseUrl += ":" + url.getPort();
         }
-        OpenAiApi openAiApi = OpenAiApi.builder()
-                .baseUrl(baseUrl)
-                .completionsPath(url.getPath())
-                .headers(headers)
-                .apiKey(request.getCredentialContext() != null ? request.getCredentialContext().getApiKey() : defaultApiKey)
-                .webClientBuilder(webClientBuilder)
-                .build();
-
-        OpenAiChatModel chatModel = OpenAiChatModel.builder()
-                .openAiApi(openAiApi)
-                .toolCallingManager(toolCallingManager)
-                .defaultOptions(OpenAiChatOptions.builder()
-                        .streamUsage(true)
-                        .build())
-                .build();
+        String apiKey = request.getCredentialContext() != null ? request.getCredentialContext().getApiKey() : defaultApiKey;
 
-        return ChatClient.builder(chatModel).build();
+        return chatClientRegistry.getChatClient(baseUrl, url.getPath(), apiKey, request.getHeaders());
     }
 
 
@@ -150,26 +119,22 @@ public class OpenAILlmService extends AbstractLlmService {
         ChatRequestBody chatRequestBody = request.getChatRequest();
         List<McpServerConfig> mcpServerConfigs = chatRequestBody.getMcpServerConfigs();
         Map<McpToolMeta, ToolCallback> toolsMap = new HashMap<>();
-        List<McpClientHolder> mcpClientHolders = new ArrayList<>();
         if (CollUtil.isNotEmpty(mcpServerConfigs)) {
+            // Authentication info is resolved before the request leaves the caller thread
+            CredentialContext credentialContext = Optional.ofNullable(request.getCredentialContext())
+                    .orElseGet(() -> CredentialContext.builder().build());
             mcpServerConfigs.forEach(mcpServerConfig -> {
                 mcpServerConfig.getMcpServers().forEach((serverName, config) -> {
-                    // Get authentication info (use applicationContext to get bean to avoid circular dependency)
-                    CredentialContext credentialContext = consumerService.getDefaultCredential(contextHolder.getUser());
-
-                    McpClientHolder mcpClientHolder = mcpClientFactory.initClient(config.getType(), config.getUrl(), credentialContext.getHeaders(), credentialContext.getQueryParams());
-                    if (mcpClientHolder == null) {
-                        return;
-                    }
-                    mcpClientHolders.add(mcpClientHolder);
-                    List<McpSchema.Tool> tools = mcpClientHolder.listTools();
-                    Optional.ofNullable(tools).orElse(Collections.emptyList()).forEach(tool -> {
+                    // Tools are served from the catalog, a session is leased only when a tool is called
+                    List<McpToolCatalog.McpTool> mcpTools = mcpToolCatalog.getTools(mcpServerConfig.getProductId(), config, credentialContext);
+                    Optional.ofNullable(mcpTools).orElse(Collections.emptyList()).forEach(mcpTool -> {
+                        McpSchema.Tool tool = mcpTool.tool();
                         McpToolMeta mcpToolMeta = new McpToolMeta();
                         mcpToolMeta.setToolName(tool.name());
                         mcpToolMeta.setToolNameCn(tool.title());
                         mcpToolMeta.setMcpName(serverName);
                         mcpToolMeta.setMcpNameCn(serverName);
-                        toolsMap.put(mcpToolMeta, new SyncMcpToolCallback(mcpClientHolder.getMcpSyncClient(), tool));
+                        toolsMap.put(mcpToolMeta, new LeasedMcpToolCallback(mcpClientPool, config, credentialContext, mcpTool, endpointBalancer));
                     });
                 });
             });
@@ -189,32 +154,60 @@ public class OpenAILlmService extends AbstractLlmService {
         ChatOptions chatOptions = chatOptionsBuilder.build();
         return ChatContext.builder()
                 .chatId(request.getChatId())
+                .contextTokens(request.getContextTokens())
+                // Answers of internal calls are short and never resumed
+                .answer(request.isInternal() ? new ChatAnswerBuffer(request.getChatId()) : answerCheckpointer.open(request.getChatId()))
+                .internal(request.isInternal())
                 .chatOptions(chatOptions)
                 .toolContext(toolContext)
-                .mcpClientHolders(mcpClientHolders)
                 .build();
     }
 
     @Override
     protected Flux<ChatAnswerMessage> call(LlmChatRequest request, HttpServletResponse response, Consumer<LlmInvokeResult> resultHandler) {
-        log.debug("request: {}", JSONUtil.toJsonStr(request));
-        request.tryResolveDns();
+        if (log.isDebugEnabled()) {
+            log.debug("request: {}", JSONUtil.toJsonStr(request));
+        }
+        // Hedge requests start from the original domain and headers
+        URL originalUrl = request.getUrl();
+        Map<String, String> originalHeaders = request.getHeaders() == null ? null : new HashMap<>(request.getHeaders());
+        GatewayEndpointBalancer.Selection endpoint = resolveGateway(request);
 
         ChatRequestBody chatRequestBody = request.getChatRequest();
         List<Message> messages = convertMessages(chatRequestBody);
         AtomicInteger modelRequestCount = new AtomicInteger(1);
 
-        ChatClient chatClient = newChatClient(request);
-
-        ChatContext chatContext = initChatContext(request);
+        ChatClient chatClient;
+        ChatContext chatContext;
+        long initStartNanos = System.nanoTime();
+        try {
+            chatClient = newChatClient(request);
+            chatContext = initChatContext(request);
+        } catch (RuntimeException e) {
+            // The model is never called, release the gateway IP without a health signal
+            Optional.ofNullable(endpoint).ifPresent(GatewayEndpointBalancer.Selection::cancel);
+            throw e;
+        }
         chatContext.setChatClient(chatClient);
+        chatContext.setProductId(request.getProductId());
+        chatContext.setModel(chatRequestBody.getModel());
+        chatContext.setGateway(originalUrl.getHost());
+        chatMetrics.recordPhase(ChatMetrics.PHASE_MCP_INIT, chatContext, System.nanoTime() - initStartNanos);
 
         chatContext.start();
 
         ChatClient.ChatClientRequestSpec clientRequestSpec = chatClient.prompt(new Prompt(messages, chatContext.getChatOptions()))
                 .options(chatContext.getChatOptions());
-        Flux<ChatAnswerMessage> fluxResponse = clientRequestSpec.stream()
+        Flux<ChatResponse> chatResponses = clientRequestSpec.stream()
                 .chatResponse()
+                // Outcome of the model stream is a passive health signal of the gateway IP
+                .transform(responses -> endpointBalancer.track(responses, endpoint));
+        if (!request.isInternal()) {
+            // Internal calls do not draw on the hedge budget of the chats
+            chatResponses = requestHedger.hedge(hedgeKey(originalUrl, chatRequestBody), request.getHedgePercentile(), chatResponses,
+                    () -> hedgeChatResponses(request, originalUrl, originalHeaders, endpoint, messages, chatContext));
+        }
+        Flux<ChatAnswerMessage> fluxResponse = chatResponses
                 .flatMap(chatResponse -> {
                     if (chatResponse.getResult() == null) {
                         return Flux.empty();
@@ -230,19 +223,129 @@ public class OpenAILlmService extends AbstractLlmService {
                 })
                 .startWith(newChatAnswerMessage(null, chatRequestBody.getUserQuestion(), USER, chatContext))
                 .doOnNext(chatAnswerMessage -> {
-                    chatContext.recordFirstByteTimeout();
-                    log.debug("chatId={} chatAnswerMessage: {}", request.getChatId(), JSONUtil.toJsonStr(chatAnswerMessage));
+                    // The user message is echoed without waiting for the model
+                    if (chatAnswerMessage.getMsgType() != USER && chatContext.getFirstByteTimeout() == null) {
+                        chatContext.recordFirstByteTimeout();
+                        chatMetrics.recordPhase(ChatMetrics.PHASE_FIRST_TOKEN, chatContext,
+                                TimeUnit.MILLISECONDS.toNanos(chatContext.getFirstByteTimeout()));
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("chatId={} chatAnswerMessage: {}", request.getChatId(), JSONUtil.toJsonStr(chatAnswerMessage));
+                    }
                 })
                 .doOnComplete(() -> {
                     resultHandler.accept(LlmInvokeResult.of(chatContext));
                 });
         return applyErrorHandling(fluxResponse, chatContext, resultHandler)
+                // Runs before the cancel reaches the model stream and tool calls, so no further round is started
+                .doOnCancel(() -> {
+                    chatContext.setCancelled(true);
+                    log.warn("Chat [{}] was canceled", request.getChatId());
+                    resultHandler.accept(LlmInvokeResult.of(chatContext));
+                    recordCancel(chatContext);
+                })
                 .doFinally(s -> {
-                    cleanContext(chatContext);
                     chatContext.stop();
+                    chatContext.completeAnswer();
+                    recordCompletion(chatContext);
                 });
     }
 
+    private void recordCompletion(ChatContext chatContext) {
+        long elapsedNanos = chatContext.getStopWatch().elapsed(TimeUnit.NANOSECONDS);
+        chatMetrics.recordPhase(ChatMetrics.PHASE_TOTAL, chatContext, elapsedNanos);
+
+        // Throughput of generation, time to the first token excluded
+        ChatUsage chatUsage = chatContext.getChatUsage();
+        if (chatUsage == null || chatUsage.getCompletionTokens() == null || chatContext.getFirstByteTimeout() == null) {
+            return;
+        }
+        long generationMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos) - chatContext.getFirstByteTimeout();
+        if (generationMillis > 0) {
+            chatMetrics.recordThroughput(chatContext, chatUsage.getCompletionTokens() * 1000.0 / generationMillis);
+        }
+    }
+
+    /**
+     * Tokens generated for the abandoned answer, and generation time saved, estimated from the pace so far
+     * assuming the model would have used the whole max tokens
+     */
+    private void recordCancel(ChatContext chatContext) {
+        int wastedTokens = chatContext.getAnswer().tokens();
+        long savedNanos = 0;
+        Integer maxTokens = chatContext.getChatOptions().getMaxTokens();
+        if (maxTokens != null && wastedTokens > 0 && wastedTokens < maxTokens && chatContext.getFirstByteTimeout() != null) {
+            long generationNanos = chatContext.getStopWatch().elapsed(TimeUnit.NANOSECONDS)
+                    - TimeUnit.MILLISECONDS.toNanos(chatContext.getFirstByteTimeout());
+            if (generationNanos > 0) {
+                savedNanos = generationNanos / wastedTokens * (maxTokens - wastedTokens);
+            }
+        }
+        chatMetrics.recordCancel(chatContext, wastedTokens, savedNanos);
+    }
+
+    private String hedgeKey(URL url, ChatRequestBody chatRequestBody) {
+        return url.getHost() + "/" + chatRequestBody.getModel();
+    }
+
+    /**
+     * Replace the domain of the request with a gateway IP picked by the balancer
+     *
+     * @return the selection to be released when the call finishes, null if the domain is kept
+     */
+    private GatewayEndpointBalancer.Selection resolveGateway(LlmChatRequest request) {
+        if (!request.canResolveDns()) {
+            return null;
+        }
+        GatewayEndpointBalancer.Selection selection = endpointBalancer.select(request.getGatewayIps());
+        if (!request.tryResolveDns(selection.getIp())) {
+            selection.cancel();
+            return null;
+        }
+        return selection;
+    }
+
+    /**
+     * Same request sent to another gateway IP if there is one, otherwise over a new connection to the same route
+     */
+    private Flux<ChatResponse> hedgeChatResponses(LlmChatRequest request, URL originalUrl, Map<String, String> originalHeaders,
+                                                  GatewayEndpointBalancer.Selection primary, List<Message> messages, ChatContext chatContext) {
+        List<String> gatewayIps = request.getGatewayIps();
+        if (primary != null && CollUtil.isNotEmpty(gatewayIps)) {
+            List<String> otherIps = gatewayIps.stream()
+                    .filter(ip -> !ip.equals(primary.getIp()))
+                    .toList();
+            gatewayIps = otherIps.isEmpty() ? gatewayIps : otherIps;
+        }
+        LlmChatRequest hedgeRequest = LlmChatRequest.builder()
+                .chatId(request.getChatId())
+                .productId(request.getProductId())
+                .url(originalUrl)
+                .headers(originalHeaders == null ? null : new HashMap<>(originalHeaders))
+                .apiKey(request.getApiKey())
+                .chatRequest(request.getChatRequest())
+                .gatewayIps(gatewayIps)
+                .credentialContext(request.getCredentialContext())
+                .build();
+        GatewayEndpointBalancer.Selection endpoint = resolveGateway(hedgeRequest);
+
+        ChatClient chatClient;
+        try {
+            chatClient = newChatClient(hedgeRequest);
+        } catch (RuntimeException e) {
+            Optional.ofNullable(endpoint).ifPresent(GatewayEndpointBalancer.Selection::cancel);
+            throw e;
+        }
+        ChatOptions chatOptions = chatContext.getChatOptions();
+        return chatClient.prompt(new Prompt(new ArrayList<>(messages), chatOptions))
+                .options(chatOptions)
+                .stream()
+                .chatResponse()
+                .transform(responses -> endpointBalancer.track(responses, endpoint))
+                // Follow-up rounds of tool calls go to the route that answered
+                .doOnNext(chatResponse -> chatContext.setChatClient(chatClient));
+    }
+
     private Flux<ChatAnswerMessage> handleToolCallsInStream(ChatContext chatContext, ChatResponse chatResponse, List<Message> messages,
                                                             AtomicInteger modelRequestCount, Consumer<LlmInvokeResult> resultHandler) {
         Usage usage = chatResponse.getMetadata().getUsage();
@@ -255,7 +358,7 @@ public class OpenAILlmService extends AbstractLlmService {
                         Flux<ChatAnswerMessage> calls = buildToolCallMessages(toolCalls, usage, chatContext);
 
                         // 工具调用
-                        Flux<ChatAnswerMessage> responses = executeToolCalls(usage, messages, chatContext, chatResponse);
+                        Flux<ChatAnswerMessage> responses = executeToolCalls(usage, messages, chatContext, toolCalls);
                         // 限制模型调用次数，防止无限循环
                         if (modelRequestCount.incrementAndGet() > MAX_MODEL_REQUEST_PER_CHAT) {
                             return Flux.concat(
@@ -282,22 +385,26 @@ public class OpenAILlmService extends AbstractLlmService {
 
     private Flux<ChatAnswerMessage> initiateNextCall(List<Message> messages, ChatContext chatContext, AtomicInteger modelRequestCount, Consumer<LlmInvokeResult> resultHandler) {
         ChatOptions chatOptions = chatContext.getChatOptions();
-        return Flux.defer(() -> chatContext.getChatClient().prompt(new Prompt(messages, chatOptions))
-                .options(chatOptions)
-                .toolCallbacks(chatContext.getToolContext().getToolCallbacks())
-                .stream()
-                .chatResponse()
-                .flatMap(nextChatResponse -> {
-                    if (nextChatResponse.getResult() == null) {
-                        log.warn("chatResponse.generation is null, which is unexpected");
-                        return Flux.empty();
-                    }
-                    if (nextChatResponse.hasToolCalls()) {
-                        return handleToolCallsInStream(chatContext, nextChatResponse, messages, modelRequestCount, resultHandler);
-                    }
-                    return handleAnswerInStream(nextChatResponse, messages, chatContext);
-                })
-        );
+        return Flux.defer(() -> {
+            if (chatContext.isCancelled()) {
+                return Flux.empty();
+            }
+            return chatContext.getChatClient().prompt(new Prompt(messages, chatOptions))
+                    .options(chatOptions)
+                    .toolCallbacks(chatContext.getToolContext().getToolCallbacks())
+                    .stream()
+                    .chatResponse()
+                    .flatMap(nextChatResponse -> {
+                        if (nextChatResponse.getResult() == null) {
+                            log.warn("chatResponse.generation is null, which is unexpected");
+                            return Flux.empty();
+                        }
+                        if (nextChatResponse.hasToolCalls()) {
+                            return handleToolCallsInStream(chatContext, nextChatResponse, messages, modelRequestCount, resultHandler);
+                        }
+                        return handleAnswerInStream(nextChatResponse, messages, chatContext);
+                    });
+        });
     }
 
     private Flux<ChatAnswerMessage> applyErrorHandling(Flux<ChatAnswerMessage> flux, ChatContext chatContext,
@@ -305,10 +412,6 @@ public class OpenAILlmService extends AbstractLlmService {
         String chatId = chatContext.getChatId();
 
         return flux
-                .doOnCancel(() -> {
-                    log.warn("Chat [{}] was canceled", chatId);
-                    resultHandler.accept(LlmInvokeResult.of(chatContext));
-                })
                 .doOnError(e -> {
                     log.error("Chat [{}] encountered error: {}", chatId, e.getMessage(), e);
                     // Append error message to answer
@@ -340,35 +443,24 @@ public class OpenAILlmService extends AbstractLlmService {
         return Flux.fromIterable(callMessages);
     }
 
-    private Flux<ChatAnswerMessage> executeToolCalls(Usage usage, List<Message> messages, ChatContext chatContext, ChatResponse chatResponse) {
+    private Flux<ChatAnswerMessage> executeToolCalls(Usage usage, List<Message> messages, ChatContext chatContext, List<AssistantMessage.ToolCall> toolCalls) {
         return Flux.defer(() -> {
-            // 工具调用
-            ToolExecutionResult toolExecutionResult = null;
-            long startTime = System.currentTimeMillis();
-            AtomicLong costMillis = new AtomicLong(0);
-            try {
-                toolExecutionResult = toolCallingManager.executeToolCalls(new Prompt(messages, chatContext.getChatOptions()), chatResponse);
-            } catch (Throwable t) {
-                log.error("toolCallingManager.executeToolCalls has error", t);
-                return Flux.error(t);
-            } finally {
-                costMillis.set(System.currentTimeMillis() - startTime);
-                log.info("toolCallingManager.executeToolCalls cost: {}ms", costMillis.get());
-            }
-            List<Message> conversationHistory = toolExecutionResult.conversationHistory();
-            Message lastMessage = conversationHistory.get(conversationHistory.size() - 1);
-
-            // 工具调用结果需要加到上下文中
-            messages.add(lastMessage);
-            List<ChatAnswerMessage> toolResponseMessages = new ArrayList<>();
-            if (lastMessage instanceof ToolResponseMessage toolResponseMessage) {
-                List<ToolResponseMessage.ToolResponse> toolResponses = toolResponseMessage.getResponses();
-                toolResponses.forEach(toolResponse -> {
-                    ChatAnswerMessage.ToolResponse tr = this.constructToolResponse(toolResponse, chatContext.getToolContext(), costMillis.get());
-                    toolResponseMessages.add(newChatAnswerMessage(usage, tr, TOOL_RESPONSE, chatContext));
-                });
+            if (chatContext.isCancelled()) {
+                return Flux.empty();
             }
-            return Flux.fromIterable(toolResponseMessages);
+            ToolContext toolContext = chatContext.getToolContext();
+            List<ConcurrentToolExecutor.ToolExecution> executions = Collections.synchronizedList(new ArrayList<>());
+
+            // 工具并发调用，每个结果完成后立即返回
+            return toolExecutor.execute(toolCalls, toolContext)
+                    .doOnNext(executions::add)
+                    .map(execution -> {
+                        ChatAnswerMessage.ToolResponse tr = this.constructToolResponse(execution.response(), toolContext, execution.costMillis());
+                        return newChatAnswerMessage(usage, tr, TOOL_RESPONSE, chatContext);
+                    })
+                    // 工具调用结果需要按调用顺序加到上下文中
+                    .doOnComplete(() -> messages.add(ConcurrentToolExecutor.toResponseMessage(executions)))
+                    .doOnError(t -> log.error("executeToolCalls has error", t));
         });
     }
 
@@ -397,7 +489,11 @@ public class OpenAILlmService extends AbstractLlmService {
     protected ChatAnswerMessage newChatAnswerMessage(Usage usage, Object content, ChatAnswerMessage.MessageType messageType, ChatContext chatContext) {
         // Append to answer content and reset current content
         if (messageType == ANSWER && content instanceof String strContent) {
-            chatContext.getAnswerContent().append(strContent);
+            chatContext.appendAnswer(strContent);
+            long gap = chatContext.markAnswerChunk();
+            if (gap >= 0) {
+                chatMetrics.recordInterToken(chatContext, gap);
+            }
         }
 
         ChatUsage chatUsage = (usage != null && !(usage instanceof EmptyUsage)) ?
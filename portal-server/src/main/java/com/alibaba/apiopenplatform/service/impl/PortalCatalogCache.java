@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.CatalogCacheConfig;
+import com.alibaba.apiopenplatform.core.event.CatalogChangedEvent;
+import com.alibaba.apiopenplatform.core.event.PortalDeletingEvent;
+import com.alibaba.apiopenplatform.core.event.ProductDeletingEvent;
+import com.alibaba.apiopenplatform.dto.params.category.QueryProductCategoryParam;
+import com.alibaba.apiopenplatform.dto.params.product.QueryProductParam;
+import com.alibaba.apiopenplatform.dto.result.ProductCategoryResult;
+import com.alibaba.apiopenplatform.dto.result.common.PageResult;
+import com.alibaba.apiopenplatform.entity.Product;
+import com.alibaba.apiopenplatform.entity.ProductRef;
+import com.alibaba.apiopenplatform.support.enums.ProductStatus;
+import com.alibaba.apiopenplatform.support.enums.ProductType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of the catalog seen by developer portals: product details, published products and
+ * product lists of each portal, and category lists.
+ * <p>
+ * Entries are invalidated after the changing transaction commits, and on the other replicas through
+ * {@link CatalogInvalidationBroadcaster}. Product details are cached as loaded rows, callers assemble
+ * their own results so nothing returned to them is shared.
+ */
+@Component
+@Slf4j
+public class PortalCatalogCache {
+
+    static final String REGION_PRODUCT = "product";
+
+    static final String REGION_PORTAL = "portal";
+
+    static final String REGION_CATEGORY = "category";
+
+    private final CatalogCacheConfig config;
+
+    private final CatalogInvalidationBroadcaster broadcaster;
+
+    private final Cache<String, CatalogProduct> products;
+
+    private final Cache<String, PortalCatalog> portals;
+
+    private final Cache<CategoryListKey, PageResult<ProductCategoryResult>> categoryLists;
+
+    public PortalCatalogCache(CatalogCacheConfig config, CatalogInvalidationBroadcaster broadcaster, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.broadcaster = broadcaster;
+        this.products = Caffeine.newBuilder()
+                .maximumSize(config.getMaxProducts())
+                .expireAfterWrite(config.getExpireMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        this.portals = Caffeine.newBuilder()
+                .maximumSize(config.getMaxPortals())
+                .expireAfterWrite(config.getExpireMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        this.categoryLists = Caffeine.newBuilder()
+                .maximumSize(config.getMaxCategoryLists())
+                .expireAfterWrite(config.getExpireMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, products, "catalog.products");
+        CaffeineCacheMetrics.monitor(meterRegistry, portals, "catalog.portals");
+        CaffeineCacheMetrics.monitor(meterRegistry, categoryLists, "catalog.categories");
+
+        broadcaster.subscribe(this::apply);
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * @param loader loads the product, null if not found
+     */
+    public CatalogProduct getProduct(String productId, Function<String, CatalogProduct> loader) {
+        return products.get(productId, loader);
+    }
+
+    /**
+     * @param loader loads the missing products at once
+     * @return found products
+     */
+    public Map<String, CatalogProduct> getProducts(Collection<String> productIds,
+                                                   Function<Set<? extends String>, Map<String, CatalogProduct>> loader) {
+        return products.getAll(productIds, loader);
+    }
+
+    public boolean isPublished(String portalId, String productId, Function<String, Set<String>> publicationLoader) {
+        return getPortal(portalId, publicationLoader).publishedProductIds().contains(productId);
+    }
+
+    /**
+     * Product IDs of a page of the portal's product list
+     */
+    public PageResult<String> getProductPage(String portalId, ProductListKey key, Function<String, Set<String>> publicationLoader,
+                                             Supplier<PageResult<String>> loader) {
+        return getPortal(portalId, publicationLoader).lists().get(key, k -> loader.get());
+    }
+
+    public PageResult<ProductCategoryResult> getCategoryPage(CategoryListKey key, Supplier<PageResult<ProductCategoryResult>> loader) {
+        PageResult<ProductCategoryResult> page = categoryLists.get(key, k -> loader.get());
+        return PageResult.of(new ArrayList<>(page.getContent()), page.getNumber(), page.getSize(), page.getTotalElements());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleCatalogChange(CatalogChangedEvent event) {
+        event.getProductIds().forEach(productId -> invalidate(REGION_PRODUCT, productId));
+        event.getPortalIds().forEach(portalId -> invalidate(REGION_PORTAL, portalId));
+        if (event.isCategoriesChanged()) {
+            invalidate(REGION_CATEGORY, "*");
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleProductDeletion(ProductDeletingEvent event) {
+        invalidate(REGION_PRODUCT, event.getProductId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handlePortalDeletion(PortalDeletingEvent event) {
+        invalidate(REGION_PORTAL, event.getPortalId());
+    }
+
+    private PortalCatalog getPortal(String portalId, Function<String, Set<String>> publicationLoader) {
+        return portals.get(portalId, id -> new PortalCatalog(Set.copyOf(publicationLoader.apply(id)),
+                Caffeine.newBuilder()
+                        .maximumSize(config.getMaxListsPerPortal())
+                        .build()));
+    }
+
+    private void invalidate(String region, String entityId) {
+        evict(region, entityId);
+        broadcaster.publish(region, entityId);
+    }
+
+    private void apply(CatalogInvalidationBroadcaster.Invalidation invalidation) {
+        evict(invalidation.region(), invalidation.entityId());
+    }
+
+    private void evict(String region, String entityId) {
+        switch (region) {
+            case REGION_PRODUCT:
+                products.invalidate(entityId);
+                // Lists of the portals publishing the product may change with its name, type or status
+                portals.asMap().values().removeIf(portal -> portal.publishedProductIds().contains(entityId));
+                break;
+            case REGION_PORTAL:
+                portals.invalidate(entityId);
+                break;
+            case REGION_CATEGORY:
+                categoryLists.invalidateAll();
+                break;
+            default:
+                log.warn("Unknown catalog cache region {}", region);
+        }
+    }
+
+    /**
+     * Rows a product result is assembled from
+     *
+     * @param product    product
+     * @param productRef linked API, null if not linked
+     * @param categories categories of the product
+     */
+    public record CatalogProduct(Product product, ProductRef productRef, List<ProductCategoryResult> categories) {
+    }
+
+    private record PortalCatalog(Set<String> publishedProductIds, Cache<ProductListKey, PageResult<String>> lists) {
+    }
+
+    public record ProductListKey(ProductType type, String name, ProductStatus status, List<String> categoryIds,
+                                 String excludeCategoryId, int page, int size, String sort) {
+
+        public static ProductListKey of(QueryProductParam param, Pageable pageable) {
+            return new ProductListKey(param.getType(), param.getName(), param.getStatus(),
+                    param.getCategoryIds() == null ? null : List.copyOf(param.getCategoryIds()),
+                    param.getExcludeCategoryId(),
+                    pageable.isPaged() ? pageable.getPageNumber() : -1,
+                    pageable.isPaged() ? pageable.getPageSize() : -1,
+                    pageable.getSort().toString());
+        }
+    }
+
+    public record CategoryListKey(String name, String productType, int page, int size, String sort) {
+
+        public static CategoryListKey of(QueryProductCategoryParam param, Pageable pageable) {
+            return new CategoryListKey(param.getName(), param.getProductType(),
+                    pageable.isPaged() ? pageable.getPageNumber() : -1,
+                    pageable.isPaged() ? pageable.getPageSize() : -1,
+                    pageable.getSort().toString());
+        }
+    }
+}
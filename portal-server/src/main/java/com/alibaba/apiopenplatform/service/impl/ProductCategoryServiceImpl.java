@@ -22,6 +22,7 @@ package com.alibaba.apiopenplatform.service.impl;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.alibaba.apiopenplatform.core.constant.Resources;
+import com.alibaba.apiopenplatform.core.event.CatalogChangedEvent;
 import com.alibaba.apiopenplatform.core.exception.BusinessException;
 import com.alibaba.apiopenplatform.core.exception.ErrorCode;
 import com.alibaba.apiopenplatform.core.security.ContextHolder;
@@ -40,6 +41,7 @@ import com.alibaba.apiopenplatform.service.ProductCategoryService;
 import com.alibaba.apiopenplatform.support.enums.ProductType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -49,7 +51,10 @@ import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 import jakarta.persistence.criteria.Subquery;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -65,6 +70,10 @@ public class ProductCategoryServiceImpl implements ProductCategoryService {
 
     private final ContextHolder contextHolder;
 
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final PortalCatalogCache catalogCache;
+
     @Override
     public ProductCategoryResult createProductCategory(CreateProductCategoryParam param) {
         categoryRepository.findByName(param.getName())
@@ -80,12 +89,21 @@ public class ProductCategoryServiceImpl implements ProductCategoryService {
         category.setAdminId(contextHolder.getUser());
 
         categoryRepository.save(category);
+        eventPublisher.publishEvent(CatalogChangedEvent.ofCategories(this, null));
 
         return getProductCategory(categoryId);
     }
 
     @Override
     public PageResult<ProductCategoryResult> listProductCategories(QueryProductCategoryParam param, Pageable pageable) {
+        if (!contextHolder.isAdministrator() && catalogCache.isEnabled()) {
+            return catalogCache.getCategoryPage(PortalCatalogCache.CategoryListKey.of(param, pageable),
+                    () -> findProductCategories(param, pageable));
+        }
+        return findProductCategories(param, pageable);
+    }
+
+    private PageResult<ProductCategoryResult> findProductCategories(QueryProductCategoryParam param, Pageable pageable) {
         Page<ProductCategory> categories = categoryRepository.findAll(buildProductCategorySpec(param), pageable);
         return new PageResult<ProductCategoryResult>().convertFrom(categories,
                 category -> new ProductCategoryResult().convertFrom(category));
@@ -112,6 +130,12 @@ public class ProductCategoryServiceImpl implements ProductCategoryService {
         param.update(category);
         categoryRepository.saveAndFlush(category);
 
+        // Products embed their categories
+        List<String> productIds = categoryRelationRepository.findByCategoryId(categoryId).stream()
+                .map(ProductCategoryRelation::getProductId)
+                .collect(Collectors.toList());
+        eventPublisher.publishEvent(CatalogChangedEvent.ofCategories(this, productIds));
+
         return getProductCategory(categoryId);
     }
 
@@ -124,6 +148,7 @@ public class ProductCategoryServiceImpl implements ProductCategoryService {
         }
 
         categoryRepository.delete(category);
+        eventPublisher.publishEvent(CatalogChangedEvent.ofCategories(this, null));
     }
 
     @Override
@@ -142,6 +167,33 @@ public class ProductCategoryServiceImpl implements ProductCategoryService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public Map<String, List<ProductCategoryResult>> listCategoriesForProducts(Collection<String> productIds) {
+        if (CollUtil.isEmpty(productIds)) {
+            return new HashMap<>();
+        }
+        List<ProductCategoryRelation> relations = categoryRelationRepository.findByProductIdIn(productIds);
+        if (CollUtil.isEmpty(relations)) {
+            return new HashMap<>();
+        }
+
+        Set<String> categoryIds = relations.stream()
+                .map(ProductCategoryRelation::getCategoryId)
+                .collect(Collectors.toSet());
+        Map<String, ProductCategory> categories = categoryRepository.findByCategoryIdIn(new ArrayList<>(categoryIds)).stream()
+                .collect(Collectors.toMap(ProductCategory::getCategoryId, category -> category));
+
+        Map<String, List<ProductCategoryResult>> results = new HashMap<>();
+        for (ProductCategoryRelation relation : relations) {
+            ProductCategory category = categories.get(relation.getCategoryId());
+            if (category != null) {
+                results.computeIfAbsent(relation.getProductId(), k -> new ArrayList<>())
+                        .add(new ProductCategoryResult().convertFrom(category));
+            }
+        }
+        return results;
+    }
+
     @Override
     public void bindProductCategories(String productId, List<String> categoryIds) {
         if (CollUtil.isEmpty(categoryIds)) {
@@ -169,12 +221,14 @@ public class ProductCategoryServiceImpl implements ProductCategoryService {
 
         if (CollUtil.isNotEmpty(relations)) {
             categoryRelationRepository.saveAll(relations);
+            eventPublisher.publishEvent(CatalogChangedEvent.ofCategories(this, List.of(productId)));
         }
     }
 
     @Override
     public void unbindAllProductCategories(String productId) {
         categoryRelationRepository.deleteAllByProductId(productId);
+        eventPublisher.publishEvent(CatalogChangedEvent.ofCategories(this, List.of(productId)));
     }
 
     @Override
@@ -185,6 +239,7 @@ public class ProductCategoryServiceImpl implements ProductCategoryService {
         
         // Delete the relationships between products and category
         categoryRelationRepository.deleteByProductIdInAndCategoryId(productIds, categoryId);
+        eventPublisher.publishEvent(CatalogChangedEvent.ofCategories(this, productIds));
     }
 
     @Override
@@ -213,6 +268,7 @@ public class ProductCategoryServiceImpl implements ProductCategoryService {
         
         if (CollUtil.isNotEmpty(newRelations)) {
             categoryRelationRepository.saveAll(newRelations);
+            eventPublisher.publishEvent(CatalogChangedEvent.ofCategories(this, productIds));
         }
         
         log.info("Bound {} products to category {}", newRelations.size(), categoryId);
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.alibaba.apiopenplatform.config.CatalogCacheConfig;
+import com.alibaba.apiopenplatform.dto.result.agent.AgentConfigResult;
+import com.alibaba.apiopenplatform.dto.result.common.DomainResult;
+import com.alibaba.apiopenplatform.dto.result.httpapi.APIConfigResult;
+import com.alibaba.apiopenplatform.dto.result.httpapi.HttpRouteResult;
+import com.alibaba.apiopenplatform.dto.result.mcp.MCPConfigResult;
+import com.alibaba.apiopenplatform.dto.result.model.ModelConfigResult;
+import com.alibaba.apiopenplatform.entity.ProductRef;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsed configs of product refs, so the JSON columns are not parsed again on every read.
+ * <p>
+ * Entries are keyed by product and checked against the config columns on every hit, a changed
+ * config is parsed again. Parsed configs are shared by all readers and must not be modified,
+ * see {@link MCPConfigResult#withGatewayIp}.
+ */
+@Component
+public class ProductConfigCache {
+
+    private final Cache<String, ParsedConfig> configs;
+
+    /**
+     * Chat completions URL of each model config, looked up by identity
+     */
+    private final Cache<ModelConfigResult, Optional<URL>> chatCompletionsUrls;
+
+    public ProductConfigCache(CatalogCacheConfig config, MeterRegistry meterRegistry) {
+        this.configs = Caffeine.newBuilder()
+                .maximumSize(config.getMaxProductConfigs())
+                .expireAfterAccess(config.getExpireMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        this.chatCompletionsUrls = Caffeine.newBuilder()
+                .weakKeys()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, configs, "product.configs");
+    }
+
+    public ParsedConfig get(ProductRef productRef) {
+        ParsedConfig cached = configs.getIfPresent(productRef.getProductId());
+        if (cached != null && cached.matches(productRef)) {
+            return cached;
+        }
+
+        ParsedConfig parsed = parse(productRef);
+        configs.put(productRef.getProductId(), parsed);
+        return parsed;
+    }
+
+    /**
+     * Chat completions URL of the model, without query params
+     *
+     * @return null if no route ends with /chat/completions
+     */
+    public URL getChatCompletionsUrl(ModelConfigResult modelConfig) {
+        if (modelConfig == null) {
+            return null;
+        }
+        return chatCompletionsUrls.get(modelConfig, k -> Optional.ofNullable(resolveChatCompletionsUrl(k)))
+                .orElse(null);
+    }
+
+    private ParsedConfig parse(ProductRef productRef) {
+        ParsedConfig parsed = new ParsedConfig(productRef.getApiConfig(),
+                productRef.getMcpConfig(),
+                productRef.getAgentConfig(),
+                productRef.getModelConfig(),
+                toBean(productRef.getApiConfig(), APIConfigResult.class),
+                toBean(productRef.getMcpConfig(), MCPConfigResult.class),
+                toBean(productRef.getAgentConfig(), AgentConfigResult.class),
+                toBean(productRef.getModelConfig(), ModelConfigResult.class));
+
+        // Resolve the model URL along with parsing, chats of the product only look it up
+        getChatCompletionsUrl(parsed.modelConfig());
+        return parsed;
+    }
+
+    private static <T> T toBean(String json, Class<T> type) {
+        return StrUtil.isBlank(json) ? null : JSONUtil.toBean(json, type);
+    }
+
+    private static URL resolveChatCompletionsUrl(ModelConfigResult modelConfig) {
+        ModelConfigResult.ModelAPIConfig modelAPIConfig = modelConfig.getModelAPIConfig();
+        if (modelAPIConfig == null) {
+            return null;
+        }
+
+        List<HttpRouteResult> routes = modelAPIConfig.getRoutes();
+        if (CollUtil.isEmpty(routes)) {
+            return null;
+        }
+
+        // Find route ending with /chat/completions
+        for (HttpRouteResult route : routes) {
+            String pathValue = Optional.ofNullable(route.getMatch())
+                    .map(HttpRouteResult.RouteMatchResult::getPath)
+                    .map(HttpRouteResult.RouteMatchPath::getValue)
+                    .orElse("");
+
+            if (!pathValue.endsWith("/chat/completions")) {
+                continue;
+            }
+
+            // Find first external domain
+            Optional<DomainResult> externalDomain = route.getDomains().stream()
+                    .filter(domain -> !StrUtil.equalsIgnoreCase(domain.getNetworkType(), "intranet"))
+                    .findFirst();
+
+            if (externalDomain.isPresent()) {
+                DomainResult domain = externalDomain.get();
+                String protocol = StrUtil.isNotBlank(domain.getProtocol()) ?
+                        domain.getProtocol().toLowerCase() : "http";
+
+                try {
+                    return new URL(UriComponentsBuilder.newInstance()
+                            .scheme(protocol)
+                            .host(domain.getDomain())
+                            .path(pathValue)
+                            .build()
+                            .toUriString());
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        // No suitable route found
+        return null;
+    }
+
+    /**
+     * Parsed configs with the JSON they were parsed from
+     */
+    public record ParsedConfig(String apiSource, String mcpSource, String agentSource, String modelSource,
+                               APIConfigResult apiConfig, MCPConfigResult mcpConfig,
+                               AgentConfigResult agentConfig, ModelConfigResult modelConfig) {
+
+        boolean matches(ProductRef productRef) {
+            return Objects.equals(apiSource, productRef.getApiConfig())
+                    && Objects.equals(mcpSource, productRef.getMcpConfig())
+                    && Objects.equals(agentSource, productRef.getAgentConfig())
+                    && Objects.equals(modelSource, productRef.getModelConfig());
+        }
+    }
+}
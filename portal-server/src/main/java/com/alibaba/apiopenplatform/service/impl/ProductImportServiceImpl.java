@@ -0,0 +1,479 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.alibaba.apiopenplatform.config.ProductImportConfig;
+import com.alibaba.apiopenplatform.core.constant.Resources;
+import com.alibaba.apiopenplatform.core.event.CatalogChangedEvent;
+import com.alibaba.apiopenplatform.core.exception.BusinessException;
+import com.alibaba.apiopenplatform.core.exception.ErrorCode;
+import com.alibaba.apiopenplatform.core.security.ContextHolder;
+import com.alibaba.apiopenplatform.core.utils.IdGenerator;
+import com.alibaba.apiopenplatform.dto.params.product.ImportProductsParam;
+import com.alibaba.apiopenplatform.dto.result.common.PageResult;
+import com.alibaba.apiopenplatform.dto.result.gateway.GatewayResult;
+import com.alibaba.apiopenplatform.dto.result.httpapi.APIResult;
+import com.alibaba.apiopenplatform.dto.result.mcp.AdpMCPServerResult;
+import com.alibaba.apiopenplatform.dto.result.mcp.GatewayMCPServerResult;
+import com.alibaba.apiopenplatform.dto.result.model.AIGWModelAPIResult;
+import com.alibaba.apiopenplatform.dto.result.model.HigressModelResult;
+import com.alibaba.apiopenplatform.dto.result.product.ProductImportJobResult;
+import com.alibaba.apiopenplatform.entity.Product;
+import com.alibaba.apiopenplatform.repository.ProductRepository;
+import com.alibaba.apiopenplatform.service.GatewayService;
+import com.alibaba.apiopenplatform.service.ProductImportService;
+import com.alibaba.apiopenplatform.support.enums.GatewayType;
+import com.alibaba.apiopenplatform.support.enums.ProductImportStatus;
+import com.alibaba.apiopenplatform.support.enums.ProductStatus;
+import com.alibaba.apiopenplatform.support.enums.ProductType;
+import com.alibaba.apiopenplatform.support.enums.SourceType;
+import com.alibaba.apiopenplatform.support.product.APIGRefConfig;
+import com.alibaba.apiopenplatform.support.product.HigressRefConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Imports the MCP servers, model APIs and HTTP APIs of a gateway as products in the background.
+ * <p>
+ * Gateway resources are listed page by page, their configs are fetched with bounded parallelism, and each page is
+ * written in one transaction with JDBC batches, together with the import state of its resources. A failed or
+ * interrupted job is resumed by listing again and skipping the resources already imported.
+ */
+@Service
+@Slf4j
+public class ProductImportServiceImpl implements ProductImportService {
+
+    private static final String INSERT_JOB_SQL =
+            "INSERT INTO product_import_job (job_id, gateway_id, admin_id, product_types, status) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_JOB_SQL =
+            "SELECT job_id, gateway_id, product_types, status, total, error, created_at, updated_at FROM product_import_job WHERE job_id = ?";
+
+    /**
+     * Claims a failed job, or a running job no longer making progress
+     */
+    private static final String CLAIM_JOB_SQL =
+            "UPDATE product_import_job SET status = ?, error = NULL WHERE job_id = ? AND (status = ? OR (status = ? AND updated_at < ?))";
+
+    private static final String UPDATE_PROGRESS_SQL =
+            "UPDATE product_import_job SET total = ?, updated_at = CURRENT_TIMESTAMP(3) WHERE job_id = ?";
+
+    private static final String UPDATE_STATUS_SQL = "UPDATE product_import_job SET status = ?, error = ? WHERE job_id = ?";
+
+    private static final String SELECT_DONE_KEYS_SQL =
+            "SELECT item_key FROM product_import_item WHERE job_id = ? AND status <> 'FAILED'";
+
+    private static final String COUNT_ITEMS_SQL =
+            "SELECT status, COUNT(*) AS cnt FROM product_import_item WHERE job_id = ? GROUP BY status";
+
+    private static final String SELECT_FAILURES_SQL =
+            "SELECT item_key, error FROM product_import_item WHERE job_id = ? AND status = 'FAILED' ORDER BY id LIMIT 100";
+
+    private static final String UPSERT_ITEM_SQL =
+            "INSERT INTO product_import_item (job_id, item_key, product_type, product_id, status, error) VALUES (?, ?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE product_id = VALUES(product_id), status = VALUES(status), error = VALUES(error)";
+
+    private static final String INSERT_PRODUCT_SQL =
+            "INSERT INTO product (product_id, admin_id, name, type, description, status) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_PRODUCT_REF_SQL =
+            "INSERT INTO product_ref (product_id, gateway_id, source_type, apig_ref_config, adp_ai_gateway_ref_config, " +
+                    "apsara_gateway_ref_config, higress_ref_config, api_config, mcp_config, model_config, enabled) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final Set<ProductType> IMPORTABLE_TYPES = EnumSet.of(ProductType.MCP_SERVER, ProductType.MODEL_API, ProductType.REST_API);
+
+    private static final int MAX_NAME_LENGTH = 64;
+
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final GatewayService gatewayService;
+
+    private final ProductRepository productRepository;
+
+    private final ContextHolder contextHolder;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ProductImportConfig config;
+
+    private final ExecutorService jobExecutor;
+
+    /**
+     * Fetches gateway configs, shared by all jobs
+     */
+    private final Scheduler fetchScheduler;
+
+    public ProductImportServiceImpl(JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    GatewayService gatewayService,
+                                    ProductRepository productRepository,
+                                    ContextHolder contextHolder,
+                                    ApplicationEventPublisher eventPublisher,
+                                    ProductImportConfig config) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.gatewayService = gatewayService;
+        this.productRepository = productRepository;
+        this.contextHolder = contextHolder;
+        this.eventPublisher = eventPublisher;
+        this.config = config;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.jobExecutor = Executors.newFixedThreadPool(config.getJobThreads(), r -> {
+            Thread thread = new Thread(r, "ProductImport-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fetchScheduler = Schedulers.newBoundedElastic(config.getJobThreads() * config.getParallelism(),
+                Integer.MAX_VALUE, "ProductImportFetcher");
+    }
+
+    @Override
+    public ProductImportJobResult startImport(ImportProductsParam param) {
+        List<ProductType> types = param.getTypes().stream().distinct().collect(Collectors.toList());
+        types.stream()
+                .filter(type -> !IMPORTABLE_TYPES.contains(type))
+                .findFirst()
+                .ifPresent(type -> {
+                    throw new BusinessException(ErrorCode.INVALID_REQUEST, StrUtil.format("Product type {} can not be imported", type));
+                });
+
+        GatewayResult gateway = gatewayService.getGateway(param.getGatewayId());
+        if (gateway.getGatewayType().isApisix()) {
+            throw new BusinessException(ErrorCode.INVALID_REQUEST, "APISIX gateway does not support importing products");
+        }
+
+        String jobId = IdGenerator.genIdWithPrefix("import-");
+        jdbcTemplate.update(INSERT_JOB_SQL, jobId, gateway.getGatewayId(), contextHolder.getUser(),
+                types.stream().map(Enum::name).collect(Collectors.joining(",")), ProductImportStatus.RUNNING.name());
+        submit(jobId, contextHolder.getUser());
+
+        return getImportJob(jobId);
+    }
+
+    @Override
+    public ProductImportJobResult getImportJob(String jobId) {
+        ProductImportJobResult result = findJob(jobId);
+
+        jdbcTemplate.query(COUNT_ITEMS_SQL, rs -> {
+            long count = rs.getLong("cnt");
+            switch (ItemStatus.valueOf(rs.getString("status"))) {
+                case IMPORTED:
+                    result.setImported(count);
+                    break;
+                case SKIPPED:
+                    result.setSkipped(count);
+                    break;
+                case FAILED:
+                    result.setFailed(count);
+                    break;
+            }
+        }, jobId);
+        result.setFailures(jdbcTemplate.query(SELECT_FAILURES_SQL,
+                (rs, i) -> new ProductImportJobResult.ItemFailure(rs.getString("item_key"), rs.getString("error")), jobId));
+        return result;
+    }
+
+    @Override
+    public ProductImportJobResult resumeImport(String jobId) {
+        findJob(jobId);
+
+        Timestamp staleBefore = new Timestamp(System.currentTimeMillis() - config.getStaleSeconds() * 1000);
+        int claimed = jdbcTemplate.update(CLAIM_JOB_SQL, ProductImportStatus.RUNNING.name(), jobId,
+                ProductImportStatus.FAILED.name(), ProductImportStatus.RUNNING.name(), staleBefore);
+        if (claimed == 0) {
+            throw new BusinessException(ErrorCode.INVALID_REQUEST, "Import job is still running or already succeeded");
+        }
+        submit(jobId, contextHolder.getUser());
+
+        return getImportJob(jobId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        jobExecutor.shutdownNow();
+        fetchScheduler.dispose();
+    }
+
+    private void submit(String jobId, String adminId) {
+        jobExecutor.execute(() -> run(jobId, adminId));
+    }
+
+    private void run(String jobId, String adminId) {
+        long startTime = System.currentTimeMillis();
+        try {
+            ProductImportJobResult job = findJob(jobId);
+            GatewayResult gateway = gatewayService.getGateway(job.getGatewayId());
+            Set<String> doneKeys = new HashSet<>(jdbcTemplate.queryForList(SELECT_DONE_KEYS_SQL, String.class, jobId));
+
+            long total = 0;
+            for (ProductType type : job.getTypes()) {
+                int page = 1;
+                boolean hasNext;
+                do {
+                    PageResult<?> resources = fetchResources(gateway.getGatewayId(), type, page);
+                    List<?> content = resources == null || resources.getContent() == null ?
+                            Collections.emptyList() : resources.getContent();
+                    if (page == 1 && resources != null) {
+                        total += Math.max(resources.getTotalElements(), content.size());
+                    }
+
+                    List<ImportItem> items = content.stream()
+                            .map(resource -> toItem(gateway.getGatewayType(), type, resource))
+                            .filter(item -> !doneKeys.contains(item.key()))
+                            .collect(Collectors.toList());
+                    doneKeys.addAll(importPage(jobId, adminId, gateway, items));
+                    jdbcTemplate.update(UPDATE_PROGRESS_SQL, total, jobId);
+
+                    // Some gateways return every resource regardless of the page
+                    hasNext = !content.isEmpty() && content.size() <= config.getPageSize()
+                            && resources != null && (long) page * config.getPageSize() < resources.getTotalElements();
+                    page++;
+                } while (hasNext);
+            }
+
+            jdbcTemplate.update(UPDATE_STATUS_SQL, ProductImportStatus.SUCCEEDED.name(), null, jobId);
+            log.info("Product import job {} succeeded, cost: {}ms", jobId, System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.error("Product import job {} failed", jobId, e);
+            jdbcTemplate.update(UPDATE_STATUS_SQL, ProductImportStatus.FAILED.name(),
+                    StrUtil.subPre(StrUtil.blankToDefault(e.getMessage(), e.getClass().getName()), MAX_ERROR_LENGTH), jobId);
+        }
+    }
+
+    private PageResult<?> fetchResources(String gatewayId, ProductType type, int page) {
+        switch (type) {
+            case MCP_SERVER:
+                return gatewayService.fetchMcpServers(gatewayId, page, config.getPageSize());
+            case MODEL_API:
+                return gatewayService.fetchModelAPIs(gatewayId, page, config.getPageSize());
+            default:
+                return gatewayService.fetchHTTPAPIs(gatewayId, page, config.getPageSize());
+        }
+    }
+
+    /**
+     * Import a page of resources in one transaction
+     *
+     * @return keys of the resources imported or skipped
+     */
+    private Set<String> importPage(String jobId, String adminId, GatewayResult gateway, List<ImportItem> items) {
+        if (items.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        // Product names are unique
+        Set<String> takenNames = productRepository.findByNameIn(items.stream().map(ImportItem::name).collect(Collectors.toSet()))
+                .stream()
+                .map(Product::getName)
+                .collect(Collectors.toSet());
+        List<ImportedItem> results = new ArrayList<>();
+        List<ImportItem> toFetch = new ArrayList<>();
+        for (ImportItem item : items) {
+            if (takenNames.add(item.name())) {
+                toFetch.add(item);
+            } else {
+                results.add(new ImportedItem(item, null, null, ItemStatus.SKIPPED, "Product name already exists"));
+            }
+        }
+
+        List<ImportedItem> fetched = Flux.fromIterable(toFetch)
+                .flatMap(item -> Mono.fromCallable(() -> fetchConfig(gateway, item))
+                        .subscribeOn(fetchScheduler)
+                        .onErrorResume(e -> Mono.just(new ImportedItem(item, null, null, ItemStatus.FAILED,
+                                StrUtil.subPre(StrUtil.blankToDefault(e.getMessage(), e.getClass().getName()), MAX_ERROR_LENGTH)))),
+                        config.getParallelism())
+                .collectList()
+                .block();
+        results.addAll(fetched);
+
+        List<ImportedItem> imported = results.stream()
+                .filter(result -> result.status() == ItemStatus.IMPORTED)
+                .collect(Collectors.toList());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_PRODUCT_SQL, imported, imported.size(), (ps, result) -> {
+                ps.setString(1, result.productId());
+                ps.setString(2, adminId);
+                ps.setString(3, result.item().name());
+                ps.setString(4, result.item().type().name());
+                ps.setString(5, StrUtil.format("Imported from gateway {}", gateway.getGatewayName()));
+                ps.setString(6, ProductStatus.READY.name());
+            });
+            jdbcTemplate.batchUpdate(INSERT_PRODUCT_REF_SQL, imported, imported.size(), (ps, result) -> {
+                GatewayType gatewayType = gateway.getGatewayType();
+                String refConfig = JSONUtil.toJsonStr(result.item().refConfig());
+                ps.setString(1, result.productId());
+                ps.setString(2, gateway.getGatewayId());
+                ps.setString(3, SourceType.GATEWAY.name());
+                // Same columns as the config is read from when syncing
+                ps.setString(4, gatewayType.isHigress() || gatewayType.isAdpAIGateway() || gatewayType.isApsaraGateway() ? null : refConfig);
+                ps.setString(5, gatewayType.isAdpAIGateway() ? refConfig : null);
+                ps.setString(6, gatewayType.isApsaraGateway() ? refConfig : null);
+                ps.setString(7, gatewayType.isHigress() ? refConfig : null);
+                ps.setString(8, result.item().type() == ProductType.REST_API ? result.config() : null);
+                ps.setString(9, result.item().type() == ProductType.MCP_SERVER ? result.config() : null);
+                ps.setString(10, result.item().type() == ProductType.MODEL_API ? result.config() : null);
+                ps.setBoolean(11, true);
+            });
+            jdbcTemplate.batchUpdate(UPSERT_ITEM_SQL, results, results.size(), (ps, result) -> {
+                ps.setString(1, jobId);
+                ps.setString(2, result.item().key());
+                ps.setString(3, result.item().type().name());
+                ps.setString(4, result.productId());
+                ps.setString(5, result.status().name());
+                ps.setString(6, result.error());
+            });
+        });
+
+        if (!imported.isEmpty()) {
+            // Catalog cache and search index
+            eventPublisher.publishEvent(new CatalogChangedEvent(this,
+                    imported.stream().map(ImportedItem::productId).collect(Collectors.toList()), null, false));
+        }
+        log.info("Product import job {}: {} imported, {} skipped, {} failed", jobId, imported.size(),
+                results.stream().filter(result -> result.status() == ItemStatus.SKIPPED).count(),
+                results.stream().filter(result -> result.status() == ItemStatus.FAILED).count());
+
+        return results.stream()
+                .filter(result -> result.status() != ItemStatus.FAILED)
+                .map(result -> result.item().key())
+                .collect(Collectors.toSet());
+    }
+
+    private ImportedItem fetchConfig(GatewayResult gateway, ImportItem item) {
+        String gatewayId = gateway.getGatewayId();
+        String config;
+        switch (item.type()) {
+            case MCP_SERVER:
+                config = gatewayService.fetchMcpConfig(gatewayId, item.refConfig());
+                break;
+            case MODEL_API:
+                config = gatewayService.fetchModelConfig(gatewayId, item.refConfig());
+                break;
+            default:
+                config = gatewayService.fetchAPIConfig(gatewayId, item.refConfig());
+                break;
+        }
+        return new ImportedItem(item, IdGenerator.genApiProductId(), config, ItemStatus.IMPORTED, null);
+    }
+
+    /**
+     * Ref config of the gateway resource, in the form the gateway's operator reads it
+     */
+    private static ImportItem toItem(GatewayType gatewayType, ProductType type, Object resource) {
+        String name;
+        if (resource instanceof AdpMCPServerResult adpMcpServer) {
+            name = StrUtil.blankToDefault(adpMcpServer.getMcpServerName(), adpMcpServer.getName());
+        } else if (resource instanceof GatewayMCPServerResult mcpServer) {
+            name = mcpServer.getMcpServerName();
+        } else if (resource instanceof AIGWModelAPIResult modelApi) {
+            name = modelApi.getModelApiName();
+        } else if (resource instanceof HigressModelResult modelRoute) {
+            name = modelRoute.getModelRouteName();
+        } else if (resource instanceof APIResult api) {
+            name = api.getApiName();
+        } else {
+            throw new IllegalStateException("Unknown gateway resource " + resource.getClass().getSimpleName());
+        }
+
+        Object refConfig;
+        if (gatewayType.isHigress()) {
+            refConfig = BeanUtil.copyProperties(resource, HigressRefConfig.class);
+        } else {
+            APIGRefConfig apigRefConfig = BeanUtil.copyProperties(resource, APIGRefConfig.class);
+            if (type == ProductType.MCP_SERVER) {
+                apigRefConfig.setMcpServerName(name);
+            }
+            refConfig = apigRefConfig;
+        }
+        return new ImportItem(type.name() + ":" + name, type, StrUtil.subPre(name, MAX_NAME_LENGTH), refConfig);
+    }
+
+    private ProductImportJobResult findJob(String jobId) {
+        List<ProductImportJobResult> jobs = jdbcTemplate.query(SELECT_JOB_SQL, (rs, i) -> ProductImportJobResult.builder()
+                .jobId(rs.getString("job_id"))
+                .gatewayId(rs.getString("gateway_id"))
+                .types(Arrays.stream(rs.getString("product_types").split(","))
+                        .map(ProductType::valueOf)
+                        .collect(Collectors.toList()))
+                .status(ProductImportStatus.valueOf(rs.getString("status")))
+                .total(rs.getLong("total"))
+                .error(rs.getString("error"))
+                .createAt(Optional.ofNullable(rs.getTimestamp("created_at")).map(Timestamp::toLocalDateTime).orElse(null))
+                .updatedAt(Optional.ofNullable(rs.getTimestamp("updated_at")).map(Timestamp::toLocalDateTime).orElse(null))
+                .build(), jobId);
+        if (CollUtil.isEmpty(jobs)) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, Resources.PRODUCT_IMPORT_JOB, jobId);
+        }
+        return jobs.get(0);
+    }
+
+    private enum ItemStatus {
+
+        IMPORTED,
+
+        SKIPPED,
+
+        FAILED,
+    }
+
+    /**
+     * Gateway resource to import
+     *
+     * @param key       identifies the resource within the job
+     * @param refConfig ref config of the product
+     */
+    private record ImportItem(String key, ProductType type, String name, Object refConfig) {
+    }
+
+    /**
+     * Import result of a resource
+     *
+     * @param productId created product, null unless imported
+     * @param config    fetched config JSON
+     */
+    private record ImportedItem(ImportItem item, String productId, String config, ItemStatus status, String error) {
+    }
+}
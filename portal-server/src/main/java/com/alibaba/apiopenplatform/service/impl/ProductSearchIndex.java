@@ -0,0 +1,658 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.apiopenplatform.config.ProductSearchConfig;
+import com.alibaba.apiopenplatform.core.event.CatalogChangedEvent;
+import com.alibaba.apiopenplatform.core.event.PortalDeletingEvent;
+import com.alibaba.apiopenplatform.core.event.ProductDeletingEvent;
+import com.alibaba.apiopenplatform.dto.params.product.SearchProductParam;
+import com.alibaba.apiopenplatform.dto.result.ProductCategoryResult;
+import com.alibaba.apiopenplatform.dto.result.mcp.MCPConfigResult;
+import com.alibaba.apiopenplatform.entity.Product;
+import com.alibaba.apiopenplatform.entity.ProductPublication;
+import com.alibaba.apiopenplatform.entity.ProductRef;
+import com.alibaba.apiopenplatform.repository.ProductPublicationRepository;
+import com.alibaba.apiopenplatform.repository.ProductRefRepository;
+import com.alibaba.apiopenplatform.repository.ProductRepository;
+import com.alibaba.apiopenplatform.service.ProductCategoryService;
+import com.alibaba.apiopenplatform.support.product.ModelFeature;
+import com.alibaba.apiopenplatform.support.product.ProductFeature;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-process inverted index over products, searched by the portal instead of LIKE queries.
+ * <p>
+ * Names, descriptions, documents, categories, MCP tool names and model names are indexed with field weights.
+ * Query terms match exactly, by prefix, and within a small edit distance, results are ranked by a
+ * saturated tf-idf score. The index is updated by catalog change events and rebuilt periodically as a fallback.
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex {
+
+    public static final String FACET_TYPE = "type";
+
+    public static final String FACET_STATUS = "status";
+
+    public static final String FACET_CATEGORY = "category";
+
+    private static final float NAME_WEIGHT = 4f;
+
+    private static final float TOOL_WEIGHT = 2.5f;
+
+    private static final float MODEL_WEIGHT = 2f;
+
+    private static final float CATEGORY_WEIGHT = 2f;
+
+    private static final float DESCRIPTION_WEIGHT = 1.5f;
+
+    private static final float DOCUMENT_WEIGHT = 1f;
+
+    private static final float PREFIX_BOOST = 0.7f;
+
+    private static final float FUZZY_BOOST = 0.5f;
+
+    private static final float FUZZY_PREFIX_BOOST = 0.4f;
+
+    /**
+     * Term frequency saturation, as k1 of BM25
+     */
+    private static final float SATURATION = 1.2f;
+
+    /**
+     * Tool names in the raw tool configs, which are YAML or JSON depending on the gateway
+     */
+    private static final Pattern TOOL_NAME_PATTERN = Pattern.compile("(?m)^\\s*-?\\s*\"?name\"?\\s*:\\s*\"?([\\w.\\-]+)\"?");
+
+    private final ProductRepository productRepository;
+
+    private final ProductRefRepository productRefRepository;
+
+    private final ProductPublicationRepository publicationRepository;
+
+    private final ProductCategoryService productCategoryService;
+
+    private final ProductConfigCache productConfigCache;
+
+    private final ProductSearchConfig config;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ProductSearchIndex-Rebuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Index index;
+
+    /**
+     * Products changed while a rebuild is loading, indexed again once it is swapped in
+     */
+    private Set<String> changedDuringRebuild;
+
+    public ProductSearchIndex(ProductRepository productRepository,
+                              ProductRefRepository productRefRepository,
+                              ProductPublicationRepository publicationRepository,
+                              ProductCategoryService productCategoryService,
+                              ProductConfigCache productConfigCache,
+                              CatalogInvalidationBroadcaster broadcaster,
+                              ProductSearchConfig config) {
+        this.productRepository = productRepository;
+        this.productRefRepository = productRefRepository;
+        this.publicationRepository = publicationRepository;
+        this.productCategoryService = productCategoryService;
+        this.productConfigCache = productConfigCache;
+        this.config = config;
+
+        rebuilder.scheduleWithFixedDelay(this::rebuildSafely, 0, config.getRebuildMinutes(), TimeUnit.MINUTES);
+        broadcaster.subscribe(this::apply);
+    }
+
+    /**
+     * Search products
+     *
+     * @param param    keyword and filters, a blank keyword matches all products
+     * @param pageable page
+     * @return product IDs of the page, best match first
+     */
+    public SearchHits search(SearchProductParam param, Pageable pageable) {
+        Index current = awaitIndex();
+        lock.readLock().lock();
+        try {
+            Map<String, Float> scores = match(current, param.getKeyword());
+            List<Doc> matched = (scores == null ? current.docs.values().stream() : scores.keySet().stream().map(current.docs::get))
+                    .filter(doc -> accept(doc, param))
+                    .collect(Collectors.toList());
+
+            Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+            facets.put(FACET_TYPE, count(matched, doc -> Collections.singleton(doc.type())));
+            facets.put(FACET_STATUS, count(matched, doc -> Collections.singleton(doc.status())));
+            facets.put(FACET_CATEGORY, count(matched, doc -> doc.categoryIds()));
+
+            Comparator<Doc> order = Comparator.<Doc>comparingDouble(doc -> scores == null ? 0 : -scores.get(doc.productId()))
+                    .thenComparing(doc -> StrUtil.nullToEmpty(doc.name()), String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(doc -> doc.productId());
+            List<String> productIds = matched.stream()
+                    .sorted(order)
+                    .skip(pageable.isPaged() ? pageable.getOffset() : 0)
+                    .limit(pageable.isPaged() ? pageable.getPageSize() : Long.MAX_VALUE)
+                    .map(doc -> doc.productId())
+                    .collect(Collectors.toList());
+            return new SearchHits(productIds, matched.size(), facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleCatalogChange(CatalogChangedEvent event) {
+        reindex(event.getProductIds());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleProductDeletion(ProductDeletingEvent event) {
+        reindex(Collections.singleton(event.getProductId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handlePortalDeletion(PortalDeletingEvent event) {
+        refreshPortal(event.getPortalId(), Collections.emptySet());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        rebuilder.shutdownNow();
+    }
+
+    private void apply(CatalogInvalidationBroadcaster.Invalidation invalidation) {
+        switch (invalidation.region()) {
+            case PortalCatalogCache.REGION_PRODUCT:
+                reindex(Collections.singleton(invalidation.entityId()));
+                break;
+            case PortalCatalogCache.REGION_PORTAL:
+                refreshPortal(invalidation.entityId(), findPublishedProductIds(invalidation.entityId()));
+                break;
+            default:
+                // Categories are indexed with their products, which are invalidated along
+                break;
+        }
+    }
+
+    /**
+     * Index the products again, products no longer existing are removed
+     */
+    private void reindex(Collection<String> productIds) {
+        if (CollUtil.isEmpty(productIds)) {
+            return;
+        }
+        try {
+            Map<String, Doc> docs = loadDocs(productRepository.findByProductIdIn(productIds));
+            lock.writeLock().lock();
+            try {
+                if (changedDuringRebuild != null) {
+                    changedDuringRebuild.addAll(productIds);
+                }
+                if (index != null) {
+                    productIds.forEach(productId -> index.put(productId, docs.get(productId)));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            // The periodic rebuild catches up
+            log.warn("Failed to index products {}: {}", productIds, e.getMessage());
+        }
+    }
+
+    private void refreshPortal(String portalId, Set<String> publishedProductIds) {
+        lock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.docs.values().forEach(doc -> {
+                    if (publishedProductIds.contains(doc.productId())) {
+                        doc.portalIds().add(portalId);
+                    } else {
+                        doc.portalIds().remove(portalId);
+                    }
+                });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Set<String> findPublishedProductIds(String portalId) {
+        return publicationRepository.findByPortalId(portalId, Pageable.unpaged()).stream()
+                .map(ProductPublication::getProductId)
+                .collect(Collectors.toSet());
+    }
+
+    private Index awaitIndex() {
+        Index current = index;
+        if (current == null) {
+            // Searched before the first build completes
+            buildIfAbsent();
+            current = index;
+        }
+        return current;
+    }
+
+    private synchronized void buildIfAbsent() {
+        if (index == null) {
+            rebuild();
+        }
+    }
+
+    private void rebuildSafely() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Failed to rebuild product search index", e);
+        }
+    }
+
+    private synchronized void rebuild() {
+        long startTime = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Index rebuilt = new Index();
+        Set<String> changed;
+        try {
+            Pageable pageable = PageRequest.of(0, config.getBatchSize(), Sort.by("id"));
+            Page<Product> page;
+            do {
+                page = productRepository.findAll(pageable);
+                loadDocs(page.getContent()).forEach(rebuilt::put);
+                pageable = page.nextPageable();
+            } while (page.hasNext());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changed = changedDuringRebuild;
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            index = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Loaded before those changes committed
+        reindex(changed);
+        log.info("Product search index rebuilt, {} products, {} terms, cost: {}ms",
+                rebuilt.docs.size(), rebuilt.postings.size(), System.currentTimeMillis() - startTime);
+    }
+
+    private Map<String, Doc> loadDocs(List<Product> products) {
+        if (products.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> productIds = products.stream()
+                .map(Product::getProductId)
+                .collect(Collectors.toList());
+        Map<String, List<ProductCategoryResult>> categories = productCategoryService.listCategoriesForProducts(productIds);
+        // Oldest ref of each product, as findFirstByProductId does
+        Map<String, ProductRef> productRefs = productRefRepository.findByProductIdIn(productIds).stream()
+                .collect(Collectors.toMap(ProductRef::getProductId, productRef -> productRef,
+                        (a, b) -> a.getId() <= b.getId() ? a : b));
+        Map<String, Set<String>> portals = new HashMap<>();
+        publicationRepository.findByProductIdIn(productIds)
+                .forEach(publication -> portals.computeIfAbsent(publication.getProductId(), k -> new HashSet<>())
+                        .add(publication.getPortalId()));
+
+        Map<String, Doc> docs = new HashMap<>();
+        for (Product product : products) {
+            String productId = product.getProductId();
+            docs.put(productId, toDoc(product,
+                    categories.getOrDefault(productId, Collections.emptyList()),
+                    productRefs.get(productId),
+                    portals.getOrDefault(productId, new HashSet<>())));
+        }
+        return docs;
+    }
+
+    private Doc toDoc(Product product, List<ProductCategoryResult> categories, ProductRef productRef, Set<String> portalIds) {
+        Map<String, Float> terms = new HashMap<>();
+        addTerms(terms, product.getName(), NAME_WEIGHT);
+        addTerms(terms, product.getDescription(), DESCRIPTION_WEIGHT);
+        addTerms(terms, StrUtil.subPre(product.getDocument(), config.getMaxDocumentChars()), DOCUMENT_WEIGHT);
+        categories.forEach(category -> addTerms(terms, category.getName(), CATEGORY_WEIGHT));
+
+        Optional.ofNullable(product.getFeature())
+                .map(ProductFeature::getModelFeature)
+                .map(ModelFeature::getModel)
+                .ifPresent(model -> addTerms(terms, model, MODEL_WEIGHT));
+
+        MCPConfigResult mcpConfig = productRef == null ? null : productConfigCache.get(productRef).mcpConfig();
+        if (mcpConfig != null) {
+            addTerms(terms, mcpConfig.getMcpServerName(), TOOL_WEIGHT);
+            if (StrUtil.isNotBlank(mcpConfig.getTools())) {
+                Matcher matcher = TOOL_NAME_PATTERN.matcher(mcpConfig.getTools());
+                while (matcher.find()) {
+                    addTerms(terms, matcher.group(1), TOOL_WEIGHT);
+                }
+            }
+        }
+
+        Set<String> categoryIds = categories.stream()
+                .map(ProductCategoryResult::getCategoryId)
+                .collect(Collectors.toSet());
+        return new Doc(product.getProductId(), product.getName(),
+                product.getType() == null ? null : product.getType().name(),
+                product.getStatus() == null ? null : product.getStatus().name(),
+                categoryIds, portalIds, terms);
+    }
+
+    /**
+     * Scores of the products matching every term of the keyword
+     *
+     * @return null if the keyword has no terms, which matches all products
+     */
+    private Map<String, Float> match(Index index, String keyword) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(keyword, true));
+        if (queryTerms.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Float> scores = null;
+        for (String queryTerm : queryTerms) {
+            Map<String, Float> termScores = new HashMap<>();
+            expand(index, queryTerm).forEach((term, boost) -> {
+                Map<String, Float> postings = index.postings.get(term);
+                float idf = (float) Math.log(1 + (double) index.docs.size() / postings.size());
+                postings.forEach((productId, tf) ->
+                        termScores.merge(productId, boost * idf * tf / (tf + SATURATION), Math::max));
+            });
+
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                Map<String, Float> previous = scores;
+                scores = new HashMap<>();
+                for (Map.Entry<String, Float> entry : termScores.entrySet()) {
+                    Float score = previous.get(entry.getKey());
+                    if (score != null) {
+                        scores.put(entry.getKey(), score + entry.getValue());
+                    }
+                }
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Index terms matching the query term, with their boosts
+     */
+    private Map<String, Float> expand(Index index, String queryTerm) {
+        Map<String, Float> expansions = new HashMap<>();
+        if (index.postings.containsKey(queryTerm)) {
+            expansions.put(queryTerm, 1f);
+        }
+
+        int limit = config.getMaxExpansions();
+        for (String term : index.postings.subMap(queryTerm, false, queryTerm + Character.MAX_VALUE, false).keySet()) {
+            if (expansions.size() >= limit) {
+                break;
+            }
+            expansions.put(term, PREFIX_BOOST);
+        }
+
+        if (queryTerm.length() < config.getFuzzyMinLength()) {
+            return expansions;
+        }
+        int maxEdits = queryTerm.length() >= 8 ? 2 : 1;
+        for (String term : index.postings.keySet()) {
+            if (expansions.size() >= limit) {
+                break;
+            }
+            if (expansions.containsKey(term) || Math.abs(term.length() - queryTerm.length()) > maxEdits
+                    && term.length() < queryTerm.length()) {
+                continue;
+            }
+            if (withinDistance(queryTerm, term, maxEdits)) {
+                expansions.put(term, FUZZY_BOOST);
+            } else if (term.length() > queryTerm.length()
+                    && withinDistance(queryTerm, term.substring(0, queryTerm.length()), maxEdits)) {
+                // Mistyped prefix of a longer term
+                expansions.put(term, FUZZY_PREFIX_BOOST);
+            }
+        }
+        return expansions;
+    }
+
+    private static boolean accept(Doc doc, SearchProductParam param) {
+        if (StrUtil.isNotBlank(param.getPortalId()) && !doc.portalIds().contains(param.getPortalId())) {
+            return false;
+        }
+        if (param.getType() != null && !StrUtil.equals(param.getType().name(), doc.type())) {
+            return false;
+        }
+        if (param.getStatus() != null && !StrUtil.equals(param.getStatus().name(), doc.status())) {
+            return false;
+        }
+        return CollUtil.isEmpty(param.getCategoryIds())
+                || param.getCategoryIds().stream().anyMatch(doc.categoryIds()::contains);
+    }
+
+    private static Map<String, Long> count(List<Doc> docs, Function<Doc, Collection<String>> values) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Doc doc : docs) {
+            for (String value : values.apply(doc)) {
+                if (value != null) {
+                    counts.merge(value, 1L, Long::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void addTerms(Map<String, Float> terms, String text, float weight) {
+        for (String term : tokenize(text, false)) {
+            terms.merge(term, weight, Float::sum);
+        }
+    }
+
+    /**
+     * Lower-cased words, identifiers such as tool names are also kept whole.
+     * Han characters are indexed as single characters and bigrams, as words are not space separated,
+     * queries use the bigrams only so that every query term must still match.
+     */
+    static List<String> tokenize(String text, boolean query) {
+        List<String> tokens = new ArrayList<>();
+        if (StrUtil.isBlank(text)) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        StringBuilder identifier = new StringBuilder();
+        int previousHan = -1;
+        int hanRun = 0;
+        for (int i = 0; i < lower.length(); ) {
+            int c = lower.codePointAt(i);
+            i += Character.charCount(c);
+
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                flush(tokens, word, identifier);
+                if (!query) {
+                    tokens.add(Character.toString(c));
+                }
+                if (previousHan >= 0) {
+                    tokens.add(Character.toString(previousHan) + Character.toString(c));
+                }
+                previousHan = c;
+                hanRun++;
+                continue;
+            }
+            if (query && hanRun == 1) {
+                tokens.add(Character.toString(previousHan));
+            }
+            previousHan = -1;
+            hanRun = 0;
+
+            if (Character.isLetterOrDigit(c)) {
+                word.appendCodePoint(c);
+                identifier.appendCodePoint(c);
+            } else if ((c == '_' || c == '-' || c == '.') && identifier.length() > 0) {
+                addWord(tokens, word);
+                identifier.appendCodePoint(c);
+            } else {
+                flush(tokens, word, identifier);
+            }
+        }
+        if (query && hanRun == 1) {
+            tokens.add(Character.toString(previousHan));
+        }
+        flush(tokens, word, identifier);
+        return tokens;
+    }
+
+    private static void flush(List<String> tokens, StringBuilder word, StringBuilder identifier) {
+        String whole = identifier.toString().replaceAll("[_.\\-]+$", "");
+        addWord(tokens, word);
+        // Words of the identifier are added already
+        if (StrUtil.containsAny(whole, '_', '.', '-')) {
+            tokens.add(whole);
+        }
+        identifier.setLength(0);
+    }
+
+    private static void addWord(List<String> tokens, StringBuilder word) {
+        if (word.length() > 0) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    /**
+     * Whether the Damerau-Levenshtein distance of the terms is at most maxEdits
+     */
+    static boolean withinDistance(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return false;
+        }
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int rowMin = Integer.MAX_VALUE;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, d[i][j]);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+        }
+        return d[a.length()][b.length()] <= maxEdits;
+    }
+
+    /**
+     * Indexed product
+     *
+     * @param terms weighted term frequencies over all fields
+     */
+    private record Doc(String productId, String name, String type, String status, Set<String> categoryIds,
+                       Set<String> portalIds, Map<String, Float> terms) {
+    }
+
+    /**
+     * Documents and postings, guarded by the index lock
+     */
+    private static class Index {
+
+        private final Map<String, Doc> docs = new HashMap<>();
+
+        /**
+         * Term to weighted term frequency of each product, sorted for prefix lookups
+         */
+        private final NavigableMap<String, Map<String, Float>> postings = new TreeMap<>();
+
+        /**
+         * Replace the product, removed if null
+         */
+        void put(String productId, Doc doc) {
+            Doc previous = doc == null ? docs.remove(productId) : docs.put(productId, doc);
+            if (previous != null) {
+                previous.terms().keySet().forEach(term -> {
+                    Map<String, Float> products = postings.get(term);
+                    products.remove(productId);
+                    if (products.isEmpty()) {
+                        postings.remove(term);
+                    }
+                });
+            }
+            if (doc != null) {
+                doc.terms().forEach((term, tf) -> postings.computeIfAbsent(term, k -> new HashMap<>()).put(productId, tf));
+            }
+        }
+    }
+
+    /**
+     * Search result
+     *
+     * @param productIds product IDs of the page, best match first
+     * @param total      number of matched products
+     * @param facets     match counts of each facet value
+     */
+    public record SearchHits(List<String> productIds, long total, Map<String, Map<String, Long>> facets) {
+    }
+}
@@ -19,7 +19,6 @@
 
 package com.alibaba.apiopenplatform.service.impl;
 
-import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -27,7 +26,6 @@ import com.alibaba.apiopenplatform.dto.result.consumer.CredentialContext;
 import com.alibaba.apiopenplatform.dto.result.mcp.McpToolListResult;
 import com.alibaba.apiopenplatform.support.chat.mcp.McpServerConfig;
 import com.alibaba.apiopenplatform.support.product.ProductFeature;
-import io.modelcontextprotocol.spec.McpSchema;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 import jakarta.persistence.criteria.Subquery;
@@ -35,8 +33,8 @@ import jakarta.transaction.Transactional;
 
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.alibaba.apiopenplatform.core.constant.Resources;
+import com.alibaba.apiopenplatform.core.event.CatalogChangedEvent;
 import com.alibaba.apiopenplatform.core.event.PortalDeletingEvent;
 import com.alibaba.apiopenplatform.core.event.ProductDeletingEvent;
 import com.alibaba.apiopenplatform.core.exception.BusinessException;
@@ -44,16 +42,15 @@ import com.alibaba.apiopenplatform.core.exception.ErrorCode;
 import com.alibaba.apiopenplatform.core.security.ContextHolder;
 import com.alibaba.apiopenplatform.core.utils.IdGenerator;
 import com.alibaba.apiopenplatform.dto.params.product.*;
-import com.alibaba.apiopenplatform.dto.result.agent.AgentConfigResult;
-import com.alibaba.apiopenplatform.dto.result.httpapi.APIConfigResult;
+import com.alibaba.apiopenplatform.dto.result.ProductCategoryResult;
 import com.alibaba.apiopenplatform.dto.result.common.PageResult;
 import com.alibaba.apiopenplatform.dto.result.gateway.GatewayResult;
 import com.alibaba.apiopenplatform.dto.result.mcp.MCPConfigResult;
-import com.alibaba.apiopenplatform.dto.result.model.ModelConfigResult;
 import com.alibaba.apiopenplatform.dto.result.portal.PortalResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductPublicationResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductRefResult;
 import com.alibaba.apiopenplatform.dto.result.product.ProductResult;
+import com.alibaba.apiopenplatform.dto.result.product.ProductSearchResult;
 import com.alibaba.apiopenplatform.dto.result.product.SubscriptionResult;
 import com.alibaba.apiopenplatform.entity.*;
 import com.alibaba.apiopenplatform.repository.*;
@@ -105,6 +102,16 @@ public class ProductServiceImpl implements ProductService {
 
     private final ProductCategoryService productCategoryService;
 
+    private final McpToolCatalog mcpToolCatalog;
+
+    private final GatewayEndpointBalancer endpointBalancer;
+
+    private final PortalCatalogCache catalogCache;
+
+    private final ProductConfigCache productConfigCache;
+
+    private final ProductSearchIndex searchIndex;
+
     @Override
     public ProductResult createProduct(CreateProductParam param) {
         productRepository.findByNameAndAdminId(param.getName(), contextHolder.getUser())
@@ -120,6 +127,8 @@ public class ProductServiceImpl implements ProductService {
 
         productRepository.save(product);
 
+        eventPublisher.publishEvent(CatalogChangedEvent.ofProduct(this, productId));
+
         // Set product categories
         setProductCategories(productId, param.getCategories());
 
@@ -128,6 +137,10 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public ProductResult getProduct(String productId) {
+        if (!contextHolder.isAdministrator() && catalogCache.isEnabled()) {
+            return getPublishedProduct(contextHolder.getPortal(), productId);
+        }
+
         Product product = contextHolder.isAdministrator() ?
                 findProduct(productId) :
                 findPublishedProduct(contextHolder.getPortal(), productId);
@@ -144,15 +157,49 @@ public class ProductServiceImpl implements ProductService {
         if (contextHolder.isDeveloper()) {
             param.setPortalId(contextHolder.getPortal());
         }
+        if (!contextHolder.isAdministrator() && catalogCache.isEnabled() && StrUtil.isNotBlank(param.getPortalId())) {
+            return listPublishedProducts(param, pageable);
+        }
 
         Page<Product> products = productRepository.findAll(buildSpecification(param), pageable);
-        return new PageResult<ProductResult>().convertFrom(
-                products, product -> {
-                    ProductResult result = new ProductResult().convertFrom(product);
-                    fillProduct(result);
-                    fillProductSubscribeInfo(result, param);
-                    return result;
-                });
+        PageResult<ProductResult> result = new PageResult<ProductResult>().convertFrom(
+                products, product -> new ProductResult().convertFrom(product));
+
+        // Refs, categories and subscriptions of the whole page are loaded at once
+        fillProducts(result.getContent());
+        fillProductsSubscribeInfo(result.getContent(), param.getQuerySubscribeStatus());
+        return result;
+    }
+
+    @Override
+    public ProductSearchResult searchProducts(SearchProductParam param, Pageable pageable) {
+        if (!contextHolder.isAdministrator()) {
+            param.setPortalId(contextHolder.getPortal());
+            if (StrUtil.isBlank(param.getPortalId())) {
+                return ProductSearchResult.builder()
+                        .products(PageResult.empty(pageable.getPageNumber() + 1, pageable.getPageSize()))
+                        .facets(Collections.emptyMap())
+                        .build();
+            }
+        }
+
+        ProductSearchIndex.SearchHits hits = searchIndex.search(param, pageable);
+        List<String> productIds = hits.productIds();
+        Map<String, PortalCatalogCache.CatalogProduct> catalogProducts = catalogCache.isEnabled() ?
+                catalogCache.getProducts(productIds, this::loadCatalogProducts) :
+                loadCatalogProducts(new HashSet<>(productIds));
+        // Keep the ranking of the index
+        List<ProductResult> results = productIds.stream()
+                .map(catalogProducts::get)
+                .filter(Objects::nonNull)
+                .map(this::toProductResult)
+                .collect(Collectors.toList());
+
+        fillProductsSubscribeInfo(results, param.getQuerySubscribeStatus());
+        return ProductSearchResult.builder()
+                .products(PageResult.of(results, pageable.getPageNumber() + 1, pageable.getPageSize(), hits.total()))
+                .facets(hits.facets())
+                .build();
     }
 
     @Override
@@ -171,6 +218,7 @@ public class ProductServiceImpl implements ProductService {
         param.update(product);
 
         productRepository.saveAndFlush(product);
+        eventPublisher.publishEvent(CatalogChangedEvent.ofProduct(this, productId));
 
         // Set product categories
         setProductCategories(product.getProductId(), param.getCategories());
@@ -199,6 +247,8 @@ public class ProductServiceImpl implements ProductService {
 
         publicationRepository.save(productPublication);
         productRepository.save(product);
+
+        eventPublisher.publishEvent(CatalogChangedEvent.ofPublication(this, productId, portalId));
     }
 
     @Override
@@ -240,6 +290,8 @@ public class ProductServiceImpl implements ProductService {
         publicationRepository.findByPortalIdAndProductId(portalId, productId)
                 .ifPresent(publicationRepository::delete);
         productRepository.save(product);
+
+        eventPublisher.publishEvent(CatalogChangedEvent.ofPublication(this, productId, portalId));
     }
 
     @Override
@@ -283,6 +335,8 @@ public class ProductServiceImpl implements ProductService {
 
         productRepository.save(product);
         productRefRepository.save(productRef);
+
+        eventPublisher.publishEvent(CatalogChangedEvent.ofProduct(this, productId));
     }
 
     @Override
@@ -307,6 +361,8 @@ public class ProductServiceImpl implements ProductService {
 
         productRefRepository.delete(productRef);
         productRepository.save(product);
+
+        eventPublisher.publishEvent(CatalogChangedEvent.ofProduct(this, productId));
     }
 
     @EventListener
@@ -422,6 +478,10 @@ public class ProductServiceImpl implements ProductService {
         syncConfig(product, productRef);
 
         productRefRepository.saveAndFlush(productRef);
+
+        // Tools may change with the new config
+        mcpToolCatalog.invalidate(productId);
+        eventPublisher.publishEvent(CatalogChangedEvent.ofProduct(this, productId));
     }
 
     @Override
@@ -441,12 +501,11 @@ public class ProductServiceImpl implements ProductService {
         }
 
         // get mcp server config, and replace domain with gateway ip
-        MCPConfigResult mcpConfig = product.getMcpConfig();
         // Get gateway IPs
         ProductRefResult productRef = getProductRef(productId);
         String gatewayId = productRef.getGatewayId();
         List<String> gatewayIps = gatewayService.fetchGatewayIps(gatewayId);
-        mcpConfig.convertDomainToGatewayIp(gatewayIps);
+        MCPConfigResult mcpConfig = product.getMcpConfig().withGatewayIp(endpointBalancer.choose(gatewayIps));
 
         McpServerConfig.McpServer server = mcpConfig.toStandardMcpServer()
                 .getMcpServers().get(mcpConfig.getMcpServerName());
@@ -454,22 +513,17 @@ public class ProductServiceImpl implements ProductService {
         // Get authentication info (use applicationContext to get bean to avoid circular dependency)
         CredentialContext credentialContext = consumerService.getDefaultCredential(contextHolder.getUser());
 
-        // get mcp tools info
-        McpToolListResult mcpToolListResult = new McpToolListResult();
-        McpClientFactory mcpClientFactory = new McpClientFactory();
-
-        try (McpClientHolder mcpClientHolder =
-                     mcpClientFactory.initClient(server.getType(), server.getUrl(), credentialContext.getHeaders(), credentialContext.getQueryParams())) {
-            if (mcpClientHolder == null) {
-                log.error("initClient returned null");
-                throw new BusinessException(ErrorCode.INTERNAL_ERROR, Resources.PRODUCT, productId, "initClient returned null");
-            }
-            List<McpSchema.Tool> tools = mcpClientHolder.listTools();
-            mcpToolListResult.setTools(tools);
-        } catch (IOException e) {
-            log.error("mcp client close error {}", e.getMessage());
-            return mcpToolListResult;
+        // get mcp tools info, served from the tool catalog
+        List<McpToolCatalog.McpTool> mcpTools = mcpToolCatalog.getTools(productId, server, credentialContext);
+        if (mcpTools == null) {
+            log.error("Failed to list tools of mcp server {}", server.getUrl());
+            throw new BusinessException(ErrorCode.INTERNAL_ERROR, Resources.PRODUCT, productId, "failed to list mcp tools");
         }
+
+        McpToolListResult mcpToolListResult = new McpToolListResult();
+        mcpToolListResult.setTools(mcpTools.stream()
+                .map(McpToolCatalog.McpTool::tool)
+                .collect(Collectors.toList()));
         return mcpToolListResult;
     }
 
@@ -545,27 +599,113 @@ public class ProductServiceImpl implements ProductService {
         product.setCategories(productCategoryService.listCategoriesForProduct(product.getProductId()));
 
         productRefRepository.findFirstByProductId(product.getProductId())
-                .ifPresent(productRef -> {
-                    product.setEnabled(productRef.getEnabled());
-                    if (StrUtil.isNotBlank(productRef.getApiConfig())) {
-                        product.setApiConfig(JSONUtil.toBean(productRef.getApiConfig(), APIConfigResult.class));
-                    }
+                .ifPresent(productRef -> fillProductRef(product, productRef));
+    }
 
-                    // MCP Config
-                    if (StrUtil.isNotBlank(productRef.getMcpConfig())) {
-                        product.setMcpConfig(JSONUtil.toBean(productRef.getMcpConfig(), MCPConfigResult.class));
-                    }
+    /**
+     * Same as {@link #fillProduct(ProductResult)} for a page of products, with one query per relation
+     */
+    private void fillProducts(List<ProductResult> products) {
+        if (CollUtil.isEmpty(products)) {
+            return;
+        }
+        List<String> productIds = products.stream()
+                .map(ProductResult::getProductId)
+                .toList();
 
-                    // Agent Config
-                    if (StrUtil.isNotBlank(productRef.getAgentConfig())) {
-                        product.setAgentConfig(JSONUtil.toBean(productRef.getAgentConfig(), AgentConfigResult.class));
-                    }
+        Map<String, List<ProductCategoryResult>> categories = productCategoryService.listCategoriesForProducts(productIds);
+        Map<String, ProductRef> productRefs = findProductRefs(productIds);
 
-                    // Model Config
-                    if (StrUtil.isNotBlank(productRef.getModelConfig())) {
-                        product.setModelConfig(JSONUtil.toBean(productRef.getModelConfig(), ModelConfigResult.class));
-                    }
-                });
+        for (ProductResult product : products) {
+            product.setCategories(categories.getOrDefault(product.getProductId(), new ArrayList<>()));
+            Optional.ofNullable(productRefs.get(product.getProductId()))
+                    .ifPresent(productRef -> fillProductRef(product, productRef));
+        }
+    }
+
+    /**
+     * Oldest ref of each product, as findFirstByProductId does
+     */
+    private Map<String, ProductRef> findProductRefs(Collection<String> productIds) {
+        return productRefRepository.findByProductIdIn(productIds).stream()
+                .collect(Collectors.toMap(ProductRef::getProductId, productRef -> productRef,
+                        (a, b) -> a.getId() <= b.getId() ? a : b));
+    }
+
+    /**
+     * Developer portal reads are served from the catalog cache
+     */
+    private ProductResult getPublishedProduct(String portalId, String productId) {
+        if (StrUtil.isBlank(portalId) || !catalogCache.isPublished(portalId, productId, this::findPublishedProductIds)) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, Resources.PRODUCT, productId);
+        }
+        PortalCatalogCache.CatalogProduct catalogProduct = catalogCache.getProduct(productId, this::loadCatalogProduct);
+        if (catalogProduct == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND, Resources.PRODUCT, productId);
+        }
+        return toProductResult(catalogProduct);
+    }
+
+    private PageResult<ProductResult> listPublishedProducts(QueryProductParam param, Pageable pageable) {
+        PageResult<String> page = catalogCache.getProductPage(param.getPortalId(), PortalCatalogCache.ProductListKey.of(param, pageable),
+                this::findPublishedProductIds,
+                () -> new PageResult<String>().convertFrom(productRepository.findAll(buildSpecification(param), pageable), Product::getProductId));
+
+        Map<String, PortalCatalogCache.CatalogProduct> catalogProducts = catalogCache.getProducts(page.getContent(), this::loadCatalogProducts);
+        List<ProductResult> results = page.getContent().stream()
+                .map(catalogProducts::get)
+                .filter(Objects::nonNull)
+                .map(this::toProductResult)
+                .collect(Collectors.toList());
+
+        fillProductsSubscribeInfo(results, param.getQuerySubscribeStatus());
+        return PageResult.of(results, page.getNumber(), page.getSize(), page.getTotalElements());
+    }
+
+    private Set<String> findPublishedProductIds(String portalId) {
+        return publicationRepository.findByPortalId(portalId, Pageable.unpaged()).stream()
+                .map(ProductPublication::getProductId)
+                .collect(Collectors.toSet());
+    }
+
+    private PortalCatalogCache.CatalogProduct loadCatalogProduct(String productId) {
+        return productRepository.findByProductId(productId)
+                .map(product -> new PortalCatalogCache.CatalogProduct(product,
+                        productRefRepository.findFirstByProductId(productId).orElse(null),
+                        productCategoryService.listCategoriesForProduct(productId)))
+                .orElse(null);
+    }
+
+    private Map<String, PortalCatalogCache.CatalogProduct> loadCatalogProducts(Set<? extends String> productIds) {
+        List<String> ids = new ArrayList<>(productIds);
+        Map<String, List<ProductCategoryResult>> categories = productCategoryService.listCategoriesForProducts(ids);
+        Map<String, ProductRef> productRefs = findProductRefs(ids);
+        return productRepository.findByProductIdIn(ids).stream()
+                .collect(Collectors.toMap(Product::getProductId, product -> new PortalCatalogCache.CatalogProduct(product,
+                        productRefs.get(product.getProductId()),
+                        categories.getOrDefault(product.getProductId(), Collections.emptyList()))));
+    }
+
+    /**
+     * Results are assembled for every read, cached rows are never handed out
+     */
+    private ProductResult toProductResult(PortalCatalogCache.CatalogProduct catalogProduct) {
+        ProductResult result = new ProductResult().convertFrom(catalogProduct.product());
+        result.setCategories(new ArrayList<>(catalogProduct.categories()));
+        Optional.ofNullable(catalogProduct.productRef())
+                .ifPresent(productRef -> fillProductRef(result, productRef));
+        return result;
+    }
+
+    private void fillProductRef(ProductResult product, ProductRef productRef) {
+        product.setEnabled(productRef.getEnabled());
+
+        // Parsed once per config version and shared, see ProductConfigCache
+        ProductConfigCache.ParsedConfig config = productConfigCache.get(productRef);
+        product.setApiConfig(config.apiConfig());
+        product.setMcpConfig(config.mcpConfig());
+        product.setAgentConfig(config.agentConfig());
+        product.setModelConfig(config.modelConfig());
     }
 
     private Product findPublishedProduct(String portalId, String productId) {
@@ -656,18 +796,23 @@ public class ProductServiceImpl implements ProductService {
         };
     }
 
-    private void fillProductSubscribeInfo(ProductResult product, QueryProductParam param) {
+    private void fillProductsSubscribeInfo(List<ProductResult> products, Boolean querySubscribeStatus) {
         // if null or false, then skip
-        if (!BooleanUtils.isTrue(param.getQuerySubscribeStatus())) {
+        if (!BooleanUtils.isTrue(querySubscribeStatus) || CollUtil.isEmpty(products)) {
             return;
         }
 
-        // get default consumer id (use applicationContext to get bean to avoid circular dependency)
+        // get default consumer id once per page (use applicationContext to get bean to avoid circular dependency)
         ConsumerService consumerService = ctx.getBean(ConsumerService.class);
         String consumerId = consumerService.getPrimaryConsumer().getConsumerId();
 
-        // check if product is subscribed by consumer
-        boolean exists = subscriptionRepository.findByConsumerIdAndProductId(consumerId, product.getProductId()).isPresent();
-        product.setIsSubscribed(exists);
+        // check which products are subscribed by consumer
+        List<String> productIds = products.stream()
+                .map(ProductResult::getProductId)
+                .toList();
+        Set<String> subscribedProductIds = subscriptionRepository.findAllByConsumerIdAndProductIdIn(consumerId, productIds).stream()
+                .map(ProductSubscription::getProductId)
+                .collect(Collectors.toSet());
+        products.forEach(product -> product.setIsSubscribed(subscribedProductIds.contains(product.getProductId())));
     }
 }
@@ -22,42 +22,28 @@ package com.alibaba.apiopenplatform.service.impl;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.alibaba.apiopenplatform.config.ChatSearchConfig;
 import com.alibaba.apiopenplatform.core.exception.BusinessException;
 import com.alibaba.apiopenplatform.core.exception.ErrorCode;
-import com.alibaba.apiopenplatform.core.security.ContextHolder;
-import com.alibaba.apiopenplatform.core.utils.CacheUtil;
-import com.alibaba.apiopenplatform.dto.params.chat.CreateChatParam;
+import com.alibaba.apiopenplatform.core.utils.IdGenerator;
 import com.alibaba.apiopenplatform.dto.params.chat.InvokeModelParam;
 import com.alibaba.apiopenplatform.dto.result.chat.LlmInvokeResult;
-import com.alibaba.apiopenplatform.dto.result.consumer.CredentialContext;
-import com.alibaba.apiopenplatform.dto.result.product.ProductRefResult;
-import com.alibaba.apiopenplatform.dto.result.product.ProductResult;
-import com.alibaba.apiopenplatform.service.ConsumerService;
-import com.alibaba.apiopenplatform.service.GatewayService;
 import com.alibaba.apiopenplatform.service.LlmService;
-import com.alibaba.apiopenplatform.service.ProductService;
 import com.alibaba.apiopenplatform.service.SearchRewriteService;
 import com.alibaba.apiopenplatform.support.chat.ChatMessage;
 import com.alibaba.apiopenplatform.support.chat.search.SearchInput;
 import com.alibaba.apiopenplatform.support.enums.ChatRole;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.rholder.retry.BlockStrategies;
-import com.github.rholder.retry.RetryException;
-import com.github.rholder.retry.Retryer;
-import com.github.rholder.retry.RetryerBuilder;
-import com.github.rholder.retry.StopStrategies;
-import com.google.common.base.Throwables;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -94,88 +80,40 @@ public class SearchRewirteServiceImpl implements SearchRewriteService {
     
     private final LlmService llmService;
     
-    private final ProductService productService;
-    
-    private final GatewayService gatewayService;
-    
-    private final ContextHolder contextHolder;
-    
-    private final ConsumerService consumerService;
-    
-    private final Cache<String, List<String>> cache = CacheUtil.newCache(5);
+    private final ChatSearchConfig searchConfig;
     
     public SearchRewirteServiceImpl(LlmService llmService,
-            ProductService productService,
-            GatewayService gatewayService,
-            ContextHolder contextHolder,
-            ConsumerService consumerService) {
+            ChatSearchConfig searchConfig) {
         this.llmService = llmService;
-        this.productService = productService;
-        this.gatewayService = gatewayService;
-        this.contextHolder = contextHolder;
-        this.consumerService = consumerService;
+        this.searchConfig = searchConfig;
     }
     
     @Override
-    public SearchInput rewriteWithRetry(List<ChatMessage> chatMessages, CreateChatParam chat) {
-        Retryer<SearchInput> retry = RetryerBuilder.<SearchInput>newBuilder()
-                .retryIfException()
-                .withStopStrategy(StopStrategies.stopAfterDelay(3000L, TimeUnit.MILLISECONDS))
-                .withBlockStrategy(BlockStrategies.threadSleepStrategy())
-                .build();
-        try {
-            return retry.call(() -> rewrite(chatMessages, chat));
-        } catch (ExecutionException e) {
-            log.error("rewrite execution error, error message: {}", Throwables.getStackTraceAsString(e));
-        } catch (RetryException e) {
-            log.error("rewrite final fail, error message: {}", Throwables.getStackTraceAsString(e));
-            return new SearchInput();
-        }
-        return new SearchInput();
-    }
-    
-    
-    private SearchInput rewrite(List<ChatMessage> chatMessages, CreateChatParam param) {
+    public Mono<SearchInput> rewrite(List<ChatMessage> chatMessages, InvokeModelParam chatParam) {
         List<ChatMessage> messages = buildRewriteMessagesFromHistory(chatMessages);
         
-        InvokeModelParam invokeModelParam = buildInvokeModelParam(messages, param);
-        
-        // 使用 CountDownLatch 等待异步调用完成
-        CountDownLatch latch = new CountDownLatch(1);
+        // Runs after the chat is prepared on a worker thread, everything needed is taken from the chat
+        return Mono.defer(() -> invokeRewrite(buildInvokeModelParam(messages, chatParam)))
+                .retryWhen(Retry.backoff(searchConfig.getMaxRetries(), Duration.ofMillis(searchConfig.getRetryBackoffMillis()))
+                        .jitter(searchConfig.getRetryJitter()))
+                .doOnError(e -> log.warn("Rewrite failed, error message: {}", e.getMessage()));
+    }
+    
+    private Mono<SearchInput> invokeRewrite(InvokeModelParam invokeModelParam) {
         AtomicReference<LlmInvokeResult> resultRef = new AtomicReference<>();
+        // 创建一个 Mock 的 HttpServletResponse，避免传 null 导致 NPE
+        MockHttpServletResponse mockResponse = new MockHttpServletResponse();
         
-        try {
-            // 创建一个 Mock 的 HttpServletResponse，避免传 null 导致 NPE
-            MockHttpServletResponse mockResponse = new MockHttpServletResponse();
-            
-            // 调用 LLM 进行查询重写
-            llmService.invokeLLM(invokeModelParam, mockResponse, result -> {
-                resultRef.set(result);
-                latch.countDown();
-            });
-            
-            // 等待最多 10 秒
-            boolean completed = latch.await(10, TimeUnit.SECONDS);
-            
-            if (!completed) {
-                log.error("Rewrite timeout after 10 seconds");
-                throw new BusinessException(ErrorCode.INTERNAL_ERROR, "查询重写超时");
-            }
-            
-            LlmInvokeResult result = resultRef.get();
-            
-            if (result == null || !result.isSuccess()) {
-                throw new BusinessException(ErrorCode.INTERNAL_ERROR, "查询重写失败");
-            }
-            
-            // 解析 LLM 返回的 JSON
-            return parseSearchInput(result.getAnswer());
-            
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Rewrite interrupted", e);
-            throw new BusinessException(ErrorCode.INTERNAL_ERROR, "查询重写被中断");
-        }
+        // The result is reported when the answer stream completes
+        return llmService.invokeLLM(invokeModelParam, mockResponse, resultRef::set)
+                .then(Mono.fromCallable(() -> {
+                    LlmInvokeResult result = resultRef.get();
+                    if (result == null || !result.isSuccess()) {
+                        throw new BusinessException(ErrorCode.INTERNAL_ERROR, "查询重写失败");
+                    }
+                    // 解析 LLM 返回的 JSON
+                    return parseSearchInput(result.getAnswer());
+                }));
     }
     
     /**
@@ -228,23 +166,19 @@ public class SearchRewirteServiceImpl implements SearchRewriteService {
         }
     }
     
-    private InvokeModelParam buildInvokeModelParam(List<ChatMessage> messages, CreateChatParam param) {
-        ProductResult productResult = productService.getProduct(param.getProductId());
-        
-        // Get gateway IPs
-        ProductRefResult productRef = productService.getProductRef(param.getProductId());
-        String gatewayId = productRef.getGatewayId();
-        List<String> gatewayIps = cache.get(gatewayId, gatewayService::fetchGatewayIps);
-        
-        CredentialContext credentialContext = consumerService.getDefaultCredential(contextHolder.getUser());
-        
+    private InvokeModelParam buildInvokeModelParam(List<ChatMessage> messages, InvokeModelParam chatParam) {
+        // Same model, gateway and credential as the chat
         return InvokeModelParam.builder()
-                .product(productResult)
-                .requestHeaders(credentialContext.getHeaders())
-                .queryParams(credentialContext.getQueryParams())
+                // Answer of the rewrite is kept in memory under its own id, it is never stored as a chat
+                .chatId(IdGenerator.genIdWithPrefix("rewrite-"))
+                .internal(true)
+                .product(chatParam.getProduct())
+                .requestHeaders(chatParam.getRequestHeaders())
+                .queryParams(chatParam.getQueryParams())
                 .chatMessages(messages)
-                .stream(param.getStream())
-                .gatewayIps(gatewayIps)
+                .stream(chatParam.getStream())
+                .gatewayIps(chatParam.getGatewayIps())
+                .credentialContext(chatParam.getCredentialContext())
                 .build();
     }
     
@@ -21,7 +21,6 @@ package com.alibaba.apiopenplatform.service.impl;
 
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
-import com.alibaba.apiopenplatform.core.security.ContextHolder;
 import com.alibaba.apiopenplatform.support.chat.search.SearchContext;
 import com.alibaba.apiopenplatform.support.chat.search.SearchInput;
 import com.alibaba.apiopenplatform.service.TalkSearchAbilityService;
@@ -56,7 +55,6 @@ public class TalkSearchAbilityServiceGoogleImpl
     
     private final RestTemplate restTemplate;
     private final PortalService portalService;
-    private final ContextHolder contextHolder;
     
     private static final String GOOGLE_SEARCH_URL = "https://serpapi.com/search";
     
@@ -90,21 +88,20 @@ public class TalkSearchAbilityServiceGoogleImpl
     );
     
     public TalkSearchAbilityServiceGoogleImpl(RestTemplate restTemplate,
-                                   PortalService portalService,
-                                   ContextHolder contextHolder) {
+                                   PortalService portalService) {
         this.restTemplate = restTemplate;
         this.portalService = portalService;
-        this.contextHolder = contextHolder;
     }
     
     /**
      * 获取 Google 搜索 API Key
-     * 从当前 Portal 的配置中动态获取（自动解密）
+     * 从发起搜索的 Portal 的配置中动态获取（自动解密）
+     * 搜索在工作线程上执行，Portal 由调用方通过搜索输入传入，不读取当前线程的上下文
      * 
+     * @param portalId 发起搜索的 Portal ID
      * @return API Key
      */
-    private String getSearchApiKey() {
-        String portalId = contextHolder.getPortal(); // 获取当前 Portal ID
+    private String getSearchApiKey(String portalId) {
         return portalService.getSearchEngineApiKey(portalId, SearchEngineType.GOOGLE);
     }
     
@@ -138,8 +135,9 @@ public class TalkSearchAbilityServiceGoogleImpl
             
             return buildSearchResponse(searchResponse);
         }catch (Exception e){
+            // Thrown to the caller so that it can retry
             log.error("TalkSearchAbilityServiceGoogleImpl search error:{}", e.getMessage(), e);
-            return new ArrayList<>();
+            throw e;
         }
     }
     
@@ -147,7 +145,7 @@ public class TalkSearchAbilityServiceGoogleImpl
     public Map<String, Object> buildSearchRequest(SearchInput ideaTalkSearchInput) {
         Map<String,Object> param = new HashMap<>(6);
         param.put("q",ideaTalkSearchInput.getQuery());
-        param.put("api_key",getSearchApiKey());
+        param.put("api_key",getSearchApiKey(ideaTalkSearchInput.getPortalId()));
         param.put("engine","google");
         param.put("google_domain","google.com");
         param.put("num",10);
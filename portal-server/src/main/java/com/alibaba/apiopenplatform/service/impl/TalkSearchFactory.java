@@ -19,12 +19,23 @@
 
 package com.alibaba.apiopenplatform.service.impl;
 
+import com.alibaba.apiopenplatform.config.ChatSearchConfig;
 import com.alibaba.apiopenplatform.service.TalkSearchAbilityService;
+import com.alibaba.apiopenplatform.support.chat.search.SearchContext;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -33,8 +44,50 @@ public class TalkSearchFactory {
     @Autowired
     private List<TalkSearchAbilityService> talkSearchAbilityList;
     
+    @Autowired
+    private ChatSearchConfig searchConfig;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * Providers by search type, all of them share the search result cache
+     */
+    private Map<String, TalkSearchAbilityService> cachedSearchAbilities;
+    
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void init() {
+        AsyncCache<CachingTalkSearchAbilityService.SearchKey, List<SearchContext>> cache = Caffeine.newBuilder()
+                .maximumSize(searchConfig.getCacheMaxEntries())
+                .expireAfter(new Expiry<CachingTalkSearchAbilityService.SearchKey, List<SearchContext>>() {
+                    @Override
+                    public long expireAfterCreate(CachingTalkSearchAbilityService.SearchKey key, List<SearchContext> value, long currentTime) {
+                        return TimeUnit.SECONDS.toNanos(searchConfig.getProviderCacheTtlSeconds()
+                                .getOrDefault(key.searchType(), searchConfig.getCacheTtlSeconds()));
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(CachingTalkSearchAbilityService.SearchKey key, List<SearchContext> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(CachingTalkSearchAbilityService.SearchKey key, List<SearchContext> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "chat.search.results");
+        
+        cachedSearchAbilities = talkSearchAbilityList.stream()
+                .collect(Collectors.toMap(TalkSearchAbilityService::getSearchType,
+                        searchAbility -> (TalkSearchAbilityService) new CachingTalkSearchAbilityService<>(searchAbility, cache),
+                        (first, second) -> first));
+    }
+    
     public TalkSearchAbilityService getSearchAbility(String searchType) {
-        return talkSearchAbilityList.stream().filter(searchAbility -> searchAbility.getSearchType().equals(searchType))
-                .findFirst().orElse(null);
+        return cachedSearchAbilities.get(searchType);
     }
-}
\ No newline at end of file
+}
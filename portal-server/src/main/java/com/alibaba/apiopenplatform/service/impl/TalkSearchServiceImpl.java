@@ -1,6 +1,8 @@
 package com.alibaba.apiopenplatform.service.impl;
 
+import com.alibaba.apiopenplatform.config.ChatSearchConfig;
 import com.alibaba.apiopenplatform.dto.params.chat.CreateChatParam;
+import com.alibaba.apiopenplatform.dto.params.chat.InvokeModelParam;
 import com.alibaba.apiopenplatform.service.SearchRewriteService;
 import com.alibaba.apiopenplatform.service.TalkSearchAbilityService;
 import com.alibaba.apiopenplatform.service.TalkSearchService;
@@ -9,25 +11,20 @@ import com.alibaba.apiopenplatform.support.chat.content.TextContent;
 import com.alibaba.apiopenplatform.support.chat.search.SearchContext;
 import com.alibaba.apiopenplatform.support.chat.search.SearchInput;
 import com.alibaba.apiopenplatform.support.chat.search.SearchOutput;
-import com.github.rholder.retry.BlockStrategies;
-import com.github.rholder.retry.RetryException;
-import com.github.rholder.retry.Retryer;
-import com.github.rholder.retry.RetryerBuilder;
-import com.github.rholder.retry.StopStrategies;
-import com.google.common.base.Throwables;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
 
 
 @Service
@@ -39,6 +36,10 @@ public class TalkSearchServiceImpl implements TalkSearchService {
     
     private final TalkSearchFactory talkSearchFactory;
     
+    private final BlockingTaskScheduler blockingTaskScheduler;
+    
+    private final ChatSearchConfig searchConfig;
+    
     public static String QUESTION_PROMPT = "# Question\n";
     
     public static String ideaTalkSearchPrompt = "You are a large language AI assistant built by Himarket. You are given a user question, and please write clean, concise and accurate answer to the question.\n" +
@@ -60,36 +61,51 @@ public class TalkSearchServiceImpl implements TalkSearchService {
             "%s\n";
     
     @Override
-    public List<ChatMessage> buildSearchMessages(List<ChatMessage> chatMessages, CreateChatParam param) {
+    public Mono<List<ChatMessage>> buildSearchMessages(InvokeModelParam invokeModelParam, CreateChatParam param, String portalId) {
+        List<ChatMessage> chatMessages = invokeModelParam.getChatMessages();
         
         if(StringUtils.isBlank(param.getSearchType())){
             log.info("No search type specified");
-            return chatMessages;
-        }
-        SearchInput searchInput = searchRewriteService.rewriteWithRetry(chatMessages, param);
-        log.info("Search input: query=%s, time=%s", searchInput.getQuery(), searchInput.getTime());
-        if (searchInput == null || StringUtils.isBlank(searchInput.getQuery())){
-            if(StringUtils.isBlank(param.getQuestion())){
-                return chatMessages;
-            }
-            searchInput = new SearchInput();
-            searchInput.setQuery(param.getQuestion());
+            return Mono.just(chatMessages);
         }
-        
-        SearchOutput searchOutput = searchWithRetry(searchInput, param.getSearchType());
-        
-        
-        if (CollectionUtils.isEmpty(searchOutput.getCitations())) {
-            log.info("No search result found");
-            return chatMessages;
+        TalkSearchAbilityService talkSearchAbilityService = talkSearchFactory.getSearchAbility(param.getSearchType());
+        if (talkSearchAbilityService == null) {
+            log.warn("Search type {} is not supported", param.getSearchType());
+            return Mono.just(chatMessages);
         }
         
-        ChatMessage lastMessage = chatMessages.get(chatMessages.size() - 1);
-        if(StringUtils.equals(lastMessage.getRole(), "user")){
-            setUserContent(lastMessage, searchOutput);
-        }
+        // The raw question is searched speculatively while the query is being rewritten
+        Mono<SearchOutput> rewrittenSearch = searchRewriteService.rewrite(chatMessages, invokeModelParam)
+                // Logged by the rewrite, the raw question is still searched
+                .onErrorResume(e -> Mono.empty())
+                .filter(searchInput -> StringUtils.isNotBlank(searchInput.getQuery()))
+                .doOnNext(searchInput -> log.info("Search input: query={}, time={}", searchInput.getQuery(), searchInput.getTime()))
+                .flatMap(searchInput -> search(talkSearchAbilityService, searchInput.setPortalId(portalId)));
+        Mono<SearchOutput> rawSearch = StringUtils.isBlank(param.getQuestion()) ? Mono.empty()
+                : search(talkSearchAbilityService, new SearchInput().setQuery(param.getQuestion()).setPortalId(portalId));
         
-        return chatMessages;
+        // Whichever search has citations first wins, the other one is cancelled
+        return Mono.firstWithValue(rewrittenSearch.filter(this::qualified), rawSearch.filter(this::qualified))
+                .timeout(Duration.ofMillis(searchConfig.getBudgetMillis()))
+                .map(searchOutput -> {
+                    ChatMessage lastMessage = chatMessages.get(chatMessages.size() - 1);
+                    if(StringUtils.equals(lastMessage.getRole(), "user")){
+                        setUserContent(lastMessage, searchOutput);
+                    }
+                    return chatMessages;
+                })
+                .onErrorResume(e -> {
+                    if (e instanceof TimeoutException) {
+                        log.warn("No search result within {}ms", searchConfig.getBudgetMillis());
+                    } else {
+                        log.info("No search result found");
+                    }
+                    return Mono.just(chatMessages);
+                });
+    }
+    
+    private boolean qualified(SearchOutput searchOutput) {
+        return !CollectionUtils.isEmpty(searchOutput.getCitations());
     }
     
     private void setUserContent(ChatMessage chatMessage, SearchOutput searchOutput){
@@ -120,37 +136,26 @@ public class TalkSearchServiceImpl implements TalkSearchService {
         }
     }
     
-    private SearchOutput searchWithRetry(SearchInput searchInput ,String searchType) {
-        Retryer<SearchOutput> retryer = RetryerBuilder.<SearchOutput>newBuilder()
-                .retryIfException()
-                .withStopStrategy(StopStrategies.stopAfterDelay(3000L, TimeUnit.MILLISECONDS))
-                .withBlockStrategy(BlockStrategies.threadSleepStrategy())
-                .build();
-        try {
-            return retryer.call(() -> search(searchInput,searchType));
-        } catch (ExecutionException e) {
-            log.error("search execution error, error message: {}", Throwables.getStackTraceAsString(e));
-        } catch (RetryException e) {
-            log.error("search final fail, error message: {}", Throwables.getStackTraceAsString(e));
-            return new SearchOutput(new ArrayList<>(), new ArrayList<>());
-        }
-        return new SearchOutput(new ArrayList<>(), new ArrayList<>());
+    private Mono<SearchOutput> search(TalkSearchAbilityService talkSearchAbilityService, SearchInput searchInput) {
+        // Search engines are called over blocking HTTP, the portal of the caller is in the search input
+        return Mono.fromCallable(() -> doSearch(talkSearchAbilityService, searchInput))
+                .subscribeOn(blockingTaskScheduler.getScheduler())
+                .retryWhen(Retry.backoff(searchConfig.getMaxRetries(), Duration.ofMillis(searchConfig.getRetryBackoffMillis()))
+                        .jitter(searchConfig.getRetryJitter()))
+                .onErrorResume(e -> {
+                    log.warn("Search final fail, query: {}, error message: {}", searchInput.getQuery(), e.getMessage());
+                    return Mono.empty();
+                });
     }
     
-    private SearchOutput search(SearchInput searchInput, String searchType) {
-        try{
-            TalkSearchAbilityService talkSearchAbilityService = talkSearchFactory.getSearchAbility(searchType);
-            List<SearchContext> searchContexts = talkSearchAbilityService.search(searchInput);
-            searchContexts = searchContexts.stream().limit(10).collect(Collectors.toList());
-            List<String> citations = new ArrayList<>();
-            for (SearchContext searchContext : searchContexts) {
-                String citation = searchContext.formatCitation();
-                citations.add(citation);
-            }
-            return new SearchOutput(searchContexts, citations);
-        } catch (Exception e) {
-            log.warn("Search error: {}, stacktrace: {}, ", e, Throwables.getStackTraceAsString(e));
-            return new SearchOutput(new ArrayList<>(), new ArrayList<>());
+    private SearchOutput doSearch(TalkSearchAbilityService talkSearchAbilityService, SearchInput searchInput) {
+        List<SearchContext> searchContexts = talkSearchAbilityService.search(searchInput);
+        searchContexts = searchContexts.stream().limit(searchConfig.getMaxCitations()).toList();
+        List<String> citations = new ArrayList<>();
+        for (SearchContext searchContext : searchContexts) {
+            String citation = searchContext.formatCitation();
+            citations.add(citation);
         }
+        return new SearchOutput(searchContexts, citations);
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.service.TalkSearchAbilityService;
+import com.alibaba.apiopenplatform.support.chat.search.SearchContext;
+import com.alibaba.apiopenplatform.support.chat.search.SearchInput;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索结果缓存测试
+ *
+ * 验证命中统计、按门户隔离以及失败结果不缓存
+ */
+class CachingTalkSearchAbilityServiceTest {
+
+    private AsyncCache<CachingTalkSearchAbilityService.SearchKey, List<SearchContext>> cache;
+
+    private CountingSearchAbility delegate;
+
+    private CachingTalkSearchAbilityService<Object, Object> searchAbility;
+
+    @BeforeEach
+    void setUp() {
+        cache = Caffeine.newBuilder().recordStats().buildAsync();
+        delegate = new CountingSearchAbility();
+        searchAbility = new CachingTalkSearchAbilityService<>(delegate, cache);
+    }
+
+    /**
+     * 相同查询命中缓存，并记录命中和未命中次数
+     */
+    @Test
+    void testHitsAndMissesRecorded() {
+        // Act
+        searchAbility.search(new SearchInput().setQuery("Spring  AI").setPortalId("portal-1"));
+        searchAbility.search(new SearchInput().setQuery("spring ai").setPortalId("portal-1"));
+
+        // Assert
+        assertEquals(1, delegate.calls.get(), "规范化后相同的查询只调用一次搜索引擎");
+        CacheStats stats = cache.synchronous().stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+    }
+
+    /**
+     * 不同门户使用各自的搜索引擎密钥，结果不共享
+     */
+    @Test
+    void testNotSharedAcrossPortals() {
+        // Act
+        searchAbility.search(new SearchInput().setQuery("spring ai").setPortalId("portal-1"));
+        searchAbility.search(new SearchInput().setQuery("spring ai").setPortalId("portal-2"));
+
+        // Assert
+        assertEquals(2, delegate.calls.get());
+    }
+
+    /**
+     * 搜索失败不缓存，下次重新调用
+     */
+    @Test
+    void testFailureNotCached() {
+        // Arrange
+        delegate.failing = true;
+        SearchInput searchInput = new SearchInput().setQuery("spring ai").setPortalId("portal-1");
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> searchAbility.search(searchInput));
+        delegate.failing = false;
+        List<SearchContext> searchContexts = searchAbility.search(searchInput);
+
+        // Assert
+        assertEquals(1, searchContexts.size());
+        assertEquals(2, delegate.calls.get());
+    }
+
+    private static class CountingSearchAbility implements TalkSearchAbilityService<Object, Object> {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private volatile boolean failing;
+
+        @Override
+        public List<SearchContext> search(SearchInput ideaTalkSearchInput) {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("search failed");
+            }
+            return List.of(new SearchContext().setId(1).setTitle(ideaTalkSearchInput.getQuery()));
+        }
+
+        @Override
+        public Object buildSearchRequest(SearchInput ideaTalkSearchInput) {
+            return null;
+        }
+
+        @Override
+        public String getSearchType() {
+            return "GOOGLE";
+        }
+
+        @Override
+        public List<SearchContext> buildSearchResponse(Object searchResponse) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatAdmissionConfig;
+import com.alibaba.apiopenplatform.core.exception.ChatError;
+import com.alibaba.apiopenplatform.core.exception.ChatRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对话准入控制测试
+ *
+ * 验证限流拒绝、并发排队、公平调度、释放后转交许可以及排队中取消
+ */
+class ChatAdmissionGateTest {
+
+    private static final String PRODUCT = "product-1";
+
+    private ChatAdmissionConfig config;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        config = new ChatAdmissionConfig();
+        // 默认不限流、不限并发，由各测试按需设置
+        config.setDeveloper(new ChatAdmissionConfig.Limit(0, 0, 0));
+        config.setConsumer(new ChatAdmissionConfig.Limit(0, 0, 0));
+        config.setProduct(new ChatAdmissionConfig.Limit(0, 0, 0));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    /**
+     * 令牌耗尽后直接拒绝，不排队
+     */
+    @Test
+    void testRejectedWhenRateLimited() {
+        // Arrange
+        config.setDeveloper(new ChatAdmissionConfig.Limit(0.001, 2, 0));
+        ChatAdmissionGate gate = new ChatAdmissionGate(config, meterRegistry);
+        ChatAdmissionGate.Key key = new ChatAdmissionGate.Key("dev-1", "consumer-1", PRODUCT);
+
+        // Act
+        gate.acquire(key).block();
+        gate.acquire(key).block();
+        ChatRejectedException e = assertThrows(ChatRejectedException.class, () -> gate.acquire(key).block());
+
+        // Assert
+        assertEquals(ChatError.RATE_LIMITED, e.getError());
+        assertEquals(0, queued(), "被限流的请求不应进入队列");
+        assertEquals(1.0, meterRegistry.get("chat.admission.rejected").tag("reason", "RATE_LIMITED").counter().count());
+
+        // 其他开发者不受影响
+        assertNotNull(gate.acquire(new ChatAdmissionGate.Key("dev-2", "consumer-2", PRODUCT)).block());
+    }
+
+    /**
+     * 超过并发数的请求排队，释放后许可转交给排队的请求
+     */
+    @Test
+    void testQueuedUntilReleased() {
+        // Arrange
+        config.setDeveloper(new ChatAdmissionConfig.Limit(0, 0, 1));
+        ChatAdmissionGate gate = new ChatAdmissionGate(config, meterRegistry);
+        ChatAdmissionGate.Key key = new ChatAdmissionGate.Key("dev-1", "consumer-1", PRODUCT);
+        ChatAdmissionGate.Permit first = gate.acquire(key).block();
+
+        // Act
+        AtomicReference<ChatAdmissionGate.Permit> second = new AtomicReference<>();
+        gate.acquire(key).subscribe(second::set);
+
+        // Assert
+        assertNull(second.get(), "并发已满时应排队");
+        assertEquals(1, queued());
+        assertEquals(1, inFlight());
+
+        first.release();
+        assertNotNull(second.get(), "释放后应转交给排队的请求");
+        assertEquals(0, queued());
+        assertEquals(1, inFlight());
+
+        // 重复释放不应多减并发数
+        first.release();
+        assertEquals(1, inFlight());
+
+        second.get().release();
+        assertEquals(0, inFlight());
+    }
+
+    /**
+     * 排队请求按开发者加权公平调度，一个开发者的突发请求不会饿死其他开发者
+     */
+    @Test
+    void testQueueIsFairAcrossDevelopers() {
+        // Arrange
+        config.setProduct(new ChatAdmissionConfig.Limit(0, 0, 1));
+        ChatAdmissionGate gate = new ChatAdmissionGate(config, meterRegistry);
+        ChatAdmissionGate.Permit holder = gate.acquire(new ChatAdmissionGate.Key("dev-0", "consumer-0", PRODUCT)).block();
+
+        List<String> admitted = new ArrayList<>();
+        List<ChatAdmissionGate.Permit> permits = new ArrayList<>();
+        for (String developer : List.of("dev-1", "dev-1", "dev-1", "dev-2")) {
+            gate.acquire(new ChatAdmissionGate.Key(developer, "consumer-" + developer, PRODUCT))
+                    .subscribe(permit -> {
+                        admitted.add(developer);
+                        permits.add(permit);
+                    });
+        }
+        assertEquals(4, queued());
+
+        // Act
+        holder.release();
+        while (admitted.size() < 4) {
+            int size = admitted.size();
+            permits.get(size - 1).release();
+            assertEquals(size + 1, admitted.size(), "每次释放应放行一个请求");
+        }
+
+        // Assert
+        assertEquals(List.of("dev-1", "dev-2", "dev-1", "dev-1"), admitted);
+    }
+
+    /**
+     * 多模型对比作为一个整体准入，只占用开发者的一个并发数，但占用每个产品的并发数
+     */
+    @Test
+    void testFanOutAdmittedAsOneUnit() {
+        // Arrange
+        config.setDeveloper(new ChatAdmissionConfig.Limit(0.001, 1, 1));
+        config.setProduct(new ChatAdmissionConfig.Limit(0, 0, 1));
+        ChatAdmissionGate gate = new ChatAdmissionGate(config, meterRegistry);
+        List<String> productIds = List.of("product-1", "product-2", "product-3");
+
+        // Act
+        ChatAdmissionGate.Permit permit = gate.acquire(new ChatAdmissionGate.Key("dev-1", "consumer-1", productIds)).block();
+
+        // Assert
+        assertNotNull(permit);
+        assertEquals(3, inFlight(), "每个产品各占用一个并发数");
+        AtomicReference<ChatAdmissionGate.Permit> other = new AtomicReference<>();
+        gate.acquire(new ChatAdmissionGate.Key("dev-2", "consumer-2", "product-2")).subscribe(other::set);
+        assertNull(other.get(), "产品并发已满时应排队");
+
+        permit.release();
+        assertNotNull(other.get());
+        assertEquals(1, inFlight());
+    }
+
+    /**
+     * 排队中取消的请求移出队列，且不占用并发数
+     */
+    @Test
+    void testCancelledWhileQueued() {
+        // Arrange
+        config.setDeveloper(new ChatAdmissionConfig.Limit(0, 0, 1));
+        ChatAdmissionGate gate = new ChatAdmissionGate(config, meterRegistry);
+        ChatAdmissionGate.Key key = new ChatAdmissionGate.Key("dev-1", "consumer-1", PRODUCT);
+        ChatAdmissionGate.Permit first = gate.acquire(key).block();
+
+        AtomicReference<ChatAdmissionGate.Permit> cancelled = new AtomicReference<>();
+        Disposable subscription = gate.acquire(key).subscribe(cancelled::set);
+        assertEquals(1, queued());
+
+        // Act
+        subscription.dispose();
+        first.release();
+
+        // Assert
+        assertEquals(0, queued());
+        assertNull(cancelled.get(), "已取消的请求不应获得许可");
+        assertEquals(0, inFlight());
+        assertNotNull(gate.acquire(key).block(Duration.ofSeconds(1)), "取消后并发数应可用");
+    }
+
+    /**
+     * 排队超时的请求被拒绝
+     */
+    @Test
+    void testRejectedWhenQueuedTooLong() {
+        // Arrange
+        config.setDeveloper(new ChatAdmissionConfig.Limit(0, 0, 1));
+        config.setMaxQueueTimeMillis(50);
+        ChatAdmissionGate gate = new ChatAdmissionGate(config, meterRegistry);
+        ChatAdmissionGate.Key key = new ChatAdmissionGate.Key("dev-1", "consumer-1", PRODUCT);
+        gate.acquire(key).block();
+
+        // Act
+        ChatRejectedException e = assertThrows(ChatRejectedException.class,
+                () -> gate.acquire(key).block(Duration.ofSeconds(5)));
+
+        // Assert
+        assertEquals(ChatError.QUEUE_TIMEOUT, e.getError());
+        assertEquals(0, queued());
+    }
+
+    private double queued() {
+        return meterRegistry.get("chat.admission.queued").gauge().value();
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("chat.admission.inflight").gauge().value();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatPersistenceConfig;
+import com.alibaba.apiopenplatform.core.security.ContextHolder;
+import com.alibaba.apiopenplatform.dto.params.chat.ChatAnswerBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 回答检查点测试
+ *
+ * 验证回答完成时不清理检查点，只有结果写入后调用清理才删除；检查点写入后内容不再留在内存中
+ */
+class ChatAnswerCheckpointerTest {
+
+    private final Map<String, List<Object>> batches = new ConcurrentHashMap<>();
+
+    private ChatAnswerCheckpointer checkpointer;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            Collection<?> rows = invocation.getArgument(1);
+            batches.computeIfAbsent(invocation.getArgument(0), sql -> new ArrayList<>()).addAll(rows);
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+        // Answers are reassembled from the chunks inserted so far
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object row : inserted()) {
+                ChatAnswerBuffer.Chunk chunk = (ChatAnswerBuffer.Chunk) row;
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString(1)).thenReturn(chunk.chatId());
+                when(rs.getString(2)).thenReturn(chunk.content());
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT chat_id, content"), any(RowCallbackHandler.class), any(Object[].class));
+
+        ChatPersistenceConfig persistenceConfig = new ChatPersistenceConfig();
+        // Only flushed explicitly by the tests
+        persistenceConfig.setCheckpointIntervalMillis(60_000);
+        persistenceConfig.setCheckpointTokens(2);
+        BlockingTaskScheduler blockingTaskScheduler = new BlockingTaskScheduler(mock(ContextHolder.class), persistenceConfig);
+        checkpointer = new ChatAnswerCheckpointer(jdbcTemplate, blockingTaskScheduler, persistenceConfig, new SimpleMeterRegistry());
+    }
+
+    /**
+     * 回答完成后检查点仍然写入，等待结果日志写入回答
+     */
+    @Test
+    void testCompleteKeepsCheckpoints() {
+        // Arrange
+        ChatAnswerBuffer buffer = checkpointer.open("chat-1");
+        ChatAnswerBuffer.Chunk chunk = new ChatAnswerBuffer.Chunk("chat-1", 0, 0, "hello");
+        checkpointer.onCheckpoint(chunk);
+
+        // Act
+        checkpointer.onComplete(buffer);
+        checkpointer.destroy();
+
+        // Assert
+        assertEquals(List.of(chunk), inserted());
+        assertTrue(deleted().isEmpty(), "回答未写入前不删除检查点");
+    }
+
+    /**
+     * 清理时丢弃尚未写入的检查点，并删除已写入的检查点
+     */
+    @Test
+    void testDiscardDropsPendingChunks() {
+        // Arrange
+        ChatAnswerBuffer.Chunk discarded = new ChatAnswerBuffer.Chunk("chat-1", 0, 0, "hello");
+        ChatAnswerBuffer.Chunk kept = new ChatAnswerBuffer.Chunk("chat-2", 0, 0, "world");
+        checkpointer.onCheckpoint(discarded);
+        checkpointer.onCheckpoint(kept);
+
+        // Act
+        checkpointer.discard(List.of("chat-1"));
+        checkpointer.destroy();
+
+        // Assert
+        assertEquals(List.of(kept), inserted());
+        assertEquals(List.of("chat-1"), deleted());
+    }
+
+    /**
+     * 检查点写入后从内存中移除，只保留未写入的尾部
+     */
+    @Test
+    void testPersistedChunksLeaveMemory() {
+        // Arrange
+        ChatAnswerBuffer buffer = checkpointer.open("chat-1");
+        buffer.append("he");
+        buffer.append("llo");
+        buffer.append(" wor");
+        assertEquals("hello wor", buffer.contentFrom(0));
+        assertEquals(9, buffer.bufferedLength());
+
+        // Act
+        checkpointer.destroy();
+
+        // Assert
+        assertNull(buffer.contentFrom(0), "已写入的内容需要从检查点读取");
+        assertEquals(" wor", buffer.contentFrom(5));
+        assertEquals(4, buffer.bufferedLength());
+        assertEquals(9, buffer.length());
+        assertEquals(3, buffer.tokens());
+    }
+
+    /**
+     * 结果写入前从检查点重组完整回答，包括尚未写入的尾部
+     */
+    @Test
+    void testReassembleIncludesTail() {
+        // Arrange
+        ChatAnswerBuffer buffer = checkpointer.open("chat-1");
+        buffer.append("he");
+        buffer.append("llo");
+        buffer.append(" world");
+        buffer.complete();
+
+        // Act
+        Map<String, String> answers = checkpointer.reassemble(List.of("chat-1"));
+
+        // Assert
+        assertEquals(Map.of("chat-1", "hello world"), answers);
+        assertEquals(0, buffer.bufferedLength());
+        assertTrue(buffer.isCheckpointed());
+    }
+
+    private List<Object> inserted() {
+        return rowsOf("INSERT INTO chat_answer_chunk");
+    }
+
+    private List<Object> deleted() {
+        return rowsOf("DELETE FROM chat_answer_chunk");
+    }
+
+    private List<Object> rowsOf(String prefix) {
+        return batches.entrySet().stream()
+                .filter(batch -> batch.getKey().startsWith(prefix))
+                .flatMap(batch -> batch.getValue().stream())
+                .toList();
+    }
+}
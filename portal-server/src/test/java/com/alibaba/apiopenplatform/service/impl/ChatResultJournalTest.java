@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatPersistenceConfig;
+import com.alibaba.apiopenplatform.core.security.ContextHolder;
+import com.alibaba.apiopenplatform.dto.result.chat.LlmInvokeResult;
+import com.alibaba.apiopenplatform.entity.Chat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对话结果日志测试
+ *
+ * 验证合并写入、批量失败后的逐条回退、对话历史批量写入、回答检查点清理以及关闭时的排空
+ */
+class ChatResultJournalTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private ChatAnswerCheckpointer answerCheckpointer;
+
+    private BlockingTaskScheduler blockingTaskScheduler;
+
+    private ChatResultJournal journal;
+
+    private final List<Batch> batches = new CopyOnWriteArrayList<>();
+
+    private volatile boolean failBatch;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (failBatch && sql.startsWith("UPDATE chat")) {
+                throw new DataAccessResourceFailureException("batch failed");
+            }
+            Collection<?> rows = invocation.getArgument(1);
+            batches.add(new Batch(sql, new ArrayList<>(rows)));
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+
+        answerCheckpointer = mock(ChatAnswerCheckpointer.class);
+        ChatPersistenceConfig persistenceConfig = new ChatPersistenceConfig();
+        // Only flushed explicitly by the tests
+        persistenceConfig.setJournalFlushIntervalMillis(60_000);
+        blockingTaskScheduler = new BlockingTaskScheduler(mock(ContextHolder.class), persistenceConfig);
+        journal = new ChatResultJournal(jdbcTemplate, answerCheckpointer, blockingTaskScheduler, persistenceConfig, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.destroy();
+        blockingTaskScheduler.destroy();
+    }
+
+    /**
+     * 关闭时写入尚未刷新的结果，同一对话的多次结果合并为一条
+     */
+    @Test
+    void testDrainedOnDestroy() {
+        // Arrange
+        Chat chat = chat("chat-1", "conversation-1", LocalDateTime.now());
+        journal.append(chat, result(false, "partial"));
+        journal.append(chat, result(true, "answer"));
+
+        // Act
+        assertTrue(batches.isEmpty(), "未到刷新时间不写库");
+        journal.destroy();
+
+        // Assert
+        assertEquals(1, results().size());
+        assertEquals(1, results().get(0).rows().size(), "同一对话的结果合并写入");
+        assertEquals(List.of(chat), histories().get(0).rows());
+        verify(answerCheckpointer).discard(List.of("chat-1"));
+    }
+
+    /**
+     * 结果写入后才清理回答检查点，写入失败时保留
+     */
+    @Test
+    void testCheckpointsDiscardedAfterWrite() {
+        // Arrange
+        failBatch = true;
+        when(jdbcTemplate.update(startsWith("UPDATE chat"), any(), any(), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("row failed"));
+        journal.append(chat("chat-1", "conversation-1", LocalDateTime.now()), result(true, "answer"));
+
+        // Act
+        journal.destroy();
+
+        // Assert
+        verify(answerCheckpointer, never()).discard(any());
+    }
+
+    /**
+     * 关闭后追加的结果直接写入
+     */
+    @Test
+    void testAppendAfterDestroyWrittenThrough() {
+        // Arrange
+        journal.destroy();
+
+        // Act
+        journal.append(chat("chat-1", "conversation-1", LocalDateTime.now()), result(true, "answer"));
+
+        // Assert
+        verify(jdbcTemplate, timeout(1000)).batchUpdate(startsWith("UPDATE chat"), anyCollection(), eq(1), any());
+    }
+
+    /**
+     * 批量更新失败后逐条重试，对话历史只写入更新成功的对话
+     */
+    @Test
+    void testFallbackToRowByRow() {
+        // Arrange
+        failBatch = true;
+        when(jdbcTemplate.update(startsWith("UPDATE chat"), any(), any(), any(), eq("chat-2")))
+                .thenThrow(new DataAccessResourceFailureException("row failed"));
+        Chat first = chat("chat-1", "conversation-1", LocalDateTime.now());
+        Chat second = chat("chat-2", "conversation-2", LocalDateTime.now());
+        journal.append(first, result(true, "answer"));
+        journal.append(second, result(true, "answer"));
+
+        // Act
+        journal.destroy();
+
+        // Assert
+        verify(jdbcTemplate, times(2)).update(startsWith("UPDATE chat"), any(), any(), any(), any());
+        assertEquals(1, histories().size());
+        assertEquals(List.of(first), histories().get(0).rows());
+        verify(answerCheckpointer).discard(List.of("chat-1"));
+    }
+
+    /**
+     * 对话历史只保留每个会话最新的成功对话，失败的对话不写入
+     */
+    @Test
+    void testLatestSuccessfulChatPerConversation() {
+        // Arrange
+        LocalDateTime now = LocalDateTime.now();
+        Chat older = chat("chat-1", "conversation-1", now.minusSeconds(1));
+        Chat newer = chat("chat-2", "conversation-1", now);
+        Chat failed = chat("chat-3", "conversation-2", now);
+        journal.append(newer, result(true, "answer"));
+        journal.append(older, result(true, "answer"));
+        journal.append(failed, result(false, "answer"));
+
+        // Act
+        journal.destroy();
+
+        // Assert
+        assertEquals(3, results().get(0).rows().size());
+        assertEquals(List.of(newer), histories().get(0).rows());
+    }
+
+    /**
+     * 检查点保存的回答在写入前重组，写入后清理检查点
+     */
+    @Test
+    void testCheckpointedAnswerReassembled() {
+        // Arrange
+        Chat chat = chat("chat-1", "conversation-1", LocalDateTime.now());
+        when(answerCheckpointer.reassemble(List.of("chat-1"))).thenReturn(Map.of("chat-1", "answer"));
+        journal.append(chat, result(true, null));
+
+        // Act
+        journal.destroy();
+
+        // Assert
+        assertEquals(1, results().get(0).rows().size());
+        assertEquals(List.of(chat), histories().get(0).rows(), "重组后的回答写入对话历史");
+        verify(answerCheckpointer).discard(List.of("chat-1"));
+    }
+
+    /**
+     * 重组回答失败时仍写入结果，但保留检查点
+     */
+    @Test
+    void testCheckpointsKeptWhenReassembleFails() {
+        // Arrange
+        when(answerCheckpointer.reassemble(any())).thenThrow(new DataAccessResourceFailureException("read failed"));
+        journal.append(chat("chat-1", "conversation-1", LocalDateTime.now()), result(true, null));
+
+        // Act
+        journal.destroy();
+
+        // Assert
+        assertEquals(1, results().get(0).rows().size());
+        assertTrue(histories().isEmpty());
+        verify(answerCheckpointer, never()).discard(any());
+    }
+
+    private List<Batch> results() {
+        return batches.stream().filter(batch -> batch.sql().startsWith("UPDATE chat")).toList();
+    }
+
+    private List<Batch> histories() {
+        return batches.stream().filter(batch -> batch.sql().contains("chat_history")).toList();
+    }
+
+    private static Chat chat(String chatId, String conversationId, LocalDateTime createAt) {
+        Chat chat = new Chat()
+                .setChatId(chatId)
+                .setSessionId("session-1")
+                .setProductId("product-1")
+                .setConversationId(conversationId)
+                .setQuestion("question");
+        chat.setCreateAt(createAt);
+        return chat;
+    }
+
+    private static LlmInvokeResult result(boolean success, String answer) {
+        return LlmInvokeResult.builder().success(success).answer(answer).build();
+    }
+
+    private record Batch(String sql, List<Object> rows) {
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.GatewayBalancerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 网关节点负载均衡测试
+ *
+ * 验证P2C与最少进行中请求的选择、延迟与错误率的EWMA统计、节点摘除及摘除时长递增
+ */
+class GatewayEndpointBalancerTest {
+
+    private static final String IP_A = "10.0.0.1";
+
+    private static final String IP_B = "10.0.0.2";
+
+    private static final String IP_C = "10.0.0.3";
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private GatewayBalancerConfig config;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private GatewayEndpointBalancer balancer;
+
+    @BeforeEach
+    void setUp() {
+        config = new GatewayBalancerConfig();
+        config.setConsecutiveFailures(3);
+        meterRegistry = new SimpleMeterRegistry();
+        balancer = new GatewayEndpointBalancer(config, meterRegistry, now::get);
+    }
+
+    /**
+     * 最少进行中请求策略选择进行中请求最少的节点
+     */
+    @Test
+    void testLeastOutstanding() {
+        // Arrange
+        config.setStrategy(GatewayBalancerConfig.Strategy.LEAST_OUTSTANDING);
+        List<String> ips = List.of(IP_A, IP_B, IP_C);
+
+        // Act
+        Set<String> selected = new HashSet<>();
+        for (int i = 0; i < ips.size(); i++) {
+            selected.add(balancer.select(ips).getIp());
+        }
+
+        // Assert
+        assertEquals(Set.copyOf(ips), selected, "每次选择进行中请求最少的节点");
+    }
+
+    /**
+     * P2C在延迟相同时选择进行中请求较少的节点，释放后恢复
+     */
+    @Test
+    void testPowerOfTwoChoicesByOutstanding() {
+        // Arrange
+        List<String> ips = List.of(IP_A, IP_B);
+        balancer.record(IP_A, true, 100);
+        balancer.record(IP_B, true, 100);
+        GatewayEndpointBalancer.Selection busy = balancer.select(ips);
+        String idle = busy.getIp().equals(IP_A) ? IP_B : IP_A;
+
+        // Act & Assert
+        for (int i = 0; i < 20; i++) {
+            GatewayEndpointBalancer.Selection selection = balancer.select(ips);
+            assertEquals(idle, selection.getIp());
+            selection.cancel();
+        }
+
+        busy.cancel();
+        GatewayEndpointBalancer.Selection other = balancer.select(ips);
+        GatewayEndpointBalancer.Selection next = balancer.select(ips);
+        assertNotEquals(other.getIp(), next.getIp(), "释放后两个节点负载相同");
+    }
+
+    /**
+     * 延迟按EWMA平滑，一次快速响应不会抵消此前的高延迟
+     */
+    @Test
+    void testLatencyEwma() {
+        // Arrange
+        List<String> ips = List.of(IP_A, IP_B);
+        balancer.record(IP_A, true, 1000);
+        balancer.record(IP_A, true, 100);
+        balancer.record(IP_B, true, 500);
+
+        // Act & Assert
+        for (int i = 0; i < 20; i++) {
+            assertEquals(IP_B, balancer.choose(ips), "A的平滑延迟约为910ms，高于B");
+        }
+    }
+
+    /**
+     * 首字节到达时记录延迟，之后的流长度不计入
+     */
+    @Test
+    void testLatencyMeasuredToFirstByte() {
+        // Arrange
+        List<String> ips = List.of(IP_A, IP_B);
+        balancer.record(IP_B, true, 500);
+        GatewayEndpointBalancer.Selection selection = balancer.select(List.of(IP_A));
+
+        // Act
+        now.addAndGet(100);
+        selection.firstByte();
+        now.addAndGet(10_000);
+        selection.release(true);
+
+        // Assert
+        for (int i = 0; i < 20; i++) {
+            assertEquals(IP_A, balancer.choose(ips));
+        }
+    }
+
+    /**
+     * 连续失败后摘除节点，摘除期间不再选中，到期后恢复
+     */
+    @Test
+    void testEjectedAfterConsecutiveFailures() {
+        // Arrange
+        List<String> ips = List.of(IP_A, IP_B);
+
+        // Act
+        for (int i = 0; i < config.getConsecutiveFailures(); i++) {
+            balancer.record(IP_A, false, 100);
+        }
+
+        // Assert
+        assertEquals(1.0, ejected());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(IP_B, balancer.choose(ips));
+        }
+
+        now.addAndGet(TimeUnit.SECONDS.toMillis(config.getBaseEjectionSeconds()) + 1);
+        assertEquals(0.0, ejected(), "摘除到期后恢复");
+    }
+
+    /**
+     * 恢复后再次被摘除时，摘除时长按次数递增，且不超过上限
+     */
+    @Test
+    void testEjectionBackoff() {
+        // Arrange
+        config.setBaseEjectionSeconds(30);
+        config.setMaxEjectionSeconds(75);
+
+        // Act & Assert
+        for (long seconds : new long[]{30, 60, 75}) {
+            for (int i = 0; i < config.getConsecutiveFailures(); i++) {
+                balancer.record(IP_A, false, 100);
+            }
+            now.addAndGet(TimeUnit.SECONDS.toMillis(seconds) - 1);
+            assertEquals(1.0, ejected(), "摘除时长应为" + seconds + "秒");
+            now.addAndGet(2);
+            assertEquals(0.0, ejected());
+        }
+
+        // 恢复后成功一次，摘除时长从头计算
+        balancer.record(IP_A, true, 100);
+        for (int i = 0; i < config.getConsecutiveFailures(); i++) {
+            balancer.record(IP_A, false, 100);
+        }
+        now.addAndGet(TimeUnit.SECONDS.toMillis(30) + 1);
+        assertEquals(0.0, ejected());
+    }
+
+    /**
+     * 错误率超过阈值后摘除，请求数不足时不按错误率摘除
+     */
+    @Test
+    void testEjectedByErrorRate() {
+        // Arrange
+        config.setConsecutiveFailures(100);
+        config.setMinRequests(10);
+        config.setMaxErrorRate(0.3);
+
+        // Act
+        for (int i = 0; i < 9; i++) {
+            balancer.record(IP_A, false, 100);
+        }
+
+        // Assert
+        assertEquals(0.0, ejected(), "请求数不足时不摘除");
+        balancer.record(IP_A, false, 100);
+        assertEquals(1.0, ejected());
+    }
+
+    /**
+     * 所有节点都被摘除时仍然分配流量
+     */
+    @Test
+    void testAllEjectedStillSelects() {
+        // Arrange
+        List<String> ips = List.of(IP_A, IP_B);
+        for (String ip : ips) {
+            for (int i = 0; i < config.getConsecutiveFailures(); i++) {
+                balancer.record(ip, false, 100);
+            }
+        }
+
+        // Act
+        String ip = balancer.choose(ips);
+
+        // Assert
+        assertEquals(2.0, ejected());
+        assertTrue(ips.contains(ip));
+    }
+
+    /**
+     * 客户端错误由健康的网关返回，不计入失败；5xx计入失败
+     */
+    @Test
+    void testClientErrorsNotCountedAsFailures() {
+        // Arrange
+        List<String> ips = List.of(IP_A);
+        WebClientResponseException badRequest = WebClientResponseException.create(400, "Bad Request", HttpHeaders.EMPTY, new byte[0], null);
+        WebClientResponseException unavailable = WebClientResponseException.create(503, "Service Unavailable", HttpHeaders.EMPTY, new byte[0], null);
+
+        // Act & Assert
+        for (int i = 0; i < config.getConsecutiveFailures(); i++) {
+            balancer.track(Flux.error(badRequest), balancer.select(ips)).onErrorComplete().blockLast();
+        }
+        assertEquals(0.0, ejected());
+
+        for (int i = 0; i < config.getConsecutiveFailures(); i++) {
+            balancer.track(Flux.error(unavailable), balancer.select(ips)).onErrorComplete().blockLast();
+        }
+        assertEquals(1.0, ejected());
+    }
+
+    /**
+     * 客户端取消不计入成功或失败，不打断连续失败计数
+     */
+    @Test
+    void testCancelledCallsIgnored() {
+        // Arrange
+        List<String> ips = List.of(IP_A);
+        for (int i = 0; i < config.getConsecutiveFailures() - 1; i++) {
+            balancer.record(IP_A, false, 100);
+        }
+
+        // Act
+        balancer.track(Flux.never(), balancer.select(ips)).subscribe().dispose();
+        balancer.record(IP_A, false, 100);
+
+        // Assert
+        assertEquals(1.0, ejected());
+    }
+
+    private double ejected() {
+        return meterRegistry.get("chat.gateway.endpoints.ejected").gauge().value();
+    }
+}
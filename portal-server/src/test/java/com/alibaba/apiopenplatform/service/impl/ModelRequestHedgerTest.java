@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatHedgeConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 模型请求对冲测试
+ *
+ * 验证对冲阈值与首包耗时分位数、对冲预算的累积与消耗，以及竞速中的取消与错误传递
+ */
+class ModelRequestHedgerTest {
+
+    private static final String MODEL = "model-1";
+
+    private static final Double PERCENTILE = 95.0;
+
+    private ChatHedgeConfig config;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ModelRequestHedger hedger;
+
+    private final AtomicInteger hedgeCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        config = new ChatHedgeConfig();
+        config.setDefaultThresholdMillis(3000);
+        meterRegistry = new SimpleMeterRegistry();
+        hedger = new ModelRequestHedger(config, meterRegistry);
+    }
+
+    /**
+     * 未配置分位数时不对冲，直接返回原始请求
+     */
+    @Test
+    void testDisabledWithoutPercentile() {
+        // Arrange
+        Flux<String> primary = Flux.just("a");
+
+        // Act
+        Flux<String> result = hedger.hedge(MODEL, null, primary, hedge(Flux.just("h")));
+
+        // Assert
+        assertSame(primary, result);
+        assertEquals(0, hedgeCalls.get());
+    }
+
+    /**
+     * 原始请求在阈值前返回首包时不发送对冲请求
+     */
+    @Test
+    void testFastPrimaryNotHedged() {
+        // Act & Assert
+        StepVerifier.withVirtualTime(() -> hedger.hedge(MODEL, PERCENTILE, delayed(1000, "a", "b"), hedge(Flux.just("h"))))
+                .thenAwait(Duration.ofSeconds(1))
+                .expectNext("a", "b")
+                .verifyComplete();
+
+        assertEquals(0, hedgeCalls.get());
+        assertEquals(1.0, counter("chat.hedge.requests"));
+        assertEquals(0.0, counter("chat.hedge.hedged"));
+    }
+
+    /**
+     * 原始请求超过阈值未返回首包时发送对冲请求，对冲先返回则取消原始请求
+     */
+    @Test
+    void testSlowPrimaryHedgedAndCancelled() {
+        // Arrange
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+
+        // Act & Assert
+        // Delays are created inside the supplier, so they run on the virtual time scheduler
+        StepVerifier.withVirtualTime(() -> hedger.hedge(MODEL, PERCENTILE,
+                        delayed(10_000, "a").doOnCancel(() -> primaryCancelled.set(true)), hedge(Flux.just("h"))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(2999))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("h")
+                .verifyComplete();
+
+        assertTrue(primaryCancelled.get(), "原始请求应被取消");
+        assertEquals(1, hedgeCalls.get());
+        assertEquals(1.0, counter("chat.hedge.hedged"));
+        assertEquals(1.0, counter("chat.hedge.wins"));
+    }
+
+    /**
+     * 对冲发出后原始请求先返回首包，取消对冲请求
+     */
+    @Test
+    void testPrimaryWinsAfterHedge() {
+        // Arrange
+        AtomicBoolean hedgeCancelled = new AtomicBoolean();
+
+        // Act & Assert
+        StepVerifier.withVirtualTime(() -> hedger.hedge(MODEL, PERCENTILE, delayed(4000, "a"),
+                        hedge(delayed(5000, "h").doOnCancel(() -> hedgeCancelled.set(true)))))
+                .thenAwait(Duration.ofSeconds(4))
+                .expectNext("a")
+                .verifyComplete();
+
+        assertEquals(1, hedgeCalls.get());
+        assertTrue(hedgeCancelled.get(), "对冲请求应被取消");
+        assertEquals(0.0, counter("chat.hedge.wins"));
+    }
+
+    /**
+     * 原始请求失败时不再对冲，直接返回原始错误
+     */
+    @Test
+    void testPrimaryErrorNotHedged() {
+        // Arrange
+        IOException error = new IOException("connection reset");
+
+        // Act & Assert
+        StepVerifier.withVirtualTime(() -> hedger.hedge(MODEL, PERCENTILE,
+                        Mono.delay(Duration.ofSeconds(1)).thenMany(Flux.<String>error(error)), hedge(Flux.just("h"))))
+                .thenAwait(Duration.ofSeconds(1))
+                .expectErrorSatisfies(e -> assertSame(error, e, "应返回原始请求的错误"))
+                .verify();
+
+        assertEquals(0, hedgeCalls.get());
+    }
+
+    /**
+     * 对冲请求失败时原始请求仍可返回
+     */
+    @Test
+    void testHedgeErrorSuppressed() {
+        // Act & Assert
+        StepVerifier.withVirtualTime(() -> hedger.hedge(MODEL, PERCENTILE, delayed(5000, "a"),
+                        hedge(Flux.error(new IOException("hedge failed")))))
+                .thenAwait(Duration.ofSeconds(5))
+                .expectNext("a")
+                .verifyComplete();
+
+        assertEquals(1, hedgeCalls.get());
+    }
+
+    /**
+     * 预算耗尽后不再对冲，每个请求按比例累积预算
+     */
+    @Test
+    void testBudget() {
+        // Arrange
+        config.setMaxBurst(1);
+        config.setBudgetRatio(0.5);
+        hedger = new ModelRequestHedger(config, meterRegistry);
+
+        // Act & Assert
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.withVirtualTime(() -> hedger.hedge(MODEL, PERCENTILE, delayed(5000, "a"), hedge(Flux.never())))
+                    .thenAwait(Duration.ofSeconds(5))
+                    .expectNext("a")
+                    .verifyComplete();
+        }
+
+        // 1 -> 0, 0.5 不足一次, 1 -> 0
+        assertEquals(2, hedgeCalls.get());
+        assertEquals(1.0, counter("chat.hedge.budget.exhausted"));
+        assertEquals(0.0, meterRegistry.get("chat.hedge.budget").gauge().value());
+    }
+
+    /**
+     * 预算累积不超过突发上限
+     */
+    @Test
+    void testBudgetCappedAtMaxBurst() {
+        // Arrange
+        config.setMaxBurst(2);
+        config.setBudgetRatio(0.5);
+        hedger = new ModelRequestHedger(config, meterRegistry);
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            hedger.hedge(MODEL, PERCENTILE, Flux.just("a"), hedge(Flux.just("h"))).blockLast();
+        }
+
+        // Assert
+        assertEquals(2.0, meterRegistry.get("chat.hedge.budget").gauge().value());
+    }
+
+    /**
+     * 样本足够后按首包耗时分位数对冲，不低于阈值下限
+     */
+    @Test
+    void testThresholdFromSamples() {
+        // Arrange
+        config.setMinSamples(1);
+        config.setMinThresholdMillis(200);
+        hedger.hedge(MODEL, PERCENTILE, Flux.just("a"), hedge(Flux.just("h"))).blockLast();
+
+        // Act & Assert
+        StepVerifier.withVirtualTime(() -> hedger.hedge(MODEL, PERCENTILE, delayed(10_000, "a"), hedge(Flux.just("h"))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(199))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("h")
+                .verifyComplete();
+    }
+
+    /**
+     * 分位数取最近的样本，样本不足时使用默认值
+     */
+    @Test
+    void testLatencyWindowPercentile() {
+        // Arrange
+        ModelRequestHedger.LatencyWindow window = new ModelRequestHedger.LatencyWindow(100);
+        for (int i = 1; i <= 9; i++) {
+            window.record(i);
+        }
+
+        // Act & Assert
+        assertEquals(999, window.percentile(50, 10, 999), "样本不足时使用默认值");
+
+        for (int i = 10; i <= 100; i++) {
+            window.record(i);
+        }
+        assertEquals(50, window.percentile(50, 10, 999));
+        assertEquals(99, window.percentile(99, 10, 999));
+        assertEquals(100, window.percentile(100, 10, 999));
+        assertEquals(1, window.percentile(0.1, 10, 999));
+    }
+
+    /**
+     * 环形缓冲只保留最近的样本
+     */
+    @Test
+    void testLatencyWindowKeepsRecentSamples() {
+        // Arrange
+        ModelRequestHedger.LatencyWindow window = new ModelRequestHedger.LatencyWindow(10);
+
+        // Act
+        for (int i = 1; i <= 20; i++) {
+            window.record(i * 100);
+        }
+
+        // Assert
+        assertEquals(1100, window.percentile(1, 1, 0));
+        assertEquals(1500, window.percentile(50, 1, 0));
+        assertEquals(2000, window.percentile(100, 1, 0));
+    }
+
+    /**
+     * 分位数按间隔重新计算，少量新样本不会触发排序
+     */
+    @Test
+    void testLatencyWindowRecomputeInterval() {
+        // Arrange
+        ModelRequestHedger.LatencyWindow window = new ModelRequestHedger.LatencyWindow(20);
+        for (int i = 0; i < 20; i++) {
+            window.record(100);
+        }
+        assertEquals(100, window.percentile(50, 1, 0));
+
+        // Act & Assert
+        for (int i = 0; i < 15; i++) {
+            window.record(10_000);
+        }
+        assertEquals(100, window.percentile(50, 1, 0), "间隔内沿用上次的结果");
+
+        window.record(10_000);
+        assertEquals(10_000, window.percentile(50, 1, 0), "新样本达到间隔后重新计算");
+    }
+
+    private Supplier<Flux<String>> hedge(Flux<String> flux) {
+        return () -> {
+            hedgeCalls.incrementAndGet();
+            return flux;
+        };
+    }
+
+    private static Flux<String> delayed(long millis, String... values) {
+        return Mono.delay(Duration.ofMillis(millis)).thenMany(Flux.just(values));
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ProductSearchConfig;
+import com.alibaba.apiopenplatform.core.event.CatalogChangedEvent;
+import com.alibaba.apiopenplatform.dto.params.product.SearchProductParam;
+import com.alibaba.apiopenplatform.entity.Product;
+import com.alibaba.apiopenplatform.repository.ProductPublicationRepository;
+import com.alibaba.apiopenplatform.repository.ProductRefRepository;
+import com.alibaba.apiopenplatform.repository.ProductRepository;
+import com.alibaba.apiopenplatform.service.ProductCategoryService;
+import com.alibaba.apiopenplatform.support.enums.ProductStatus;
+import com.alibaba.apiopenplatform.support.enums.ProductType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * 产品搜索索引测试
+ *
+ * 验证分词、编辑距离、前缀和模糊匹配、排序、分面统计以及重建期间的增量索引
+ */
+class ProductSearchIndexTest {
+
+    private ProductRepository productRepository;
+
+    private ProductSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (searchIndex != null) {
+            searchIndex.destroy();
+        }
+    }
+
+    /**
+     * 汉字索引为单字和双字，查询只使用双字
+     */
+    @Test
+    void testTokenizeHan() {
+        // Act & Assert
+        assertEquals(List.of("数", "据", "数据", "分", "据分", "析", "分析"), ProductSearchIndex.tokenize("数据分析", false));
+        assertEquals(List.of("数据", "分析"), ProductSearchIndex.tokenize("数据 分析", true));
+        assertEquals(List.of("数"), ProductSearchIndex.tokenize("数", true), "单个汉字的查询保留单字");
+    }
+
+    /**
+     * 标识符拆分为单词，并保留完整标识符
+     */
+    @Test
+    void testTokenizeIdentifiers() {
+        // Act & Assert
+        assertEquals(List.of("get", "weather", "v2", "get_weather-v2", "tool"),
+                ProductSearchIndex.tokenize("get_weather-v2 Tool", false));
+        assertEquals(List.of("spring", "ai", "spring.ai"), ProductSearchIndex.tokenize("Spring.AI", false));
+        assertEquals(List.of("version"), ProductSearchIndex.tokenize("version.", false), "末尾的分隔符不算标识符");
+        assertTrue(ProductSearchIndex.tokenize("  ", false).isEmpty());
+    }
+
+    /**
+     * 编辑距离包含相邻字符交换
+     */
+    @Test
+    void testWithinDistance() {
+        // Act & Assert
+        assertTrue(ProductSearchIndex.withinDistance("weather", "weather", 0));
+        assertTrue(ProductSearchIndex.withinDistance("weather", "waether", 1), "相邻交换算一次编辑");
+        assertTrue(ProductSearchIndex.withinDistance("weather", "wether", 1));
+        assertFalse(ProductSearchIndex.withinDistance("weather", "whether", 1));
+        assertTrue(ProductSearchIndex.withinDistance("weather", "whether", 2));
+        assertFalse(ProductSearchIndex.withinDistance("abc", "abcdef", 2));
+    }
+
+    /**
+     * 名称匹配排在描述匹配之前
+     */
+    @Test
+    void testRankedByFieldWeight() {
+        // Arrange
+        givenProducts(
+                product("product-1", "Stock Quotes", "Quotes with weather data", ProductType.REST_API),
+                product("product-2", "Weather Forecast", "Forecast of cities", ProductType.MCP_SERVER),
+                product("product-3", "Translation", "Translate text", ProductType.REST_API));
+        searchIndex = newSearchIndex();
+
+        // Act
+        ProductSearchIndex.SearchHits hits = search("weather");
+
+        // Assert
+        assertEquals(List.of("product-2", "product-1"), hits.productIds());
+        assertEquals(2, hits.total());
+    }
+
+    /**
+     * 前缀、拼写错误和拼写错误的前缀都能匹配
+     */
+    @Test
+    void testPrefixAndFuzzyMatch() {
+        // Arrange
+        givenProducts(
+                product("product-1", "Weather Forecast", null, ProductType.MCP_SERVER),
+                product("product-2", "Translation", null, ProductType.REST_API));
+        searchIndex = newSearchIndex();
+
+        // Act & Assert
+        assertEquals(List.of("product-1"), search("weath").productIds());
+        assertEquals(List.of("product-1"), search("wether").productIds());
+        assertEquals(List.of("product-1"), search("waeth").productIds());
+        assertEquals(List.of("product-1"), search("weather forcast").productIds(), "每个查询词都要匹配");
+        assertTrue(search("weather translation").productIds().isEmpty());
+    }
+
+    /**
+     * 中文名称按双字匹配
+     */
+    @Test
+    void testHanMatch() {
+        // Arrange
+        givenProducts(
+                product("product-1", "天气预报", null, ProductType.MCP_SERVER),
+                product("product-2", "预测天数", null, ProductType.MCP_SERVER));
+        searchIndex = newSearchIndex();
+
+        // Act & Assert
+        assertEquals(List.of("product-1"), search("天气").productIds());
+        assertEquals(List.of("product-1"), search("天气 预报").productIds());
+    }
+
+    /**
+     * 分面按过滤后的结果统计
+     */
+    @Test
+    void testFacets() {
+        // Arrange
+        Product published = product("product-1", "Weather Forecast", null, ProductType.MCP_SERVER);
+        published.setStatus(ProductStatus.PUBLISHED);
+        givenProducts(published,
+                product("product-2", "Weather Alerts", null, ProductType.REST_API),
+                product("product-3", "Weather History", null, ProductType.REST_API));
+        searchIndex = newSearchIndex();
+
+        // Act
+        ProductSearchIndex.SearchHits all = search("weather");
+        SearchProductParam param = new SearchProductParam();
+        param.setKeyword("weather");
+        param.setType(ProductType.REST_API);
+        ProductSearchIndex.SearchHits filtered = searchIndex.search(param, Pageable.unpaged());
+
+        // Assert
+        assertEquals(Map.of("MCP_SERVER", 1L, "REST_API", 2L), all.facets().get(ProductSearchIndex.FACET_TYPE));
+        assertEquals(Map.of("PENDING", 2L, "PUBLISHED", 1L), all.facets().get(ProductSearchIndex.FACET_STATUS));
+        assertEquals(Map.of("REST_API", 2L), filtered.facets().get(ProductSearchIndex.FACET_TYPE));
+        assertEquals(2, filtered.total());
+    }
+
+    /**
+     * 重建加载期间变更的产品，在新索引替换后重新索引
+     */
+    @Test
+    void testChangedDuringRebuildReindexed() throws Exception {
+        // Arrange
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch changed = new CountDownLatch(1);
+        Product stale = product("product-1", "Weather Forecast", null, ProductType.MCP_SERVER);
+        Product current = product("product-1", "Air Quality", null, ProductType.MCP_SERVER);
+        when(productRepository.findAll(any(Pageable.class))).thenAnswer(invocation -> {
+            loading.countDown();
+            assertTrue(changed.await(5, TimeUnit.SECONDS));
+            return new PageImpl<>(List.of(stale));
+        });
+        when(productRepository.findByProductIdIn(anyCollection())).thenReturn(List.of(current));
+        searchIndex = newSearchIndex();
+
+        // Act
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        searchIndex.handleCatalogChange(CatalogChangedEvent.ofProduct(this, "product-1"));
+        changed.countDown();
+
+        // Assert
+        // The changes are indexed right after the rebuilt index is swapped in
+        assertEquals(List.of("product-1"), awaitSearch("air", List.of("product-1")));
+        assertTrue(search("weather").productIds().isEmpty(), "重建加载的旧版本被替换");
+    }
+
+    private void givenProducts(Product... products) {
+        when(productRepository.findAll(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(products)));
+    }
+
+    private ProductSearchIndex newSearchIndex() {
+        return new ProductSearchIndex(productRepository, mock(ProductRefRepository.class),
+                mock(ProductPublicationRepository.class), mock(ProductCategoryService.class),
+                mock(ProductConfigCache.class), mock(CatalogInvalidationBroadcaster.class), new ProductSearchConfig());
+    }
+
+    private ProductSearchIndex.SearchHits search(String keyword) {
+        SearchProductParam param = new SearchProductParam();
+        param.setKeyword(keyword);
+        return searchIndex.search(param, Pageable.unpaged());
+    }
+
+    private List<String> awaitSearch(String keyword, List<String> expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        List<String> productIds = search(keyword).productIds();
+        while (!productIds.equals(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            productIds = search(keyword).productIds();
+        }
+        return productIds;
+    }
+
+    private static Product product(String productId, String name, String description, ProductType type) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setName(name);
+        product.setDescription(description);
+        product.setType(type);
+        return product;
+    }
+}
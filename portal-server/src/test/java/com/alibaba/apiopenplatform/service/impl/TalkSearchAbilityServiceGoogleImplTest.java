@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.service.PortalService;
+import com.alibaba.apiopenplatform.support.chat.search.SearchInput;
+import com.alibaba.apiopenplatform.support.enums.SearchEngineType;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Google 搜索请求测试
+ *
+ * 搜索在没有门户上下文的工作线程上执行，API Key 取自搜索输入中的门户
+ */
+class TalkSearchAbilityServiceGoogleImplTest {
+
+    /**
+     * 使用搜索输入中门户配置的 API Key
+     */
+    @Test
+    void testApiKeyOfInputPortal() {
+        // Arrange
+        PortalService portalService = mock(PortalService.class);
+        when(portalService.getSearchEngineApiKey("portal-1", SearchEngineType.GOOGLE)).thenReturn("key-1");
+        TalkSearchAbilityServiceGoogleImpl searchAbility = new TalkSearchAbilityServiceGoogleImpl(new RestTemplate(), portalService);
+
+        // Act
+        Map<String, Object> request = searchAbility.buildSearchRequest(new SearchInput()
+                .setQuery("news")
+                .setTime(List.of("2025-03-31", "2025-04-30"))
+                .setPortalId("portal-1"));
+
+        // Assert
+        assertEquals("key-1", request.get("api_key"));
+        assertEquals("news", request.get("q"));
+        assertEquals("cdr:1,cd_min:03/31/2025,cd_max:04/30/2025", request.get("tbs"));
+    }
+}
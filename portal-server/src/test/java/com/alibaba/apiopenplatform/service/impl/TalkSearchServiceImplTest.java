@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.alibaba.apiopenplatform.service.impl;
+
+import com.alibaba.apiopenplatform.config.ChatPersistenceConfig;
+import com.alibaba.apiopenplatform.config.ChatSearchConfig;
+import com.alibaba.apiopenplatform.core.security.ContextHolder;
+import com.alibaba.apiopenplatform.dto.params.chat.CreateChatParam;
+import com.alibaba.apiopenplatform.dto.params.chat.InvokeModelParam;
+import com.alibaba.apiopenplatform.dto.result.chat.LlmInvokeResult;
+import com.alibaba.apiopenplatform.dto.result.consumer.CredentialContext;
+import com.alibaba.apiopenplatform.dto.result.product.ProductResult;
+import com.alibaba.apiopenplatform.service.LlmService;
+import com.alibaba.apiopenplatform.service.TalkSearchAbilityService;
+import com.alibaba.apiopenplatform.support.chat.ChatMessage;
+import com.alibaba.apiopenplatform.support.chat.search.SearchContext;
+import com.alibaba.apiopenplatform.support.chat.search.SearchInput;
+import com.alibaba.apiopenplatform.support.enums.ChatRole;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.context.SecurityContextHolder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 联网搜索增强测试
+ *
+ * 搜索在对话准备完成后的工作线程上执行，此时线程上没有用户和门户上下文，
+ * 验证查询改写和搜索只使用调用方显式传入的凭证和门户
+ */
+class TalkSearchServiceImplTest {
+
+    private static final String PORTAL_ID = "portal-1";
+
+    private BlockingTaskScheduler blockingTaskScheduler;
+
+    private LlmService llmService;
+
+    private TalkSearchFactory talkSearchFactory;
+
+    private RecordingSearchAbility searchAbility;
+
+    private TalkSearchServiceImpl talkSearchService;
+
+    @BeforeEach
+    void setUp() {
+        blockingTaskScheduler = new BlockingTaskScheduler(mock(ContextHolder.class), new ChatPersistenceConfig());
+        llmService = mock(LlmService.class);
+        talkSearchFactory = mock(TalkSearchFactory.class);
+        searchAbility = new RecordingSearchAbility();
+        when(talkSearchFactory.getSearchAbility("GOOGLE")).thenReturn(searchAbility);
+
+        ChatSearchConfig searchConfig = new ChatSearchConfig();
+        searchConfig.setMaxRetries(0);
+        talkSearchService = new TalkSearchServiceImpl(new SearchRewirteServiceImpl(llmService, searchConfig),
+                talkSearchFactory, blockingTaskScheduler, searchConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingTaskScheduler.destroy();
+    }
+
+    /**
+     * 在没有上下文的线程上执行时，改写使用对话的模型和凭证，搜索使用传入的门户
+     */
+    @Test
+    void testSearchOffRequestThread() {
+        // Arrange
+        CredentialContext credential = CredentialContext.builder()
+                .headers(Map.of("Authorization", "Bearer key-1"))
+                .build();
+        InvokeModelParam chatParam = InvokeModelParam.builder()
+                .chatId("chat-1")
+                .product(new ProductResult())
+                .chatMessages(List.of(ChatMessage.builder().role(ChatRole.USER.getRole()).content("What is new?").build()))
+                .requestHeaders(credential.getHeaders())
+                .queryParams(credential.getQueryParams())
+                .gatewayIps(List.of("10.0.0.1"))
+                .credentialContext(credential)
+                .stream(true)
+                .build();
+
+        List<InvokeModelParam> rewriteParams = new CopyOnWriteArrayList<>();
+        when(llmService.invokeLLM(any(), any(), any())).thenAnswer(invocation -> {
+            rewriteParams.add(invocation.getArgument(0));
+            Consumer<LlmInvokeResult> resultHandler = invocation.getArgument(2);
+            resultHandler.accept(LlmInvokeResult.builder().success(true).answer("{ \"query\": \"news\" }").build());
+            return Flux.empty();
+        });
+
+        CreateChatParam param = new CreateChatParam();
+        param.setQuestion("What is new?");
+        param.setSearchType("GOOGLE");
+
+        // Act
+        List<ChatMessage> messages = Mono.defer(() -> {
+                    assertNull(SecurityContextHolder.getContext().getAuthentication(), "工作线程上不应有认证信息");
+                    return talkSearchService.buildSearchMessages(chatParam, param, PORTAL_ID);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .block(Duration.ofSeconds(5));
+
+        // Assert
+        assertNotNull(messages);
+        assertTrue(((String) messages.get(0).getContent()).contains("[[citation:1]]"), "应加入搜索结果");
+
+        assertFalse(searchAbility.portalIds.isEmpty());
+        assertTrue(searchAbility.portalIds.stream().allMatch(PORTAL_ID::equals), "搜索应使用传入的门户");
+
+        // 改写可能在原问题搜索命中后被取消，调用过时应使用对话的凭证
+        for (InvokeModelParam rewriteParam : rewriteParams) {
+            assertSame(chatParam.getProduct(), rewriteParam.getProduct());
+            assertSame(credential, rewriteParam.getCredentialContext());
+            assertEquals(chatParam.getGatewayIps(), rewriteParam.getGatewayIps());
+            assertNotEquals(chatParam.getChatId(), rewriteParam.getChatId());
+            assertTrue(rewriteParam.isInternal(), "改写是内部调用，不保存检查点也不计入对话指标");
+        }
+    }
+
+    /**
+     * 没有指定搜索类型时，消息保持不变
+     */
+    @Test
+    void testNoSearchType() {
+        // Arrange
+        List<ChatMessage> chatMessages = List.of(ChatMessage.builder().role(ChatRole.USER.getRole()).content("hi").build());
+        InvokeModelParam chatParam = InvokeModelParam.builder().chatMessages(chatMessages).build();
+
+        // Act
+        List<ChatMessage> messages = talkSearchService.buildSearchMessages(chatParam, new CreateChatParam(), PORTAL_ID).block();
+
+        // Assert
+        assertSame(chatMessages, messages);
+        assertEquals("hi", messages.get(0).getContent());
+        verifyNoInteractions(llmService);
+    }
+
+    /**
+     * 记录每次搜索的门户，并检查搜索线程上没有认证信息
+     */
+    private static class RecordingSearchAbility implements TalkSearchAbilityService<Object, Object> {
+
+        private final List<String> portalIds = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<SearchContext> search(SearchInput ideaTalkSearchInput) {
+            assertNull(SecurityContextHolder.getContext().getAuthentication());
+            portalIds.add(ideaTalkSearchInput.getPortalId());
+            SearchContext searchContext = new SearchContext()
+                    .setId(1)
+                    .setTitle("News")
+                    .setContent("Something new")
+                    .setUrl("https://example.com/news");
+            return List.of(searchContext);
+        }
+
+        @Override
+        public Object buildSearchRequest(SearchInput ideaTalkSearchInput) {
+            return null;
+        }
+
+        @Override
+        public String getSearchType() {
+            return "GOOGLE";
+        }
+
+        @Override
+        public List<SearchContext> buildSearchResponse(Object searchResponse) {
+            return List.of();
+        }
+    }
+}